@@ -0,0 +1,63 @@
+package benchmarks;
+
+import adapters.GenerateTypeAdapter;
+import models.enums.Color;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Объект, сохраняемый в Redis в бенчмарках. Размер в json задаётся полем data.
+ * Json пишется адаптером, сгенерированным при компиляции, поэтому поля доступны из пакета
+ */
+@GenerateTypeAdapter
+public class BenchmarkPayload {
+
+    long id;
+
+    String name;
+
+    Date created;
+
+    Color color;
+
+    List<String> tags;
+
+    String data;
+
+    public BenchmarkPayload() {
+    }
+
+    /**
+     * Создаёт объект, json которого занимает примерно заданное число байт
+     * @param size - размер json в байтах
+     * @return объект
+     */
+    public static BenchmarkPayload ofSize(int size) {
+        BenchmarkPayload payload = new BenchmarkPayload();
+        payload.id = size;
+        payload.name = "payload-" + size;
+        payload.created = new Date(0);
+        payload.color = Color.Green;
+        payload.tags = new ArrayList<>();
+        payload.tags.add("bench");
+        payload.tags.add("redis");
+        payload.data = "";
+        int overhead = common.JsonHelper.GetGson().toJson(payload).length();
+        StringBuilder sb = new StringBuilder(Math.max(0, size - overhead));
+        for (int i = 0; i < size - overhead; i++) {
+            sb.append((char) ('a' + i % 26));
+        }
+        payload.data = sb.toString();
+        return payload;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String getData() {
+        return data;
+    }
+}
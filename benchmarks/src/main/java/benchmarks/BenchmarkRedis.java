@@ -0,0 +1,48 @@
+package benchmarks;
+
+import servers.EmbeddedRedisServer;
+import configs.RedisConfig;
+import services.RedisService;
+
+import java.io.IOException;
+
+/**
+ * Окружение бенчмарков: встроенный сервер {@link EmbeddedRedisServer} или локально запущенный redis-server.
+ * Внешний сервер включается системным свойством bench.redis.external=true, адрес берётся из {@link RedisConfig#load()}.
+ * Кодек значений выбирается как обычно свойством redis.codec
+ */
+public class BenchmarkRedis implements AutoCloseable {
+
+    public static final String EXTERNAL_PROPERTY = "bench.redis.external";
+
+    private final EmbeddedRedisServer server;
+
+    private final RedisService service;
+
+    public BenchmarkRedis() throws IOException {
+        RedisConfig config = RedisConfig.load();
+        if (Boolean.getBoolean(EXTERNAL_PROPERTY)) {
+            server = null;
+        } else {
+            server = new EmbeddedRedisServer();
+            config.setHost(server.getHost());
+            config.setPort(server.getPort());
+        }
+        config.setMaxTotal(Math.max(config.getMaxTotal(), 64));
+        config.setMaxIdle(Math.max(config.getMaxIdle(), 64));
+        config.setLogAsync(false);
+        service = new RedisService(config);
+    }
+
+    public RedisService getService() {
+        return service;
+    }
+
+    @Override
+    public void close() throws IOException {
+        service.close();
+        if (server != null) {
+            server.close();
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package benchmarks;
+
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Прогон бенчмарков для нескольких чисел потоков подряд.
+ * Список задаётся системным свойством bench.threads (по умолчанию 1,4,16), остальные аргументы как у JMH
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws Exception {
+        String[] threads = System.getProperty("bench.threads", "1,4,16").split(",");
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        for (String count : threads) {
+            ChainedOptionsBuilder options = new OptionsBuilder()
+                    .parent(commandLine)
+                    .threads(Integer.parseInt(count.trim()));
+            if (commandLine.getIncludes().isEmpty()) {
+                options.include("benchmarks\\..*");
+            }
+            new Runner(options.build()).run();
+        }
+    }
+}
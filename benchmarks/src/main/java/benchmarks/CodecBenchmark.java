@@ -0,0 +1,64 @@
+package benchmarks;
+
+import codecs.CodecRegistry;
+import codecs.ICodec;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Сравнение кодеков значений (codecs.ICodec) без сети. Размер закодированного значения печатается отдельно от замеров:
+ * java -cp benchmarks.jar benchmarks.CodecBenchmark
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CodecBenchmark {
+
+    @Param({"100", "10240", "1048576"})
+    public int payloadSize;
+
+    @Param({"json", "binary"})
+    public String codecName;
+
+    private ICodec codec;
+
+    private BenchmarkPayload payload;
+
+    private byte[] encoded;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        codec = CodecRegistry.get(codecName);
+        payload = BenchmarkPayload.ofSize(payloadSize);
+        encoded = codec.encode(payload);
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return codec.encode(payload);
+    }
+
+    @Benchmark
+    public BenchmarkPayload decode() {
+        return codec.decode(BenchmarkPayload.class, encoded);
+    }
+
+    /**
+     * Размер закодированного значения для всех сочетаний параметров бенчмарка
+     */
+    public static void main(String[] args) throws NoSuchFieldException {
+        String[] payloadSizes = CodecBenchmark.class.getField("payloadSize").getAnnotation(Param.class).value();
+        String[] codecNames = CodecBenchmark.class.getField("codecName").getAnnotation(Param.class).value();
+        for (String size : payloadSizes) {
+            BenchmarkPayload payload = BenchmarkPayload.ofSize(Integer.parseInt(size));
+            for (String name : codecNames) {
+                int length = CodecRegistry.get(name).encode(payload).length;
+                System.out.println("codec: " + name + " payload: " + size + " encoded bytes: " + length);
+            }
+        }
+    }
+}
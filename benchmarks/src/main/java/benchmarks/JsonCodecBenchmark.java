@@ -0,0 +1,59 @@
+package benchmarks;
+
+import com.google.gson.Gson;
+import common.JsonHelper;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Стоимость сериализации через {@link JsonHelper#GetGson()} без сети, для отделения стоимости кодека от стоимости Redis
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JsonCodecBenchmark {
+
+    @Param({"100", "10240", "1048576"})
+    public int payloadSize;
+
+    private Gson gson;
+
+    private BenchmarkPayload payload;
+
+    private String json;
+
+    private byte[] bytes;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        gson = JsonHelper.GetGson();
+        payload = BenchmarkPayload.ofSize(payloadSize);
+        json = gson.toJson(payload);
+        bytes = json.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public String toJson() {
+        return gson.toJson(payload);
+    }
+
+    @Benchmark
+    public byte[] toJsonBytes() {
+        return gson.toJson(payload).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public BenchmarkPayload fromJson() {
+        return gson.fromJson(json, BenchmarkPayload.class);
+    }
+
+    @Benchmark
+    public BenchmarkPayload fromJsonBytes() {
+        return gson.fromJson(new String(bytes, StandardCharsets.UTF_8), BenchmarkPayload.class);
+    }
+}
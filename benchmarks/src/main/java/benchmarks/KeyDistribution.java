@@ -0,0 +1,46 @@
+package benchmarks;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Распределение ключей, к которым обращаются потоки бенчмарка
+ */
+public enum KeyDistribution {
+
+    /**
+     * Все потоки работают с одним ключом
+     */
+    HOT {
+        @Override
+        public int next(int cursor, int keyCount) {
+            return 0;
+        }
+    },
+
+    /**
+     * Равномерно случайный ключ
+     */
+    UNIFORM {
+        @Override
+        public int next(int cursor, int keyCount) {
+            return ThreadLocalRandom.current().nextInt(keyCount);
+        }
+    },
+
+    /**
+     * Ключи по кругу, у каждого потока свой курсор
+     */
+    SEQUENTIAL {
+        @Override
+        public int next(int cursor, int keyCount) {
+            return cursor % keyCount;
+        }
+    };
+
+    /**
+     * @param cursor - порядковый номер обращения потока
+     * @param keyCount - число ключей
+     * @return индекс ключа
+     */
+    public abstract int next(int cursor, int keyCount);
+}
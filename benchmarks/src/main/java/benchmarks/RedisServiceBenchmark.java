@@ -0,0 +1,238 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import services.RedisService;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Бенчмарки операций IRedisService по размеру объекта и распределению ключей.
+ * Число потоков задаётся ключом JMH -t или через {@link BenchmarkRunner}
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RedisServiceBenchmark {
+
+    /**
+     * Максимальный объём данных, заранее сохраняемых в Redis
+     */
+    private static final long DATASET_BYTES = 64L * 1024 * 1024;
+
+    private static final int KEYSPACE = 1024;
+
+    private static final int BATCH = 100;
+
+    /**
+     * Раз в сколько операций очереди обрезаются, чтобы не расти бесконечно
+     */
+    private static final int QUEUE_TRIM_EVERY = 256;
+
+    @Param({"100", "10240", "1048576"})
+    public int payloadSize;
+
+    @Param({"HOT", "UNIFORM", "SEQUENTIAL"})
+    public KeyDistribution keyDistribution;
+
+    private BenchmarkRedis redis;
+
+    private RedisService service;
+
+    private BenchmarkPayload payload;
+
+    private String payloadJson;
+
+    private String[] keys;
+
+    private String[] missingKeys;
+
+    @State(Scope.Thread)
+    public static class Cursor {
+
+        int value;
+
+        String queue;
+
+        String processing;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            queue = "bench:queue:" + Thread.currentThread().getId();
+            processing = queue + ":processing";
+        }
+
+        int next() {
+            return value++;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        redis = new BenchmarkRedis();
+        service = redis.getService();
+        payload = BenchmarkPayload.ofSize(payloadSize);
+        payloadJson = common.JsonHelper.GetGson().toJson(payload);
+        int keyCount = (int) Math.max(1, Math.min(KEYSPACE, DATASET_BYTES / payloadSize));
+        keys = new String[keyCount];
+        missingKeys = new String[keyCount];
+        for (int i = 0; i < keyCount; i++) {
+            keys[i] = "bench:" + payloadSize + ":" + i;
+            missingKeys[i] = "bench:missing:" + i;
+            service.put(keys[i], payload);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        service.<String>delete(keys);
+        redis.close();
+    }
+
+    private String key(Cursor cursor) {
+        return keys[keyDistribution.next(cursor.next(), keys.length)];
+    }
+
+    private List<String> batch(Cursor cursor) {
+        List<String> batch = new ArrayList<>(BATCH);
+        for (int i = 0; i < BATCH; i++) {
+            batch.add(key(cursor));
+        }
+        return batch;
+    }
+
+    //region Базовые операции
+
+    @Benchmark
+    public void put(Cursor cursor) {
+        service.put(key(cursor), payload);
+    }
+
+    @Benchmark
+    public void putWithExpire(Cursor cursor) {
+        service.put(key(cursor), payload, 3600);
+    }
+
+    @Benchmark
+    public BenchmarkPayload get(Cursor cursor) {
+        return service.get(BenchmarkPayload.class, key(cursor));
+    }
+
+    @Benchmark
+    public BenchmarkPayload getMissing(Cursor cursor) {
+        return service.get(BenchmarkPayload.class, missingKeys[keyDistribution.next(cursor.next(), missingKeys.length)]);
+    }
+
+    @Benchmark
+    public boolean exist(Cursor cursor) {
+        return service.exist(key(cursor));
+    }
+
+    @Benchmark
+    public long exists(Cursor cursor) {
+        return service.exists(key(cursor), key(cursor), key(cursor));
+    }
+
+    @Benchmark
+    public boolean expire(Cursor cursor) {
+        return service.expire(key(cursor), 3600);
+    }
+
+    @Benchmark
+    public boolean expireAt(Cursor cursor) {
+        return service.expireAt(key(cursor), System.currentTimeMillis() / 1000 + 3600);
+    }
+
+    @Benchmark
+    public long ttl(Cursor cursor) {
+        return service.ttl(key(cursor));
+    }
+
+    @Benchmark
+    public long delete(Cursor cursor) {
+        return service.delete(missingKeys[keyDistribution.next(cursor.next(), missingKeys.length)]);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public Map<String, BenchmarkPayload> getAll(Cursor cursor) {
+        return service.getAll(BenchmarkPayload.class, batch(cursor));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void putAll(Cursor cursor) {
+        Map<String, BenchmarkPayload> objects = new HashMap<>();
+        for (String key : batch(cursor)) {
+            objects.put(key, payload);
+        }
+        service.putAll(objects);
+    }
+
+    //endregion
+
+    //region Очереди
+
+    @Benchmark
+    public long queueRightPush(Cursor cursor) {
+        long size = service.queueRightPush(cursor.queue, payload);
+        if (size >= QUEUE_TRIM_EVERY) service.trimQueue(cursor.queue, 0, 0);
+        return size;
+    }
+
+    @Benchmark
+    public long queueLeftPush(Cursor cursor) {
+        long size = service.queueLeftPush(cursor.queue, payload);
+        if (size >= QUEUE_TRIM_EVERY) service.trimQueue(cursor.queue, 0, 0);
+        return size;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public long queueRightPushAll(Cursor cursor) {
+        long size = service.queueRightPushAll(cursor.queue, Collections.nCopies(BATCH, payload));
+        if (size >= QUEUE_TRIM_EVERY) service.trimQueue(cursor.queue, 0, 0);
+        return size;
+    }
+
+    @Benchmark
+    public long queueSize(Cursor cursor) {
+        return service.queueSize(cursor.queue);
+    }
+
+    @Benchmark
+    public void queuePushAndDequeue(Cursor cursor, Blackhole blackhole) {
+        service.queueRightPush(cursor.queue, payload);
+        blackhole.consume(service.dequeueAndPush(BenchmarkPayload.class, cursor.queue, cursor.processing));
+        if (cursor.next() % QUEUE_TRIM_EVERY == 0) service.trimQueue(cursor.processing, 0, 0);
+    }
+
+    @Benchmark
+    public long removeFromQueue(Cursor cursor) {
+        return service.removeFromQueue(cursor.processing, 1, payload);
+    }
+
+    //endregion
+
+    //region Pub/Sub
+
+    @Benchmark
+    public long publishString() {
+        return service.publish("bench:channel", payloadJson);
+    }
+
+    @Benchmark
+    public long publishObject() {
+        return service.publish("bench:channel", payload);
+    }
+
+    //endregion
+}
@@ -0,0 +1,18 @@
+package adapters;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Класс модели, для которого при компиляции генерируется потоковый TypeAdapter Gson (см. {@link TypeAdapterProcessor})
+ * вместо адаптера на рефлексии. Адаптер подключается через {@link GeneratedTypeAdapterFactory}.
+ * Поля класса должны быть доступны из его пакета (не private) или иметь get/set методы, нужен конструктор без параметров
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface GenerateTypeAdapter {
+}
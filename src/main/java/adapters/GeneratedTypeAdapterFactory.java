@@ -0,0 +1,58 @@
+package adapters;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonIOException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+
+import java.lang.reflect.Constructor;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Подключает к Gson адаптеры, сгенерированные {@link TypeAdapterProcessor} для классов с {@link GenerateTypeAdapter}.
+ * Класс адаптера ищется один раз на тип. Если адаптер не сгенерирован (процессор аннотаций не запускался),
+ * Gson использует адаптер на рефлексии как без аннотации
+ */
+public class GeneratedTypeAdapterFactory implements TypeAdapterFactory {
+
+    /**
+     * Суффикс имени сгенерированного адаптера: пакет модели, имя модели (вложенные через _) и суффикс
+     */
+    public static final String SUFFIX = "_TypeAdapter";
+
+    private final Map<Class<?>, Optional<Constructor<?>>> constructors = new ConcurrentHashMap<>();
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+        Class<? super T> rawType = type.getRawType();
+        if (!rawType.isAnnotationPresent(GenerateTypeAdapter.class)) return null;
+        Optional<Constructor<?>> constructor = constructors.computeIfAbsent(rawType, GeneratedTypeAdapterFactory::constructor);
+        if (!constructor.isPresent()) return null;
+        try {
+            return (TypeAdapter<T>) constructor.get().newInstance(gson);
+        } catch (Exception ex) {
+            throw new JsonIOException("Can not create generated type adapter for " + rawType.getName(), ex);
+        }
+    }
+
+    private static Optional<Constructor<?>> constructor(Class<?> type) {
+        try {
+            Class<?> adapter = Class.forName(adapterName(type.getName()), true, type.getClassLoader());
+            return Optional.of(adapter.getConstructor(Gson.class));
+        } catch (ClassNotFoundException | NoSuchMethodException ex) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Полное имя адаптера по бинарному имени модели, например a.Outer$Inner - a.Outer_Inner_TypeAdapter
+     */
+    static String adapterName(String binaryName) {
+        int dot = binaryName.lastIndexOf('.');
+        return binaryName.substring(0, dot + 1) + binaryName.substring(dot + 1).replace('$', '_') + SUFFIX;
+    }
+}
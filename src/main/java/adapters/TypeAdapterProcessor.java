@@ -0,0 +1,391 @@
+package adapters;
+
+import com.google.gson.annotations.SerializedName;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.PrimitiveType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Процессор аннотаций: для каждого класса с {@link GenerateTypeAdapter} генерирует потоковый TypeAdapter Gson
+ * (см. {@link GeneratedTypeAdapterFactory#SUFFIX}), который пишет и читает поля напрямую через JsonWriter/JsonReader:
+ * без рефлексии, а примитивы и строки - без делегирования другим адаптерам.
+ * Остальные типы полей (даты, коллекции, вложенные объекты) пишутся адаптерами Gson, полученными один раз при создании адаптера.
+ * Как и адаптер на рефлексии: поля static и transient пропускаются, имя поля - имя в классе или {@link SerializedName},
+ * поля со значением null не пишутся (если Gson не настроен на serializeNulls), неизвестные поля JSON пропускаются.
+ * Подключается через META-INF/services при компиляции с библиотекой в classpath
+ */
+@SupportedAnnotationTypes("adapters.GenerateTypeAdapter")
+public class TypeAdapterProcessor extends AbstractProcessor {
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (Element element : roundEnv.getElementsAnnotatedWith(GenerateTypeAdapter.class)) {
+            if (element.getKind() != ElementKind.CLASS) {
+                error(element, "@GenerateTypeAdapter is applicable to classes only");
+                continue;
+            }
+            TypeElement type = (TypeElement) element;
+            try {
+                generate(type);
+            } catch (IllegalStateException ex) {
+                error(type, ex.getMessage());
+            } catch (IOException ex) {
+                error(type, "Can not write type adapter: " + ex);
+            }
+        }
+        return true;
+    }
+
+    private void error(Element element, String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+
+    //region Разбор класса
+
+    /**
+     * Поле модели: имена в JSON, тип и выражения чтения и записи
+     */
+    private static final class Property {
+
+        String name;
+
+        List<String> alternates = new ArrayList<>();
+
+        TypeMirror type;
+
+        /**
+         * Выражение значения поля объекта value
+         */
+        String getter;
+
+        /**
+         * Оператор присваивания полю объекта result, %s - значение
+         */
+        String setter;
+
+        /**
+         * Имя поля адаптера Gson для типа, null - пишется напрямую
+         */
+        String adapter;
+    }
+
+    private List<Property> properties(TypeElement type) {
+        if (!type.getTypeParameters().isEmpty()) {
+            throw new IllegalStateException("Generic class " + type + " is not supported by @GenerateTypeAdapter");
+        }
+        if (type.getNestingKind() == NestingKind.MEMBER && !type.getModifiers().contains(Modifier.STATIC)) {
+            throw new IllegalStateException("Inner class " + type + " must be static for @GenerateTypeAdapter");
+        }
+        if (type.getModifiers().contains(Modifier.PRIVATE)) {
+            throw new IllegalStateException("Private class " + type + " is not supported by @GenerateTypeAdapter");
+        }
+        if (type.getModifiers().contains(Modifier.ABSTRACT)) {
+            throw new IllegalStateException("Abstract class " + type + " is not supported by @GenerateTypeAdapter");
+        }
+        boolean constructor = false;
+        for (ExecutableElement candidate : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+            if (candidate.getParameters().isEmpty() && accessible(type, candidate)) {
+                constructor = true;
+            }
+        }
+        if (!constructor) {
+            throw new IllegalStateException("Class " + type + " needs a non-private constructor without parameters for @GenerateTypeAdapter");
+        }
+        List<Property> result = new ArrayList<>();
+        Set<String> names = new HashSet<>();
+        DeclaredType declared = (DeclaredType) type.asType();
+        List<ExecutableElement> methods = ElementFilter.methodsIn(processingEnv.getElementUtils().getAllMembers(type));
+        for (TypeElement current = type; current != null; current = superclass(current)) {
+            for (VariableElement field : ElementFilter.fieldsIn(current.getEnclosedElements())) {
+                Set<Modifier> modifiers = field.getModifiers();
+                if (modifiers.contains(Modifier.STATIC) || modifiers.contains(Modifier.TRANSIENT)) continue;
+                Property property = new Property();
+                String fieldName = field.getSimpleName().toString();
+                SerializedName serializedName = field.getAnnotation(SerializedName.class);
+                property.name = serializedName == null ? fieldName : serializedName.value();
+                if (serializedName != null) {
+                    for (String alternate : serializedName.alternate()) {
+                        property.alternates.add(alternate);
+                    }
+                }
+                for (String name : names(property)) {
+                    if (!names.add(name)) {
+                        throw new IllegalStateException("Class " + type + " declares multiple JSON fields named " + name);
+                    }
+                }
+                property.type = processingEnv.getTypeUtils().asMemberOf(declared, field);
+                accessors(type, field, fieldName, property, methods);
+                result.add(property);
+            }
+        }
+        return result;
+    }
+
+    private static List<String> names(Property property) {
+        List<String> result = new ArrayList<>();
+        result.add(property.name);
+        result.addAll(property.alternates);
+        return result;
+    }
+
+    private TypeElement superclass(TypeElement type) {
+        TypeMirror superclass = type.getSuperclass();
+        if (superclass.getKind() != TypeKind.DECLARED) return null;
+        TypeElement element = (TypeElement) ((DeclaredType) superclass).asElement();
+        return element.getQualifiedName().contentEquals("java.lang.Object") ? null : element;
+    }
+
+    /**
+     * Прямой доступ к полю из пакета модели или через get/set методы
+     */
+    private void accessors(TypeElement type, VariableElement field, String fieldName, Property property, List<ExecutableElement> methods) {
+        boolean direct = accessible(type, field);
+        if (direct) {
+            property.getter = "value." + fieldName;
+        } else {
+            ExecutableElement getter = method(type, methods, 0, "get" + capitalize(fieldName), "is" + capitalize(fieldName));
+            if (getter != null) property.getter = "value." + getter.getSimpleName() + "()";
+        }
+        if (direct && !field.getModifiers().contains(Modifier.FINAL)) {
+            property.setter = "result." + fieldName + " = %s;";
+        } else {
+            ExecutableElement setter = method(type, methods, 1, "set" + capitalize(fieldName));
+            if (setter != null) property.setter = "result." + setter.getSimpleName() + "(%s);";
+        }
+        if (property.getter == null || property.setter == null) {
+            throw new IllegalStateException("Field " + fieldName + " of " + type + " is not accessible from package "
+                    + packageOf(type) + ": make it non-private and non-final or add get/set methods");
+        }
+    }
+
+    private ExecutableElement method(TypeElement type, List<ExecutableElement> methods, int parameters, String... names) {
+        for (ExecutableElement method : methods) {
+            if (method.getModifiers().contains(Modifier.STATIC) || method.getParameters().size() != parameters) continue;
+            if (!accessible(type, method)) continue;
+            for (String name : names) {
+                if (method.getSimpleName().contentEquals(name)) return method;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Доступен ли член класса из сгенерированного адаптера в пакете модели
+     */
+    private boolean accessible(TypeElement type, Element member) {
+        Set<Modifier> modifiers = member.getModifiers();
+        if (modifiers.contains(Modifier.PRIVATE)) return false;
+        if (modifiers.contains(Modifier.PUBLIC)) return true;
+        return packageOf((TypeElement) member.getEnclosingElement()).equals(packageOf(type));
+    }
+
+    private String packageOf(TypeElement type) {
+        PackageElement element = processingEnv.getElementUtils().getPackageOf(type);
+        return element.getQualifiedName().toString();
+    }
+
+    private static String capitalize(String name) {
+        return Character.toUpperCase(name.charAt(0)) + name.substring(1);
+    }
+
+    //endregion
+
+    //region Генерация
+
+    private void generate(TypeElement type) throws IOException {
+        List<Property> properties = properties(type);
+        String packageName = packageOf(type);
+        String binaryName = processingEnv.getElementUtils().getBinaryName(type).toString();
+        String adapterName = GeneratedTypeAdapterFactory.adapterName(binaryName);
+        String simpleName = adapterName.substring(adapterName.lastIndexOf('.') + 1);
+        String model = type.getQualifiedName().toString();
+
+        StringBuilder fields = new StringBuilder();
+        StringBuilder init = new StringBuilder();
+        int adapters = 0;
+        for (Property property : properties) {
+            if (direct(property.type) != null) continue;
+            property.adapter = "adapter" + adapters++;
+            String boxed = boxed(property.type);
+            fields.append("    private final com.google.gson.TypeAdapter<").append(boxed).append("> ").append(property.adapter).append(";\n\n");
+            init.append("        this.").append(property.adapter).append(" = gson.getAdapter(new com.google.gson.reflect.TypeToken<")
+                    .append(boxed).append(">() {});\n");
+        }
+
+        StringBuilder out = new StringBuilder();
+        if (!packageName.isEmpty()) out.append("package ").append(packageName).append(";\n\n");
+        out.append("/**\n * Потоковый адаптер JSON для {@link ").append(model).append("}, сгенерирован ")
+                .append(TypeAdapterProcessor.class.getName()).append("\n */\n");
+        out.append("public final class ").append(simpleName).append(" extends com.google.gson.TypeAdapter<").append(model).append("> {\n\n");
+        out.append(fields);
+        out.append("    public ").append(simpleName).append("(com.google.gson.Gson gson) {\n").append(init).append("    }\n\n");
+
+        out.append("    @Override\n");
+        out.append("    public void write(com.google.gson.stream.JsonWriter out, ").append(model).append(" value) throws java.io.IOException {\n");
+        out.append("        if (value == null) {\n            out.nullValue();\n            return;\n        }\n");
+        out.append("        out.beginObject();\n");
+        int index = 0;
+        for (Property property : properties) {
+            writeProperty(out, property, "v" + index++);
+        }
+        out.append("        out.endObject();\n    }\n\n");
+
+        out.append("    @Override\n");
+        out.append("    public ").append(model).append(" read(com.google.gson.stream.JsonReader in) throws java.io.IOException {\n");
+        out.append("        if (in.peek() == com.google.gson.stream.JsonToken.NULL) {\n            in.nextNull();\n            return null;\n        }\n");
+        out.append("        ").append(model).append(" result = new ").append(model).append("();\n");
+        out.append("        in.beginObject();\n");
+        out.append("        while (in.hasNext()) {\n");
+        out.append("            switch (in.nextName()) {\n");
+        for (Property property : properties) {
+            readProperty(out, property);
+        }
+        out.append("                default:\n                    in.skipValue();\n");
+        out.append("            }\n        }\n");
+        out.append("        in.endObject();\n        return result;\n    }\n}\n");
+
+        try (Writer writer = processingEnv.getFiler().createSourceFile(adapterName, type).openWriter()) {
+            writer.write(out.toString());
+        }
+    }
+
+    private void writeProperty(StringBuilder out, Property property, String variable) {
+        String name = literal(property.name);
+        String direct = direct(property.type);
+        if (property.type.getKind().isPrimitive()) {
+            out.append("        out.name(").append(name).append(");\n");
+            out.append("        out.value(").append(String.format(direct, property.getter)).append(");\n");
+            return;
+        }
+        out.append("        ").append(boxed(property.type)).append(' ').append(variable).append(" = ").append(property.getter).append(";\n");
+        out.append("        if (").append(variable).append(" != null) {\n");
+        out.append("            out.name(").append(name).append(");\n");
+        if (direct != null) {
+            out.append("            out.value(").append(String.format(direct, variable)).append(");\n");
+        } else {
+            out.append("            ").append(property.adapter).append(".write(out, ").append(variable).append(");\n");
+        }
+        out.append("        } else if (out.getSerializeNulls()) {\n");
+        out.append("            out.name(").append(name).append(");\n");
+        out.append("            out.nullValue();\n");
+        out.append("        }\n");
+    }
+
+    private void readProperty(StringBuilder out, Property property) {
+        for (String name : names(property)) {
+            out.append("                case ").append(literal(name)).append(":\n");
+        }
+        if (property.adapter != null) {
+            out.append("                    ").append(String.format(property.setter, property.adapter + ".read(in)")).append('\n');
+        } else {
+            boolean primitive = property.type.getKind().isPrimitive();
+            out.append("                    if (in.peek() == com.google.gson.stream.JsonToken.NULL) {\n");
+            out.append("                        in.nextNull();\n");
+            if (!primitive) {
+                out.append("                        ").append(String.format(property.setter, "null")).append('\n');
+            }
+            out.append("                    } else {\n");
+            out.append("                        ").append(String.format(property.setter, read(property.type))).append('\n');
+            out.append("                    }\n");
+        }
+        out.append("                    break;\n");
+    }
+
+    /**
+     * Выражение записи значения напрямую в JsonWriter, %s - значение; null - тип пишется адаптером Gson
+     */
+    private static String direct(TypeMirror type) {
+        switch (type.getKind()) {
+            case BOOLEAN:
+            case INT:
+            case LONG:
+            case SHORT:
+            case BYTE:
+            case DOUBLE:
+                return "%s";
+            case FLOAT:
+                return "(java.lang.Number) java.lang.Float.valueOf(%s)";
+            case CHAR:
+                return "java.lang.String.valueOf(%s)";
+            case DECLARED:
+                return type.toString().equals("java.lang.String") ? "%s" : null;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Выражение чтения значения из JsonReader для типов {@link #direct(TypeMirror)}
+     */
+    private static String read(TypeMirror type) {
+        switch (type.getKind()) {
+            case BOOLEAN:
+                return "in.nextBoolean()";
+            case INT:
+                return "in.nextInt()";
+            case LONG:
+                return "in.nextLong()";
+            case SHORT:
+                return "(short) in.nextInt()";
+            case BYTE:
+                return "(byte) in.nextInt()";
+            case DOUBLE:
+                return "in.nextDouble()";
+            case FLOAT:
+                return "(float) in.nextDouble()";
+            case CHAR:
+                return "in.nextString().charAt(0)";
+            default:
+                return "in.peek() == com.google.gson.stream.JsonToken.BOOLEAN ? java.lang.Boolean.toString(in.nextBoolean()) : in.nextString()";
+        }
+    }
+
+    private String boxed(TypeMirror type) {
+        if (type.getKind().isPrimitive()) {
+            return processingEnv.getTypeUtils().boxedClass((PrimitiveType) type).getQualifiedName().toString();
+        }
+        return type.toString();
+    }
+
+    private static String literal(String value) {
+        StringBuilder result = new StringBuilder("\"");
+        for (char ch : value.toCharArray()) {
+            switch (ch) {
+                case '"': result.append("\\\""); break;
+                case '\\': result.append("\\\\"); break;
+                case '\n': result.append("\\n"); break;
+                default: result.append(ch);
+            }
+        }
+        return result.append('"').toString();
+    }
+
+    //endregion
+}
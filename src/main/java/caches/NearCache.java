@@ -0,0 +1,272 @@
+package caches;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Локальный (in-process) кэш десериализованных объектов с вытеснением LRU и временем жизни записей.
+ * Записи разбиты на сегменты по хэшу ключа, у каждого сегмента своя блокировка и свой порядок LRU,
+ * поэтому чтения разных ключей почти не конкурируют между собой.
+ * Загрузка из Redis и инвалидация могут выполняться одновременно, поэтому загруженное значение сохраняется
+ * только если с начала загрузки ключ не инвалидировался (см. {@link #stamp(String)} и {@link #put(String, Object, long, long)}).
+ * Версии ключей считаются по полосам хэша: инвалидация ключа мешает сохранить загрузку только ключей той же полосы.
+ * Объекты отдаются всем потокам как есть, изменять полученные из кэша объекты нельзя
+ */
+public class NearCache {
+
+    /**
+     * Наибольшее число сегментов, степень двойки
+     */
+    private static final int MAX_SEGMENTS = 16;
+
+    /**
+     * Число полос версий ключей, степень двойки, кратно числу сегментов
+     */
+    private static final int VERSIONS = 4096;
+
+    private final int maxSize;
+
+    private final long maxTtlMillis;
+
+    private final Segment[] segments;
+
+    /**
+     * Версии полос ключей, увеличиваются под блокировкой сегмента при каждом удалении ключей полосы по изменению в Redis
+     */
+    private final AtomicLongArray versions = new AtomicLongArray(VERSIONS);
+
+    private final LongAdder invalidations = new LongAdder();
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param maxSize - максимальное число записей, самые давно использованные записи сегмента вытесняются
+     * @param maxTtlMillis - максимальное время жизни записи в миллисекундах
+     */
+    public NearCache(int maxSize, long maxTtlMillis) {
+        this.maxSize = maxSize;
+        this.maxTtlMillis = maxTtlMillis;
+        int count = 1;
+        while (count < MAX_SEGMENTS && count * 2 <= maxSize) {
+            count *= 2;
+        }
+        this.segments = new Segment[count];
+        for (int i = 0; i < count; i++) {
+            segments[i] = new Segment(Math.max(0, maxSize) / count + (i < Math.max(0, maxSize) % count ? 1 : 0));
+        }
+    }
+
+    /**
+     * Получить объект по ключу
+     * @param type - ожидаемый тип объекта, запись другого типа считается промахом
+     * @param key - ключ Redis
+     * @return объект или null, если записи нет, она устарела или другого типа
+     */
+    public <T> T get(Class<T> type, String key) {
+        Object value = null;
+        Segment segment = segment(version(key));
+        synchronized (segment) {
+            CacheEntry entry = segment.get(key);
+            if (entry != null) {
+                if (entry.expiresAt - System.nanoTime() > 0) {
+                    value = entry.value;
+                } else {
+                    segment.remove(key);
+                }
+            }
+        }
+        if (value != null && type.isInstance(value)) {
+            hits.increment();
+            return type.cast(value);
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * Есть ли в кэше действующая запись по ключу
+     */
+    public boolean contains(String key) {
+        Segment segment = segment(version(key));
+        synchronized (segment) {
+            CacheEntry entry = segment.get(key);
+            return entry != null && entry.expiresAt - System.nanoTime() > 0;
+        }
+    }
+
+    /**
+     * Отметка для последующего {@link #put(String, Object, long, long)}, берётся до чтения значения из Redis
+     * @param key - ключ Redis
+     */
+    public long stamp(String key) {
+        return versions.get(version(key));
+    }
+
+    /**
+     * Сохранить загруженный из Redis объект
+     * @param key - ключ Redis
+     * @param value - объект, null не кэшируется
+     * @param ttlMillis - оставшееся время жизни ключа в Redis в миллисекундах, отрицательное - без ограничения
+     * @param stamp - отметка {@link #stamp(String)}, взятая до чтения из Redis
+     */
+    public void put(String key, Object value, long ttlMillis, long stamp) {
+        if (value == null) return;
+        long ttl = ttlMillis < 0 ? maxTtlMillis : Math.min(ttlMillis, maxTtlMillis);
+        if (ttl <= 0) return;
+        CacheEntry entry = new CacheEntry(value, System.nanoTime() + ttl * 1000000L);
+        int version = version(key);
+        Segment segment = segment(version);
+        synchronized (segment) {
+            if (versions.get(version) == stamp) {
+                segment.put(key, entry);
+            }
+        }
+    }
+
+    /**
+     * Удалить записи по ключам, значения которых изменились в Redis
+     */
+    public void invalidate(String... keys) {
+        invalidations.increment();
+        for (String key : keys) {
+            int version = version(key);
+            Segment segment = segment(version);
+            synchronized (segment) {
+                versions.incrementAndGet(version);
+                segment.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Удалить все записи, например при потере подписки на инвалидацию
+     */
+    public void clear() {
+        invalidations.increment();
+        for (int i = 0; i < segments.length; i++) {
+            Segment segment = segments[i];
+            synchronized (segment) {
+                for (int version = i; version < VERSIONS; version += segments.length) {
+                    versions.incrementAndGet(version);
+                }
+                segment.clear();
+            }
+        }
+    }
+
+    /**
+     * Текущее число записей
+     */
+    public int size() {
+        int result = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                result += segment.size();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Полоса версий ключа, младшие биты полосы - номер сегмента
+     */
+    private static int version(String key) {
+        int hash = key.hashCode();
+        return (hash ^ (hash >>> 16)) & (VERSIONS - 1);
+    }
+
+    private Segment segment(int version) {
+        return segments[version & (segments.length - 1)];
+    }
+
+    /**
+     * Максимальное число записей
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Число попаданий в кэш
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * Число промахов
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Число записей, вытесненных по размеру
+     */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * Число инвалидаций
+     */
+    public long getInvalidations() {
+        return invalidations.sum();
+    }
+
+    /**
+     * Доля попаданий, от 0 до 1
+     */
+    public double getHitRatio() {
+        long hit = getHits();
+        long total = hit + getMisses();
+        return total == 0 ? 0 : (double) hit / total;
+    }
+
+    @Override
+    public String toString() {
+        return "near cache size: " + size() + "/" + maxSize + " hits: " + getHits() + " misses: " + getMisses() + " evictions: " + getEvictions();
+    }
+
+    /**
+     * Сегмент записей в порядке доступа, изменяется под своей блокировкой
+     */
+    private final class Segment extends LinkedHashMap<String, CacheEntry> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int capacity;
+
+        Segment(int capacity) {
+            super(Math.min(capacity, 1024) * 4 / 3 + 1, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CacheEntry> eldest) {
+            if (size() > capacity) {
+                evictions.increment();
+                return true;
+            }
+            return false;
+        }
+    }
+
+    private static final class CacheEntry {
+
+        final Object value;
+
+        final long expiresAt;
+
+        CacheEntry(Object value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package caches;
+
+import interfaces.Func;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Объединение одновременных чтений одного ключа (single-flight): первый вызов выполняет запрос к Redis,
+ * вызовы того же ключа, пришедшие до его завершения, ждут и получают тот же результат (или ту же ошибку).
+ * Чтобы чтение после записи видело запись, к запросу присоединяются только вызовы без записей ключа с его начала, см. {@link #written(byte[]...)}.
+ * Записи считаются по полосам ключей (lock striping): запись ключа мешает объединению только ключей той же полосы.
+ * Результат отдаётся всем вызовам как есть, изменять полученные объекты нельзя.
+ * Выключенный объединитель просто выполняет запросы
+ */
+public class SingleFlight {
+
+    /**
+     * Число полос счётчиков записей, степень двойки
+     */
+    private static final int STRIPES = 1024;
+
+    private final boolean enabled;
+
+    private final ConcurrentHashMap<FlightKey, Flight> flights = new ConcurrentHashMap<>();
+
+    /**
+     * Счётчики записей по полосам ключей, увеличиваются после записи ключа полосы
+     */
+    private final AtomicLongArray generations = new AtomicLongArray(STRIPES);
+
+    private final LongAdder calls = new LongAdder();
+
+    private final LongAdder coalesced = new LongAdder();
+
+    /**
+     * @param enabled - объединять ли чтения
+     */
+    public SingleFlight(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Выполнить чтение или присоединиться к такому же выполняющемуся
+     * @param operation - операция (get, exist), чтения разных операций не объединяются
+     * @param type - тип результата, null - не важен
+     * @param key - ключ в бинарном виде
+     * @param loader - запрос к Redis, выполняется только первым вызовом
+     * @param <T> - тип результата
+     * @return результат запроса
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T call(String operation, Class<?> type, byte[] key, Func<T> loader) {
+        if (!enabled) return loader.call();
+        calls.increment();
+        int keyHash = Arrays.hashCode(key);
+        FlightKey flightKey = new FlightKey(operation, type, key, keyHash);
+        int stripe = stripe(keyHash);
+        while (true) {
+            long stamp = generations.get(stripe);
+            Flight current = flights.get(flightKey);
+            if (current != null) {
+                if (current.stamp != stamp) {
+                    // запрос начат до записи: его результат может быть устаревшим
+                    return loader.call();
+                }
+                coalesced.increment();
+                return (T) await(current.result);
+            }
+            Flight flight = new Flight(stamp);
+            if (flights.putIfAbsent(flightKey, flight) != null) continue;
+            try {
+                T result = loader.call();
+                flights.remove(flightKey, flight);
+                flight.result.complete(result);
+                return result;
+            } catch (RuntimeException | Error ex) {
+                flights.remove(flightKey, flight);
+                flight.result.completeExceptionally(ex);
+                throw ex;
+            }
+        }
+    }
+
+    /**
+     * Вызывается после записи ключей: выполняющиеся чтения этих ключей больше не принимают новых участников
+     * @param keys - изменённые ключи в бинарном виде
+     */
+    public void written(byte[]... keys) {
+        if (!enabled) return;
+        for (byte[] key : keys) {
+            generations.incrementAndGet(stripe(Arrays.hashCode(key)));
+        }
+    }
+
+    private static int stripe(int hash) {
+        return (hash ^ (hash >>> 16)) & (STRIPES - 1);
+    }
+
+    private static Object await(CompletableFuture<Object> result) {
+        try {
+            return result.join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw ex;
+        }
+    }
+
+    //region Метрики
+
+    /**
+     * Число чтений через объединитель
+     */
+    public long getCalls() {
+        return calls.sum();
+    }
+
+    /**
+     * Число чтений, получивших результат чужого запроса без обращения к Redis
+     */
+    public long getCoalesced() {
+        return coalesced.sum();
+    }
+
+    /**
+     * Число выполняющихся запросов
+     */
+    public int getInFlight() {
+        return flights.size();
+    }
+
+    //endregion
+
+    @Override
+    public String toString() {
+        return "single flight enabled: " + enabled + " calls: " + getCalls() + " coalesced: " + getCoalesced();
+    }
+
+    private static final class Flight {
+
+        final long stamp;
+
+        final CompletableFuture<Object> result = new CompletableFuture<>();
+
+        Flight(long stamp) {
+            this.stamp = stamp;
+        }
+    }
+
+    private static final class FlightKey {
+
+        final String operation;
+
+        final Class<?> type;
+
+        final byte[] key;
+
+        final int hash;
+
+        FlightKey(String operation, Class<?> type, byte[] key, int keyHash) {
+            this.operation = operation;
+            this.type = type;
+            this.key = key;
+            this.hash = 31 * (31 * operation.hashCode() + (type == null ? 0 : type.hashCode())) + keyHash;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) return true;
+            if (!(other instanceof FlightKey)) return false;
+            FlightKey that = (FlightKey) other;
+            return hash == that.hash && type == that.type && operation.equals(that.operation) && Arrays.equals(key, that.key);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
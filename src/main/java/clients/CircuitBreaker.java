@@ -0,0 +1,170 @@
+package clients;
+
+import configs.RedisConfig;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Выключатель (circuit breaker) узла Redis: после failureThreshold ошибок соединения подряд (обрыв, таймаут, отказ в соединении)
+ * команды openMillis миллисекунд завершаются сразу, без ожидания таймаута сокета. Затем пропускается halfOpenCalls пробных команд:
+ * успешная закрывает выключатель, ошибка открывает снова. Ошибки в ответе Redis (WRONGTYPE и т.п.) и исчерпанный пул
+ * соединений ошибками узла не считаются.
+ * При failureThreshold 0 (по умолчанию) выключатель всегда закрыт, метрики считаются
+ */
+public class CircuitBreaker {
+
+    private final String name;
+
+    private final int failureThreshold;
+
+    private final long openNanos;
+
+    private final int halfOpenCalls;
+
+    private final Object _lock = new Object();
+
+    private volatile CircuitState state = CircuitState.CLOSED;
+
+    /**
+     * Ошибок подряд, изменяется под _lock
+     */
+    private volatile int consecutiveFailures;
+
+    private long openedAt;
+
+    private int trials;
+
+    private long opened;
+
+    private final LongAdder successes = new LongAdder();
+
+    private final LongAdder failures = new LongAdder();
+
+    private final LongAdder rejected = new LongAdder();
+
+    public CircuitBreaker(String name, RedisConfig config) {
+        this(name, config.getBreakerFailureThreshold(), config.getBreakerOpenMillis(), config.getBreakerHalfOpenCalls());
+    }
+
+    /**
+     * @param name - имя узла для сообщений
+     * @param failureThreshold - число ошибок подряд, после которого выключатель открывается, 0 - выключен
+     * @param openMillis - сколько миллисекунд команды отклоняются до пробных
+     * @param halfOpenCalls - число пробных команд
+     */
+    public CircuitBreaker(String name, int failureThreshold, long openMillis, int halfOpenCalls) {
+        this.name = name;
+        this.failureThreshold = failureThreshold;
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(openMillis);
+        this.halfOpenCalls = Math.max(1, halfOpenCalls);
+    }
+
+    /**
+     * Разрешение на команду
+     * @throws CircuitOpenException если выключатель открыт или все пробные команды уже выполняются
+     */
+    public void acquire() {
+        if (state == CircuitState.CLOSED) return;
+        synchronized (_lock) {
+            if (state == CircuitState.OPEN && System.nanoTime() - openedAt >= openNanos) {
+                state = CircuitState.HALF_OPEN;
+                trials = 0;
+            }
+            if (state == CircuitState.CLOSED) return;
+            if (state == CircuitState.HALF_OPEN && trials < halfOpenCalls) {
+                trials++;
+                return;
+            }
+        }
+        rejected.increment();
+        throw new CircuitOpenException("Redis " + name + " is unavailable, circuit breaker is " + state);
+    }
+
+    /**
+     * Команда выполнена (Redis ответил)
+     */
+    public void onSuccess() {
+        successes.increment();
+        if (state == CircuitState.CLOSED && consecutiveFailures == 0) return;
+        synchronized (_lock) {
+            consecutiveFailures = 0;
+            if (state == CircuitState.HALF_OPEN) {
+                state = CircuitState.CLOSED;
+            }
+        }
+    }
+
+    /**
+     * Ошибка соединения с узлом
+     */
+    public void onFailure() {
+        failures.increment();
+        if (failureThreshold <= 0) return;
+        synchronized (_lock) {
+            if (state == CircuitState.HALF_OPEN || (state == CircuitState.CLOSED && ++consecutiveFailures >= failureThreshold)) {
+                state = CircuitState.OPEN;
+                openedAt = System.nanoTime();
+                consecutiveFailures = 0;
+                opened++;
+            }
+        }
+    }
+
+    /**
+     * Команда не дошла до узла, например в пуле не нашлось свободного соединения: не успех и не ошибка узла.
+     * Возвращает разрешение на пробную команду, если оно было выдано
+     */
+    public void onCancel() {
+        if (state != CircuitState.HALF_OPEN) return;
+        synchronized (_lock) {
+            if (state == CircuitState.HALF_OPEN && trials > 0) {
+                trials--;
+            }
+        }
+    }
+
+    //region Метрики
+
+    public CircuitState getState() {
+        return state;
+    }
+
+    /**
+     * Число выполненных команд
+     */
+    public long getSuccesses() {
+        return successes.sum();
+    }
+
+    /**
+     * Число ошибок соединения
+     */
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    /**
+     * Число команд, отклонённых без обращения к Redis
+     */
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    /**
+     * Сколько раз выключатель открывался
+     */
+    public long getOpened() {
+        synchronized (_lock) {
+            return opened;
+        }
+    }
+
+    //endregion
+
+    @Override
+    public String toString() {
+        return "circuit breaker " + name + " state: " + state + " successes: " + getSuccesses() + " failures: " + getFailures()
+                + " rejected: " + getRejected() + " opened: " + getOpened();
+    }
+}
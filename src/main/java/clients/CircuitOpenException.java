@@ -0,0 +1,16 @@
+package clients;
+
+import redis.clients.jedis.exceptions.JedisConnectionException;
+
+/**
+ * Команда не выполнялась: выключатель узла открыт, см. {@link CircuitBreaker}.
+ * Наследует JedisConnectionException, поэтому обрабатывается как недоступность узла (например, чтение с реплики повторяется на основном узле)
+ */
+public class CircuitOpenException extends JedisConnectionException {
+
+    private static final long serialVersionUID = 1L;
+
+    public CircuitOpenException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,22 @@
+package clients;
+
+/**
+ * Состояние {@link CircuitBreaker}
+ */
+public enum CircuitState {
+
+    /**
+     * Узел исправен, команды выполняются
+     */
+    CLOSED,
+
+    /**
+     * Узел недоступен, команды сразу завершаются {@link CircuitOpenException} без обращения к Redis
+     */
+    OPEN,
+
+    /**
+     * Пробные команды после паузы: успех закрывает выключатель, ошибка - снова открывает
+     */
+    HALF_OPEN
+}
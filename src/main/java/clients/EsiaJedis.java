@@ -1,11 +1,16 @@
 package clients;
 
 import redis.clients.jedis.*;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisDataException;
 
 import javax.net.ssl.HostnameVerifier;
 import javax.net.ssl.SSLParameters;
 import javax.net.ssl.SSLSocketFactory;
+import java.net.Socket;
+import java.net.SocketException;
 import java.net.URI;
+import java.util.List;
 
 /**
  * Реализация Jedis клиента с необходимыми методами, которых не написали авторы
@@ -88,6 +93,55 @@ public class EsiaJedis extends Jedis {
 
     //endregion
 
+    /**
+     * MGET ключей предыдущей страницы и SCAN следующей страницы одним обменом с сервером.
+     * У Pipeline в Jedis нет SCAN, поэтому команды отправляются напрямую клиентом
+     * @param cursor - курсор SCAN, null - только MGET
+     * @param params - параметры SCAN (MATCH, COUNT)
+     * @param keys - ключи для MGET, пустой массив - только SCAN
+     * @param values - сюда добавляются значения ключей в порядке keys, отсутствующие - null
+     * @return страница SCAN или null, если курсор не задан
+     */
+    @SuppressWarnings("unchecked")
+    public ScanResult<byte[]> scanAndGet(byte[] cursor, ScanParams params, byte[][] keys, List<byte[]> values) {
+        checkIsInMultiOrPipeline();
+        if (keys.length > 0) client.mget(keys);
+        if (cursor != null) client.scan(cursor, params);
+        if (keys.length > 0) {
+            try {
+                values.addAll(client.getBinaryMultiBulkReply());
+            } catch (JedisDataException ex) {
+                // ответ SCAN нужно дочитать, иначе соединение вернётся в пул с непрочитанным ответом
+                if (cursor != null) client.getObjectMultiBulkReply();
+                throw ex;
+            }
+        }
+        if (cursor == null) return null;
+        List<Object> reply = client.getObjectMultiBulkReply();
+        return new ScanResult<>((byte[]) reply.get(0), (List<byte[]>) reply.get(1));
+    }
+
+    /**
+     * Таймаут ответа на следующие команды соединения, см. {@link #resetCommandTimeout()}
+     * @param millis - таймаут в миллисекундах
+     */
+    public void setCommandTimeout(int millis) {
+        Socket socket = client.getSocket();
+        if (socket == null) return;
+        try {
+            socket.setSoTimeout(millis);
+        } catch (SocketException ex) {
+            throw new JedisConnectionException(ex);
+        }
+    }
+
+    /**
+     * Вернуть таймаут ответа соединения по умолчанию (soTimeout)
+     */
+    public void resetCommandTimeout() {
+        setCommandTimeout(client.getSoTimeout());
+    }
+
     /**
      * Отписаться от каналов
      * @param channels
@@ -0,0 +1,93 @@
+package clients;
+
+import configs.RedisConfig;
+import org.apache.commons.pool2.PooledObject;
+import org.apache.commons.pool2.PooledObjectFactory;
+import org.apache.commons.pool2.impl.DefaultPooledObject;
+
+/**
+ * Фабрика соединений {@link EsiaJedis} для пула {@link EsiaJedisPool}
+ */
+public class EsiaJedisFactory implements PooledObjectFactory<EsiaJedis> {
+
+    private final String host;
+
+    private final int port;
+
+    private final int connectionTimeout;
+
+    private final int soTimeout;
+
+    private final String password;
+
+    private final int database;
+
+    public EsiaJedisFactory(RedisConfig config) {
+        this(config.getHost(), config.getPort(), config);
+    }
+
+    public EsiaJedisFactory(String host, int port, RedisConfig config) {
+        this.host = host;
+        this.port = port;
+        this.connectionTimeout = config.getConnectionTimeout();
+        this.soTimeout = config.getSoTimeout();
+        this.password = config.getPassword();
+        this.database = config.getDatabase();
+    }
+
+    public PooledObject<EsiaJedis> makeObject() throws Exception {
+        EsiaJedis jedis = new EsiaJedis(host, port, connectionTimeout, soTimeout);
+        try {
+            jedis.connect();
+            if (password != null) {
+                jedis.auth(password);
+            }
+            if (database != 0) {
+                jedis.select(database);
+            }
+        } catch (Exception ex) {
+            jedis.close();
+            throw ex;
+        }
+        return new DefaultPooledObject<>(jedis);
+    }
+
+    public void destroyObject(PooledObject<EsiaJedis> pooledObject) throws Exception {
+        EsiaJedis jedis = pooledObject.getObject();
+        if (jedis.isConnected()) {
+            try {
+                jedis.quit();
+            } catch (Exception ignored) {
+            }
+            try {
+                jedis.disconnect();
+            } catch (Exception ignored) {
+                // сокет уже закрыт сервером, соединение всё равно уничтожается
+            }
+        }
+    }
+
+    public boolean validateObject(PooledObject<EsiaJedis> pooledObject) {
+        EsiaJedis jedis = pooledObject.getObject();
+        try {
+            return jedis.isConnected() && "PONG".equals(jedis.ping());
+        } catch (Exception ex) {
+            return false;
+        }
+    }
+
+    public void activateObject(PooledObject<EsiaJedis> pooledObject) throws Exception {
+        EsiaJedis jedis = pooledObject.getObject();
+        if (jedis.getDB() != database) {
+            jedis.select(database);
+        }
+    }
+
+    public void passivateObject(PooledObject<EsiaJedis> pooledObject) throws Exception {
+    }
+
+    @Override
+    public String toString() {
+        return host + ":" + port;
+    }
+}
@@ -0,0 +1,120 @@
+package clients;
+
+import configs.RedisConfig;
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import redis.clients.util.Pool;
+
+/**
+ * Пул соединений {@link EsiaJedis}, аналог JedisPool.
+ * Один экземпляр EsiaJedis не потокобезопасен, поэтому каждая операция должна брать соединение из пула
+ * и возвращать его через {@link #returnResource(EsiaJedis)} или {@link #returnBrokenResource(EsiaJedis)}
+ */
+public class EsiaJedisPool extends Pool<EsiaJedis> {
+
+    private final String host;
+
+    private final int port;
+
+    private final String name;
+
+    private final CircuitBreaker breaker;
+
+    public EsiaJedisPool(RedisConfig config) {
+        this(config.getHost(), config.getPort(), config);
+    }
+
+    public EsiaJedisPool(String host, int port, RedisConfig config) {
+        super(createPoolConfig(config), new EsiaJedisFactory(host, port, config));
+        this.host = host;
+        this.port = port;
+        this.name = host + ":" + port;
+        this.breaker = new CircuitBreaker(name, config);
+    }
+
+    /**
+     * Заранее открыть соединения, чтобы первые операции не тратили время на подключение
+     * @param count - число открываемых соединений
+     */
+    public void preWarm(int count) {
+        if (count > 0) {
+            addObjects(count);
+        }
+    }
+
+    /**
+     * Формирует настройки commons-pool из конфигурации Redis
+     * @param config - конфигурация
+     * @return настройки пула
+     */
+    public static GenericObjectPoolConfig createPoolConfig(RedisConfig config) {
+        GenericObjectPoolConfig poolConfig = new GenericObjectPoolConfig();
+        poolConfig.setMaxTotal(config.getMaxTotal());
+        poolConfig.setMaxIdle(config.getMaxIdle());
+        poolConfig.setMinIdle(config.getMinIdle());
+        poolConfig.setMaxWaitMillis(config.getMaxWaitMillis());
+        poolConfig.setBlockWhenExhausted(true);
+        poolConfig.setTestOnBorrow(config.isTestOnBorrow());
+        poolConfig.setTestWhileIdle(config.isTestWhileIdle());
+        poolConfig.setTimeBetweenEvictionRunsMillis(30000);
+        poolConfig.setMinEvictableIdleTimeMillis(60000);
+        poolConfig.setNumTestsPerEvictionRun(-1);
+        poolConfig.setJmxEnabled(false);
+        return poolConfig;
+    }
+
+    /**
+     * Вернуть исправное соединение в пул.
+     * В Jedis 2.9 метод Pool помечен устаревшим в пользу Jedis.close(), но EsiaJedis не знает своего пула,
+     * поэтому сервисы возвращают соединения явно через этот метод
+     */
+    @Override
+    @SuppressWarnings("deprecation")
+    public void returnResource(EsiaJedis resource) {
+        if (resource != null) {
+            try {
+                resource.resetState();
+                internalPool.returnObject(resource);
+            } catch (Exception ex) {
+                returnBrokenResourceObject(resource);
+            }
+        }
+    }
+
+    /**
+     * Вернуть в пул сломанное соединение, пул его закроет. Устаревший метод Pool, см. {@link #returnResource(EsiaJedis)}
+     */
+    @Override
+    @SuppressWarnings("deprecation")
+    public void returnBrokenResource(EsiaJedis resource) {
+        if (resource != null) {
+            returnBrokenResourceObject(resource);
+        }
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * Выключатель узла, через него проходят все команды сервиса
+     */
+    public CircuitBreaker getBreaker() {
+        return breaker;
+    }
+
+    /**
+     * Адрес узла Redis, с которым работает пул
+     */
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String toString() {
+        return name + " active: " + getNumActive() + " idle: " + getNumIdle() + " waiters: " + getNumWaiters();
+    }
+}
@@ -0,0 +1,119 @@
+package clients;
+
+import configs.RedisConfig;
+import interfaces.FuncOneParam;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Пулы соединений реплик Redis для чтения и балансировка запросов между ними, см. {@link ReplicaBalance}
+ */
+public class EsiaJedisReplicas implements Closeable {
+
+    private final List<EsiaJedisPool> pools;
+
+    /**
+     * Число запросов в работе по репликам
+     */
+    private final AtomicInteger[] outstanding;
+
+    private final AtomicLong next = new AtomicLong();
+
+    private final ReplicaBalance balance;
+
+    /**
+     * @param config - конфигурация, реплики из {@link RedisConfig#getReplicas()}
+     */
+    public EsiaJedisReplicas(RedisConfig config) {
+        List<EsiaJedisPool> pools = new ArrayList<>();
+        String replicas = config.getReplicas();
+        if (replicas != null) {
+            for (String replica : replicas.split(",")) {
+                String address = replica.trim();
+                if (address.isEmpty()) continue;
+                int colon = address.lastIndexOf(':');
+                if (colon < 0) {
+                    pools.add(new EsiaJedisPool(address, config.getPort(), config));
+                } else {
+                    pools.add(new EsiaJedisPool(address.substring(0, colon), Integer.parseInt(address.substring(colon + 1)), config));
+                }
+            }
+        }
+        this.pools = Collections.unmodifiableList(pools);
+        this.outstanding = new AtomicInteger[pools.size()];
+        for (int i = 0; i < outstanding.length; i++) {
+            outstanding[i] = new AtomicInteger();
+        }
+        this.balance = config.getReplicaBalance();
+    }
+
+    /**
+     * Есть ли реплики
+     */
+    public boolean isEmpty() {
+        return pools.isEmpty();
+    }
+
+    /**
+     * Выполняет команду на пуле выбранной реплики
+     * @param command - команда, получает пул реплики
+     * @param <TResult> - тип результата
+     * @return результат команды
+     */
+    public <TResult> TResult execute(FuncOneParam<EsiaJedisPool, TResult> command) {
+        int index = select();
+        outstanding[index].incrementAndGet();
+        try {
+            return command.call(pools.get(index));
+        } finally {
+            outstanding[index].decrementAndGet();
+        }
+    }
+
+    private int select() {
+        int count = pools.size();
+        int start = (int) ((next.getAndIncrement() & Long.MAX_VALUE) % count);
+        if (balance == ReplicaBalance.ROUND_ROBIN) return start;
+        int best = start;
+        for (int i = 1; i < count; i++) {
+            int index = (start + i) % count;
+            if (outstanding[index].get() < outstanding[best].get()) {
+                best = index;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Пулы реплик в порядке конфигурации
+     */
+    public List<EsiaJedisPool> getPools() {
+        return pools;
+    }
+
+    /**
+     * Заранее открыть соединения на каждой реплике
+     * @param count - число соединений на реплику
+     */
+    public void preWarm(int count) {
+        for (EsiaJedisPool pool : pools) {
+            pool.preWarm(count);
+        }
+    }
+
+    public void close() {
+        for (EsiaJedisPool pool : pools) {
+            pool.close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "replicas: " + pools + " balance: " + balance;
+    }
+}
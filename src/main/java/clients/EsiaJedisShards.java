@@ -0,0 +1,154 @@
+package clients;
+
+import configs.RedisConfig;
+import redis.clients.util.Hashing;
+import redis.clients.util.SafeEncoder;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Пулы соединений нескольких узлов Redis и кольцо консистентного хэширования ключей по ним (как в ShardedJedis).
+ * Каждый узел занимает на кольце {@link RedisConfig#getShardVirtualNodes()} точек, ключ принадлежит первой точке по часовой стрелке,
+ * поэтому при добавлении или удалении узла переезжает только его доля ключей.
+ * Точки считаются от адреса узла, а не от порядка в конфигурации.
+ * Если в ключе есть hash tag - непустая подстрока в первых фигурных скобках, как в Redis Cluster, - хэшируется только она
+ */
+public class EsiaJedisShards implements Closeable {
+
+    private final List<EsiaJedisPool> pools;
+
+    private final TreeMap<Long, EsiaJedisPool> ring = new TreeMap<>();
+
+    /**
+     * @param config - конфигурация, узлы из {@link RedisConfig#getShards()}, без них - один узел redis.host:redis.port
+     */
+    public EsiaJedisShards(RedisConfig config) {
+        List<EsiaJedisPool> pools = new ArrayList<>();
+        String shards = config.getShards();
+        if (shards == null || shards.trim().isEmpty()) {
+            pools.add(new EsiaJedisPool(config));
+        } else {
+            for (String shard : shards.split(",")) {
+                String address = shard.trim();
+                if (address.isEmpty()) continue;
+                int colon = address.lastIndexOf(':');
+                if (colon < 0) {
+                    pools.add(new EsiaJedisPool(address, config.getPort(), config));
+                } else {
+                    pools.add(new EsiaJedisPool(address.substring(0, colon), Integer.parseInt(address.substring(colon + 1)), config));
+                }
+            }
+        }
+        this.pools = Collections.unmodifiableList(pools);
+        int virtualNodes = Math.max(1, config.getShardVirtualNodes());
+        for (EsiaJedisPool pool : pools) {
+            for (int i = 0; i < virtualNodes; i++) {
+                ring.put(Hashing.MURMUR_HASH.hash(SafeEncoder.encode(pool.getName() + "*" + i)), pool);
+            }
+        }
+    }
+
+    /**
+     * Часть ключа, по которой выбирается узел: hash tag, если он есть, иначе весь ключ
+     * @param key - ключ в бинарном виде
+     * @return хэшируемая часть ключа
+     */
+    public static byte[] hashTag(byte[] key) {
+        int start = -1;
+        for (int i = 0; i < key.length; i++) {
+            if (key[i] == '{') {
+                start = i;
+                break;
+            }
+        }
+        if (start < 0) return key;
+        for (int end = start + 1; end < key.length; end++) {
+            if (key[end] == '}') {
+                if (end == start + 1) return key;
+                byte[] tag = new byte[end - start - 1];
+                System.arraycopy(key, start + 1, tag, 0, tag.length);
+                return tag;
+            }
+        }
+        return key;
+    }
+
+    /**
+     * Имя с hash tag: само имя, если тег в нём уже есть, иначе имя в фигурных скобках.
+     * Ключи вида tagged(name) + ":suffix" попадают на узел имени
+     * @param name - имя ключа или очереди
+     * @return имя с hash tag
+     */
+    public static String tagged(String name) {
+        int start = name.indexOf('{');
+        int end = start < 0 ? -1 : name.indexOf('}', start + 1);
+        return end > start + 1 ? name : "{" + name + "}";
+    }
+
+    /**
+     * Пул узла, которому принадлежит ключ
+     * @param key - ключ в бинарном виде
+     * @return пул узла
+     */
+    public EsiaJedisPool get(byte[] key) {
+        if (pools.size() == 1 || key == null) return pools.get(0);
+        SortedMap<Long, EsiaJedisPool> tail = ring.tailMap(Hashing.MURMUR_HASH.hash(hashTag(key)));
+        return tail.isEmpty() ? ring.firstEntry().getValue() : tail.get(tail.firstKey());
+    }
+
+    /**
+     * Группирует ключи по узлам
+     * @param keys - ключи в бинарном виде
+     * @return индексы ключей в keys по пулам узлов
+     */
+    public Map<EsiaJedisPool, int[]> group(byte[][] keys) {
+        Map<EsiaJedisPool, List<Integer>> groups = new LinkedHashMap<>();
+        for (int i = 0; i < keys.length; i++) {
+            groups.computeIfAbsent(get(keys[i]), pool -> new ArrayList<>()).add(i);
+        }
+        Map<EsiaJedisPool, int[]> result = new LinkedHashMap<>();
+        for (Map.Entry<EsiaJedisPool, List<Integer>> group : groups.entrySet()) {
+            int[] indices = new int[group.getValue().size()];
+            for (int i = 0; i < indices.length; i++) {
+                indices[i] = group.getValue().get(i);
+            }
+            result.put(group.getKey(), indices);
+        }
+        return result;
+    }
+
+    /**
+     * Пулы всех узлов в порядке конфигурации
+     */
+    public List<EsiaJedisPool> getPools() {
+        return pools;
+    }
+
+    /**
+     * Заранее открыть соединения на каждом узле
+     * @param count - число соединений на узел
+     */
+    public void preWarm(int count) {
+        for (EsiaJedisPool pool : pools) {
+            pool.preWarm(count);
+        }
+    }
+
+    public void close() {
+        for (EsiaJedisPool pool : pools) {
+            pool.close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "shards: " + pools;
+    }
+}
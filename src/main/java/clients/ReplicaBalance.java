@@ -0,0 +1,17 @@
+package clients;
+
+/**
+ * Выбор реплики для чтения в {@link EsiaJedisReplicas}
+ */
+public enum ReplicaBalance {
+
+    /**
+     * Реплика с наименьшим числом запросов в работе, при равенстве - по кругу
+     */
+    LEAST_OUTSTANDING,
+
+    /**
+     * Реплики по кругу
+     */
+    ROUND_ROBIN
+}
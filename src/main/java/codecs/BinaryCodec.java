@@ -0,0 +1,650 @@
+package codecs;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.WildcardType;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Компактный бинарный кодек по схеме класса (в духе Kryo).
+ * Схема (упорядоченный список полей) строится один раз на класс и кэшируется.
+ * Числа пишутся как zigzag varint, строки как UTF-8 с длиной, имена полей не пишутся, класс пишется только если
+ * фактический тип значения отличается от объявленного. Перечисления пишутся по ordinal.
+ * ВАЖНО: схема объекта у записывающей и читающей стороны должна совпадать, иначе значение не прочитается.
+ * Кодек не заменяет json один к одному: {@code @SerializedName}, адаптеры Gson ({@link models.enums.IIntValued},
+ * {@link adapters.GenerateTypeAdapter}, ColorSerializer и т.п.) и формат дат {@link common.JsonHelper} не учитываются.
+ * Объекты создаются конструктором без параметров (может быть private), классы без него не декодируются.
+ * Имя класса из значения принимается, только если класс совместим с объявленным типом и это сам объявленный тип,
+ * класс, уже записанный этим кодеком, или класс из разрешённых пакетов {@link #BinaryCodec(String...)}:
+ * произвольные классы из данных Redis не загружаются и не создаются
+ */
+public class BinaryCodec implements ICodec {
+
+    public static final String NAME = "binary";
+
+    /**
+     * Версия формата, первый байт каждого значения
+     */
+    private static final byte FORMAT = 1;
+
+    //region Теги значений
+
+    private static final byte NULL = 0;
+    private static final byte TRUE = 1;
+    private static final byte FALSE = 2;
+    private static final byte INT = 3;
+    private static final byte LONG = 4;
+    private static final byte DOUBLE = 5;
+    private static final byte FLOAT = 6;
+    private static final byte STRING = 7;
+    private static final byte BYTES = 8;
+    private static final byte DATE = 9;
+    private static final byte ENUM = 10;
+    private static final byte ENUM_TYPED = 11;
+    private static final byte LIST = 12;
+    private static final byte SET = 13;
+    private static final byte MAP = 14;
+    private static final byte OBJECT = 15;
+    private static final byte OBJECT_TYPED = 16;
+    private static final byte SHORT = 17;
+    private static final byte BYTE = 18;
+    private static final byte CHAR = 19;
+    private static final byte UUID_VALUE = 20;
+    private static final byte BIG_DECIMAL = 21;
+    private static final byte BIG_INTEGER = 22;
+    private static final byte ARRAY = 23;
+
+    //endregion
+
+    private static final Map<String, Class<?>> PRIMITIVES = new HashMap<>();
+
+    static {
+        for (Class<?> type : new Class<?>[]{boolean.class, byte.class, char.class, short.class, int.class, long.class, float.class, double.class}) {
+            PRIMITIVES.put(type.getName(), type);
+        }
+    }
+
+    private final Map<Class<?>, Field[]> schemas = new ConcurrentHashMap<>();
+
+    /**
+     * Классы, которые можно прочитать по имени из значения: простые типы JDK, записанные этим кодеком и разрешённые
+     */
+    private final Map<String, Class<?>> classes = new ConcurrentHashMap<>();
+
+    /**
+     * Разрешённые имена классов и префиксы пакетов (с точкой на конце)
+     */
+    private final String[] allowed;
+
+    /**
+     * Кодек, читающий по имени только объявленные типы и классы, записанные этим же кодеком
+     */
+    public BinaryCodec() {
+        this(new String[0]);
+    }
+
+    /**
+     * Кодек с разрешёнными для чтения классами, например для полей с наследниками, записанными другим процессом.
+     * Регистрируется через {@link CodecRegistry#register(ICodec)}
+     * @param allowed - имена классов или префиксы пакетов с точкой на конце, например "models."
+     */
+    public BinaryCodec(String... allowed) {
+        this.allowed = allowed.clone();
+        for (Class<?> type : new Class<?>[]{Object.class, String.class, Boolean.class, Byte.class, Character.class, Short.class, Integer.class,
+                Long.class, Float.class, Double.class, Date.class, UUID.class, BigDecimal.class, BigInteger.class}) {
+            classes.put(type.getName(), type);
+        }
+    }
+
+    public String getName() {
+        return NAME;
+    }
+
+    public <T> byte[] encode(T object) {
+        Output out = new Output(256);
+        out.write(FORMAT);
+        write(out, object, object == null ? Object.class : object.getClass());
+        return out.toByteArray();
+    }
+
+    public <T> T decode(Class<T> type, byte[] data) {
+        if (data == null) return null;
+        Input in = new Input(data);
+        byte format = in.read();
+        if (format != FORMAT) {
+            throw new IllegalArgumentException("Unsupported binary codec format: " + format);
+        }
+        return type.cast(box(type, read(in, type)));
+    }
+
+    //region Запись
+
+    @SuppressWarnings("unchecked")
+    private void write(Output out, Object value, Type declared) {
+        if (value == null) {
+            out.write(NULL);
+            return;
+        }
+        Class<?> type = value.getClass();
+        if (type == Boolean.class) {
+            out.write((Boolean) value ? TRUE : FALSE);
+        } else if (type == Integer.class) {
+            out.write(INT);
+            out.writeVarLong((Integer) value);
+        } else if (type == Long.class) {
+            out.write(LONG);
+            out.writeVarLong((Long) value);
+        } else if (type == String.class) {
+            out.write(STRING);
+            out.writeString((String) value);
+        } else if (type == Double.class) {
+            out.write(DOUBLE);
+            out.writeLong(Double.doubleToLongBits((Double) value));
+        } else if (type == Float.class) {
+            out.write(FLOAT);
+            out.writeInt(Float.floatToIntBits((Float) value));
+        } else if (type == Short.class) {
+            out.write(SHORT);
+            out.writeVarLong((Short) value);
+        } else if (type == Byte.class) {
+            out.write(BYTE);
+            out.write((Byte) value);
+        } else if (type == Character.class) {
+            out.write(CHAR);
+            out.writeVarLong((Character) value);
+        } else if (type == byte[].class) {
+            byte[] bytes = (byte[]) value;
+            out.write(BYTES);
+            out.writeVarInt(bytes.length);
+            out.write(bytes, 0, bytes.length);
+        } else if (value instanceof Date) {
+            out.write(DATE);
+            out.writeVarLong(((Date) value).getTime());
+        } else if (type == UUID.class) {
+            out.write(UUID_VALUE);
+            out.writeLong(((UUID) value).getMostSignificantBits());
+            out.writeLong(((UUID) value).getLeastSignificantBits());
+        } else if (type == BigDecimal.class) {
+            out.write(BIG_DECIMAL);
+            out.writeString(value.toString());
+        } else if (type == BigInteger.class) {
+            out.write(BIG_INTEGER);
+            out.writeString(value.toString());
+        } else if (value instanceof Enum) {
+            Enum<?> constant = (Enum<?>) value;
+            if (constant.getDeclaringClass() == rawType(declared)) {
+                out.write(ENUM);
+            } else {
+                out.write(ENUM_TYPED);
+                out.writeString(written(constant.getDeclaringClass()));
+            }
+            out.writeVarInt(constant.ordinal());
+        } else if (type.isArray()) {
+            int length = Array.getLength(value);
+            Class<?> component = type.getComponentType();
+            out.write(ARRAY);
+            out.writeString(written(component));
+            out.writeVarInt(length);
+            for (int i = 0; i < length; i++) {
+                write(out, Array.get(value, i), component);
+            }
+        } else if (value instanceof Collection) {
+            Collection<Object> collection = (Collection<Object>) value;
+            Type element = typeArgument(declared, 0);
+            out.write(value instanceof Set ? SET : LIST);
+            out.writeVarInt(collection.size());
+            for (Object item : collection) {
+                write(out, item, element);
+            }
+        } else if (value instanceof Map) {
+            Map<Object, Object> map = (Map<Object, Object>) value;
+            Type keyType = typeArgument(declared, 0);
+            Type valueType = typeArgument(declared, 1);
+            out.write(MAP);
+            out.writeVarInt(map.size());
+            for (Map.Entry<Object, Object> entry : map.entrySet()) {
+                write(out, entry.getKey(), keyType);
+                write(out, entry.getValue(), valueType);
+            }
+        } else {
+            if (type == rawType(declared)) {
+                out.write(OBJECT);
+            } else {
+                out.write(OBJECT_TYPED);
+                out.writeString(written(type));
+            }
+            Field[] fields = schema(type);
+            out.writeVarInt(fields.length);
+            try {
+                for (Field field : fields) {
+                    write(out, field.get(value), field.getGenericType());
+                }
+            } catch (IllegalAccessException ex) {
+                throw new IllegalStateException("Failed encode " + type.getName(), ex);
+            }
+        }
+    }
+
+    //endregion
+
+    //region Чтение
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private Object read(Input in, Type declared) {
+        byte tag = in.read();
+        switch (tag) {
+            case NULL:
+                return null;
+            case TRUE:
+                return Boolean.TRUE;
+            case FALSE:
+                return Boolean.FALSE;
+            case INT:
+                return (int) in.readVarLong();
+            case LONG:
+                return in.readVarLong();
+            case STRING:
+                return in.readString();
+            case DOUBLE:
+                return Double.longBitsToDouble(in.readLong());
+            case FLOAT:
+                return Float.intBitsToFloat(in.readInt());
+            case SHORT:
+                return (short) in.readVarLong();
+            case BYTE:
+                return in.read();
+            case CHAR:
+                return (char) in.readVarLong();
+            case BYTES:
+                return in.readBytes(in.readVarInt());
+            case DATE: {
+                long time = in.readVarLong();
+                Class<?> raw = rawType(declared);
+                if (raw != Date.class && Date.class.isAssignableFrom(raw)) {
+                    Date date = (Date) instantiate(raw);
+                    date.setTime(time);
+                    return date;
+                }
+                return new Date(time);
+            }
+            case UUID_VALUE:
+                return new UUID(in.readLong(), in.readLong());
+            case BIG_DECIMAL:
+                return new BigDecimal(in.readString());
+            case BIG_INTEGER:
+                return new BigInteger(in.readString());
+            case ENUM:
+                return rawType(declared).getEnumConstants()[in.readVarInt()];
+            case ENUM_TYPED: {
+                Class<?> type = classForName(in.readString(), rawType(declared));
+                if (!type.isEnum()) {
+                    throw new IllegalArgumentException("Not an enum in binary value: " + type.getName());
+                }
+                return type.getEnumConstants()[in.readVarInt()];
+            }
+            case ARRAY: {
+                Class<?> raw = rawType(declared);
+                Class<?> component = classForName(in.readString(), raw.isArray() ? raw.getComponentType() : Object.class);
+                int length = in.readVarInt();
+                Object array = Array.newInstance(component, length);
+                for (int i = 0; i < length; i++) {
+                    Array.set(array, i, box(component, read(in, component)));
+                }
+                return array;
+            }
+            case LIST:
+            case SET: {
+                int size = in.readVarInt();
+                Type element = typeArgument(declared, 0);
+                Collection collection = newCollection(rawType(declared), tag == SET, size);
+                for (int i = 0; i < size; i++) {
+                    collection.add(read(in, element));
+                }
+                return collection;
+            }
+            case MAP: {
+                int size = in.readVarInt();
+                Type keyType = typeArgument(declared, 0);
+                Type valueType = typeArgument(declared, 1);
+                Map map = newMap(rawType(declared), size);
+                for (int i = 0; i < size; i++) {
+                    Object key = read(in, keyType);
+                    map.put(key, read(in, valueType));
+                }
+                return map;
+            }
+            case OBJECT:
+            case OBJECT_TYPED: {
+                Class<?> type = tag == OBJECT ? rawType(declared) : classForName(in.readString(), rawType(declared));
+                Field[] fields = schema(type);
+                int count = in.readVarInt();
+                if (count != fields.length) {
+                    throw new IllegalArgumentException("Schema mismatch for " + type.getName() + ": expected " + fields.length + " fields, got " + count);
+                }
+                Object object = instantiate(type);
+                try {
+                    for (Field field : fields) {
+                        field.set(object, box(field.getType(), read(in, field.getGenericType())));
+                    }
+                } catch (IllegalAccessException ex) {
+                    throw new IllegalStateException("Failed decode " + type.getName(), ex);
+                }
+                return object;
+            }
+            default:
+                throw new IllegalArgumentException("Unknown binary codec tag: " + tag);
+        }
+    }
+
+    /**
+     * Приводит прочитанное число к объявленному типу поля, например int в long после изменения типа
+     */
+    private static Object box(Class<?> type, Object value) {
+        if (value == null) {
+            if (type.isPrimitive()) {
+                return type == boolean.class ? Boolean.FALSE : type == char.class ? (Object) '\0' : box(type, 0);
+            }
+            return null;
+        }
+        if (!(value instanceof Number)) return value;
+        Number number = (Number) value;
+        if (type == long.class || type == Long.class) return number.longValue();
+        if (type == int.class || type == Integer.class) return number.intValue();
+        if (type == short.class || type == Short.class) return number.shortValue();
+        if (type == byte.class || type == Byte.class) return number.byteValue();
+        if (type == double.class || type == Double.class) return number.doubleValue();
+        if (type == float.class || type == Float.class) return number.floatValue();
+        return value;
+    }
+
+    @SuppressWarnings("rawtypes")
+    private static Collection newCollection(Class<?> declared, boolean set, int size) {
+        if (!declared.isInterface() && !Modifier.isAbstract(declared.getModifiers()) && Collection.class.isAssignableFrom(declared)) {
+            return (Collection) instantiate(declared);
+        }
+        if (set || Set.class.isAssignableFrom(declared)) {
+            return new LinkedHashSet<>(Math.max(16, (int) (size / 0.75f) + 1));
+        }
+        return new ArrayList<>(size);
+    }
+
+    @SuppressWarnings("rawtypes")
+    private static Map newMap(Class<?> declared, int size) {
+        if (!declared.isInterface() && !Modifier.isAbstract(declared.getModifiers()) && Map.class.isAssignableFrom(declared)) {
+            return (Map) instantiate(declared);
+        }
+        return new LinkedHashMap<>(Math.max(16, (int) (size / 0.75f) + 1));
+    }
+
+    //endregion
+
+    //region Схема и типы
+
+    /**
+     * Поля класса для сериализации: все нестатические и нетранзиентные поля иерархии, от базового класса к наследнику, по имени
+     */
+    private Field[] schema(Class<?> type) {
+        Field[] fields = schemas.get(type);
+        if (fields == null) {
+            List<Field> result = new ArrayList<>();
+            List<Class<?>> hierarchy = new ArrayList<>();
+            for (Class<?> current = type; current != null && current != Object.class; current = current.getSuperclass()) {
+                hierarchy.add(0, current);
+            }
+            for (Class<?> current : hierarchy) {
+                Field[] declared = current.getDeclaredFields();
+                Arrays.sort(declared, Comparator.comparing(Field::getName));
+                for (Field field : declared) {
+                    int modifiers = field.getModifiers();
+                    if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers) || field.isSynthetic()) continue;
+                    field.setAccessible(true);
+                    result.add(field);
+                }
+            }
+            fields = result.toArray(new Field[0]);
+            schemas.put(type, fields);
+        }
+        return fields;
+    }
+
+    /**
+     * Запоминает класс, записанный по имени, чтобы его можно было прочитать
+     * @return имя класса
+     */
+    private String written(Class<?> type) {
+        String name = type.getName();
+        if (!type.isPrimitive()) {
+            classes.putIfAbsent(name, type);
+        }
+        return name;
+    }
+
+    /**
+     * Класс по имени из значения
+     * @param name - имя класса
+     * @param expected - объявленный тип, класс должен быть совместим с ним
+     * @throws IllegalArgumentException если класс не разрешён или несовместим с объявленным типом
+     */
+    private Class<?> classForName(String name, Class<?> expected) {
+        Class<?> type = PRIMITIVES.get(name);
+        if (type != null) {
+            if (expected == Object.class || expected == type) return type;
+            throw new IllegalArgumentException("Class " + name + " in binary value does not match declared " + expected.getName());
+        }
+        type = classes.get(name);
+        if (type == null) {
+            if (name.equals(expected.getName())) {
+                type = expected;
+            } else if (isAllowed(name)) {
+                try {
+                    type = Class.forName(name, false, BinaryCodec.class.getClassLoader());
+                } catch (ClassNotFoundException ex) {
+                    throw new IllegalArgumentException("Unknown class in binary value: " + name, ex);
+                }
+            } else {
+                throw new IllegalArgumentException("Class " + name + " in binary value is not allowed, see BinaryCodec(String...)");
+            }
+        }
+        if (!expected.isAssignableFrom(type)) {
+            throw new IllegalArgumentException("Class " + name + " in binary value does not match declared " + expected.getName());
+        }
+        classes.putIfAbsent(name, type);
+        return type;
+    }
+
+    private boolean isAllowed(String name) {
+        for (String prefix : allowed) {
+            if (prefix.endsWith(".") ? name.startsWith(prefix) : name.equals(prefix)) return true;
+        }
+        return false;
+    }
+
+    private static Object instantiate(Class<?> type) {
+        try {
+            Constructor<?> constructor = type.getDeclaredConstructor();
+            constructor.setAccessible(true);
+            return constructor.newInstance();
+        } catch (NoSuchMethodException ex) {
+            throw new IllegalStateException("Failed create instance of " + type.getName() + ": no constructor without parameters", ex);
+        } catch (Exception ex) {
+            throw new IllegalStateException("Failed create instance of " + type.getName(), ex);
+        }
+    }
+
+    private static Class<?> rawType(Type type) {
+        if (type instanceof Class) return (Class<?>) type;
+        if (type instanceof ParameterizedType) return (Class<?>) ((ParameterizedType) type).getRawType();
+        if (type instanceof GenericArrayType) return Array.newInstance(rawType(((GenericArrayType) type).getGenericComponentType()), 0).getClass();
+        if (type instanceof WildcardType) return rawType(((WildcardType) type).getUpperBounds()[0]);
+        return Object.class;
+    }
+
+    private static Type typeArgument(Type type, int index) {
+        if (type instanceof ParameterizedType) {
+            Type[] arguments = ((ParameterizedType) type).getActualTypeArguments();
+            if (index < arguments.length) return arguments[index];
+        }
+        return Object.class;
+    }
+
+    //endregion
+
+    //region Буферы
+
+    private static final class Output {
+
+        private byte[] buffer;
+
+        private int position;
+
+        Output(int capacity) {
+            buffer = new byte[capacity];
+        }
+
+        private void ensure(int count) {
+            if (position + count > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + count));
+            }
+        }
+
+        void write(byte value) {
+            ensure(1);
+            buffer[position++] = value;
+        }
+
+        void write(byte[] bytes, int offset, int length) {
+            ensure(length);
+            System.arraycopy(bytes, offset, buffer, position, length);
+            position += length;
+        }
+
+        void writeVarInt(int value) {
+            ensure(5);
+            while ((value & ~0x7F) != 0) {
+                buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[position++] = (byte) value;
+        }
+
+        void writeVarLong(long value) {
+            long zigzag = (value << 1) ^ (value >> 63);
+            ensure(10);
+            while ((zigzag & ~0x7FL) != 0) {
+                buffer[position++] = (byte) ((zigzag & 0x7F) | 0x80);
+                zigzag >>>= 7;
+            }
+            buffer[position++] = (byte) zigzag;
+        }
+
+        void writeInt(int value) {
+            ensure(4);
+            buffer[position++] = (byte) (value >>> 24);
+            buffer[position++] = (byte) (value >>> 16);
+            buffer[position++] = (byte) (value >>> 8);
+            buffer[position++] = (byte) value;
+        }
+
+        void writeLong(long value) {
+            writeInt((int) (value >>> 32));
+            writeInt((int) value);
+        }
+
+        void writeString(String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarInt(bytes.length);
+            write(bytes, 0, bytes.length);
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buffer, position);
+        }
+    }
+
+    private static final class Input {
+
+        private final byte[] buffer;
+
+        private int position;
+
+        Input(byte[] buffer) {
+            this.buffer = buffer;
+        }
+
+        byte read() {
+            if (position >= buffer.length) {
+                throw new IllegalArgumentException("Unexpected end of binary value");
+            }
+            return buffer[position++];
+        }
+
+        byte[] readBytes(int length) {
+            if (position + length > buffer.length) {
+                throw new IllegalArgumentException("Unexpected end of binary value");
+            }
+            byte[] bytes = Arrays.copyOfRange(buffer, position, position + length);
+            position += length;
+            return bytes;
+        }
+
+        int readVarInt() {
+            int value = 0;
+            for (int shift = 0; shift < 32; shift += 7) {
+                byte b = read();
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) return value;
+            }
+            throw new IllegalArgumentException("Malformed varint");
+        }
+
+        long readVarLong() {
+            long zigzag = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = read();
+                zigzag |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) return (zigzag >>> 1) ^ -(zigzag & 1);
+            }
+            throw new IllegalArgumentException("Malformed varlong");
+        }
+
+        int readInt() {
+            return ((read() & 0xFF) << 24) | ((read() & 0xFF) << 16) | ((read() & 0xFF) << 8) | (read() & 0xFF);
+        }
+
+        long readLong() {
+            return ((long) readInt() << 32) | (readInt() & 0xFFFFFFFFL);
+        }
+
+        String readString() {
+            int length = readVarInt();
+            if (position + length > buffer.length) {
+                throw new IllegalArgumentException("Unexpected end of binary value");
+            }
+            String value = new String(buffer, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+    }
+
+    //endregion
+}
@@ -0,0 +1,54 @@
+package codecs;
+
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Реестр кодеков, найденных через java.util.ServiceLoader
+ */
+public class CodecRegistry {
+
+    private static final Object _lock = new Object();
+
+    private static volatile Map<String, ICodec> _codecs;
+
+    /**
+     * Возвращает кодек по имени
+     * @param name - имя кодека, см. {@link ICodec#getName()}
+     * @return кодек
+     * @throws IllegalArgumentException если кодек с таким именем не зарегистрирован
+     */
+    public static ICodec get(String name) {
+        ICodec codec = codecs().get(name);
+        if (codec == null) {
+            throw new IllegalArgumentException("Unknown redis codec: " + name + ", registered: " + codecs().keySet());
+        }
+        return codec;
+    }
+
+    /**
+     * Зарегистрировать кодек вручную, например созданный с нестандартными настройками
+     * @param codec - кодек
+     */
+    public static void register(ICodec codec) {
+        codecs().put(codec.getName(), codec);
+    }
+
+    private static Map<String, ICodec> codecs() {
+        Map<String, ICodec> codecs = _codecs;
+        if (codecs == null) {
+            synchronized (_lock) {
+                codecs = _codecs;
+                if (codecs == null) {
+                    codecs = new ConcurrentHashMap<>();
+                    for (ICodec codec : ServiceLoader.load(ICodec.class, CodecRegistry.class.getClassLoader())) {
+                        codecs.put(codec.getName(), codec);
+                    }
+                    _codecs = codecs;
+                }
+            }
+        }
+        return codecs;
+    }
+}
@@ -0,0 +1,119 @@
+package codecs;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Метрики сжатия значений {@link ValueCompressor}
+ */
+public class CompressionStats {
+
+    private final LongAdder compressed = new LongAdder();
+
+    private final LongAdder skipped = new LongAdder();
+
+    private final LongAdder decompressed = new LongAdder();
+
+    private final LongAdder originalBytes = new LongAdder();
+
+    private final LongAdder compressedBytes = new LongAdder();
+
+    private final LongAdder compressNanos = new LongAdder();
+
+    private final LongAdder decompressNanos = new LongAdder();
+
+    void onCompressed(int original, int result, long nanos) {
+        compressed.increment();
+        originalBytes.add(original);
+        compressedBytes.add(result);
+        compressNanos.add(nanos);
+    }
+
+    void onSkipped(long nanos) {
+        skipped.increment();
+        compressNanos.add(nanos);
+    }
+
+    void onDecompressed(long nanos) {
+        decompressed.increment();
+        decompressNanos.add(nanos);
+    }
+
+    /**
+     * Число сжатых значений
+     */
+    public long getCompressed() {
+        return compressed.sum();
+    }
+
+    /**
+     * Число значений выше порога, которые не стали меньше после сжатия и сохранены как есть
+     */
+    public long getSkipped() {
+        return skipped.sum();
+    }
+
+    /**
+     * Число распакованных значений
+     */
+    public long getDecompressed() {
+        return decompressed.sum();
+    }
+
+    /**
+     * Суммарный размер сжатых значений до сжатия, в байтах
+     */
+    public long getOriginalBytes() {
+        return originalBytes.sum();
+    }
+
+    /**
+     * Суммарный размер сжатых значений после сжатия, в байтах
+     */
+    public long getCompressedBytes() {
+        return compressedBytes.sum();
+    }
+
+    /**
+     * Сэкономлено байт сети и памяти Redis
+     */
+    public long getSavedBytes() {
+        return getOriginalBytes() - getCompressedBytes();
+    }
+
+    /**
+     * Степень сжатия: размер после / размер до, 1 если ничего не сжималось
+     */
+    public double getRatio() {
+        long original = getOriginalBytes();
+        return original == 0 ? 1 : (double) getCompressedBytes() / original;
+    }
+
+    /**
+     * Процессорное время потока, потраченное на сжатие (включая неудачные попытки), в наносекундах
+     */
+    public long getCompressNanos() {
+        return compressNanos.sum();
+    }
+
+    /**
+     * Процессорное время потока, потраченное на распаковку, в наносекундах
+     */
+    public long getDecompressNanos() {
+        return decompressNanos.sum();
+    }
+
+    /**
+     * Сэкономлено байт на миллисекунду процессорного времени сжатия
+     */
+    public double getSavedBytesPerCpuMilli() {
+        long nanos = getCompressNanos();
+        return nanos == 0 ? 0 : getSavedBytes() / (nanos / 1_000_000.0);
+    }
+
+    @Override
+    public String toString() {
+        return "compressed: " + getCompressed() + " skipped: " + getSkipped() + " decompressed: " + getDecompressed()
+                + " ratio: " + String.format("%.3f", getRatio()) + " saved bytes: " + getSavedBytes()
+                + " compress ms: " + getCompressNanos() / 1_000_000 + " decompress ms: " + getDecompressNanos() / 1_000_000;
+    }
+}
@@ -0,0 +1,235 @@
+package codecs;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.annotations.SerializedName;
+import com.google.gson.reflect.TypeToken;
+import common.JsonHelper;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Отображение полей объекта на поля hash Redis (HSET/HMGET): каждое поле объекта хранится отдельно,
+ * поэтому можно прочитать или изменить только нужные поля, не перезаписывая весь объект.
+ * Отображение строится один раз на класс: поля (включая унаследованные, кроме static и transient),
+ * доступ к ним через {@link MethodHandle} и потоковые {@link TypeAdapter} Gson по типу поля.
+ * Имя поля hash - имя поля класса или {@link SerializedName}, значение - JSON значения поля в UTF-8
+ * независимо от кодека сервиса, поэтому поля читаются в redis-cli через HGET
+ * @param <T> - тип объекта
+ */
+public final class HashMapping<T> {
+
+    private static final Map<Class<?>, HashMapping<?>> mappings = new ConcurrentHashMap<>();
+
+    private static final MethodType GETTER = MethodType.methodType(Object.class, Object.class);
+
+    private static final MethodType SETTER = MethodType.methodType(void.class, Object.class, Object.class);
+
+    private final Class<T> type;
+
+    private final TypeAdapter<T> adapter;
+
+    private final Map<String, FieldMapping> fields;
+
+    private final String[] names;
+
+    /**
+     * Отображение класса, создаётся при первом обращении и кэшируется
+     * @param type - тип объекта
+     * @param <T> - тип объекта
+     * @return отображение полей
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> HashMapping<T> of(Class<T> type) {
+        return (HashMapping<T>) mappings.computeIfAbsent(type, t -> new HashMapping<>(t, JsonHelper.GetGson()));
+    }
+
+    private HashMapping(Class<T> type, Gson gson) {
+        this.type = type;
+        this.adapter = gson.getAdapter(type);
+        Map<String, FieldMapping> fields = new LinkedHashMap<>();
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        for (Class<?> current = type; current != null && current != Object.class; current = current.getSuperclass()) {
+            for (Field field : current.getDeclaredFields()) {
+                int modifiers = field.getModifiers();
+                if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers) || field.isSynthetic()) continue;
+                SerializedName serializedName = field.getAnnotation(SerializedName.class);
+                String name = serializedName == null ? field.getName() : serializedName.value();
+                if (fields.containsKey(name)) continue;
+                field.setAccessible(true);
+                try {
+                    fields.put(name, new FieldMapping(name,
+                            lookup.unreflectGetter(field).asType(GETTER),
+                            lookup.unreflectSetter(field).asType(SETTER),
+                            gson.getAdapter(TypeToken.get(field.getGenericType()))));
+                } catch (IllegalAccessException ex) {
+                    throw new IllegalArgumentException("Field " + name + " of " + type.getName() + " is not accessible", ex);
+                }
+            }
+        }
+        this.fields = Collections.unmodifiableMap(fields);
+        this.names = fields.keySet().toArray(new String[0]);
+    }
+
+    /**
+     * Тип объекта
+     */
+    public Class<T> getType() {
+        return type;
+    }
+
+    /**
+     * Имена всех полей hash в порядке объявления
+     */
+    public String[] getNames() {
+        return names.clone();
+    }
+
+    /**
+     * Имена полей hash в бинарном виде
+     * @param names - имена полей, пусто - все поля
+     * @return имена в UTF-8
+     * @throws IllegalArgumentException если поля нет в классе
+     */
+    public byte[][] rawNames(String... names) {
+        String[] selected = names.length == 0 ? this.names : names;
+        byte[][] result = new byte[selected.length][];
+        for (int i = 0; i < selected.length; i++) {
+            result[i] = field(selected[i]).rawName;
+        }
+        return result;
+    }
+
+    /**
+     * Значения полей объекта для HSET
+     * @param object - объект
+     * @param names - имена полей, пусто - все поля
+     * @param nulls - сюда добавляются имена полей со значением null, их нужно удалить из hash (HDEL)
+     * @return значения непустых полей по именам
+     */
+    public Map<byte[], byte[]> encode(T object, String[] names, List<byte[]> nulls) {
+        String[] selected = names.length == 0 ? this.names : names;
+        Map<byte[], byte[]> result = new LinkedHashMap<>(selected.length * 4 / 3 + 1);
+        for (String name : selected) {
+            FieldMapping field = field(name);
+            byte[] value = field.encode(field.get(object));
+            if (value == null) {
+                nulls.add(field.rawName);
+            } else {
+                result.put(field.rawName, value);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Значение одного поля для HSET
+     * @param name - имя поля
+     * @param value - значение поля
+     * @return JSON значения в UTF-8, null если значение null
+     */
+    public byte[] encodeField(String name, Object value) {
+        return field(name).encode(value);
+    }
+
+    /**
+     * Объект из значений полей HMGET, не прочитанные поля остаются со значениями по умолчанию.
+     * Объект создаётся так же, как при десериализации JSON через Gson
+     * @param names - имена полей, пусто - все поля
+     * @param values - значения полей в порядке names
+     * @return объект, null если нет ни одного значения (ключа нет)
+     */
+    public T decode(String[] names, List<byte[]> values) {
+        String[] selected = names.length == 0 ? this.names : names;
+        T result = null;
+        for (int i = 0; i < selected.length; i++) {
+            byte[] value = values.get(i);
+            if (value == null) continue;
+            if (result == null) result = newInstance();
+            FieldMapping field = field(selected[i]);
+            field.set(result, field.decode(value));
+        }
+        return result;
+    }
+
+    private T newInstance() {
+        try {
+            return adapter.fromJson("{}");
+        } catch (Exception ex) {
+            throw new IllegalStateException("Can not create instance of " + type.getName(), ex);
+        }
+    }
+
+    private FieldMapping field(String name) {
+        FieldMapping field = fields.get(name);
+        if (field == null) {
+            throw new IllegalArgumentException("Unknown field " + name + " of " + type.getName() + ", fields: " + fields.keySet());
+        }
+        return field;
+    }
+
+    @Override
+    public String toString() {
+        return "hash mapping of " + type.getName() + " fields: " + fields.keySet();
+    }
+
+    /**
+     * Поле объекта: имя, доступ и адаптер значения
+     */
+    private static final class FieldMapping {
+
+        final byte[] rawName;
+
+        final MethodHandle getter;
+
+        final MethodHandle setter;
+
+        final TypeAdapter<Object> adapter;
+
+        @SuppressWarnings("unchecked")
+        FieldMapping(String name, MethodHandle getter, MethodHandle setter, TypeAdapter<?> adapter) {
+            this.rawName = name.getBytes(StandardCharsets.UTF_8);
+            this.getter = getter;
+            this.setter = setter;
+            this.adapter = (TypeAdapter<Object>) adapter;
+        }
+
+        Object get(Object object) {
+            try {
+                return (Object) getter.invokeExact(object);
+            } catch (Throwable ex) {
+                throw new IllegalStateException(ex);
+            }
+        }
+
+        void set(Object object, Object value) {
+            try {
+                setter.invokeExact(object, value);
+            } catch (Throwable ex) {
+                throw new IllegalStateException(ex);
+            }
+        }
+
+        byte[] encode(Object value) {
+            return value == null ? null : adapter.toJson(value).getBytes(StandardCharsets.UTF_8);
+        }
+
+        Object decode(byte[] value) {
+            try {
+                return adapter.fromJson(new String(value, StandardCharsets.UTF_8));
+            } catch (Exception ex) {
+                throw new IllegalArgumentException(ex);
+            }
+        }
+    }
+}
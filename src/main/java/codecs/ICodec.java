@@ -0,0 +1,32 @@
+package codecs;
+
+/**
+ * Кодек значений, сохраняемых в Redis: преобразует объект в поток байт и обратно.
+ * Реализации регистрируются через java.util.ServiceLoader (META-INF/services/codecs.ICodec)
+ * и выбираются по имени, см. {@link CodecRegistry}. Реализации должны быть потокобезопасны
+ */
+public interface ICodec {
+
+    /**
+     * Имя кодека, по которому он выбирается в конфигурации (redis.codec)
+     * @return имя
+     */
+    String getName();
+
+    /**
+     * Сериализовать объект
+     * @param object - объект
+     * @param <T> - тип объекта
+     * @return поток байт
+     */
+    <T> byte[] encode(T object);
+
+    /**
+     * Десериализовать объект
+     * @param type - тип объекта результата
+     * @param data - поток байт, null если значения нет
+     * @param <T> - тип объекта результата
+     * @return объект, null если data == null
+     */
+    <T> T decode(Class<T> type, byte[] data);
+}
@@ -0,0 +1,30 @@
+package codecs;
+
+/**
+ * Кодирование идентификаторов (TKey) и имён очередей в ключи Redis.
+ * Реализации должны быть потокобезопасны, результат {@link #encode(Object)} не изменяется вызывающим кодом
+ */
+public interface IKeyCodec {
+
+    /**
+     * Ключ Redis в бинарном виде
+     * @param key - идентификатор
+     * @param <TKey> - тип идентификатора
+     * @return ключ с пространством имён
+     */
+    <TKey> byte[] encode(TKey key);
+
+    /**
+     * Идентификатор по ключу Redis, например из SCAN
+     * @param raw - ключ в бинарном виде
+     * @return ключ без пространства имён
+     */
+    String decode(byte[] raw);
+
+    /**
+     * Паттерн SCAN в пространстве имён
+     * @param pattern - паттерн идентификаторов, null - все
+     * @return паттерн ключей Redis, null - все ключи
+     */
+    String pattern(String pattern);
+}
@@ -0,0 +1,123 @@
+package codecs;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonIOException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import common.JsonHelper;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Кодек JSON через {@link JsonHelper#GetGson()}, значения хранятся в Redis как UTF-8 строки.
+ * Кодек по умолчанию, значения читаются в redis-cli.
+ * Json пишется потоком через {@link JsonWriter} сразу в UTF-8 байты в буфер потока (thread local) и читается потоком
+ * из байт ответа через {@link JsonReader}, без промежуточных строк размером со значение
+ */
+public class JsonCodec implements ICodec {
+
+    public static final String NAME = "json";
+
+    /**
+     * Начальный размер буфера потока
+     */
+    private static final int INITIAL_BUFFER = 4 * 1024;
+
+    /**
+     * Буфер больше этого размера не сохраняется за потоком после записи, чтобы редкие большие значения не держали память
+     */
+    private static final int MAX_RETAINED_BUFFER = 1024 * 1024;
+
+    private final Gson gson;
+
+    private final ThreadLocal<Utf8Buffer> buffers = ThreadLocal.withInitial(Utf8Buffer::new);
+
+    public JsonCodec() {
+        this(JsonHelper.GetGson());
+    }
+
+    public JsonCodec(Gson gson) {
+        this.gson = gson;
+    }
+
+    public String getName() {
+        return NAME;
+    }
+
+    public <T> byte[] encode(T object) {
+        Utf8Buffer buffer = buffers.get();
+        try {
+            JsonWriter writer = gson.newJsonWriter(buffer.writer);
+            if (object == null) {
+                writer.nullValue();
+            } else {
+                gson.toJson(object, object.getClass(), writer);
+            }
+            writer.flush();
+            return buffer.toByteArray();
+        } catch (IOException ex) {
+            throw new JsonIOException(ex);
+        } finally {
+            buffer.reset();
+        }
+    }
+
+    public <T> T decode(Class<T> type, byte[] data) {
+        if (data == null) return null;
+        JsonReader reader = gson.newJsonReader(new InputStreamReader(new ByteArrayInputStream(data), StandardCharsets.UTF_8));
+        return gson.fromJson(reader, type);
+    }
+
+    /**
+     * Переиспользуемый буфер UTF-8 байт с писателем символов поверх него
+     */
+    private static final class Utf8Buffer extends OutputStream {
+
+        private byte[] bytes = new byte[INITIAL_BUFFER];
+
+        private int count;
+
+        private final Writer writer = new OutputStreamWriter(this, StandardCharsets.UTF_8);
+
+        @Override
+        public void write(int b) {
+            ensure(1);
+            bytes[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] source, int offset, int length) {
+            ensure(length);
+            System.arraycopy(source, offset, bytes, count, length);
+            count += length;
+        }
+
+        private void ensure(int length) {
+            if (count + length > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, count + length));
+            }
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(bytes, count);
+        }
+
+        void reset() {
+            try {
+                writer.flush();
+            } catch (IOException ignored) {
+            }
+            count = 0;
+            if (bytes.length > MAX_RETAINED_BUFFER) {
+                bytes = new byte[INITIAL_BUFFER];
+            }
+        }
+    }
+}
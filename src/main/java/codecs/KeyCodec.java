@@ -0,0 +1,199 @@
+package codecs;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Кодек ключей по умолчанию: префикс пространства имён (сервиса или арендатора) и идентификатор в UTF-8.
+ * String, Long, Integer и UUID кодируются сразу в байты, без промежуточной строки и повторного кодирования в Jedis,
+ * остальные типы - через toString(). Идентификаторы этих типов (кроме byte[]) могут кэшироваться: при заполнении кэш очищается целиком
+ */
+public class KeyCodec implements IKeyCodec {
+
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+    private final String namespace;
+
+    private final byte[] prefix;
+
+    private final int cacheSize;
+
+    /**
+     * Кэш закодированных ключей, null - выключен
+     */
+    private final Map<Object, byte[]> cache;
+
+    public KeyCodec() {
+        this("", 0);
+    }
+
+    /**
+     * @param namespace - префикс всех ключей, например "tenant1:", пусто - без префикса
+     * @param cacheSize - максимальное число закэшированных ключей, 0 - кэш выключен
+     */
+    public KeyCodec(String namespace, int cacheSize) {
+        this.namespace = namespace == null ? "" : namespace;
+        this.prefix = this.namespace.getBytes(StandardCharsets.UTF_8);
+        this.cacheSize = cacheSize;
+        this.cache = cacheSize > 0 ? new ConcurrentHashMap<>(Math.min(cacheSize, 1024)) : null;
+    }
+
+    /**
+     * Кодек с теми же настройками в другом пространстве имён, например для сервиса арендатора
+     */
+    public KeyCodec withNamespace(String namespace) {
+        return new KeyCodec(namespace, cacheSize);
+    }
+
+    public String getNamespace() {
+        return namespace;
+    }
+
+    public <TKey> byte[] encode(TKey key) {
+        if (cache == null || key instanceof byte[]) {
+            return encodeKey(key);
+        }
+        byte[] result = cache.get(key);
+        if (result == null) {
+            result = encodeKey(key);
+            if (cacheable(key)) {
+                if (cache.size() >= cacheSize) {
+                    cache.clear();
+                }
+                cache.put(key, result);
+            }
+        }
+        return result;
+    }
+
+    public String decode(byte[] raw) {
+        if (!startsWithPrefix(raw)) {
+            return new String(raw, StandardCharsets.UTF_8);
+        }
+        return new String(raw, prefix.length, raw.length - prefix.length, StandardCharsets.UTF_8);
+    }
+
+    public String pattern(String pattern) {
+        if (namespace.isEmpty()) return pattern;
+        return escape(namespace) + (pattern == null ? "*" : pattern);
+    }
+
+    @Override
+    public String toString() {
+        return "key codec namespace: '" + namespace + "' cache: " + cacheSize;
+    }
+
+    //region Кодирование
+
+    private byte[] encodeKey(Object key) {
+        if (key instanceof String) return string((String) key);
+        if (key instanceof Long || key instanceof Integer) return number(((Number) key).longValue());
+        if (key instanceof UUID) return uuid((UUID) key);
+        if (key instanceof byte[]) return concat((byte[]) key);
+        return string(key.toString());
+    }
+
+    /**
+     * Неизменяемые типы, для которых equals совпадает с равенством ключей
+     */
+    private static boolean cacheable(Object key) {
+        return key instanceof String || key instanceof Long || key instanceof Integer || key instanceof UUID;
+    }
+
+    private byte[] string(String key) {
+        int length = key.length();
+        byte[] result = new byte[prefix.length + length];
+        System.arraycopy(prefix, 0, result, 0, prefix.length);
+        for (int i = 0; i < length; i++) {
+            char ch = key.charAt(i);
+            if (ch >= 0x80) {
+                return concat(key.getBytes(StandardCharsets.UTF_8));
+            }
+            result[prefix.length + i] = (byte) ch;
+        }
+        return result;
+    }
+
+    private byte[] number(long value) {
+        if (value == Long.MIN_VALUE) return string(Long.toString(value));
+        boolean negative = value < 0;
+        long rest = negative ? -value : value;
+        int digits = 1;
+        for (long bound = 10; digits < 19 && rest >= bound; bound *= 10) {
+            digits++;
+        }
+        int length = digits + (negative ? 1 : 0);
+        byte[] result = new byte[prefix.length + length];
+        System.arraycopy(prefix, 0, result, 0, prefix.length);
+        int position = result.length;
+        do {
+            result[--position] = (byte) ('0' + rest % 10);
+            rest /= 10;
+        } while (rest != 0);
+        if (negative) result[--position] = '-';
+        return result;
+    }
+
+    /**
+     * UUID в том же виде, что и {@link UUID#toString()}
+     */
+    private byte[] uuid(UUID key) {
+        byte[] result = new byte[prefix.length + 36];
+        System.arraycopy(prefix, 0, result, 0, prefix.length);
+        long msb = key.getMostSignificantBits();
+        long lsb = key.getLeastSignificantBits();
+        int position = prefix.length;
+        position = hex(result, position, msb >>> 32, 8);
+        result[position++] = '-';
+        position = hex(result, position, msb >>> 16, 4);
+        result[position++] = '-';
+        position = hex(result, position, msb, 4);
+        result[position++] = '-';
+        position = hex(result, position, lsb >>> 48, 4);
+        result[position++] = '-';
+        hex(result, position, lsb, 12);
+        return result;
+    }
+
+    private static int hex(byte[] target, int position, long value, int digits) {
+        for (int i = digits - 1; i >= 0; i--) {
+            target[position + i] = HEX[(int) (value & 0xF)];
+            value >>>= 4;
+        }
+        return position + digits;
+    }
+
+    private byte[] concat(byte[] key) {
+        if (prefix.length == 0) return key;
+        byte[] result = new byte[prefix.length + key.length];
+        System.arraycopy(prefix, 0, result, 0, prefix.length);
+        System.arraycopy(key, 0, result, prefix.length, key.length);
+        return result;
+    }
+
+    private boolean startsWithPrefix(byte[] raw) {
+        if (raw.length < prefix.length) return false;
+        for (int i = 0; i < prefix.length; i++) {
+            if (raw[i] != prefix[i]) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Экранирует спецсимволы glob в пространстве имён, чтобы паттерн SCAN не выходил за его пределы
+     */
+    private static String escape(String value) {
+        StringBuilder result = new StringBuilder(value.length() + 4);
+        for (char ch : value.toCharArray()) {
+            if (ch == '*' || ch == '?' || ch == '[' || ch == ']' || ch == '\\') {
+                result.append('\\');
+            }
+            result.append(ch);
+        }
+        return result.toString();
+    }
+
+    //endregion
+}
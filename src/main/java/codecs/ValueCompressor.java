@@ -0,0 +1,195 @@
+package codecs;
+
+import java.io.Closeable;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Прозрачное сжатие значений больше порога через {@link Deflater}.
+ * Сжатое значение начинается с заголовка {@link #MAGIC} и исходной длины, поэтому несжатые значения (в том числе записанные
+ * до включения сжатия) читаются как есть: ни json, ни {@link BinaryCodec} не начинаются с нулевого байта.
+ * Операции, сравнивающие значения на сервере (removeFromQueue, compareAndSet, deleteIfEquals), сравнивают байты
+ * в том виде, в котором они записываются сейчас: значения, записанные до включения сжатия (или после его выключения), не совпадут.
+ * Deflater и Inflater держат память вне кучи, поэтому они берутся из ограниченных пулов и освобождаются {@link #close()}
+ */
+public class ValueCompressor implements Closeable {
+
+    /**
+     * Заголовок сжатого значения
+     */
+    static final byte[] MAGIC = {0x00, 'Z', 'D', 0x01};
+
+    private static final int HEADER = MAGIC.length + 4;
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    private final int threshold;
+
+    private final int level;
+
+    private final boolean cpuTime;
+
+    private final CompressionStats stats = new CompressionStats();
+
+    /**
+     * Свободные Deflater и Inflater, не больше {@link #POOL_SIZE}; лишние освобождаются сразу
+     */
+    private static final int POOL_SIZE = Runtime.getRuntime().availableProcessors() * 2;
+
+    private final ArrayBlockingQueue<Deflater> deflaters = new ArrayBlockingQueue<>(POOL_SIZE);
+
+    private final ArrayBlockingQueue<Inflater> inflaters = new ArrayBlockingQueue<>(POOL_SIZE);
+
+    private volatile boolean closed = false;
+
+    /**
+     * @param threshold - сжимаются значения строго больше этого размера в байтах, 0 и меньше - сжатие выключено
+     * @param level - уровень сжатия Deflater, от 1 (быстро) до 9 (сильно)
+     */
+    public ValueCompressor(int threshold, int level) {
+        this.threshold = threshold;
+        this.level = level;
+        this.cpuTime = THREADS.isCurrentThreadCpuTimeSupported() && THREADS.isThreadCpuTimeEnabled();
+    }
+
+    /**
+     * Включено ли сжатие
+     */
+    public boolean isEnabled() {
+        return threshold > 0;
+    }
+
+    /**
+     * Сжать значение, если оно больше порога и после сжатия становится меньше
+     * @param value - значение
+     * @return сжатое значение с заголовком или исходное значение
+     */
+    public byte[] compress(byte[] value) {
+        if (value == null || !isEnabled() || value.length <= threshold) return value;
+        long started = now();
+        Deflater deflater = deflaters.poll();
+        if (deflater == null) {
+            deflater = new Deflater(level, true);
+        }
+        try {
+            deflater.setInput(value);
+            deflater.finish();
+            byte[] result = new byte[HEADER + value.length];
+            System.arraycopy(MAGIC, 0, result, 0, MAGIC.length);
+            writeInt(result, MAGIC.length, value.length);
+            int length = HEADER;
+            while (!deflater.finished() && length < result.length) {
+                length += deflater.deflate(result, length, result.length - length);
+            }
+            if (!deflater.finished() || length >= value.length) {
+                stats.onSkipped(now() - started);
+                return value;
+            }
+            stats.onCompressed(value.length, length, now() - started);
+            return Arrays.copyOf(result, length);
+        } finally {
+            deflater.reset();
+            if (closed || !deflaters.offer(deflater)) {
+                deflater.end();
+            }
+        }
+    }
+
+    /**
+     * Распаковать значение, если оно сжато, иначе вернуть как есть
+     * @param value - значение из Redis
+     * @return исходное значение
+     */
+    public byte[] decompress(byte[] value) {
+        if (!isCompressed(value)) return value;
+        long started = now();
+        Inflater inflater = inflaters.poll();
+        if (inflater == null) {
+            inflater = new Inflater(true);
+        }
+        try {
+            byte[] result = new byte[readInt(value, MAGIC.length)];
+            inflater.setInput(value, HEADER, value.length - HEADER);
+            int length = 0;
+            while (length < result.length) {
+                int count = inflater.inflate(result, length, result.length - length);
+                if (count == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) break;
+                length += count;
+            }
+            if (length != result.length) {
+                throw new IllegalArgumentException("Corrupted compressed value: expected " + result.length + " bytes, got " + length);
+            }
+            stats.onDecompressed(now() - started);
+            return result;
+        } catch (DataFormatException ex) {
+            throw new IllegalArgumentException("Corrupted compressed value", ex);
+        } finally {
+            inflater.reset();
+            if (closed || !inflaters.offer(inflater)) {
+                inflater.end();
+            }
+        }
+    }
+
+    /**
+     * Освобождает свободные Deflater и Inflater, занятые освобождаются по завершении операции
+     */
+    @Override
+    public void close() {
+        closed = true;
+        Deflater deflater;
+        while ((deflater = deflaters.poll()) != null) {
+            deflater.end();
+        }
+        Inflater inflater;
+        while ((inflater = inflaters.poll()) != null) {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Сжато ли значение этим компрессором
+     */
+    public static boolean isCompressed(byte[] value) {
+        if (value == null || value.length < HEADER) return false;
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (value[i] != MAGIC[i]) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Метрики сжатия
+     */
+    public CompressionStats getStats() {
+        return stats;
+    }
+
+    public int getThreshold() {
+        return threshold;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    private long now() {
+        return cpuTime ? THREADS.getCurrentThreadCpuTime() : System.nanoTime();
+    }
+
+    private static void writeInt(byte[] buffer, int offset, int value) {
+        buffer[offset] = (byte) (value >>> 24);
+        buffer[offset + 1] = (byte) (value >>> 16);
+        buffer[offset + 2] = (byte) (value >>> 8);
+        buffer[offset + 3] = (byte) value;
+    }
+
+    private static int readInt(byte[] buffer, int offset) {
+        return ((buffer[offset] & 0xFF) << 24) | ((buffer[offset + 1] & 0xFF) << 16) | ((buffer[offset + 2] & 0xFF) << 8) | (buffer[offset + 3] & 0xFF);
+    }
+}
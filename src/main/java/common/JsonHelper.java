@@ -1,32 +1,35 @@
 package common;
 
+import adapters.GeneratedTypeAdapterFactory;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
-import models.enums.Color;
-import models.enums.ColorSerializer;
+import models.enums.IntEnumTypeAdapterFactory;
 
 /**
  * Вспомогательный класс для работы с JSON
  */
 public class JsonHelper {
 
-    private static Object _lock = new Object();
+    /**
+     * Экземпляр создаётся при первом обращении к {@link #GetGson()}: инициализация класса-holder'а потокобезопасна
+     * средствами JVM, чтение после неё идёт без блокировок
+     */
+    private static final class Holder {
 
-    private static Gson _gson;
+        static final Gson gson = new GsonBuilder()
+                .registerTypeAdapterFactory(new IntEnumTypeAdapterFactory())
+                .registerTypeAdapterFactory(new GeneratedTypeAdapterFactory())
+                .setDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'").create();
+    }
 
     /**
-     * Возвращает сконфигурированный экземпляр GSON для работы с JSON
+     * Возвращает сконфигурированный экземпляр GSON для работы с JSON.
+     * Перечисления {@link models.enums.IIntValued} пишутся числом, классы с {@link adapters.GenerateTypeAdapter} -
+     * сгенерированными при компиляции адаптерами
      * @return
      */
     public static Gson GetGson(){
-        if (_gson == null){
-            synchronized (_lock){
-                _gson = new GsonBuilder()
-                        .registerTypeAdapter(Color.class, new ColorSerializer())
-                        .setDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'").create();
-            }
-        }
-        return _gson;
+        return Holder.gson;
     }
 
 }
@@ -0,0 +1,716 @@
+package configs;
+
+import clients.ReplicaBalance;
+import listeners.OverflowPolicy;
+import redis.clients.jedis.Protocol;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Конфигурация подключения к Redis и пула соединений.
+ * Значения читаются из файла redis.properties (из classpath или по пути из системного свойства redis.config),
+ * любое значение может быть переопределено системным свойством с тем же именем, например -Dredis.host=10.0.0.1
+ */
+public class RedisConfig {
+
+    /**
+     * Системное свойство с путём к файлу конфигурации
+     */
+    public static final String CONFIG_PATH_PROPERTY = "redis.config";
+
+    /**
+     * Имя файла конфигурации в classpath по умолчанию
+     */
+    public static final String DEFAULT_CONFIG_RESOURCE = "redis.properties";
+
+    private static Logger logger = Logger.getLogger(RedisConfig.class.getName());
+
+    private String host = Protocol.DEFAULT_HOST;
+
+    private int port = Protocol.DEFAULT_PORT;
+
+    private int connectionTimeout = Protocol.DEFAULT_TIMEOUT;
+
+    private int soTimeout = Protocol.DEFAULT_TIMEOUT;
+
+    private String password = null;
+
+    private int database = Protocol.DEFAULT_DATABASE;
+
+    private int maxTotal = 16;
+
+    private int maxIdle = 16;
+
+    private int minIdle = 2;
+
+    private long maxWaitMillis = 2000;
+
+    private boolean preWarm = true;
+
+    private boolean testOnBorrow = false;
+
+    private boolean testWhileIdle = true;
+
+    private String codec = "json";
+
+    private int compressionThreshold = 0;
+
+    private int compressionLevel = 1;
+
+    private String keyNamespace = "";
+
+    private int keyCacheSize = 0;
+
+    private int asyncThreads = 0;
+
+    private int asyncQueueSize = 1024;
+
+    private int pubSubWorkers = 4;
+
+    private int pubSubQueueSize = 10000;
+
+    private OverflowPolicy pubSubOverflow = OverflowPolicy.BLOCK;
+
+    private int queuePushChunkSize = 1000;
+
+    private int queueWorkers = 4;
+
+    private int queuePollTimeout = 1;
+
+    private int queueVisibilityTimeout = 30;
+
+    private int queueMaxAttempts = 5;
+
+    private int nearCacheSize = 0;
+
+    private long nearCacheTtlMillis = 60000;
+
+    private String nearCacheChannel = "redis:near-cache:invalidate";
+
+    private String shards = "";
+
+    private int shardVirtualNodes = 160;
+
+    private String replicas = "";
+
+    private ReplicaBalance replicaBalance = ReplicaBalance.LEAST_OUTSTANDING;
+
+    private long readYourWritesMillis = 0;
+
+    private int commandTimeoutMillis = 0;
+
+    private int breakerFailureThreshold = 0;
+
+    private long breakerOpenMillis = 5000;
+
+    private int breakerHalfOpenCalls = 1;
+
+    private boolean throwOnFailure = false;
+
+    private boolean singleFlight = false;
+
+    private int logPayloadLimit = 256;
+
+    private boolean logAsync = false;
+
+    private int logBufferSize = 8192;
+
+    //region Загрузка
+
+    /**
+     * Загружает конфигурацию из файла по умолчанию с переопределением системными свойствами
+     * @return конфигурация, если файла нет - значения по умолчанию
+     */
+    public static RedisConfig load() {
+        Properties properties = new Properties();
+        String path = System.getProperty(CONFIG_PATH_PROPERTY);
+        try (InputStream stream = path != null
+                ? new FileInputStream(path)
+                : RedisConfig.class.getClassLoader().getResourceAsStream(DEFAULT_CONFIG_RESOURCE)) {
+            if (stream != null) {
+                properties.load(stream);
+            }
+        } catch (IOException ex) {
+            logger.log(Level.WARNING, "Failed load redis config from: " + (path != null ? path : DEFAULT_CONFIG_RESOURCE) + " ex: " + ex.getMessage());
+        }
+        return fromProperties(properties);
+    }
+
+    /**
+     * Формирует конфигурацию из набора свойств, системные свойства имеют приоритет
+     * @param properties - свойства с ключами вида redis.host, redis.pool.maxTotal и т.д.
+     * @return конфигурация
+     */
+    public static RedisConfig fromProperties(Properties properties) {
+        RedisConfig config = new RedisConfig();
+        config.host = read(properties, "redis.host", config.host);
+        config.port = Integer.parseInt(read(properties, "redis.port", String.valueOf(config.port)));
+        config.connectionTimeout = Integer.parseInt(read(properties, "redis.connectionTimeout", String.valueOf(config.connectionTimeout)));
+        config.soTimeout = Integer.parseInt(read(properties, "redis.soTimeout", String.valueOf(config.soTimeout)));
+        config.password = read(properties, "redis.password", config.password);
+        config.database = Integer.parseInt(read(properties, "redis.database", String.valueOf(config.database)));
+        config.maxTotal = Integer.parseInt(read(properties, "redis.pool.maxTotal", String.valueOf(config.maxTotal)));
+        config.maxIdle = Integer.parseInt(read(properties, "redis.pool.maxIdle", String.valueOf(config.maxIdle)));
+        config.minIdle = Integer.parseInt(read(properties, "redis.pool.minIdle", String.valueOf(config.minIdle)));
+        config.maxWaitMillis = Long.parseLong(read(properties, "redis.pool.maxWaitMillis", String.valueOf(config.maxWaitMillis)));
+        config.preWarm = Boolean.parseBoolean(read(properties, "redis.pool.preWarm", String.valueOf(config.preWarm)));
+        config.testOnBorrow = Boolean.parseBoolean(read(properties, "redis.pool.testOnBorrow", String.valueOf(config.testOnBorrow)));
+        config.testWhileIdle = Boolean.parseBoolean(read(properties, "redis.pool.testWhileIdle", String.valueOf(config.testWhileIdle)));
+        config.codec = read(properties, "redis.codec", config.codec);
+        config.compressionThreshold = Integer.parseInt(read(properties, "redis.compression.threshold", String.valueOf(config.compressionThreshold)));
+        config.compressionLevel = Integer.parseInt(read(properties, "redis.compression.level", String.valueOf(config.compressionLevel)));
+        config.keyNamespace = read(properties, "redis.keys.namespace", config.keyNamespace);
+        config.keyCacheSize = Integer.parseInt(read(properties, "redis.keys.cacheSize", String.valueOf(config.keyCacheSize)));
+        config.asyncThreads = Integer.parseInt(read(properties, "redis.async.threads", String.valueOf(config.asyncThreads)));
+        config.asyncQueueSize = Integer.parseInt(read(properties, "redis.async.queueSize", String.valueOf(config.asyncQueueSize)));
+        config.pubSubWorkers = Integer.parseInt(read(properties, "redis.pubsub.workers", String.valueOf(config.pubSubWorkers)));
+        config.pubSubQueueSize = Integer.parseInt(read(properties, "redis.pubsub.queueSize", String.valueOf(config.pubSubQueueSize)));
+        config.pubSubOverflow = OverflowPolicy.valueOf(read(properties, "redis.pubsub.overflow", config.pubSubOverflow.name()).toUpperCase());
+        config.queuePushChunkSize = Integer.parseInt(read(properties, "redis.queue.pushChunkSize", String.valueOf(config.queuePushChunkSize)));
+        config.queueWorkers = Integer.parseInt(read(properties, "redis.queue.workers", String.valueOf(config.queueWorkers)));
+        config.queuePollTimeout = Integer.parseInt(read(properties, "redis.queue.pollTimeout", String.valueOf(config.queuePollTimeout)));
+        config.queueVisibilityTimeout = Integer.parseInt(read(properties, "redis.queue.visibilityTimeout", String.valueOf(config.queueVisibilityTimeout)));
+        config.queueMaxAttempts = Integer.parseInt(read(properties, "redis.queue.maxAttempts", String.valueOf(config.queueMaxAttempts)));
+        config.nearCacheSize = Integer.parseInt(read(properties, "redis.nearCache.size", String.valueOf(config.nearCacheSize)));
+        config.nearCacheTtlMillis = Long.parseLong(read(properties, "redis.nearCache.ttlMillis", String.valueOf(config.nearCacheTtlMillis)));
+        config.nearCacheChannel = read(properties, "redis.nearCache.channel", config.nearCacheChannel);
+        config.shards = read(properties, "redis.shards", config.shards);
+        config.shardVirtualNodes = Integer.parseInt(read(properties, "redis.shards.virtualNodes", String.valueOf(config.shardVirtualNodes)));
+        config.replicas = read(properties, "redis.replicas", config.replicas);
+        config.replicaBalance = ReplicaBalance.valueOf(read(properties, "redis.replicas.balance", config.replicaBalance.name()).toUpperCase());
+        config.readYourWritesMillis = Long.parseLong(read(properties, "redis.replicas.readYourWritesMillis", String.valueOf(config.readYourWritesMillis)));
+        config.commandTimeoutMillis = Integer.parseInt(read(properties, "redis.commandTimeoutMillis", String.valueOf(config.commandTimeoutMillis)));
+        config.breakerFailureThreshold = Integer.parseInt(read(properties, "redis.breaker.failureThreshold", String.valueOf(config.breakerFailureThreshold)));
+        config.breakerOpenMillis = Long.parseLong(read(properties, "redis.breaker.openMillis", String.valueOf(config.breakerOpenMillis)));
+        config.breakerHalfOpenCalls = Integer.parseInt(read(properties, "redis.breaker.halfOpenCalls", String.valueOf(config.breakerHalfOpenCalls)));
+        config.singleFlight = Boolean.parseBoolean(read(properties, "redis.singleFlight", String.valueOf(config.singleFlight)));
+        config.throwOnFailure = Boolean.parseBoolean(read(properties, "redis.throwOnFailure", String.valueOf(config.throwOnFailure)));
+        config.logPayloadLimit = Integer.parseInt(read(properties, "redis.log.payloadLimit", String.valueOf(config.logPayloadLimit)));
+        config.logAsync = Boolean.parseBoolean(read(properties, "redis.log.async", String.valueOf(config.logAsync)));
+        config.logBufferSize = Integer.parseInt(read(properties, "redis.log.bufferSize", String.valueOf(config.logBufferSize)));
+        return config;
+    }
+
+    private static String read(Properties properties, String name, String defaultValue) {
+        String value = System.getProperty(name);
+        if (value == null) {
+            value = properties.getProperty(name);
+        }
+        return value == null || value.trim().isEmpty() ? defaultValue : value.trim();
+    }
+
+    //endregion
+
+    //region Свойства
+
+    /**
+     * Хост Redis
+     */
+    public String getHost() {
+        return host;
+    }
+
+    public void setHost(String host) {
+        this.host = host;
+    }
+
+    /**
+     * Порт Redis
+     */
+    public int getPort() {
+        return port;
+    }
+
+    public void setPort(int port) {
+        this.port = port;
+    }
+
+    /**
+     * Таймаут установки соединения, в миллисекундах
+     */
+    public int getConnectionTimeout() {
+        return connectionTimeout;
+    }
+
+    public void setConnectionTimeout(int connectionTimeout) {
+        this.connectionTimeout = connectionTimeout;
+    }
+
+    /**
+     * Таймаут чтения из сокета, в миллисекундах
+     */
+    public int getSoTimeout() {
+        return soTimeout;
+    }
+
+    public void setSoTimeout(int soTimeout) {
+        this.soTimeout = soTimeout;
+    }
+
+    /**
+     * Пароль, null если авторизация не требуется
+     */
+    public String getPassword() {
+        return password;
+    }
+
+    public void setPassword(String password) {
+        this.password = password;
+    }
+
+    /**
+     * Номер базы данных Redis
+     */
+    public int getDatabase() {
+        return database;
+    }
+
+    public void setDatabase(int database) {
+        this.database = database;
+    }
+
+    /**
+     * Максимальное число соединений в пуле
+     */
+    public int getMaxTotal() {
+        return maxTotal;
+    }
+
+    public void setMaxTotal(int maxTotal) {
+        this.maxTotal = maxTotal;
+    }
+
+    /**
+     * Максимальное число простаивающих соединений в пуле
+     */
+    public int getMaxIdle() {
+        return maxIdle;
+    }
+
+    public void setMaxIdle(int maxIdle) {
+        this.maxIdle = maxIdle;
+    }
+
+    /**
+     * Минимальное число простаивающих соединений в пуле
+     */
+    public int getMinIdle() {
+        return minIdle;
+    }
+
+    public void setMinIdle(int minIdle) {
+        this.minIdle = minIdle;
+    }
+
+    /**
+     * Максимальное время ожидания свободного соединения из пула, в миллисекундах
+     */
+    public long getMaxWaitMillis() {
+        return maxWaitMillis;
+    }
+
+    public void setMaxWaitMillis(long maxWaitMillis) {
+        this.maxWaitMillis = maxWaitMillis;
+    }
+
+    /**
+     * Открывать minIdle соединений при старте, а не при первом обращении
+     */
+    public boolean isPreWarm() {
+        return preWarm;
+    }
+
+    public void setPreWarm(boolean preWarm) {
+        this.preWarm = preWarm;
+    }
+
+    /**
+     * Проверять соединение командой PING при выдаче из пула
+     */
+    public boolean isTestOnBorrow() {
+        return testOnBorrow;
+    }
+
+    public void setTestOnBorrow(boolean testOnBorrow) {
+        this.testOnBorrow = testOnBorrow;
+    }
+
+    /**
+     * Проверять простаивающие соединения в фоне
+     */
+    public boolean isTestWhileIdle() {
+        return testWhileIdle;
+    }
+
+    public void setTestWhileIdle(boolean testWhileIdle) {
+        this.testWhileIdle = testWhileIdle;
+    }
+
+    /**
+     * Имя кодека значений, см. codecs.ICodec и codecs.CodecRegistry: json (по умолчанию) или binary
+     */
+    public String getCodec() {
+        return codec;
+    }
+
+    public void setCodec(String codec) {
+        this.codec = codec;
+    }
+
+    /**
+     * Значения больше этого размера в байтах сжимаются, 0 - сжатие выключено
+     */
+    public int getCompressionThreshold() {
+        return compressionThreshold;
+    }
+
+    public void setCompressionThreshold(int compressionThreshold) {
+        this.compressionThreshold = compressionThreshold;
+    }
+
+    /**
+     * Уровень сжатия Deflater, от 1 (быстро) до 9 (сильно)
+     */
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    public void setCompressionLevel(int compressionLevel) {
+        this.compressionLevel = compressionLevel;
+    }
+
+    /**
+     * Префикс всех ключей и очередей сервиса, см. codecs.KeyCodec, пусто - без префикса
+     */
+    public String getKeyNamespace() {
+        return keyNamespace;
+    }
+
+    public void setKeyNamespace(String keyNamespace) {
+        this.keyNamespace = keyNamespace;
+    }
+
+    /**
+     * Число закэшированных закодированных ключей, 0 - кэш выключен
+     */
+    public int getKeyCacheSize() {
+        return keyCacheSize;
+    }
+
+    public void setKeyCacheSize(int keyCacheSize) {
+        this.keyCacheSize = keyCacheSize;
+    }
+
+    /**
+     * Число потоков services.AsyncRedisService, 0 - по максимальному числу соединений в пуле
+     */
+    public int getAsyncThreads() {
+        return asyncThreads;
+    }
+
+    public void setAsyncThreads(int asyncThreads) {
+        this.asyncThreads = asyncThreads;
+    }
+
+    /**
+     * Максимальное число ожидающих выполнения асинхронных операций, при переполнении операция завершается ошибкой
+     */
+    public int getAsyncQueueSize() {
+        return asyncQueueSize;
+    }
+
+    public void setAsyncQueueSize(int asyncQueueSize) {
+        this.asyncQueueSize = asyncQueueSize;
+    }
+
+    /**
+     * Число рабочих потоков обработчиков pub/sub в listeners.PubSubDispatcher
+     */
+    public int getPubSubWorkers() {
+        return pubSubWorkers;
+    }
+
+    public void setPubSubWorkers(int pubSubWorkers) {
+        this.pubSubWorkers = pubSubWorkers;
+    }
+
+    /**
+     * Суммарный размер очередей сообщений рабочих потоков pub/sub
+     */
+    public int getPubSubQueueSize() {
+        return pubSubQueueSize;
+    }
+
+    public void setPubSubQueueSize(int pubSubQueueSize) {
+        this.pubSubQueueSize = pubSubQueueSize;
+    }
+
+    /**
+     * Поведение при переполнении очереди сообщений pub/sub: BLOCK, DROP_OLDEST или DROP_NEWEST
+     */
+    public OverflowPolicy getPubSubOverflow() {
+        return pubSubOverflow;
+    }
+
+    public void setPubSubOverflow(OverflowPolicy pubSubOverflow) {
+        this.pubSubOverflow = pubSubOverflow;
+    }
+
+    /**
+     * Максимальное число объектов в одной команде LPUSH/RPUSH пакетного добавления в очередь,
+     * чтобы одна команда не задерживала Redis надолго
+     */
+    public int getQueuePushChunkSize() {
+        return queuePushChunkSize;
+    }
+
+    public void setQueuePushChunkSize(int queuePushChunkSize) {
+        this.queuePushChunkSize = queuePushChunkSize;
+    }
+
+    /**
+     * Число рабочих потоков services.ReliableQueueConsumer, каждый занимает соединение пула на время ожидания
+     */
+    public int getQueueWorkers() {
+        return queueWorkers;
+    }
+
+    public void setQueueWorkers(int queueWorkers) {
+        this.queueWorkers = queueWorkers;
+    }
+
+    /**
+     * Время ожидания объекта в очереди одним запросом BRPOPLPUSH, в секундах
+     */
+    public int getQueuePollTimeout() {
+        return queuePollTimeout;
+    }
+
+    public void setQueuePollTimeout(int queuePollTimeout) {
+        this.queuePollTimeout = queuePollTimeout;
+    }
+
+    /**
+     * Время в секундах, после которого объекты упавшего потребителя возвращаются в очередь
+     */
+    public int getQueueVisibilityTimeout() {
+        return queueVisibilityTimeout;
+    }
+
+    public void setQueueVisibilityTimeout(int queueVisibilityTimeout) {
+        this.queueVisibilityTimeout = queueVisibilityTimeout;
+    }
+
+    /**
+     * Число неуспешных обработок объекта services.ReliableQueueConsumer, после которого он переносится в список {queue}:dead,
+     * 0 - без ограничения
+     */
+    public int getQueueMaxAttempts() {
+        return queueMaxAttempts;
+    }
+
+    public void setQueueMaxAttempts(int queueMaxAttempts) {
+        this.queueMaxAttempts = queueMaxAttempts;
+    }
+
+    /**
+     * Максимальное число объектов в локальном кэше services.NearCachedRedisService, 0 - кэш выключен
+     */
+    public int getNearCacheSize() {
+        return nearCacheSize;
+    }
+
+    public void setNearCacheSize(int nearCacheSize) {
+        this.nearCacheSize = nearCacheSize;
+    }
+
+    /**
+     * Максимальное время жизни объекта в локальном кэше, в миллисекундах, даже если TTL ключа в Redis больше
+     */
+    public long getNearCacheTtlMillis() {
+        return nearCacheTtlMillis;
+    }
+
+    public void setNearCacheTtlMillis(long nearCacheTtlMillis) {
+        this.nearCacheTtlMillis = nearCacheTtlMillis;
+    }
+
+    /**
+     * Канал pub/sub для сообщений об инвалидации локальных кэшей
+     */
+    public String getNearCacheChannel() {
+        return nearCacheChannel;
+    }
+
+    public void setNearCacheChannel(String nearCacheChannel) {
+        this.nearCacheChannel = nearCacheChannel;
+    }
+
+    /**
+     * Узлы Redis для services.ShardedRedisService через запятую, вида host:port,host:port
+     */
+    public String getShards() {
+        return shards;
+    }
+
+    public void setShards(String shards) {
+        this.shards = shards;
+    }
+
+    /**
+     * Число виртуальных узлов на каждый узел в кольце консистентного хэширования, больше - равномернее распределение ключей
+     */
+    public int getShardVirtualNodes() {
+        return shardVirtualNodes;
+    }
+
+    public void setShardVirtualNodes(int shardVirtualNodes) {
+        this.shardVirtualNodes = shardVirtualNodes;
+    }
+
+    /**
+     * Реплики для чтения services.ReplicatedRedisService через запятую, вида host:port,host:port. Запись идёт на redis.host:redis.port
+     */
+    public String getReplicas() {
+        return replicas;
+    }
+
+    public void setReplicas(String replicas) {
+        this.replicas = replicas;
+    }
+
+    /**
+     * Выбор реплики для чтения
+     */
+    public ReplicaBalance getReplicaBalance() {
+        return replicaBalance;
+    }
+
+    public void setReplicaBalance(ReplicaBalance replicaBalance) {
+        this.replicaBalance = replicaBalance;
+    }
+
+    /**
+     * Время в миллисекундах после записи потоком, в течение которого его чтения идут на основной узел (читать свои записи), 0 - выключено
+     */
+    public long getReadYourWritesMillis() {
+        return readYourWritesMillis;
+    }
+
+    public void setReadYourWritesMillis(long readYourWritesMillis) {
+        this.readYourWritesMillis = readYourWritesMillis;
+    }
+
+    /**
+     * Максимальное число символов значения (json), попадающих в лог, длинные значения обрезаются и дополняются хэшем
+     */
+    public int getLogPayloadLimit() {
+        return logPayloadLimit;
+    }
+
+    public void setLogPayloadLimit(int logPayloadLimit) {
+        this.logPayloadLimit = logPayloadLimit;
+    }
+
+    /**
+     * Таймаут ответа на команду в миллисекундах, 0 - soTimeout соединения.
+     * Для части вызовов можно задать свой, см. services.RedisService#withTimeout
+     */
+    public int getCommandTimeoutMillis() {
+        return commandTimeoutMillis;
+    }
+
+    public void setCommandTimeoutMillis(int commandTimeoutMillis) {
+        this.commandTimeoutMillis = commandTimeoutMillis;
+    }
+
+    /**
+     * Число ошибок соединения подряд, после которого выключатель узла открывается, 0 (по умолчанию) - выключатель не используется,
+     * см. clients.CircuitBreaker
+     */
+    public int getBreakerFailureThreshold() {
+        return breakerFailureThreshold;
+    }
+
+    public void setBreakerFailureThreshold(int breakerFailureThreshold) {
+        this.breakerFailureThreshold = breakerFailureThreshold;
+    }
+
+    /**
+     * Сколько миллисекунд открытый выключатель отклоняет команды до пробных
+     */
+    public long getBreakerOpenMillis() {
+        return breakerOpenMillis;
+    }
+
+    public void setBreakerOpenMillis(long breakerOpenMillis) {
+        this.breakerOpenMillis = breakerOpenMillis;
+    }
+
+    /**
+     * Число пробных команд полуоткрытого выключателя
+     */
+    public int getBreakerHalfOpenCalls() {
+        return breakerHalfOpenCalls;
+    }
+
+    public void setBreakerHalfOpenCalls(int breakerHalfOpenCalls) {
+        this.breakerHalfOpenCalls = breakerHalfOpenCalls;
+    }
+
+    /**
+     * Бросать исключения exceptions.RedisOperationException вместо возврата значений по умолчанию (null, 0, false)
+     */
+    public boolean isThrowOnFailure() {
+        return throwOnFailure;
+    }
+
+    public void setThrowOnFailure(boolean throwOnFailure) {
+        this.throwOnFailure = throwOnFailure;
+    }
+
+    /**
+     * Объединять одновременные get и exist одного ключа в один запрос к Redis, см. caches.SingleFlight
+     */
+    public boolean isSingleFlight() {
+        return singleFlight;
+    }
+
+    public void setSingleFlight(boolean singleFlight) {
+        this.singleFlight = singleFlight;
+    }
+
+    /**
+     * Писать лог операций асинхронно через кольцевой буфер, по умолчанию выключено, см. logging.RedisLogger#installAsync(int)
+     */
+    public boolean isLogAsync() {
+        return logAsync;
+    }
+
+    public void setLogAsync(boolean logAsync) {
+        this.logAsync = logAsync;
+    }
+
+    /**
+     * Размер кольцевого буфера асинхронного лога
+     */
+    public int getLogBufferSize() {
+        return logBufferSize;
+    }
+
+    public void setLogBufferSize(int logBufferSize) {
+        this.logBufferSize = logBufferSize;
+    }
+
+    //endregion
+
+    @Override
+    public String toString() {
+        return "redis://" + host + ":" + port + "/" + database + " pool: " + minIdle + ".." + maxIdle + "/" + maxTotal;
+    }
+}
@@ -0,0 +1,15 @@
+package exceptions;
+
+/**
+ * Ключи одной команды (dequeueAndPush, транзакция, скрипт) принадлежат разным узлам services.ShardedRedisService.
+ * Это ошибка вызывающего кода, а не Redis: она бросается всегда, независимо от configs.RedisConfig#isThrowOnFailure().
+ * Ключи нужно связать общим hash tag, например {orders} и {orders}:processing, см. clients.EsiaJedisShards#tagged(String)
+ */
+public class CrossNodeKeysException extends IllegalArgumentException {
+
+    private static final long serialVersionUID = 1L;
+
+    public CrossNodeKeysException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,24 @@
+package exceptions;
+
+/**
+ * Ошибка операции сервиса Redis, бросается вместо возврата значения по умолчанию при configs.RedisConfig#isThrowOnFailure().
+ * Ошибка в ответе Redis (WRONGTYPE, ошибка скрипта и т.п.) или при сериализации, недоступность узла - {@link RedisUnavailableException}
+ */
+public class RedisOperationException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String operation;
+
+    public RedisOperationException(String operation, String message, Throwable cause) {
+        super(operation + ": " + message, cause);
+        this.operation = operation;
+    }
+
+    /**
+     * Имя операции сервиса (get, put, ...)
+     */
+    public String getOperation() {
+        return operation;
+    }
+}
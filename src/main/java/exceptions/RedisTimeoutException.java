@@ -0,0 +1,14 @@
+package exceptions;
+
+/**
+ * Redis не ответил за таймаут команды, см. configs.RedisConfig#getCommandTimeoutMillis().
+ * Команда могла быть выполнена сервером
+ */
+public class RedisTimeoutException extends RedisUnavailableException {
+
+    private static final long serialVersionUID = 1L;
+
+    public RedisTimeoutException(String operation, String message, Throwable cause) {
+        super(operation, message, cause);
+    }
+}
@@ -0,0 +1,14 @@
+package exceptions;
+
+/**
+ * Узел Redis недоступен: нет соединения, обрыв, нет свободного соединения в пуле или открыт выключатель узла (clients.CircuitBreaker).
+ * Повтор имеет смысл не раньше, чем узел восстановится
+ */
+public class RedisUnavailableException extends RedisOperationException {
+
+    private static final long serialVersionUID = 1L;
+
+    public RedisUnavailableException(String operation, String message, Throwable cause) {
+        super(operation, message, cause);
+    }
+}
@@ -0,0 +1,24 @@
+package exceptions;
+
+/**
+ * Оптимистичная транзакция services.IRedisService#watch не выполнена: ключи под WATCH менялись другим клиентом на каждой попытке.
+ * Бросается при configs.RedisConfig#isThrowOnFailure(), иначе watch возвращает false
+ */
+public class WatchConflictException extends RedisOperationException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int attempts;
+
+    public WatchConflictException(String operation, String message, int attempts) {
+        super(operation, message + ": watched keys changed on every attempt, attempts: " + attempts, null);
+        this.attempts = attempts;
+    }
+
+    /**
+     * Число выполненных попыток
+     */
+    public int getAttempts() {
+        return attempts;
+    }
+}
@@ -0,0 +1,50 @@
+package listeners;
+
+import interfaces.ActionTwoParams;
+
+/**
+ * Подписчик на pub sub канал, собранный из делегатов. Сообщения по паттерну передаются в тот же обработчик onMessage
+ */
+public class ActionSubscriber implements ISubscriber {
+
+    private final ActionTwoParams<String, String> onMessage;
+
+    private final ActionTwoParams<String, Integer> onSubscribe;
+
+    private final ActionTwoParams<String, Integer> onUnsubscribe;
+
+    /**
+     * @param onMessage - обработчик полученного сообщения
+     * @param onSubscribe - обработчик события(hook'а) подписки, может быть null
+     * @param onUnsubscribe - обработчик события(hook'а) отписки, может быть null
+     */
+    public ActionSubscriber(ActionTwoParams<String, String> onMessage, ActionTwoParams<String, Integer> onSubscribe, ActionTwoParams<String, Integer> onUnsubscribe) {
+        this.onMessage = onMessage;
+        this.onSubscribe = onSubscribe;
+        this.onUnsubscribe = onUnsubscribe;
+    }
+
+    public void onMessage(String channel, String message) {
+        if (onMessage != null) onMessage.call(channel, message);
+    }
+
+    public void onPMessage(String pattern, String channel, String message) {
+        if (onMessage != null) onMessage.call(channel, message);
+    }
+
+    public void onSubscribe(String channel, int subscribedChannels) {
+        if (onSubscribe != null) onSubscribe.call(channel, subscribedChannels);
+    }
+
+    public void onUnsubscribe(String channel, int subscribedChannels) {
+        if (onUnsubscribe != null) onUnsubscribe.call(channel, subscribedChannels);
+    }
+
+    public void onPUnsubscribe(String pattern, int subscribedChannels) {
+        if (onUnsubscribe != null) onUnsubscribe.call(pattern, subscribedChannels);
+    }
+
+    public void onPSubscribe(String pattern, int subscribedChannels) {
+        if (onSubscribe != null) onSubscribe.call(pattern, subscribedChannels);
+    }
+}
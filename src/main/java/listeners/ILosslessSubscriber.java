@@ -0,0 +1,9 @@
+package listeners;
+
+/**
+ * Подписчик, сообщения которого {@link PubSubDispatcher} не отбрасывает при переполнении очереди ни при какой {@link OverflowPolicy}:
+ * поток чтения ждёт места в очереди, как при {@link OverflowPolicy#BLOCK}. Нужен каналам, потеря сообщения которых
+ * незаметно нарушает согласованность, например инвалидации локального кэша
+ */
+public interface ILosslessSubscriber extends ISubscriber {
+}
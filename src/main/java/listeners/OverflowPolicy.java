@@ -0,0 +1,23 @@
+package listeners;
+
+/**
+ * Поведение {@link PubSubDispatcher} при переполнении очереди сообщений обработчиков.
+ * События подписки и отписки и сообщения {@link ILosslessSubscriber} не отбрасываются ни при какой политике
+ */
+public enum OverflowPolicy {
+
+    /**
+     * Поток чтения ждёт освобождения места, Redis копит сообщения в выходном буфере соединения
+     */
+    BLOCK,
+
+    /**
+     * Вытесняется самое старое сообщение очереди
+     */
+    DROP_OLDEST,
+
+    /**
+     * Отбрасывается новое сообщение
+     */
+    DROP_NEWEST
+}
@@ -0,0 +1,676 @@
+package listeners;
+
+import clients.EsiaJedis;
+import clients.EsiaJedisFactory;
+import configs.RedisConfig;
+import interfaces.Action;
+import interfaces.ActionOneParam;
+import interfaces.FuncOneParam;
+import interfaces.FuncTwoParams;
+import logging.RedisLogger;
+import redis.clients.jedis.BinaryJedisPubSub;
+import redis.clients.util.SafeEncoder;
+
+import java.io.Closeable;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Неблокирующий диспетчер pub/sub: одно выделенное соединение (вне пула) и поток чтения,
+ * каналы и паттерны добавляются и удаляются на лету без блокировки вызывающего потока.
+ * Сообщения передаются обработчикам {@link ISubscriber} через ограниченные очереди рабочих потоков:
+ * канал всегда обрабатывается одним и тем же потоком, поэтому порядок сообщений канала сохраняется,
+ * а медленный обработчик задерживает только каналы своего потока.
+ * При переполнении очереди действует {@link OverflowPolicy}, кроме событий подписки и отписки и сообщений {@link ILosslessSubscriber}:
+ * они не отбрасываются никогда.
+ * При обрыве соединения обработчики получают onUnsubscribe/onPUnsubscribe, после переподключения - onSubscribe/onPSubscribe
+ */
+public class PubSubDispatcher implements Closeable {
+
+    private static final long RECONNECT_DELAY_MILLIS = 1000;
+
+    private static final long POLL_MILLIS = 100;
+
+    private static final ISubscriber[] NONE = new ISubscriber[0];
+
+    private final Object _lock = new Object();
+
+    private final EsiaJedisFactory factory;
+
+    /**
+     * Преобразование сообщения из Redis в текст для обработчиков
+     */
+    private final FuncOneParam<byte[], String> decoder;
+
+    /**
+     * Десериализация сообщения из Redis в объект заданного типа для {@link TypedSubscriber}
+     */
+    private final FuncTwoParams<Class<?>, byte[], Object> typedDecoder;
+
+    private final OverflowPolicy overflow;
+
+    private final RedisLogger log;
+
+    /**
+     * Служебный канал, подписка на который держит соединение в режиме pub/sub пока нет ни одного канала
+     */
+    private final byte[] control = SafeEncoder.encode("__redis-service:dispatcher:" + UUID.randomUUID());
+
+    /**
+     * Обработчики по каналам и паттернам, массивы заменяются целиком под _lock и читаются без блокировки
+     */
+    private final Map<String, ISubscriber[]> channels = new ConcurrentHashMap<>();
+
+    private final Map<String, ISubscriber[]> patterns = new ConcurrentHashMap<>();
+
+    private final Lane[] lanes;
+
+    private final Thread reader;
+
+    /**
+     * Текущая подписка, не null пока соединение в режиме pub/sub, под _lock
+     */
+    private Subscription subscription;
+
+    private volatile boolean closed;
+
+    private final LongAdder received = new LongAdder();
+
+    private final LongAdder delivered = new LongAdder();
+
+    private final LongAdder dropped = new LongAdder();
+
+    private final LongAdder failed = new LongAdder();
+
+    /**
+     * @param config - конфигурация, используются параметры подключения и redis.pubsub.*
+     * @param decoder - преобразование сообщения из Redis в текст для обработчиков
+     * @param typedDecoder - десериализация сообщения из Redis в объект заданного типа
+     */
+    public PubSubDispatcher(RedisConfig config, FuncOneParam<byte[], String> decoder, FuncTwoParams<Class<?>, byte[], Object> typedDecoder) {
+        this(config.getHost(), config.getPort(), config, decoder, typedDecoder);
+    }
+
+    /**
+     * Создаёт диспетчер с соединением к заданному узлу, например к шарду
+     * @param host - адрес узла
+     * @param port - порт узла
+     * @param config - конфигурация, используются параметры подключения и redis.pubsub.*
+     * @param decoder - преобразование сообщения из Redis в текст для обработчиков
+     * @param typedDecoder - десериализация сообщения из Redis в объект заданного типа
+     */
+    public PubSubDispatcher(String host, int port, RedisConfig config, FuncOneParam<byte[], String> decoder, FuncTwoParams<Class<?>, byte[], Object> typedDecoder) {
+        this.factory = new EsiaJedisFactory(host, port, config);
+        this.decoder = decoder;
+        this.typedDecoder = typedDecoder;
+        this.overflow = config.getPubSubOverflow();
+        this.log = new RedisLogger(PubSubDispatcher.class, config.getLogPayloadLimit());
+        int workers = Math.max(1, config.getPubSubWorkers());
+        int capacity = Math.max(1, config.getPubSubQueueSize() / workers);
+        this.lanes = new Lane[workers];
+        for (int i = 0; i < workers; i++) {
+            lanes[i] = new Lane(capacity, i);
+        }
+        this.reader = new Thread(this::read, "redis-pubsub-reader");
+        this.reader.setDaemon(true);
+        this.reader.start();
+    }
+
+    //region Подписки
+
+    /**
+     * Подписать обработчик на каналы, не блокирует вызывающий поток
+     * @param listener - обработчик
+     * @param names - имена каналов
+     */
+    public void subscribe(ISubscriber listener, String... names) {
+        add(channels, listener, names, false);
+    }
+
+    /**
+     * Подписать обработчик на паттерны имён каналов, не блокирует вызывающий поток
+     * @param listener - обработчик
+     * @param names - паттерны имён каналов
+     */
+    public void psubscribe(ISubscriber listener, String... names) {
+        add(patterns, listener, names, true);
+    }
+
+    /**
+     * Отписать обработчик от каналов, канал без обработчиков отписывается в Redis
+     * @param listener - обработчик
+     * @param names - имена каналов
+     */
+    public void unsubscribe(ISubscriber listener, String... names) {
+        remove(channels, listener, names, false);
+    }
+
+    /**
+     * Отписать обработчик от паттернов, паттерн без обработчиков отписывается в Redis
+     * @param listener - обработчик
+     * @param names - паттерны имён каналов
+     */
+    public void punsubscribe(ISubscriber listener, String... names) {
+        remove(patterns, listener, names, true);
+    }
+
+    private void add(Map<String, ISubscriber[]> registry, ISubscriber listener, String[] names, boolean pattern) {
+        List<Map.Entry<String, Runnable>> events = new ArrayList<>();
+        synchronized (_lock) {
+            List<String> added = new ArrayList<>();
+            for (String name : names) {
+                ISubscriber[] current = registry.getOrDefault(name, NONE);
+                if (Arrays.asList(current).contains(listener)) continue;
+                ISubscriber[] updated = Arrays.copyOf(current, current.length + 1);
+                updated[current.length] = listener;
+                registry.put(name, updated);
+                if (current.length == 0) {
+                    added.add(name);
+                } else if (subscription != null) {
+                    // канал уже подписан в Redis, подтверждения не будет
+                    int count = channels.size() + patterns.size();
+                    events.add(new AbstractMap.SimpleEntry<>(name, () -> deliver(name, () -> {
+                        if (pattern) listener.onPSubscribe(name, count);
+                        else listener.onSubscribe(name, count);
+                    })));
+                }
+            }
+            if (subscription != null && !added.isEmpty()) {
+                subscription.send(added, pattern);
+            }
+        }
+        submit(events);
+    }
+
+    /**
+     * Отписать от каналов всех обработчиков, без имён - от всех каналов
+     * @param names - имена каналов
+     */
+    public void unsubscribeAll(String... names) {
+        remove(channels, null, names.length == 0 ? channels.keySet().toArray(new String[0]) : names, false);
+    }
+
+    /**
+     * Отписать от паттернов всех обработчиков, без имён - от всех паттернов
+     * @param names - паттерны имён каналов
+     */
+    public void punsubscribeAll(String... names) {
+        remove(patterns, null, names.length == 0 ? patterns.keySet().toArray(new String[0]) : names, true);
+    }
+
+    /**
+     * @param listener - обработчик, null - все обработчики
+     */
+    private void remove(Map<String, ISubscriber[]> registry, ISubscriber listener, String[] names, boolean pattern) {
+        List<Map.Entry<String, Runnable>> events = new ArrayList<>();
+        synchronized (_lock) {
+            List<String> removed = new ArrayList<>();
+            for (String name : names) {
+                ISubscriber[] current = registry.get(name);
+                if (current == null) continue;
+                List<ISubscriber> updated = new ArrayList<>(Arrays.asList(current));
+                if (listener == null) {
+                    updated.clear();
+                } else if (!updated.remove(listener)) {
+                    continue;
+                }
+                if (updated.isEmpty()) {
+                    registry.remove(name);
+                    removed.add(name);
+                } else {
+                    registry.put(name, updated.toArray(NONE));
+                }
+                int count = channels.size() + patterns.size();
+                ISubscriber[] targets = listener == null ? current : new ISubscriber[]{listener};
+                events.add(new AbstractMap.SimpleEntry<>(name, () -> deliverAll(name, targets, target -> {
+                    if (pattern) target.onPUnsubscribe(name, count);
+                    else target.onUnsubscribe(name, count);
+                })));
+            }
+            if (subscription != null && !removed.isEmpty()) {
+                subscription.cancel(removed, pattern);
+            }
+        }
+        submit(events);
+    }
+
+    /**
+     * Передаёт события подписки в очереди каналов без отбрасывания. Вызывается вне _lock: постановка в очередь может ждать
+     */
+    private void submit(List<Map.Entry<String, Runnable>> events) {
+        for (Map.Entry<String, Runnable> event : events) {
+            lane(event.getKey()).submit(event.getValue(), true);
+        }
+    }
+
+    //endregion
+
+    //region Чтение и доставка
+
+    /**
+     * Цикл потока чтения: подключение, подписка на служебный канал и все зарегистрированные каналы, переподключение при обрыве
+     */
+    private void read() {
+        while (!closed) {
+            EsiaJedis jedis = null;
+            Subscription current = new Subscription();
+            try {
+                jedis = factory.makeObject().getObject();
+                if (closed) break;
+                jedis.subscribe(current, control);
+            } catch (Exception sex) {
+                if (!closed) {
+                    log.fail("dispatcher", () -> "pub/sub connection lost", sex);
+                }
+            } finally {
+                lost(current);
+                if (jedis != null) {
+                    try {
+                        jedis.close();
+                    } catch (Exception ignored) {
+                    }
+                }
+            }
+            if (closed) break;
+            try {
+                Thread.sleep(RECONNECT_DELAY_MILLIS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+    }
+
+    /**
+     * Подписка закончилась или соединение потеряно: обработчики получают событие отписки
+     */
+    private void lost(Subscription current) {
+        List<Map.Entry<String, Runnable>> events = new ArrayList<>();
+        synchronized (_lock) {
+            if (subscription != current) return;
+            subscription = null;
+            for (Map.Entry<String, ISubscriber[]> entry : channels.entrySet()) {
+                String name = entry.getKey();
+                ISubscriber[] targets = entry.getValue();
+                events.add(new AbstractMap.SimpleEntry<>(name, () -> deliverAll(name, targets, listener -> listener.onUnsubscribe(name, 0))));
+            }
+            for (Map.Entry<String, ISubscriber[]> entry : patterns.entrySet()) {
+                String name = entry.getKey();
+                ISubscriber[] targets = entry.getValue();
+                events.add(new AbstractMap.SimpleEntry<>(name, () -> deliverAll(name, targets, listener -> listener.onPUnsubscribe(name, 0))));
+            }
+        }
+        submit(events);
+    }
+
+    /**
+     * Сообщение не отбрасывается, если его получает хотя бы один {@link ILosslessSubscriber}
+     */
+    private static boolean lossless(ISubscriber[] targets) {
+        for (ISubscriber target : targets) {
+            if (target instanceof ILosslessSubscriber) return true;
+        }
+        return false;
+    }
+
+    private Lane lane(String channel) {
+        return lanes[(channel.hashCode() & 0x7fffffff) % lanes.length];
+    }
+
+    private void deliverAll(String channel, ISubscriber[] targets, ActionOneParam<ISubscriber> event) {
+        for (ISubscriber listener : targets) {
+            deliver(channel, () -> event.call(listener));
+        }
+    }
+
+    private void deliver(String channel, Action event) {
+        try {
+            event.call();
+            delivered.increment();
+        } catch (Exception sex) {
+            failed.increment();
+            log.fail("dispatch", () -> "listener failed on channel: " + channel, sex);
+        }
+    }
+
+    /**
+     * Подписка на выделенном соединении, события передаются в очереди рабочих потоков
+     */
+    private final class Subscription extends BinaryJedisPubSub {
+
+        void send(List<String> names, boolean pattern) {
+            byte[][] raw = raw(names);
+            if (pattern) psubscribe(raw);
+            else subscribe(raw);
+        }
+
+        void cancel(List<String> names, boolean pattern) {
+            byte[][] raw = raw(names);
+            if (pattern) punsubscribe(raw);
+            else unsubscribe(raw);
+        }
+
+        private byte[][] raw(List<String> names) {
+            byte[][] result = new byte[names.size()][];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = SafeEncoder.encode(names.get(i));
+            }
+            return result;
+        }
+
+        @Override
+        public void onMessage(byte[] channel, byte[] message) {
+            received.increment();
+            String name = SafeEncoder.encode(channel);
+            ISubscriber[] targets = channels.get(name);
+            if (targets == null) return;
+            lane(name).submit(() -> {
+                Message decoded = new Message(message);
+                deliverAll(name, targets, listener -> {
+                    if (listener instanceof TypedSubscriber) {
+                        TypedSubscriber<?> typed = (TypedSubscriber<?>) listener;
+                        typed.accept(name, decoded.as(typed.getType()));
+                    } else {
+                        listener.onMessage(name, decoded.text());
+                    }
+                });
+            }, lossless(targets));
+        }
+
+        @Override
+        public void onPMessage(byte[] pattern, byte[] channel, byte[] message) {
+            received.increment();
+            String patternName = SafeEncoder.encode(pattern);
+            ISubscriber[] targets = patterns.get(patternName);
+            if (targets == null) return;
+            String name = SafeEncoder.encode(channel);
+            lane(name).submit(() -> {
+                Message decoded = new Message(message);
+                deliverAll(name, targets, listener -> {
+                    if (listener instanceof TypedSubscriber) {
+                        TypedSubscriber<?> typed = (TypedSubscriber<?>) listener;
+                        typed.accept(name, decoded.as(typed.getType()));
+                    } else {
+                        listener.onPMessage(patternName, name, decoded.text());
+                    }
+                });
+            }, lossless(targets));
+        }
+
+        @Override
+        public void onSubscribe(byte[] channel, int subscribedChannels) {
+            if (Arrays.equals(channel, control)) {
+                synchronized (_lock) {
+                    if (closed) {
+                        unsubscribe();
+                        return;
+                    }
+                    subscription = this;
+                    if (!channels.isEmpty()) send(new ArrayList<>(channels.keySet()), false);
+                    if (!patterns.isEmpty()) send(new ArrayList<>(patterns.keySet()), true);
+                }
+                return;
+            }
+            String name = SafeEncoder.encode(channel);
+            ISubscriber[] targets = channels.get(name);
+            if (targets == null) return;
+            lane(name).submit(() -> deliverAll(name, targets, listener -> listener.onSubscribe(name, subscribedChannels)), true);
+        }
+
+        @Override
+        public void onPSubscribe(byte[] pattern, int subscribedChannels) {
+            String name = SafeEncoder.encode(pattern);
+            ISubscriber[] targets = patterns.get(name);
+            if (targets == null) return;
+            lane(name).submit(() -> deliverAll(name, targets, listener -> listener.onPSubscribe(name, subscribedChannels)), true);
+        }
+    }
+
+    /**
+     * Сообщение одной доставки: текст и объекты каждого типа декодируются не более одного раза на всех обработчиков.
+     * Используется только рабочим потоком канала
+     */
+    private final class Message {
+
+        private final byte[] raw;
+
+        private String text;
+
+        private Class<?> type;
+
+        private Object object;
+
+        private Map<Class<?>, Object> others;
+
+        Message(byte[] raw) {
+            this.raw = raw;
+        }
+
+        String text() {
+            if (text == null) {
+                text = decoder.call(raw);
+            }
+            return text;
+        }
+
+        Object as(Class<?> requested) {
+            if (type == null) {
+                type = requested;
+                object = typedDecoder.call(requested, raw);
+                return object;
+            }
+            if (type == requested) {
+                return object;
+            }
+            if (others == null) {
+                others = new HashMap<>();
+            }
+            return others.computeIfAbsent(requested, key -> typedDecoder.call(key, raw));
+        }
+    }
+
+    /**
+     * Рабочий поток с ограниченной очередью событий
+     */
+    private final class Lane implements Runnable {
+
+        private final BlockingQueue<Runnable> queue;
+
+        private final Thread thread;
+
+        Lane(int capacity, int index) {
+            this.queue = new ArrayBlockingQueue<>(capacity);
+            this.thread = new Thread(this, "redis-pubsub-worker-" + index);
+            this.thread.setDaemon(true);
+            this.thread.start();
+        }
+
+        /**
+         * @param task - событие
+         * @param lossless - событие не отбрасывается при переполнении, а ждёт места в очереди.
+         *                 Из собственного рабочего потока (обработчик подписывается или отписывается) такое событие выполняется сразу:
+         *                 ожидание места в своей же очереди никогда бы не закончилось
+         */
+        void submit(Runnable task, boolean lossless) {
+            if (lossless) {
+                if (Thread.currentThread() == thread) {
+                    task.run();
+                } else {
+                    put(new Lossless(task));
+                }
+                return;
+            }
+            switch (overflow) {
+                case BLOCK:
+                    put(task);
+                    break;
+                case DROP_OLDEST:
+                    while (!queue.offer(task)) {
+                        if (!evictOldest()) {
+                            put(task);
+                            break;
+                        }
+                    }
+                    break;
+                case DROP_NEWEST:
+                    if (!queue.offer(task)) {
+                        dropped.increment();
+                    }
+                    break;
+            }
+        }
+
+        private void put(Runnable task) {
+            try {
+                queue.put(task);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                dropped.increment();
+            }
+        }
+
+        /**
+         * Вытесняет самое старое событие, которое можно отбросить
+         * @return false если в очереди только неотбрасываемые события
+         */
+        private boolean evictOldest() {
+            for (Iterator<Runnable> iterator = queue.iterator(); iterator.hasNext(); ) {
+                if (!(iterator.next() instanceof Lossless)) {
+                    iterator.remove();
+                    dropped.increment();
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        public void run() {
+            while (!closed || !queue.isEmpty()) {
+                try {
+                    Runnable task = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                    if (task != null) {
+                        task.run();
+                    }
+                } catch (InterruptedException ex) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Событие, которое не отбрасывается при переполнении очереди
+     */
+    private static final class Lossless implements Runnable {
+
+        private final Runnable task;
+
+        Lossless(Runnable task) {
+            this.task = task;
+        }
+
+        public void run() {
+            task.run();
+        }
+    }
+
+    //endregion
+
+    /**
+     * Отписывается от всех каналов и закрывает соединение, уже принятые сообщения доставляются
+     */
+    public void close() {
+        synchronized (_lock) {
+            if (closed) return;
+            closed = true;
+            if (subscription != null) {
+                subscription.unsubscribe();
+                subscription.punsubscribe();
+            }
+        }
+        reader.interrupt();
+    }
+
+    //region Метрики
+
+    /**
+     * Соединение подписки активно
+     */
+    public boolean isConnected() {
+        synchronized (_lock) {
+            return subscription != null;
+        }
+    }
+
+    /**
+     * Число сообщений, полученных из Redis
+     */
+    public long getReceived() {
+        return received.sum();
+    }
+
+    /**
+     * Число вызовов обработчиков, завершившихся успешно
+     */
+    public long getDelivered() {
+        return delivered.sum();
+    }
+
+    /**
+     * Число сообщений, отброшенных при переполнении очереди
+     */
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * Число вызовов обработчиков, завершившихся исключением
+     */
+    public long getFailed() {
+        return failed.sum();
+    }
+
+    /**
+     * Текущее число событий в очередях рабочих потоков
+     */
+    public int getQueueDepth() {
+        int depth = 0;
+        for (Lane lane : lanes) {
+            depth += lane.queue.size();
+        }
+        return depth;
+    }
+
+    /**
+     * Число каналов с обработчиками
+     */
+    public int getChannelCount() {
+        return channels.size();
+    }
+
+    /**
+     * Число паттернов с обработчиками
+     */
+    public int getPatternCount() {
+        return patterns.size();
+    }
+
+    //endregion
+
+    @Override
+    public String toString() {
+        return "pub/sub dispatcher channels: " + getChannelCount() + " patterns: " + getPatternCount()
+                + " queue: " + getQueueDepth() + " received: " + getReceived() + " dropped: " + getDropped();
+    }
+}
@@ -0,0 +1,60 @@
+package listeners;
+
+import interfaces.ActionTwoParams;
+
+/**
+ * Подписчик, получающий сообщения уже десериализованными в объект типа T.
+ * Сообщение декодируется кодеком сервиса один раз на доставку, и один и тот же объект передаётся всем
+ * типизированным подписчикам канала с тем же типом, поэтому изменять полученный объект нельзя.
+ * Парная отправка - {@link services.IRedisService#publish(String, Object)}.
+ * Декодирование выполняет {@link PubSubDispatcher}, строковые методы {@link ISubscriber} не используются
+ * @param <T> - тип объекта сообщения
+ */
+public class TypedSubscriber<T> implements ISubscriber {
+
+    private final Class<T> type;
+
+    private final ActionTwoParams<String, T> onMessage;
+
+    /**
+     * @param type - тип объекта сообщения
+     * @param onMessage - обработчик, получает имя канала и объект
+     */
+    public TypedSubscriber(Class<T> type, ActionTwoParams<String, T> onMessage) {
+        this.type = type;
+        this.onMessage = onMessage;
+    }
+
+    public Class<T> getType() {
+        return type;
+    }
+
+    /**
+     * Доставить десериализованное сообщение
+     * @param channel - канал
+     * @param message - объект сообщения, null не доставляется
+     */
+    void accept(String channel, Object message) {
+        if (message != null) {
+            onMessage.call(channel, type.cast(message));
+        }
+    }
+
+    public void onMessage(String channel, String message) {
+    }
+
+    public void onPMessage(String pattern, String channel, String message) {
+    }
+
+    public void onSubscribe(String channel, int subscribedChannels) {
+    }
+
+    public void onUnsubscribe(String channel, int subscribedChannels) {
+    }
+
+    public void onPUnsubscribe(String pattern, int subscribedChannels) {
+    }
+
+    public void onPSubscribe(String pattern, int subscribedChannels) {
+    }
+}
@@ -0,0 +1,106 @@
+package logging;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.ErrorManager;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+/**
+ * Асинхронный обработчик java.util.logging: записи складываются в кольцевой буфер фиксированного размера,
+ * а в обработчики целевого логгера (и его родителей) их передаёт отдельный фоновый поток.
+ * Вызывающий поток никогда не ждёт ввода-вывода: при переполнении буфера запись отбрасывается и учитывается в {@link #getDropped()}
+ */
+public class AsyncRingBufferHandler extends Handler {
+
+    private final ArrayBlockingQueue<LogRecord> buffer;
+
+    private final Logger target;
+
+    private final Thread worker;
+
+    private final AtomicLong dropped = new AtomicLong();
+
+    private volatile boolean closed = false;
+
+    /**
+     * @param target - логгер, цепочке обработчиков которого передаются записи
+     * @param capacity - размер кольцевого буфера
+     */
+    public AsyncRingBufferHandler(Logger target, int capacity) {
+        this.target = target;
+        this.buffer = new ArrayBlockingQueue<>(capacity);
+        this.worker = new Thread(this::drain, "redis-log-" + (target != null ? target.getName() : "root"));
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    @Override
+    public void publish(LogRecord record) {
+        if (closed || !isLoggable(record)) return;
+        if (!buffer.offer(record)) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    @Override
+    public void flush() {
+        LogRecord record;
+        while ((record = buffer.poll()) != null) {
+            dispatch(record);
+        }
+    }
+
+    @Override
+    public void close() throws SecurityException {
+        closed = true;
+        worker.interrupt();
+        flush();
+    }
+
+    /**
+     * Число отброшенных из-за переполнения буфера записей
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Число записей, ожидающих передачи в обработчики
+     */
+    public int getPending() {
+        return buffer.size();
+    }
+
+    private void drain() {
+        while (!closed) {
+            try {
+                LogRecord record = buffer.poll(1, TimeUnit.SECONDS);
+                if (record != null) {
+                    dispatch(record);
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void dispatch(LogRecord record) {
+        Logger logger = target;
+        while (logger != null) {
+            for (Handler handler : logger.getHandlers()) {
+                if (handler == this) continue;
+                try {
+                    handler.publish(record);
+                } catch (Exception ex) {
+                    reportError(null, ex, ErrorManager.WRITE_FAILURE);
+                }
+            }
+            if (!logger.getUseParentHandlers()) break;
+            logger = logger.getParent();
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package logging;
+
+import interfaces.Func;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Логгер операций Redis.
+ * Сообщения передаются делегатами {@link Func} и формируются только если соответствующий уровень включён,
+ * поэтому при выключенном логировании на горячем пути не строится ни одной строки.
+ * Успешные операции пишутся с уровнем {@link Level#FINE}, ошибки с уровнем {@link Level#WARNING}
+ */
+public class RedisLogger {
+
+    private static final Object _lock = new Object();
+
+    /**
+     * Асинхронные обработчики по имени логгера и число использующих их экземпляров, под блокировкой {@link #_lock}
+     */
+    private static final Map<String, AsyncRingBufferHandler> asyncHandlers = new HashMap<>();
+
+    private static final Map<String, Integer> asyncUsers = new HashMap<>();
+
+    private final Logger logger;
+
+    /**
+     * Экземпляр использует асинхронный обработчик, под блокировкой {@link #_lock}
+     */
+    private boolean async;
+
+    private final String sourceClass;
+
+    private final int payloadLimit;
+
+    /**
+     * @param type - класс, от имени которого пишется лог
+     * @param payloadLimit - максимальное число символов значения (json) попадающих в лог, 0 - значение не пишется
+     */
+    public RedisLogger(Class<?> type, int payloadLimit) {
+        this.logger = Logger.getLogger(type.getName());
+        this.sourceClass = type.getName();
+        this.payloadLimit = payloadLimit;
+    }
+
+    /**
+     * Перевести логгер на асинхронную запись через кольцевой буфер, см. {@link AsyncRingBufferHandler}.
+     * Логгер общий для всех экземпляров с тем же классом: обработчик ставится один раз первым экземпляром
+     * и снимается {@link #close()} последнего. Логгер, которому приложение уже выключило родительские обработчики, не меняется
+     * @param capacity - размер буфера
+     */
+    public void installAsync(int capacity) {
+        synchronized (_lock) {
+            if (async) return;
+            String name = logger.getName();
+            if (!asyncHandlers.containsKey(name)) {
+                if (!logger.getUseParentHandlers()) return;
+                AsyncRingBufferHandler handler = new AsyncRingBufferHandler(logger.getParent(), capacity);
+                logger.addHandler(handler);
+                logger.setUseParentHandlers(false);
+                asyncHandlers.put(name, handler);
+            }
+            asyncUsers.merge(name, 1, Integer::sum);
+            async = true;
+        }
+    }
+
+    /**
+     * Освободить асинхронный обработчик: последний экземпляр снимает его, дописывает буфер и возвращает логгеру
+     * родительские обработчики. Без {@link #installAsync(int)} ничего не делает
+     */
+    public void close() {
+        synchronized (_lock) {
+            if (!async) return;
+            async = false;
+            String name = logger.getName();
+            int users = asyncUsers.merge(name, -1, Integer::sum);
+            if (users > 0) return;
+            asyncUsers.remove(name);
+            AsyncRingBufferHandler handler = asyncHandlers.remove(name);
+            logger.removeHandler(handler);
+            logger.setUseParentHandlers(true);
+            handler.close();
+        }
+    }
+
+    /**
+     * Включено ли логирование успешных операций
+     */
+    public boolean isSuccessEnabled() {
+        return logger.isLoggable(Level.FINE);
+    }
+
+    /**
+     * Залогировать успешную операцию
+     * @param operation - имя операции (метода)
+     * @param message - делегат формирующий сообщение, вызывается только если уровень включён
+     */
+    public void success(String operation, Func<String> message) {
+        if (logger.isLoggable(Level.FINE)) {
+            logger.logp(Level.FINE, sourceClass, operation, "Redis operation: success: " + message.call());
+        }
+    }
+
+    /**
+     * Залогировать успешную операцию с числовым результатом
+     * @param operation - имя операции (метода)
+     * @param message - делегат формирующий сообщение, вызывается только если уровень включён
+     * @param result - результат операции
+     */
+    public void success(String operation, Func<String> message, long result) {
+        if (logger.isLoggable(Level.FINE)) {
+            logger.logp(Level.FINE, sourceClass, operation, "Redis operation: result: " + result + " " + message.call());
+        }
+    }
+
+    /**
+     * Залогировать успешную операцию с логическим результатом
+     * @param operation - имя операции (метода)
+     * @param message - делегат формирующий сообщение, вызывается только если уровень включён
+     * @param result - результат операции
+     */
+    public void success(String operation, Func<String> message, boolean result) {
+        if (logger.isLoggable(Level.FINE)) {
+            logger.logp(Level.FINE, sourceClass, operation, "Redis operation: result: " + result + " " + message.call());
+        }
+    }
+
+    /**
+     * Залогировать успешную операцию с кодом ответа Redis
+     * @param operation - имя операции (метода)
+     * @param message - делегат формирующий сообщение, вызывается только если уровень включён
+     * @param code - код ответа, например OK
+     */
+    public void success(String operation, Func<String> message, String code) {
+        if (logger.isLoggable(Level.FINE)) {
+            logger.logp(Level.FINE, sourceClass, operation, "Redis operation: code: " + code + " " + message.call());
+        }
+    }
+
+    /**
+     * Залогировать успешную операцию с полученным значением, значение сокращается см. {@link #payload(String)}
+     * @param operation - имя операции (метода)
+     * @param message - делегат формирующий сообщение, вызывается только если уровень включён
+     * @param value - полученное значение
+     */
+    public void successWithPayload(String operation, Func<String> message, String value) {
+        if (logger.isLoggable(Level.FINE)) {
+            logger.logp(Level.FINE, sourceClass, operation, "Redis operation: success: " + message.call() + " json: " + payload(value));
+        }
+    }
+
+    /**
+     * Залогировать успешную операцию с полученным значением, значение сокращается см. {@link #payload(byte[])}
+     * @param operation - имя операции (метода)
+     * @param message - делегат формирующий сообщение, вызывается только если уровень включён
+     * @param value - полученное значение
+     */
+    public void successWithPayload(String operation, Func<String> message, byte[] value) {
+        if (logger.isLoggable(Level.FINE)) {
+            logger.logp(Level.FINE, sourceClass, operation, "Redis operation: success: " + message.call() + " value: " + payload(value));
+        }
+    }
+
+    /**
+     * Залогировать ошибку операции
+     * @param operation - имя операции (метода)
+     * @param message - делегат формирующий сообщение, вызывается только если уровень включён
+     * @param ex - исключение
+     */
+    public void fail(String operation, Func<String> message, Exception ex) {
+        if (logger.isLoggable(Level.WARNING)) {
+            logger.logp(Level.WARNING, sourceClass, operation, "Failed Redis operation: " + message.call() + " ex: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Залогировать ошибку операции
+     * @param operation - имя операции (метода)
+     * @param message - делегат формирующий сообщение, вызывается только если уровень включён
+     */
+    public void fail(String operation, Func<String> message) {
+        if (logger.isLoggable(Level.WARNING)) {
+            logger.logp(Level.WARNING, sourceClass, operation, "Failed Redis operation: " + message.call());
+        }
+    }
+
+    /**
+     * Сокращает значение для лога: не длиннее payloadLimit символов, с длиной и хэшем полного значения
+     * @param value - значение, например json
+     * @return строка для лога
+     */
+    public String payload(String value) {
+        if (value == null) return "null";
+        int length = value.length();
+        if (length <= payloadLimit) return value;
+        return value.substring(0, payloadLimit) + "...(" + length + " chars, hash: " + Integer.toHexString(value.hashCode()) + ")";
+    }
+
+    /**
+     * Сокращает бинарное значение для лога: текст UTF-8 - не больше payloadLimit байт, с длиной и хэшем полного значения;
+     * нетекстовое значение (сжатое, {@link codecs.BinaryCodec}) - только длина и хэш
+     * @param value - значение
+     * @return строка для лога
+     */
+    public String payload(byte[] value) {
+        if (value == null) return "null";
+        int length = Math.min(value.length, payloadLimit);
+        String head = text(value, length);
+        if (head == null) {
+            return "(binary " + value.length + " bytes, hash: " + Integer.toHexString(Arrays.hashCode(value)) + ")";
+        }
+        if (length == value.length) return head;
+        return head + "...(" + value.length + " bytes, hash: " + Integer.toHexString(Arrays.hashCode(value)) + ")";
+    }
+
+    /**
+     * Первые length байт значения как текст
+     * @return текст или null, если это не UTF-8 или в нём есть управляющие символы
+     */
+    private static String text(byte[] value, int length) {
+        CharBuffer chars = CharBuffer.allocate(length);
+        // обрезанный посередине последний символ ошибкой не считается
+        if (StandardCharsets.UTF_8.newDecoder().decode(ByteBuffer.wrap(value, 0, length), chars, length == value.length).isError()) {
+            return null;
+        }
+        chars.flip();
+        for (int i = 0; i < chars.length(); i++) {
+            char c = chars.charAt(i);
+            if (c < 0x20 && c != '\t' && c != '\n' && c != '\r') return null;
+        }
+        return chars.toString();
+    }
+}
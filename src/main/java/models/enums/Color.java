@@ -3,7 +3,7 @@ package models.enums;
 /**
  * Для примера перечисления которое правильно сериализуется/десериализуется в JSON
  */
-public enum Color {
+public enum Color implements IIntValued {
 
     Red(0), // сериализоваться должно в 0
     Blue(1), // в 1
@@ -12,6 +12,8 @@ public enum Color {
     White(8),
     Black(16);
 
+    private static final IntEnumLookup<Color> lookup = new IntEnumLookup<>(values());
+
     private final int value;
     public int getValue() {
         return value;
@@ -20,15 +22,7 @@ public enum Color {
 
     public static Color findByAbbr(int value)
     {
-        for (Color currEnum : Color.values())
-        {
-            if (currEnum.value == value)
-            {
-                return currEnum;
-            }
-        }
-
-        return null;
+        return lookup.find(value);
     }
 
     private Color(int value) {
@@ -6,7 +6,9 @@ import java.lang.reflect.Type;
 
 /**
  * Реализация кастомного сериализатора для конкретного перечисления
+ * @deprecated создаёт JsonElement на каждое значение, используйте {@link IntEnumTypeAdapterFactory}
  */
+@Deprecated
 public class ColorSerializer implements JsonSerializer<Color>, JsonDeserializer<Color> {
 
     public JsonElement serialize(Color color, Type type, JsonSerializationContext jsonSerializationContext) {
@@ -0,0 +1,12 @@
+package models.enums;
+
+/**
+ * Перечисление, которое сериализуется в JSON числом {@link #getValue()}, см. {@link IntEnumTypeAdapterFactory}
+ */
+public interface IIntValued {
+
+    /**
+     * Числовое значение элемента перечисления, уникально в пределах перечисления
+     */
+    int getValue();
+}
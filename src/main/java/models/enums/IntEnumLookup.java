@@ -0,0 +1,69 @@
+package models.enums;
+
+import java.lang.reflect.Array;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Поиск элемента перечисления {@link IIntValued} по числовому значению за O(1), без копирования values() на каждый вызов.
+ * При небольшом разбросе значений - массив по значению, иначе - хэш-таблица
+ * @param <E> - тип перечисления
+ */
+public final class IntEnumLookup<E extends Enum<E> & IIntValued> {
+
+    /**
+     * Максимальный размер массива по значению
+     */
+    private static final int MAX_TABLE = 1024;
+
+    private final E[] table;
+
+    private final int offset;
+
+    private final Map<Integer, E> map;
+
+    /**
+     * @param constants - элементы перечисления, E.values()
+     * @throws IllegalArgumentException если значения элементов повторяются
+     */
+    @SuppressWarnings("unchecked")
+    public IntEnumLookup(E[] constants) {
+        int min = 0;
+        int max = -1;
+        for (int i = 0; i < constants.length; i++) {
+            int value = constants[i].getValue();
+            if (i == 0 || value < min) min = value;
+            if (i == 0 || value > max) max = value;
+        }
+        Map<Integer, E> byValue = new HashMap<>(constants.length * 4 / 3 + 1);
+        for (E constant : constants) {
+            E previous = byValue.put(constant.getValue(), constant);
+            if (previous != null) {
+                throw new IllegalArgumentException("Duplicate value " + constant.getValue() + " of " + previous + " and " + constant);
+            }
+        }
+        if ((long) max - min < MAX_TABLE) {
+            this.offset = min;
+            this.table = (E[]) Array.newInstance(constants.getClass().getComponentType(), max - min + 1);
+            for (E constant : constants) {
+                table[constant.getValue() - min] = constant;
+            }
+            this.map = null;
+        } else {
+            this.offset = 0;
+            this.table = null;
+            this.map = byValue;
+        }
+    }
+
+    /**
+     * Элемент по значению
+     * @param value - числовое значение
+     * @return элемент перечисления, null если элемента с таким значением нет
+     */
+    public E find(int value) {
+        if (table == null) return map.get(value);
+        int index = value - offset;
+        return index >= 0 && index < table.length ? table[index] : null;
+    }
+}
@@ -0,0 +1,60 @@
+package models.enums;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+
+/**
+ * Потоковая (без промежуточных JsonElement) сериализация перечислений {@link IIntValued} в число {@link IIntValued#getValue()}.
+ * Подходит для всех таких перечислений, отдельный сериализатор на каждое перечисление не нужен.
+ * Неизвестное значение при чтении даёт null
+ */
+public class IntEnumTypeAdapterFactory implements TypeAdapterFactory {
+
+    @Override
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+        Class<? super T> rawType = type.getRawType();
+        if (!Enum.class.isAssignableFrom(rawType) || rawType == Enum.class || !IIntValued.class.isAssignableFrom(rawType)) {
+            return null;
+        }
+        // элемент с телом - анонимный подкласс перечисления
+        if (!rawType.isEnum()) {
+            rawType = rawType.getSuperclass();
+        }
+        return (TypeAdapter<T>) new IntEnumTypeAdapter(new IntEnumLookup((Enum[]) rawType.getEnumConstants()));
+    }
+
+    private static final class IntEnumTypeAdapter<E extends Enum<E> & IIntValued> extends TypeAdapter<E> {
+
+        private final IntEnumLookup<E> lookup;
+
+        IntEnumTypeAdapter(IntEnumLookup<E> lookup) {
+            this.lookup = lookup;
+        }
+
+        @Override
+        public void write(JsonWriter out, E value) throws IOException {
+            if (value == null) {
+                out.nullValue();
+            } else {
+                out.value(value.getValue());
+            }
+        }
+
+        @Override
+        public E read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            return lookup.find(in.nextInt());
+        }
+    }
+}
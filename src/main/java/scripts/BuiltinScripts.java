@@ -0,0 +1,67 @@
+package scripts;
+
+/**
+ * Встроенные скрипты составных операций, каждая выполняется на сервере за один шаг
+ */
+public final class BuiltinScripts {
+
+    private BuiltinScripts() {
+    }
+
+    /**
+     * Получить значение и продлить время жизни ключа.
+     * KEYS[1] - ключ, ARGV[1] - время жизни в секундах. Возвращает значение или nil
+     */
+    public static final RedisScript GET_AND_TOUCH = new RedisScript("getAndTouch",
+            "local value = redis.call('GET', KEYS[1])\n" +
+            "if value then\n" +
+            "  redis.call('EXPIRE', KEYS[1], ARGV[1])\n" +
+            "end\n" +
+            "return value");
+
+    /**
+     * Записать значение, если текущее значение равно ожидаемому.
+     * KEYS[1] - ключ, ARGV[1] - '1' если ожидаемое значение задано, '0' если ключа не должно быть,
+     * ARGV[2] - ожидаемое значение, ARGV[3] - новое значение, ARGV[4] - время жизни в секундах, 0 - без ограничения.
+     * Возвращает 1 если значение записано, иначе 0
+     */
+    public static final RedisScript COMPARE_AND_SET = new RedisScript("compareAndSet",
+            "local current = redis.call('GET', KEYS[1])\n" +
+            "if ARGV[1] == '1' then\n" +
+            "  if current ~= ARGV[2] then return 0 end\n" +
+            "elseif current then\n" +
+            "  return 0\n" +
+            "end\n" +
+            "if tonumber(ARGV[4]) > 0 then\n" +
+            "  redis.call('SETEX', KEYS[1], ARGV[4], ARGV[3])\n" +
+            "else\n" +
+            "  redis.call('SET', KEYS[1], ARGV[3])\n" +
+            "end\n" +
+            "return 1");
+
+    /**
+     * Удалить ключ, если его значение равно ожидаемому.
+     * KEYS[1] - ключ, ARGV[1] - ожидаемое значение. Возвращает число удалённых ключей
+     */
+    public static final RedisScript DELETE_IF_EQUALS = new RedisScript("deleteIfEquals",
+            "if redis.call('GET', KEYS[1]) == ARGV[1] then\n" +
+            "  return redis.call('DEL', KEYS[1])\n" +
+            "end\n" +
+            "return 0");
+
+    /**
+     * Подтвердить обработанное значение и взять следующее: удалить значение из списка обработки (LREM)
+     * и перенести следующее значение из конца очереди в список обработки (RPOPLPUSH).
+     * KEYS[1] - список обработки, KEYS[2] - очередь, ARGV[1] - подтверждаемое значение. Возвращает следующее значение или nil
+     */
+    public static final RedisScript ACK_AND_POP = new RedisScript("ackAndPop",
+            "redis.call('LREM', KEYS[1], 1, ARGV[1])\n" +
+            "return redis.call('RPOPLPUSH', KEYS[2], KEYS[1])");
+
+    /**
+     * Все встроенные скрипты
+     */
+    public static RedisScript[] all() {
+        return new RedisScript[]{GET_AND_TOUCH, COMPARE_AND_SET, DELETE_IF_EQUALS, ACK_AND_POP};
+    }
+}
@@ -0,0 +1,79 @@
+package scripts;
+
+import redis.clients.util.SafeEncoder;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Lua скрипт Redis. SHA1 тела считается на клиенте так же, как в Redis, поэтому EVALSHA не требует ответа SCRIPT LOAD
+ * https://redis.io/commands/eval
+ */
+public class RedisScript {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final String name;
+
+    private final String source;
+
+    private final byte[] rawSource;
+
+    private final String sha;
+
+    private final byte[] rawSha;
+
+    /**
+     * @param name - имя скрипта в реестре и логах
+     * @param source - тело скрипта на Lua, ключи в KEYS, аргументы в ARGV
+     */
+    public RedisScript(String name, String source) {
+        this.name = name;
+        this.source = source;
+        this.rawSource = SafeEncoder.encode(source);
+        this.sha = sha1(rawSource);
+        this.rawSha = SafeEncoder.encode(sha);
+    }
+
+    private static String sha1(byte[] source) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(source);
+            char[] result = new char[digest.length * 2];
+            for (int i = 0; i < digest.length; i++) {
+                result[i * 2] = HEX[(digest[i] >> 4) & 0xF];
+                result[i * 2 + 1] = HEX[digest[i] & 0xF];
+            }
+            return new String(result);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-1 is not available", ex);
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    public byte[] getRawSource() {
+        return rawSource;
+    }
+
+    /**
+     * SHA1 тела скрипта в hex, как его возвращает SCRIPT LOAD
+     */
+    public String getSha() {
+        return sha;
+    }
+
+    public byte[] getRawSha() {
+        return rawSha;
+    }
+
+    @Override
+    public String toString() {
+        return "script: " + name + " sha: " + sha;
+    }
+}
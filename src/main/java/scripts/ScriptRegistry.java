@@ -0,0 +1,107 @@
+package scripts;
+
+import redis.clients.jedis.BinaryJedis;
+import redis.clients.jedis.exceptions.JedisNoScriptException;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Реестр Lua скриптов сервиса. Скрипты загружаются в Redis через SCRIPT LOAD при старте ({@link #load(BinaryJedis)})
+ * и выполняются через EVALSHA, то есть без передачи тела. Если сервер скрипта не знает (перезапуск, SCRIPT FLUSH, другой узел),
+ * ответ NOSCRIPT повторяется одним EVAL, который заодно кэширует скрипт на сервере
+ */
+public class ScriptRegistry {
+
+    private final Map<String, RedisScript> scripts = new ConcurrentHashMap<>();
+
+    private final LongAdder evaluations = new LongAdder();
+
+    private final LongAdder fallbacks = new LongAdder();
+
+    public ScriptRegistry() {
+        for (RedisScript script : BuiltinScripts.all()) {
+            register(script);
+        }
+    }
+
+    /**
+     * Зарегистрировать скрипт, в Redis он будет загружен при следующем {@link #load(BinaryJedis)} или первом выполнении
+     * @param script - скрипт
+     * @throws IllegalArgumentException если под этим именем зарегистрирован другой скрипт
+     */
+    public void register(RedisScript script) {
+        RedisScript current = scripts.putIfAbsent(script.getName(), script);
+        if (current != null && !current.getSha().equals(script.getSha())) {
+            throw new IllegalArgumentException("Another redis script registered with name: " + script.getName());
+        }
+    }
+
+    /**
+     * Скрипт по имени или null
+     */
+    public RedisScript get(String name) {
+        return scripts.get(name);
+    }
+
+    /**
+     * Все зарегистрированные скрипты
+     */
+    public Collection<RedisScript> getAll() {
+        return new ArrayList<>(scripts.values());
+    }
+
+    /**
+     * Загрузить все зарегистрированные скрипты в Redis (SCRIPT LOAD)
+     * @param jedis - соединение
+     * @return число загруженных скриптов
+     */
+    public int load(BinaryJedis jedis) {
+        List<RedisScript> all = new ArrayList<>(scripts.values());
+        for (RedisScript script : all) {
+            jedis.scriptLoad(script.getRawSource());
+        }
+        return all.size();
+    }
+
+    /**
+     * Выполнить скрипт через EVALSHA, при NOSCRIPT - через EVAL
+     * @param jedis - соединение
+     * @param script - скрипт
+     * @param keys - ключи (KEYS)
+     * @param args - аргументы (ARGV)
+     * @return ответ скрипта: Long, byte[], List или null
+     */
+    public Object eval(BinaryJedis jedis, RedisScript script, List<byte[]> keys, List<byte[]> args) {
+        evaluations.increment();
+        try {
+            return jedis.evalsha(script.getRawSha(), keys, args);
+        } catch (JedisNoScriptException ex) {
+            fallbacks.increment();
+            return jedis.eval(script.getRawSource(), keys, args);
+        }
+    }
+
+    /**
+     * Число выполнений скриптов
+     */
+    public long getEvaluations() {
+        return evaluations.sum();
+    }
+
+    /**
+     * Число выполнений, которым потребовался EVAL после NOSCRIPT
+     */
+    public long getFallbacks() {
+        return fallbacks.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "scripts: " + scripts.keySet() + " evaluations: " + getEvaluations() + " fallbacks: " + getFallbacks();
+    }
+}
@@ -0,0 +1,271 @@
+package services;
+
+
+import configs.RedisConfig;
+import interfaces.Action;
+import interfaces.ActionOneParam;
+import interfaces.Func;
+
+import java.io.Closeable;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Реализация {@link IAsyncRedisService} поверх синхронного {@link IRedisService}: операции выполняются на ограниченном пуле потоков.
+ * Число потоков по умолчанию равно размеру пула соединений, так что потоки не ждут соединений друг за другом,
+ * а очередь ожидающих операций ограничена: при её переполнении future завершается {@link RejectedExecutionException}
+ */
+public class AsyncRedisService implements IAsyncRedisService, Closeable {
+
+    private final IRedisService service;
+
+    private final ExecutorService executor;
+
+    /**
+     * Пул потоков создан сервисом и закрывается вместе с ним
+     */
+    private final boolean ownExecutor;
+
+    /**
+     * @param service - синхронный сервис, выполняющий операции
+     * @param config - конфигурация, используются redis.async.threads, redis.async.queueSize и redis.pool.maxTotal
+     */
+    public AsyncRedisService(IRedisService service, RedisConfig config) {
+        this(service, createExecutor(config), true);
+    }
+
+    /**
+     * @param service - синхронный сервис, выполняющий операции
+     * @param executor - внешний пул потоков, не закрывается сервисом
+     */
+    public AsyncRedisService(IRedisService service, ExecutorService executor) {
+        this(service, executor, false);
+    }
+
+    private AsyncRedisService(IRedisService service, ExecutorService executor, boolean ownExecutor) {
+        this.service = service;
+        this.executor = executor;
+        this.ownExecutor = ownExecutor;
+    }
+
+    /**
+     * Создаёт ограниченный пул потоков-демонов по конфигурации
+     */
+    public static ExecutorService createExecutor(RedisConfig config) {
+        int threads = config.getAsyncThreads() > 0 ? config.getAsyncThreads() : config.getMaxTotal();
+        AtomicInteger counter = new AtomicInteger();
+        return new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(config.getAsyncQueueSize()),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "redis-async-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * Синхронный сервис, выполняющий операции
+     */
+    public IRedisService getService() {
+        return service;
+    }
+
+    /**
+     * Останавливает собственный пул потоков, уже принятые операции выполняются. Синхронный сервис не закрывается
+     */
+    public void close() {
+        if (ownExecutor) {
+            executor.shutdown();
+        }
+    }
+
+    private <TResult> CompletableFuture<TResult> supply(Func<TResult> operation) {
+        try {
+            return CompletableFuture.supplyAsync(operation::call, executor);
+        } catch (RejectedExecutionException ex) {
+            CompletableFuture<TResult> result = new CompletableFuture<>();
+            result.completeExceptionally(ex);
+            return result;
+        }
+    }
+
+    private CompletableFuture<Void> run(Action operation) {
+        return supply(() -> {
+            operation.call();
+            return null;
+        });
+    }
+
+    //region Базовые операции
+
+    public <T, TKey> CompletableFuture<Void> put(TKey key, T object) {
+        return run(() -> service.put(key, object));
+    }
+
+    public <T, TKey> CompletableFuture<Void> put(TKey key, T object, long expire) {
+        return run(() -> service.put(key, object, expire));
+    }
+
+    public <T, TKey> CompletableFuture<Void> putAll(Map<TKey, T> objects) {
+        return run(() -> service.putAll(objects));
+    }
+
+    public <T, TKey> CompletableFuture<Void> putAll(Map<TKey, T> objects, long expire) {
+        return run(() -> service.putAll(objects, expire));
+    }
+
+    public <TKey> CompletableFuture<Boolean> expire(TKey key, int expire) {
+        return supply(() -> service.expire(key, expire));
+    }
+
+    public <TKey> CompletableFuture<Boolean> expireAt(TKey key, long unixTime) {
+        return supply(() -> service.expireAt(key, unixTime));
+    }
+
+    public <TKey> CompletableFuture<Long> ttl(TKey key) {
+        return supply(() -> service.ttl(key));
+    }
+
+    public <TKey> CompletableFuture<Boolean> exist(TKey key) {
+        return supply(() -> service.exist(key));
+    }
+
+    public <TKey> CompletableFuture<Long> exists(Collection<TKey> keys) {
+        return supply(() -> service.exists(keys.toArray()));
+    }
+
+    public <T, TKey> CompletableFuture<T> get(Class<T> objectType, TKey key) {
+        return supply(() -> service.get(objectType, key));
+    }
+
+    public <T, TKey> CompletableFuture<Map<TKey, T>> getAll(Class<T> objectType, Collection<TKey> keys) {
+        return supply(() -> service.getAll(objectType, keys));
+    }
+
+    public <TKey> CompletableFuture<Long> delete(TKey key) {
+        return supply(() -> service.delete(key));
+    }
+
+    public <TKey> CompletableFuture<Long> delete(Collection<TKey> keys) {
+        return supply(() -> service.delete(keys.toArray()));
+    }
+
+    //endregion
+
+    //region Хранение по полям (hash)
+
+    public <T, TKey> CompletableFuture<Void> putFields(TKey key, T object, String... fields) {
+        return run(() -> service.putFields(key, object, fields));
+    }
+
+    public <T, TKey> CompletableFuture<T> getFields(Class<T> objectType, TKey key, String... fields) {
+        return supply(() -> service.getFields(objectType, key, fields));
+    }
+
+    public <T, TKey> CompletableFuture<Void> updateField(Class<T> objectType, TKey key, String field, Object value) {
+        return run(() -> service.updateField(objectType, key, field, value));
+    }
+
+    //endregion
+
+    //region Очереди
+
+    public CompletableFuture<Long> queueSize(String queue) {
+        return supply(() -> service.queueSize(queue));
+    }
+
+    public <T> CompletableFuture<Long> queueLeftPush(String queue, T object) {
+        return supply(() -> service.queueLeftPush(queue, object));
+    }
+
+    public <T> CompletableFuture<Long> queueRightPush(String queue, T object) {
+        return supply(() -> service.queueRightPush(queue, object));
+    }
+
+    public <T> CompletableFuture<Long> queueLeftPushAll(String queue, Collection<T> objects) {
+        return supply(() -> service.queueLeftPushAll(queue, objects));
+    }
+
+    public <T> CompletableFuture<Long> queueRightPushAll(String queue, Collection<T> objects) {
+        return supply(() -> service.queueRightPushAll(queue, objects));
+    }
+
+    public <T> CompletableFuture<T> dequeueAndPush(Class<T> objectType, String queue, String to) {
+        return supply(() -> service.dequeueAndPush(objectType, queue, to));
+    }
+
+    public <T> CompletableFuture<T> dequeueAndPush(Class<T> objectType, String queue, String to, int timeout) {
+        return supply(() -> service.dequeueAndPush(objectType, queue, to, timeout));
+    }
+
+    public <T> CompletableFuture<List<T>> dequeueBatch(Class<T> objectType, String queue, int max) {
+        return supply(() -> service.dequeueBatch(objectType, queue, max));
+    }
+
+    public <T> CompletableFuture<List<T>> dequeueBatchAndPush(Class<T> objectType, String queue, String to, int max) {
+        return supply(() -> service.dequeueBatchAndPush(objectType, queue, to, max));
+    }
+
+    public <T> CompletableFuture<Long> removeFromQueue(String queue, int count, T object) {
+        return supply(() -> service.removeFromQueue(queue, count, object));
+    }
+
+    public CompletableFuture<Void> trimQueue(String queue, long start, long stop) {
+        return run(() -> service.trimQueue(queue, start, stop));
+    }
+
+    //endregion
+
+    //region Транзакции
+
+    public CompletableFuture<Boolean> transaction(ActionOneParam<RedisTransaction> body) {
+        return supply(() -> service.transaction(body));
+    }
+
+    public <TKey> CompletableFuture<Boolean> watch(Collection<TKey> keys, int retries, ActionOneParam<RedisTransaction> body) {
+        return supply(() -> service.watch(keys, retries, body));
+    }
+
+    //endregion
+
+    //region Скрипты
+
+    public <T, TKey> CompletableFuture<T> getAndTouch(Class<T> objectType, TKey key, int expire) {
+        return supply(() -> service.getAndTouch(objectType, key, expire));
+    }
+
+    public <T, TKey> CompletableFuture<Boolean> compareAndSet(TKey key, T expected, T object, long expire) {
+        return supply(() -> service.compareAndSet(key, expected, object, expire));
+    }
+
+    public <T, TKey> CompletableFuture<Boolean> deleteIfEquals(TKey key, T expected) {
+        return supply(() -> service.deleteIfEquals(key, expected));
+    }
+
+    public <T> CompletableFuture<T> ackAndDequeue(Class<T> objectType, String queue, String to, T acked) {
+        return supply(() -> service.ackAndDequeue(objectType, queue, to, acked));
+    }
+
+    //endregion
+
+    //region PUB/SUB
+
+    public CompletableFuture<Long> publish(String channel, String message) {
+        return supply(() -> service.publish(channel, message));
+    }
+
+    public <T> CompletableFuture<Long> publish(String channel, T message) {
+        return supply(() -> service.publish(channel, message));
+    }
+
+    //endregion
+}
@@ -0,0 +1,295 @@
+package services;
+
+import interfaces.ActionOneParam;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Асинхронный вариант {@link IRedisService}: каждая операция возвращает {@link CompletableFuture} и не блокирует вызывающий поток,
+ * поэтому независимые запросы можно запускать параллельно и дожидаться их вместе через {@link CompletableFuture#allOf(CompletableFuture[])}.
+ * Результаты и значения по умолчанию при ошибках те же, что у синхронных методов {@link IRedisService}.
+ * Подписки pub/sub не блокируют вызывающий поток и остаются в {@link IRedisService}: сообщения доставляются
+ * через диспетчер сервиса, см. listeners.PubSubDispatcher
+ */
+public interface IAsyncRedisService {
+
+    //region Базовые операции
+
+    /**
+     * Сохранить объект в Redis, см. {@link IRedisService#put(Object, Object)}
+     * @param key - идентификатор
+     * @param object - объект
+     */
+    <T, TKey> CompletableFuture<Void> put(TKey key, T object);
+
+    /**
+     * Сохранить объект в Redis на заданное время TTL(time to life), см. {@link IRedisService#put(Object, Object, long)}
+     * @param key - идентификатор
+     * @param object - объект
+     * @param expire - TTL время в секундах через которое объект будет уничтожен
+     */
+    <T, TKey> CompletableFuture<Void> put(TKey key, T object, long expire);
+
+    /**
+     * Сохранить набор объектов в Redis за один запрос, см. {@link IRedisService#putAll(Map)}
+     * @param objects - объекты по идентификаторам
+     */
+    <T, TKey> CompletableFuture<Void> putAll(Map<TKey, T> objects);
+
+    /**
+     * Сохранить набор объектов в Redis на заданное время TTL(time to life), см. {@link IRedisService#putAll(Map, long)}
+     * @param objects - объекты по идентификаторам
+     * @param expire - TTL время в секундах через которое объекты будут уничтожены
+     */
+    <T, TKey> CompletableFuture<Void> putAll(Map<TKey, T> objects, long expire);
+
+    /**
+     * Задать объекту по ключу время жизни, в секундах, см. {@link IRedisService#expire(Object, int)}
+     * @param key - идентификатор
+     * @param expire - TTL время в секундах через которое объект будет уничтожен
+     * @return true при успешном завершении, false если ключа не существует
+     */
+    <TKey> CompletableFuture<Boolean> expire(TKey key, int expire);
+
+    /**
+     * Задать объекту по ключу время жизни в виде unix time, см. {@link IRedisService#expireAt(Object, long)}
+     * @param key - идентификатор
+     * @param unixTime - TTL время в секундах c начала эпохи(с 1 января 1970) когда объект будет уничтожен
+     */
+    <TKey> CompletableFuture<Boolean> expireAt(TKey key, long unixTime);
+
+    /**
+     * Оставшееся TTL время жизни объекта в секундах, см. {@link IRedisService#ttl(Object)}
+     * @param key - идентификатор
+     */
+    <TKey> CompletableFuture<Long> ttl(TKey key);
+
+    /**
+     * Проверить существует ли ключ в Redis, см. {@link IRedisService#exist(Object)}
+     * @param key - идентификатор
+     */
+    <TKey> CompletableFuture<Boolean> exist(TKey key);
+
+    /**
+     * Число существующих ключей, см. {@link IRedisService#exists(Object[])}
+     * @param keys - коллекция идентификаторов
+     */
+    <TKey> CompletableFuture<Long> exists(Collection<TKey> keys);
+
+    /**
+     * Получить объект из Redis по идентификатору, см. {@link IRedisService#get(Class, Object)}
+     * @param objectType - тип объекта в который десериализуем, пример: Foo.class
+     * @param key - идентификатор
+     */
+    <T, TKey> CompletableFuture<T> get(Class<T> objectType, TKey key);
+
+    /**
+     * Получить набор объектов из Redis по идентификаторам за один запрос, см. {@link IRedisService#getAll(Class, Collection)}
+     * @param objectType - тип объекта в который десериализуем, пример: Foo.class
+     * @param keys - коллекция идентификаторов
+     */
+    <T, TKey> CompletableFuture<Map<TKey, T>> getAll(Class<T> objectType, Collection<TKey> keys);
+
+    /**
+     * Удалить объект из Redis, см. {@link IRedisService#delete(Object)}
+     * @param key - идентификатор
+     * @return число удалённых объектов
+     */
+    <TKey> CompletableFuture<Long> delete(TKey key);
+
+    /**
+     * Удалить объекты из Redis, см. {@link IRedisService#delete(Object[])}
+     * @param keys - коллекция идентификаторов
+     * @return число удалённых объектов
+     */
+    <TKey> CompletableFuture<Long> delete(Collection<TKey> keys);
+
+    //endregion
+
+    //region Хранение по полям (hash)
+
+    /**
+     * Сохранить объект по полям в hash Redis, см. {@link IRedisService#putFields(Object, Object, String...)}
+     * @param key - идентификатор
+     * @param object - объект
+     * @param fields - имена сохраняемых полей, пусто - все поля
+     */
+    <T, TKey> CompletableFuture<Void> putFields(TKey key, T object, String... fields);
+
+    /**
+     * Получить объект, читая только запрошенные поля, см. {@link IRedisService#getFields(Class, Object, String...)}
+     * @param objectType - тип объекта в который десериализуем, пример: Foo.class
+     * @param key - идентификатор
+     * @param fields - имена читаемых полей, пусто - все поля
+     */
+    <T, TKey> CompletableFuture<T> getFields(Class<T> objectType, TKey key, String... fields);
+
+    /**
+     * Изменить одно поле объекта, см. {@link IRedisService#updateField(Class, Object, String, Object)}
+     * @param objectType - тип объекта
+     * @param key - идентификатор
+     * @param field - имя поля
+     * @param value - новое значение, null - поле удаляется
+     */
+    <T, TKey> CompletableFuture<Void> updateField(Class<T> objectType, TKey key, String field, Object value);
+
+    //endregion
+
+    //region Очереди(списки)
+
+    /**
+     * Длина очереди, см. {@link IRedisService#queueSize(String)}
+     * @param queue - имя очереди
+     */
+    CompletableFuture<Long> queueSize(String queue);
+
+    /**
+     * Добавить объект в начало очереди, см. {@link IRedisService#queueLeftPush(String, Object)}
+     * @param queue - имя очереди
+     * @param object - объект
+     * @return Длина списка после добавления
+     */
+    <T> CompletableFuture<Long> queueLeftPush(String queue, T object);
+
+    /**
+     * Добавить объект в конец очереди, см. {@link IRedisService#queueRightPush(String, Object)}
+     * @param queue - имя очереди
+     * @param object - объект
+     * @return Длина списка после добавления
+     */
+    <T> CompletableFuture<Long> queueRightPush(String queue, T object);
+
+    /**
+     * Добавить объекты в начало очереди пакетом, см. {@link IRedisService#queueLeftPushAll(String, Collection)}
+     * @param queue - имя очереди
+     * @param objects - объекты
+     * @return Длина списка после добавления
+     */
+    <T> CompletableFuture<Long> queueLeftPushAll(String queue, Collection<T> objects);
+
+    /**
+     * Добавить объекты в конец очереди пакетом, см. {@link IRedisService#queueRightPushAll(String, Collection)}
+     * @param queue - имя очереди
+     * @param objects - объекты
+     * @return Длина списка после добавления
+     */
+    <T> CompletableFuture<Long> queueRightPushAll(String queue, Collection<T> objects);
+
+    /**
+     * Атомарно получить объект из конца очереди и добавить его в локальную очередь, см. {@link IRedisService#dequeueAndPush(Class, String, String)}
+     * @param queue - имя очереди из которой удаляется и возвращается объект
+     * @param to - имя локальной очередь в которую добавляется копия объекта
+     */
+    <T> CompletableFuture<T> dequeueAndPush(Class<T> objectType, String queue, String to);
+
+    /**
+     * Получить объект из очереди с ожиданием до таймаута, см. {@link IRedisService#dequeueAndPush(Class, String, String, int)}.
+     * Поток исполнителя занят на время ожидания
+     * @param queue - имя очереди из которой удаляется и возвращается объект
+     * @param to - имя локальной очередь в которую добавляется копия объекта
+     * @param timeout - время ожидания в секундах, 0 - без ограничения
+     */
+    <T> CompletableFuture<T> dequeueAndPush(Class<T> objectType, String queue, String to, int timeout);
+
+    /**
+     * Атомарно получить до max объектов из конца очереди, см. {@link IRedisService#dequeueBatch(Class, String, int)}
+     * @param queue - имя очереди
+     * @param max - максимальное число объектов
+     */
+    <T> CompletableFuture<List<T>> dequeueBatch(Class<T> objectType, String queue, int max);
+
+    /**
+     * Атомарно получить до max объектов из конца очереди и добавить их в локальную очередь, см. {@link IRedisService#dequeueBatchAndPush(Class, String, String, int)}
+     * @param queue - имя очереди из которой удаляются и возвращаются объекты
+     * @param to - имя локальной очереди в которую добавляются копии объектов
+     * @param max - максимальное число объектов
+     */
+    <T> CompletableFuture<List<T>> dequeueBatchAndPush(Class<T> objectType, String queue, String to, int max);
+
+    /**
+     * Удалить из очереди объекты равные заданному, см. {@link IRedisService#removeFromQueue(String, int, Object)}
+     * @param queue - имя очереди(списка) откуда удаляются объекты
+     * @param count - число удаляемых объектов
+     * @param object - объект равный которому необходимо удалять
+     * @return число удалённых из очереди
+     */
+    <T> CompletableFuture<Long> removeFromQueue(String queue, int count, T object);
+
+    /**
+     * Обрезка очереди, см. {@link IRedisService#trimQueue(String, long, long)}
+     * @param queue - имя очереди(списка)
+     * @param start
+     * @param stop
+     */
+    CompletableFuture<Void> trimQueue(String queue, long start, long stop);
+
+    //endregion
+
+    //region Транзакции
+
+    /**
+     * Выполнить команды одной транзакцией MULTI/EXEC, см. {@link IRedisService#transaction(ActionOneParam)}
+     * @param body - тело, добавляет команды в транзакцию
+     * @return true если транзакция выполнена
+     */
+    CompletableFuture<Boolean> transaction(ActionOneParam<RedisTransaction> body);
+
+    /**
+     * Оптимистичная транзакция с WATCH и повторами, см. {@link IRedisService#watch(Collection, int, ActionOneParam)}
+     * @param keys - идентификаторы, изменение которых отменяет транзакцию
+     * @param retries - число повторов после конфликта
+     * @param body - тело, читает значения и добавляет команды в транзакцию
+     * @return true если транзакция выполнена
+     */
+    <TKey> CompletableFuture<Boolean> watch(Collection<TKey> keys, int retries, ActionOneParam<RedisTransaction> body);
+
+    //endregion
+
+    //region Скрипты
+
+    /**
+     * Получить объект и продлить время жизни ключа, см. {@link IRedisService#getAndTouch(Class, Object, int)}
+     */
+    <T, TKey> CompletableFuture<T> getAndTouch(Class<T> objectType, TKey key, int expire);
+
+    /**
+     * Записать объект, если текущее значение равно ожидаемому, см. {@link IRedisService#compareAndSet(Object, Object, Object, long)}
+     */
+    <T, TKey> CompletableFuture<Boolean> compareAndSet(TKey key, T expected, T object, long expire);
+
+    /**
+     * Удалить объект, если его значение равно ожидаемому, см. {@link IRedisService#deleteIfEquals(Object, Object)}
+     */
+    <T, TKey> CompletableFuture<Boolean> deleteIfEquals(TKey key, T expected);
+
+    /**
+     * Подтвердить обработанный объект и взять следующий, см. {@link IRedisService#ackAndDequeue(Class, String, String, Object)}
+     */
+    <T> CompletableFuture<T> ackAndDequeue(Class<T> objectType, String queue, String to, T acked);
+
+    //endregion
+
+    //region Pub/Sub
+
+    /**
+     * Отправить сообщение в указанный канал, см. {@link IRedisService#publish(String, String)}
+     * @param channel - канал
+     * @param message - сообщение
+     * @return количество получивших клиентов
+     */
+    CompletableFuture<Long> publish(String channel, String message);
+
+    /**
+     * Отправить объект в указанный канал, см. {@link IRedisService#publish(String, Object)}
+     * @param channel - канал
+     * @param message - объект, будет сериализован кодеком сервиса
+     * @return количество получивших клиентов
+     */
+    <T> CompletableFuture<Long> publish(String channel, T message);
+
+    //endregion
+
+}
@@ -1,8 +1,15 @@
 package services;
 
 
+import interfaces.ActionOneParam;
 import interfaces.ActionTwoParams;
 import listeners.ISubscriber;
+import scripts.RedisScript;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
 
 /**
  * Интерфес сервиса предоставляемого хранилищем Redis.
@@ -13,7 +20,7 @@ public interface IRedisService {
     //region Базовые операции
 
     /**
-     * Сохранить объект в Redis, как сериализованную в json строку
+     * Сохранить объект в Redis, сериализованный кодеком сервиса (по умолчанию в json)
      * https://redis.io/commands/set
      * @param key - идентификатор
      * @param object - объект
@@ -25,7 +32,7 @@ public interface IRedisService {
     /**
      * Сохранить объект в Redis, как поток байт
      * https://redis.io/commands/set
-     * @deprecated для СЭ будет нагляднее видеть json в redis-cli консоли, и нормальная сериализация сильно экономит память
+     * @deprecated значения и так сохраняются потоком байт кодека сервиса (см. codecs.ICodec), метод равносилен {@link #put(Object, Object)}
      * @param key - идентификатор
      * @param object - объект
      * @param <T> - тип объекта
@@ -34,7 +41,7 @@ public interface IRedisService {
     <T, TKey> void bput(TKey key, T object);
 
     /**
-     * Сохранить объект в Redis на заданное время TTL(time to life), как сериализованную в json строку
+     * Сохранить объект в Redis на заданное время TTL(time to life), сериализованный кодеком сервиса (по умолчанию в json)
      * @param key - идентификатор
      * @param object - объект
      * @param expire - TTL время в секундах через которое объект будет уничтожен
@@ -43,6 +50,25 @@ public interface IRedisService {
      */
     <T, TKey> void put(TKey key, T object, long expire);
 
+    /**
+     * Сохранить набор объектов в Redis за один запрос, сериализованные кодеком сервиса (по умолчанию в json)
+     * https://redis.io/commands/mset
+     * @param objects - объекты по идентификаторам
+     * @param <T> - тип объекта
+     * @param <TKey> - тип идентификатора
+     */
+    <T, TKey> void putAll(Map<TKey, T> objects);
+
+    /**
+     * Сохранить набор объектов в Redis на заданное время TTL(time to life) одним пакетом команд (pipeline)
+     * https://redis.io/commands/setex
+     * @param objects - объекты по идентификаторам
+     * @param expire - TTL время в секундах через которое объекты будут уничтожены
+     * @param <T> - тип объекта
+     * @param <TKey> - тип идентификатора
+     */
+    <T, TKey> void putAll(Map<TKey, T> objects, long expire);
+
     /**
      * Задать объекту по ключу время жизни, в секундах
      * https://redis.io/commands/expire
@@ -99,6 +125,17 @@ public interface IRedisService {
      */
     <T, TKey> T get(Class<T> objectType, TKey key);
 
+    /**
+     * Получить набор объектов из Redis по идентификаторам за один запрос
+     * https://redis.io/commands/mget
+     * @param objectType - тип объекта в который десериализуем, пример: Foo.class
+     * @param keys - коллекция идентификаторов
+     * @param <T> - тип объекта
+     * @param <TKey> - тип идентификатора
+     * @return объекты по идентификаторам в порядке запроса, отсутствующих в Redis ключей в результате нет
+     */
+    <T, TKey> Map<TKey, T> getAll(Class<T> objectType, Collection<TKey> keys);
+
     /**
      * Удалить объект из Redis
      * https://redis.io/commands/del
@@ -119,6 +156,66 @@ public interface IRedisService {
 
     //endregion
 
+    //region Обход ключей
+
+    /**
+     * Ключи по паттерну через курсор SCAN, поток ленивый и читает Redis постранично
+     * https://redis.io/commands/scan
+     * @param pattern - паттерн ключей, null - все ключи
+     * @param countHint - сколько ключей просматривать за запрос
+     * @return поток ключей, ключ может встретиться повторно
+     */
+    Stream<String> scanKeys(String pattern, int countHint);
+
+    /**
+     * Объекты ключей по паттерну, значения каждой страницы SCAN читаются одним MGET
+     * @param objectType - тип объекта в который десериализуем, пример: Foo.class
+     * @param pattern - паттерн ключей, null - все ключи
+     * @param <T> - тип объекта
+     * @return поток объектов
+     */
+    <T> Stream<T> scanValues(Class<T> objectType, String pattern);
+
+    /**
+     * Объекты ключей по паттерну, см. {@link #scanValues(Class, String)}
+     * @param countHint - сколько ключей просматривать за запрос
+     */
+    <T> Stream<T> scanValues(Class<T> objectType, String pattern, int countHint);
+
+    //endregion
+
+    //region Хранение по полям (hash)
+
+    /**
+     * Сохранить объект по полям в hash Redis, поля со значением null удаляются
+     * https://redis.io/commands/hset
+     * @param key - идентификатор
+     * @param object - объект
+     * @param fields - имена сохраняемых полей, пусто - все поля
+     */
+    <T, TKey> void putFields(TKey key, T object, String... fields);
+
+    /**
+     * Получить объект, сохранённый через {@link #putFields(Object, Object, String...)}, читая только запрошенные поля
+     * https://redis.io/commands/hmget
+     * @param objectType - тип объекта в который десериализуем, пример: Foo.class
+     * @param key - идентификатор
+     * @param fields - имена читаемых полей, пусто - все поля
+     * @return объект, null если ключа нет или все запрошенные поля пусты
+     */
+    <T, TKey> T getFields(Class<T> objectType, TKey key, String... fields);
+
+    /**
+     * Изменить одно поле объекта, сохранённого через {@link #putFields(Object, Object, String...)}
+     * @param objectType - тип объекта
+     * @param key - идентификатор
+     * @param field - имя поля
+     * @param value - новое значение, null - поле удаляется
+     */
+    <T, TKey> void updateField(Class<T> objectType, TKey key, String field, Object value);
+
+    //endregion
+
     //region Очереди(списки)
 
     /**
@@ -149,8 +246,32 @@ public interface IRedisService {
      */
     <T> long queueRightPush(String queue, T object);
 
+    /**
+     * Добавить объекты в начало очереди, результат как у последовательных {@link #queueLeftPush(String, Object)} в порядке коллекции.
+     * Отправляются пакетом команд LPUSH с несколькими значениями, частями по redis.queue.pushChunkSize объектов
+     * https://redis.io/commands/lpush
+     * @param queue - имя очереди
+     * @param objects - объекты
+     * @param <T> - тип объекта
+     * @return Длина списка после добавления
+     */
+    <T> long queueLeftPushAll(String queue, Collection<T> objects);
+
+    /**
+     * Добавить объекты в конец очереди, результат как у последовательных {@link #queueRightPush(String, Object)} в порядке коллекции.
+     * Отправляются пакетом команд RPUSH с несколькими значениями, частями по redis.queue.pushChunkSize объектов
+     * https://redis.io/commands/rpush
+     * @param queue - имя очереди
+     * @param objects - объекты
+     * @param <T> - тип объекта
+     * @return Длина списка после добавления
+     */
+    <T> long queueRightPushAll(String queue, Collection<T> objects);
+
     /**
      * Атомарно получить один объект из конца списка(из списка удаляется) и добавить его же в новый локальный список. Отказоустойчиво.
+     * При шардировании обе очереди должны иметь общий hash tag, например {orders} и {orders}:processing,
+     * иначе бросается exceptions.CrossNodeKeysException
      * @param queue - имя очереди из которой удаляется и возвращается объект
      * @param to - имя локальной очередь в которую добавляется копия объекта
      * @param <T> - тип объекта в который десериализуется строка извлекаемая из списка Redis
@@ -158,6 +279,40 @@ public interface IRedisService {
      */
     <T> T dequeueAndPush(Class<T> objectType, String queue, String to);
 
+    /**
+     * Атомарно получить один объект из конца списка и добавить его в локальный список, ожидая появления объекта до таймаута.
+     * Блокирующий вариант {@link #dequeueAndPush(Class, String, String)} без опроса в цикле
+     * https://redis.io/commands/brpoplpush
+     * @param queue - имя очереди из которой удаляется и возвращается объект
+     * @param to - имя локальной очередь в которую добавляется копия объекта
+     * @param timeout - время ожидания в секундах, 0 - без ограничения
+     * @param <T> - тип объекта
+     * @return объект из очереди, null если за время ожидания очередь осталась пустой
+     */
+    <T> T dequeueAndPush(Class<T> objectType, String queue, String to, int timeout);
+
+    /**
+     * Атомарно получить до max объектов из конца очереди (из очереди удаляются) за один запрос
+     * @param objectType - тип объекта
+     * @param queue - имя очереди
+     * @param max - максимальное число объектов
+     * @param <T> - тип объекта
+     * @return объекты в порядке извлечения (как при последовательных извлечениях из конца очереди), пустой список если очередь пуста
+     */
+    <T> List<T> dequeueBatch(Class<T> objectType, String queue, int max);
+
+    /**
+     * Атомарно получить до max объектов из конца очереди и добавить их в локальную очередь за один запрос,
+     * пакетный вариант {@link #dequeueAndPush(Class, String, String)}. Отказоустойчиво. Очереди - с общим hash tag, как у dequeueAndPush
+     * @param objectType - тип объекта
+     * @param queue - имя очереди из которой удаляются и возвращаются объекты
+     * @param to - имя локальной очереди в которую добавляются копии объектов
+     * @param max - максимальное число объектов
+     * @param <T> - тип объекта
+     * @return объекты в порядке извлечения, пустой список если очередь пуста
+     */
+    <T> List<T> dequeueBatchAndPush(Class<T> objectType, String queue, String to, int max);
+
     /**
      * Удаляет из списка заданное количество объектов равных заданному, с начала списка или с конца
      * https://redis.io/commands/lrem
@@ -166,7 +321,8 @@ public interface IRedisService {
      *              count > 0: Remove elements equal to value moving from head to tail.
      *              count > 0: Remove elements equal to value moving from tail to head.
      *              count = 0: Remove all elements equal to value.
-     * @param object - объект равный которому необходимо удалять, сериализуется в json строку для сравнения
+     * @param object - объект равный которому необходимо удалять, сериализуется кодеком сервиса для сравнения.
+     *               При включённом сжатии сравниваются сжатые байты: значения, записанные до включения сжатия, не совпадут
      * @param <T> - тип объекта
      * @return число удалённых из очереди
      */
@@ -184,10 +340,123 @@ public interface IRedisService {
      */
     void trimQueue(String queue, long start, long stop);
 
+    /**
+     * Запустить надёжного потребителя очереди: рабочие потоки забирают объекты через BRPOPLPUSH в свой список обработки
+     * и подтверждают успешную обработку, см. {@link ReliableQueueConsumer}. Настройки - redis.queue.* конфигурации сервиса
+     * @param objectType - тип объекта
+     * @param queue - имя очереди, с пространством имён при шардировании - с hash tag, например {orders}
+     * @param handler - обработчик объекта, исключение означает неуспешную обработку
+     * @param <T> - тип объекта
+     * @return запущенный потребитель, останавливается через close()
+     */
+    <T> ReliableQueueConsumer<T> consume(Class<T> objectType, String queue, ActionOneParam<T> handler);
+
+    //endregion
+
+    //region Транзакции
+
+    /**
+     * Выполнить команды атомарно одной транзакцией MULTI/EXEC за один запрос, пример:
+     * transaction(tx -> { tx.put(key, object); tx.expire(key, 60); tx.queueRightPush(queue, key); }).
+     * При шардировании все ключи и очереди транзакции - с общим hash tag, иначе бросается exceptions.CrossNodeKeysException
+     * @param body - тело, добавляет команды в транзакцию, исключение в нём отменяет транзакцию
+     * @return true если транзакция выполнена
+     */
+    boolean transaction(ActionOneParam<RedisTransaction> body);
+
+    /**
+     * Оптимистичная транзакция (check-and-set): WATCH ключей, чтения через {@link RedisTransaction#read(Class, Object)}
+     * и команды одной транзакцией MULTI/EXEC. При изменении ключей другим клиентом тело повторяется, пример:
+     * watch(keys, 3, tx -> { Foo foo = tx.read(Foo.class, key); foo.inc(); tx.put(key, foo); })
+     * @param keys - идентификаторы, изменение которых отменяет транзакцию
+     * @param retries - число повторов после конфликта
+     * @param body - тело, читает значения и добавляет команды в транзакцию
+     * @param <TKey> - тип идентификатора
+     * @return true если транзакция выполнена, false при ошибке или конфликте на всех попытках
+     * (при configs.RedisConfig#isThrowOnFailure() конфликт бросает exceptions.WatchConflictException)
+     */
+    <TKey> boolean watch(Collection<TKey> keys, int retries, ActionOneParam<RedisTransaction> body);
+
+    //endregion
+
+    //region Скрипты
+
+    /**
+     * Выполнить Lua скрипт через EVALSHA, при NOSCRIPT - через EVAL
+     * @param script - скрипт
+     * @param keys - ключи (KEYS) в бинарном виде
+     * @param args - аргументы (ARGV) в бинарном виде
+     * @return ответ скрипта: Long, byte[], List или null
+     */
+    Object eval(RedisScript script, List<byte[]> keys, List<byte[]> args);
+
+    /**
+     * Получить объект и продлить время жизни ключа за один шаг на сервере
+     * @param objectType - тип объекта
+     * @param key - идентификатор
+     * @param expire - новое время жизни в секундах
+     * @param <T> - тип объекта
+     * @param <TKey> - тип идентификатора
+     * @return объект или null, если ключа нет
+     */
+    <T, TKey> T getAndTouch(Class<T> objectType, TKey key, int expire);
+
+    /**
+     * Записать объект, если текущее значение ключа равно ожидаемому (сравнение в сериализованном виде), за один шаг на сервере.
+     * При включённом сжатии сравниваются сжатые байты: значение, записанное до включения сжатия, не совпадёт, см. codecs.ValueCompressor
+     * @param key - идентификатор
+     * @param expected - ожидаемый объект, null - ключа не должно быть
+     * @param object - новый объект
+     * @param <T> - тип объекта
+     * @param <TKey> - тип идентификатора
+     * @return true если объект записан
+     */
+    <T, TKey> boolean compareAndSet(TKey key, T expected, T object);
+
+    /**
+     * Записать объект на заданное время, если текущее значение ключа равно ожидаемому, за один шаг на сервере.
+     * Сравнение как в {@link #compareAndSet(Object, Object, Object)}
+     * @param key - идентификатор
+     * @param expected - ожидаемый объект, null - ключа не должно быть
+     * @param object - новый объект
+     * @param expire - TTL время в секундах, 0 - без ограничения
+     * @param <T> - тип объекта
+     * @param <TKey> - тип идентификатора
+     * @return true если объект записан
+     */
+    <T, TKey> boolean compareAndSet(TKey key, T expected, T object, long expire);
+
+    /**
+     * Удалить объект, если его значение равно ожидаемому (сравнение в сериализованном виде), за один шаг на сервере.
+     * При включённом сжатии сравниваются сжатые байты: значение, записанное до включения сжатия, не совпадёт, см. codecs.ValueCompressor
+     * @param key - идентификатор
+     * @param expected - ожидаемый объект
+     * @param <T> - тип объекта
+     * @param <TKey> - тип идентификатора
+     * @return true если объект удалён
+     */
+    <T, TKey> boolean deleteIfEquals(TKey key, T expected);
+
+    /**
+     * Подтвердить обработанный объект и взять следующий за один шаг на сервере: объект удаляется из локальной очереди,
+     * следующий переносится в неё из конца очереди, как в {@link #dequeueAndPush(Class, String, String)}.
+     * Сравнение в сериализованном виде. При шардировании обе очереди должны иметь общий hash tag
+     * @param objectType - тип объекта
+     * @param queue - имя очереди из которой удаляется и возвращается следующий объект
+     * @param to - имя локальной очереди обработки
+     * @param acked - обработанный объект, удаляется из локальной очереди
+     * @param <T> - тип объекта
+     * @return следующий объект из очереди, null если очередь пуста
+     */
+    <T> T ackAndDequeue(Class<T> objectType, String queue, String to, T acked);
+
     //endregion
 
     //region Pub/Sub
 
+    // Подписки не блокируют вызывающий поток: все каналы и паттерны обслуживаются одним соединением,
+    // обработчики вызываются из рабочих потоков, сообщения одного канала - по порядку
+
     /**
      * Подписка на канал
      * Десериализацию нужно делать по месту использования, потому что сообщения в json потенциально могут содержать любой объект
@@ -234,6 +503,26 @@ public interface IRedisService {
      */
     void psubscribe(ISubscriber listener, final String... patterns);
 
+    /**
+     * Типизированная подписка на канал: сообщение декодируется кодеком сервиса один раз на доставку,
+     * один и тот же объект получают все типизированные подписчики канала, изменять его нельзя.
+     * Парная отправка - {@link #publish(String, Object)}
+     * @param type - тип объекта сообщения
+     * @param channel - имя канала
+     * @param onMessage - обработчик полученного объекта
+     * @param <T> - тип объекта
+     */
+    <T> void subscribe(Class<T> type, final String channel, ActionOneParam<T> onMessage);
+
+    /**
+     * Типизированная подписка на каналы по паттерну, см. {@link #subscribe(Class, String, ActionOneParam)}
+     * @param type - тип объекта сообщения
+     * @param pattern - паттерн имён каналов
+     * @param onMessage - обработчик, получает имя канала и объект
+     * @param <T> - тип объекта
+     */
+    <T> void psubscribe(Class<T> type, final String pattern, ActionTwoParams<String,T> onMessage);
+
     /**
      * Отправить сообщение в указанный канал
      * @param channel - канал
@@ -245,15 +534,15 @@ public interface IRedisService {
     /**
      * Отправить объект(уведомление-контекст) в указанный канал
      * @param channel - канал
-     * @param message - объект отправляемый в канал, будет сериализован в json строку
+     * @param message - объект отправляемый в канал, будет сериализован кодеком сервиса (подписчики со строковыми обработчиками получат его как UTF-8 строку, что осмысленно для json)
      * @param <T> - тип объекта
      * @return возвращает количество получивших клиентов, 0 если никто не получил
      */
     <T> long publish(final String channel, final T message);
 
     /**
-     * Отписка от указанных каналов
-     * @param channels
+     * Отписка всех обработчиков от указанных каналов и паттернов с такими именами
+     * @param channels - имена каналов или паттернов, без имён - отписка от всего
      */
     void unsubscribe(final String... channels);
 
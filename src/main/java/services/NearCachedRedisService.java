@@ -0,0 +1,315 @@
+package services;
+
+import caches.NearCache;
+import clients.EsiaJedisPool;
+import configs.RedisConfig;
+import interfaces.Func;
+import listeners.ILosslessSubscriber;
+import listeners.ISubscriber;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.util.SafeEncoder;
+import scripts.RedisScript;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * {@link RedisService} с локальным кэшем десериализованных объектов {@link NearCache} перед get() и exist().
+ * Запись объекта в кэш живёт не дольше TTL ключа в Redis и {@link RedisConfig#getNearCacheTtlMillis()}.
+ * Операции put, putAll, delete, expire, expireAt, транзакции и скрипты удаляют ключи из локального кэша и публикуют сообщение
+ * об инвалидации в канал {@link RedisConfig#getNearCacheChannel()}, по которому кэши остальных узлов удаляют те же ключи.
+ * Подписка на канал идёт через общий диспетчер pub/sub сервиса. Пока подписка не активна, кэш не используется.
+ * При размере кэша 0 сервис работает как {@link RedisService}, но продолжает рассылать инвалидацию для остальных узлов.
+ * Согласованы только изменения, сделанные через этот сервис: запись в те же ключи в обход него кэш не увидит до истечения TTL записи
+ */
+public class NearCachedRedisService extends RedisService {
+
+    private final NearCache cache;
+
+    private final String channel;
+
+    /**
+     * Идентификатор узла, свои сообщения об инвалидации не обрабатываются
+     */
+    private final String nodeId = UUID.randomUUID().toString();
+
+    /**
+     * Кэш используется только при активной подписке на инвалидацию
+     */
+    private volatile boolean coherent;
+
+    private final ISubscriber invalidationListener = new InvalidationListener();
+
+    /**
+     * Создаёт сервис с конфигурацией из redis.properties и системных свойств, см. {@link RedisConfig#load()}
+     */
+    public NearCachedRedisService() {
+        this(RedisConfig.load());
+    }
+
+    public NearCachedRedisService(RedisConfig config) {
+        super(config);
+        this.cache = new NearCache(config.getNearCacheSize(), config.getNearCacheTtlMillis());
+        this.channel = config.getNearCacheChannel();
+        startInvalidation();
+    }
+
+    public NearCachedRedisService(EsiaJedisPool pool, RedisConfig config) {
+        super(pool, config);
+        this.cache = new NearCache(config.getNearCacheSize(), config.getNearCacheTtlMillis());
+        this.channel = config.getNearCacheChannel();
+        startInvalidation();
+    }
+
+    /**
+     * Локальный кэш и его метрики
+     */
+    public NearCache getNearCache() {
+        return cache;
+    }
+
+    @Override
+    public void close() {
+        coherent = false;
+        super.close();
+        cache.clear();
+    }
+
+    //region Инвалидация
+
+    private void startInvalidation() {
+        if (cache.getMaxSize() > 0) {
+            getDispatcher().subscribe(invalidationListener, channel);
+        }
+    }
+
+    /**
+     * Обработчик канала инвалидации. Сообщения, отправленные пока подписки не было, потеряны,
+     * поэтому при каждой (пере)подписке и при обрыве соединения кэш очищается.
+     * Диспетчер не отбрасывает его сообщения и события подписки при переполнении очереди: иначе кэш остался бы устаревшим,
+     * оставаясь согласованным на вид
+     */
+    private final class InvalidationListener implements ILosslessSubscriber {
+
+        public void onMessage(String channel, String message) {
+            onInvalidation(message);
+        }
+
+        public void onPMessage(String pattern, String channel, String message) {
+        }
+
+        public void onSubscribe(String channel, int subscribedChannels) {
+            cache.clear();
+            coherent = true;
+        }
+
+        public void onUnsubscribe(String channel, int subscribedChannels) {
+            coherent = false;
+            cache.clear();
+        }
+
+        public void onPUnsubscribe(String pattern, int subscribedChannels) {
+        }
+
+        public void onPSubscribe(String pattern, int subscribedChannels) {
+        }
+    }
+
+    /**
+     * Сообщение об инвалидации - идентификатор узла и ключи, каждое поле в виде "длина:значение",
+     * поэтому ключи могут содержать любые символы, включая перевод строки и двоеточие
+     */
+    private void onInvalidation(String message) {
+        List<String> fields = new ArrayList<>();
+        try {
+            int position = 0;
+            while (position < message.length()) {
+                int colon = message.indexOf(':', position);
+                int end = colon + 1 + Integer.parseInt(message.substring(position, colon));
+                fields.add(message.substring(colon + 1, end));
+                position = end;
+            }
+        } catch (Exception sex) {
+            log.fail("invalidate", () -> "malformed invalidation message, near cache cleared", sex);
+            cache.clear();
+            return;
+        }
+        if (fields.size() < 2 || nodeId.equals(fields.get(0))) return;
+        String[] keys = fields.subList(1, fields.size()).toArray(new String[0]);
+        cache.invalidate(keys);
+        // чтения, начатые до изменения на другом узле, больше не принимают участников
+        for (String key : keys) {
+            singleFlight.written(SafeEncoder.encode(key));
+        }
+    }
+
+    /**
+     * Удаляет ключи из локального кэша и рассылает инвалидацию остальным узлам
+     */
+    private void invalidate(String... keys) {
+        if (keys.length == 0) return;
+        cache.invalidate(keys);
+        StringBuilder message = new StringBuilder();
+        message.append(nodeId.length()).append(':').append(nodeId);
+        for (String key : keys) {
+            message.append(key.length()).append(':').append(key);
+        }
+        publish(channel, message.toString());
+    }
+
+    private String[] cacheKeys(Object... keys) {
+        String[] result = new String[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            result[i] = cacheKey(keys[i]);
+        }
+        return result;
+    }
+
+    private <TKey> String cacheKey(TKey key) {
+        return SafeEncoder.encode(rawKey(key));
+    }
+
+    //endregion
+
+    //region Чтение через кэш
+
+    @Override
+    public <T, TKey> T get(Class<T> objectType, TKey key) {
+        if (!coherent) {
+            return super.get(objectType, key);
+        }
+        byte[] rawKey = rawKey(key);
+        String cacheKey = SafeEncoder.encode(rawKey);
+        T result = cache.get(objectType, cacheKey);
+        if (result != null) {
+            log.success("get", () -> "near cache hit by key: " + cacheKey + " type: " + objectType.getName());
+            return result;
+        }
+        Func<String> msg = () -> "get object by key: " + cacheKey + " type: " + objectType.getName();
+        try {
+            result = singleFlight.call(flight("get:near"), objectType, rawKey, () -> {
+                long stamp = cache.stamp(cacheKey);
+                Object[] valueTtl = executeRead(rawKey, jedis -> {
+                    Pipeline pipeline = jedis.pipelined();
+                    Response<byte[]> value = pipeline.get(rawKey);
+                    Response<Long> ttl = pipeline.pttl(rawKey);
+                    pipeline.sync();
+                    return new Object[]{value.get(), ttl.get()};
+                });
+                byte[] value = (byte[]) valueTtl[0];
+                T object = deserialize(objectType, value, msg);
+                cache.put(cacheKey, object, (Long) valueTtl[1], stamp);
+                log.successWithPayload("get", msg, value);
+                return object;
+            });
+        } catch (Exception sex) {
+            fail("get", msg, sex);
+        }
+        return result;
+    }
+
+    @Override
+    public <TKey> boolean exist(TKey key) {
+        if (coherent && cache.contains(cacheKey(key))) {
+            return true;
+        }
+        return super.exist(key);
+    }
+
+    //endregion
+
+    //region Изменения с инвалидацией
+
+    @Override
+    public <T, TKey> void put(TKey key, T object) {
+        super.put(key, object);
+        invalidate(cacheKey(key));
+    }
+
+    @Override
+    public <T, TKey> void put(TKey key, T object, long expire) {
+        super.put(key, object, expire);
+        invalidate(cacheKey(key));
+    }
+
+    @Override
+    public <T, TKey> void putAll(Map<TKey, T> objects) {
+        super.putAll(objects);
+        if (objects != null) invalidate(cacheKeys(objects.keySet().toArray()));
+    }
+
+    @Override
+    public <T, TKey> void putAll(Map<TKey, T> objects, long expire) {
+        super.putAll(objects, expire);
+        if (objects != null) invalidate(cacheKeys(objects.keySet().toArray()));
+    }
+
+    @Override
+    public <TKey> boolean expire(TKey key, int expire) {
+        boolean result = super.expire(key, expire);
+        invalidate(cacheKey(key));
+        return result;
+    }
+
+    @Override
+    public <TKey> boolean expireAt(TKey key, long unixTime) {
+        boolean result = super.expireAt(key, unixTime);
+        invalidate(cacheKey(key));
+        return result;
+    }
+
+    @Override
+    public <TKey> long delete(TKey key) {
+        long result = super.delete(key);
+        invalidate(cacheKey(key));
+        return result;
+    }
+
+    @Override
+    @SafeVarargs
+    public final <TKey> long delete(TKey... keys) {
+        Object[] all = new Object[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            all[i] = keys[i];
+        }
+        long result = super.delete(all);
+        invalidate(cacheKeys(all));
+        return result;
+    }
+
+    @Override
+    public <T, TKey> boolean compareAndSet(TKey key, T expected, T object, long expire) {
+        boolean result = super.compareAndSet(key, expected, object, expire);
+        if (result) invalidate(cacheKey(key));
+        return result;
+    }
+
+    @Override
+    public <T, TKey> boolean deleteIfEquals(TKey key, T expected) {
+        boolean result = super.deleteIfEquals(key, expected);
+        if (result) invalidate(cacheKey(key));
+        return result;
+    }
+
+    @Override
+    public Object eval(RedisScript script, List<byte[]> keys, List<byte[]> args) {
+        Object result = super.eval(script, keys, args);
+        String[] cacheKeys = new String[keys.size()];
+        for (int i = 0; i < cacheKeys.length; i++) {
+            cacheKeys[i] = SafeEncoder.encode(keys.get(i));
+        }
+        invalidate(cacheKeys);
+        return result;
+    }
+
+    @Override
+    protected void committed(Collection<String> keys) {
+        invalidate(keys.toArray(new String[0]));
+    }
+
+    //endregion
+}
@@ -1,130 +1,708 @@
 package services;
 
 
+import clients.CircuitBreaker;
 import clients.EsiaJedis;
-import com.google.gson.Gson;
-import common.JsonHelper;
+import clients.EsiaJedisPool;
+import caches.SingleFlight;
+import codecs.CodecRegistry;
+import codecs.CompressionStats;
+import codecs.HashMapping;
+import codecs.ICodec;
+import codecs.IKeyCodec;
+import codecs.KeyCodec;
+import codecs.ValueCompressor;
+import configs.RedisConfig;
+import exceptions.CrossNodeKeysException;
+import exceptions.RedisOperationException;
+import exceptions.RedisTimeoutException;
+import exceptions.RedisUnavailableException;
+import exceptions.WatchConflictException;
+import interfaces.ActionOneParam;
 import interfaces.ActionTwoParams;
 import interfaces.Func;
+import interfaces.FuncOneParam;
+import interfaces.FuncTwoParams;
+import listeners.ActionSubscriber;
 import listeners.ISubscriber;
-import redis.clients.jedis.JedisPubSub;
+import listeners.PubSubDispatcher;
+import listeners.TypedSubscriber;
+import logging.RedisLogger;
+import scripts.BuiltinScripts;
+import scripts.RedisScript;
+import scripts.ScriptRegistry;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.ScanParams;
+import redis.clients.jedis.Transaction;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisException;
+import redis.clients.util.SafeEncoder;
 
-import java.util.logging.Level;
-import java.util.logging.Logger;
+import java.io.Closeable;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
-public class RedisService implements IRedisService {
+/**
+ * Реализация {@link IRedisService} поверх пула соединений {@link EsiaJedisPool}.
+ * Каждая операция берёт соединение из пула и сразу возвращает его, поэтому все методы потокобезопасны
+ * и один экземпляр сервиса можно использовать из любого числа потоков.
+ */
+public class RedisService implements IRedisService, Closeable {
 
-    protected EsiaJedis client = null;
+    /**
+     * Число ключей страницы SCAN по умолчанию
+     */
+    public static final int SCAN_COUNT = 100;
+
+    /**
+     * Сколько ключей многоключевой операции писать в лог
+     */
+    private static final int LOG_KEYS = 10;
+
+    protected final EsiaJedisPool pool;
+
+    /**
+     * Кодек значений, см. {@link ICodec}
+     */
+    protected final ICodec codec;
+
+    /**
+     * Сжатие значений больше порога, см. {@link ValueCompressor}
+     */
+    protected final ValueCompressor compressor;
 
-    private Gson gson = JsonHelper.GetGson();
+    /**
+     * Кодек ключей и имён очередей, см. {@link IKeyCodec}
+     */
+    protected final IKeyCodec keyCodec;
 
-    private Logger logger = Logger.getLogger(RedisService.class.getName());
+    protected final RedisLogger log;
 
-    // TODO ЗАИНЖЕКТИТЬ КОНФИГУРАЦИЮ REDIS ИЗ КОНФИГА
-    // TODO транзакции
+    /**
+     * Объединение одновременных get и exist одного ключа, см. {@link RedisConfig#isSingleFlight()}
+     */
+    protected final SingleFlight singleFlight;
 
+    /**
+     * Lua скрипты сервиса, см. {@link ScriptRegistry}
+     */
+    protected final ScriptRegistry scripts = new ScriptRegistry();
+
+    private final RedisConfig config;
+
+    private final Object _lock = new Object();
+
+    /**
+     * Диспетчер pub/sub, создаётся при первом обращении
+     */
+    private volatile PubSubDispatcher dispatcher;
+
+    /**
+     * Таймаут команд потока, заданный {@link #withTimeout(int, Func)}
+     */
+    private final ThreadLocal<int[]> timeoutScope = ThreadLocal.withInitial(() -> new int[1]);
+
+    /**
+     * Создаёт сервис с конфигурацией из redis.properties и системных свойств, см. {@link RedisConfig#load()}
+     */
     public RedisService() {
-        client = new EsiaJedis();
+        this(RedisConfig.load());
+    }
+
+    public RedisService(RedisConfig config) {
+        this(new EsiaJedisPool(config), config);
+        if (config.isPreWarm()) {
+            try {
+                pool.preWarm(config.getMinIdle());
+            } catch (Exception sex) {
+                log.fail("preWarm", () -> "pre-warm pool " + config, sex);
+            }
+        }
+    }
+
+    public RedisService(EsiaJedisPool pool) {
+        this(pool, new RedisConfig());
+    }
+
+    public RedisService(EsiaJedisPool pool, RedisConfig config) {
+        this(pool, config, CodecRegistry.get(config.getCodec()));
+    }
+
+    public RedisService(EsiaJedisPool pool, RedisConfig config, ICodec codec) {
+        this(pool, config, codec, new KeyCodec(config.getKeyNamespace(), config.getKeyCacheSize()));
+    }
+
+    /**
+     * @param keyCodec - кодек ключей, например {@link KeyCodec#withNamespace(String)} для сервиса арендатора на общем пуле
+     */
+    public RedisService(EsiaJedisPool pool, RedisConfig config, ICodec codec, IKeyCodec keyCodec) {
+        this.pool = pool;
+        this.config = config;
+        this.codec = codec;
+        this.keyCodec = keyCodec;
+        this.compressor = new ValueCompressor(config.getCompressionThreshold(), config.getCompressionLevel());
+        this.singleFlight = new SingleFlight(config.isSingleFlight());
+        this.log = new RedisLogger(RedisService.class, config.getLogPayloadLimit());
+        if (config.isLogAsync()) {
+            log.installAsync(config.getLogBufferSize());
+        }
+        loadScripts();
+    }
+
+    /**
+     * Загружает зарегистрированные скрипты в Redis на всех узлах. Ошибка не критична: скрипт будет передан через EVAL при первом выполнении
+     */
+    protected void loadScripts() {
+        Func<String> msg = () -> "load scripts " + scripts;
+        try {
+            List<Integer> counts = executeOnAllNodes(scripts::load);
+            log.success("loadScripts", msg, counts.toString());
+        } catch (Exception sex) {
+            log.fail("loadScripts", msg, sex);
+        }
+    }
+
+    /**
+     * Выполняет команду на соединении из пула, соединение возвращается в пул сразу после выполнения
+     * @param command - команда
+     * @param <TResult> - тип результата
+     * @return результат команды
+     */
+    protected <TResult> TResult execute(FuncOneParam<EsiaJedis, TResult> command) {
+        return execute(pool, command);
+    }
+
+    /**
+     * Выполняет команду на соединении узла, которому принадлежит ключ (см. {@link #pool(byte[])})
+     * @param key - ключ, очередь или канал команды в бинарном виде
+     * @param command - команда
+     * @param <TResult> - тип результата
+     * @return результат команды
+     */
+    protected <TResult> TResult execute(byte[] key, FuncOneParam<EsiaJedis, TResult> command) {
+        return execute(pool(key), command);
+    }
+
+    /**
+     * Выполняет команду, изменяющую ключ, см. {@link #execute(byte[], FuncOneParam)}.
+     * После команды (и при ошибке: запись могла выполниться) чтения ключа перестают объединяться с начатыми до неё, см. {@link SingleFlight}
+     * @param key - изменяемый ключ или очередь в бинарном виде
+     * @param command - команда
+     * @param <TResult> - тип результата
+     * @return результат команды
+     */
+    protected <TResult> TResult executeWrite(byte[] key, FuncOneParam<EsiaJedis, TResult> command) {
+        try {
+            return execute(key, command);
+        } finally {
+            singleFlight.written(key);
+        }
+    }
+
+    /**
+     * Выполняет команду, изменяющую несколько ключей одного узла (RPOPLPUSH, скрипты), см. {@link #route(byte[]...)}
+     * и {@link #executeWrite(byte[], FuncOneParam)}
+     */
+    protected <TResult> TResult executeWrite(byte[][] keys, FuncOneParam<EsiaJedis, TResult> command) {
+        try {
+            return execute(route(keys), command);
+        } finally {
+            singleFlight.written(keys);
+        }
+    }
+
+    /**
+     * Выполняет команду над частью ключей на каждом узле, которому они принадлежат.
+     * На одном узле команда выполняется один раз для всех ключей
+     * @param keys - ключи в бинарном виде
+     * @param command - команда, получает соединение и индексы своих ключей в keys
+     * @param <TResult> - тип результата
+     * @return результаты команды по узлам
+     */
+    protected <TResult> List<TResult> executePerNode(byte[][] keys, FuncTwoParams<EsiaJedis, int[], TResult> command) {
+        int[] indices = new int[keys.length];
+        for (int i = 0; i < indices.length; i++) {
+            indices[i] = i;
+        }
+        return Collections.singletonList(execute(jedis -> command.call(jedis, indices)));
     }
 
     /**
-     * Дсериализует json строку в объект заданного типа
+     * Выполняет команду, изменяющую ключи, на каждом их узле, см. {@link #executePerNode(byte[][], FuncTwoParams)}
+     * и {@link #executeWrite(byte[], FuncOneParam)}
+     */
+    protected <TResult> List<TResult> executeWritePerNode(byte[][] keys, FuncTwoParams<EsiaJedis, int[], TResult> command) {
+        try {
+            return executePerNode(keys, command);
+        } finally {
+            singleFlight.written(keys);
+        }
+    }
+
+    /**
+     * Выполняет команду чтения, которую можно направить на реплику (get, exist, ttl).
+     * Без реплик равносилен {@link #execute(byte[], FuncOneParam)}
+     * @param key - ключ команды в бинарном виде
+     * @param command - команда, только чтение
+     * @param <TResult> - тип результата
+     * @return результат команды
+     */
+    protected <TResult> TResult executeRead(byte[] key, FuncOneParam<EsiaJedis, TResult> command) {
+        return execute(pool(key), command);
+    }
+
+    /**
+     * Имя чтения для объединения одновременных вызовов ({@link SingleFlight}), чтения с разными именами не объединяются
+     * @param operation - операция (get, exist)
+     * @return имя чтения
+     */
+    protected String flight(String operation) {
+        return operation;
+    }
+
+    /**
+     * Выполняет команду чтения над несколькими ключами (getAll, exists), см. {@link #executeRead(byte[], FuncOneParam)}
+     * и {@link #executePerNode(byte[][], FuncTwoParams)}
+     */
+    protected <TResult> List<TResult> executeReadPerNode(byte[][] keys, FuncTwoParams<EsiaJedis, int[], TResult> command) {
+        return executePerNode(keys, command);
+    }
+
+    /**
+     * Выполняет команду на каждом узле, например загрузку скриптов
+     * @param command - команда
+     * @param <TResult> - тип результата
+     * @return результаты команды по узлам
+     */
+    protected <TResult> List<TResult> executeOnAllNodes(FuncOneParam<EsiaJedis, TResult> command) {
+        return Collections.singletonList(execute(command));
+    }
+
+    /**
+     * Пулы всех узлов сервиса, например для обхода ключей
+     */
+    protected List<EsiaJedisPool> nodes() {
+        return Collections.singletonList(pool);
+    }
+
+    /**
+     * Пул узла, которому принадлежит ключ. Один узел - всегда {@link #pool}
+     * @param key - ключ в бинарном виде
+     * @return пул соединений узла
+     */
+    protected EsiaJedisPool pool(byte[] key) {
+        return pool;
+    }
+
+    /**
+     * Ключ для выбора узла команды над несколькими ключами (RPOPLPUSH, транзакции, скрипты).
+     * Все ключи такой команды должны принадлежать одному узлу, иначе {@link CrossNodeKeysException}
+     * @param keys - ключи команды в бинарном виде
+     * @return ключ, по которому выбирается узел
+     */
+    protected byte[] route(byte[]... keys) {
+        return keys.length == 0 ? null : keys[0];
+    }
+
+    protected static byte[][] select(byte[][] keys, int[] indices) {
+        byte[][] result = new byte[indices.length][];
+        for (int i = 0; i < indices.length; i++) {
+            result[i] = keys[indices[i]];
+        }
+        return result;
+    }
+
+    /**
+     * Ключи для лога: число ключей и не больше первых {@link #LOG_KEYS}
+     */
+    private static String keysToLog(Object[] keys) {
+        StringBuilder result = new StringBuilder().append(keys.length).append(" [");
+        for (int i = 0; i < keys.length && i < LOG_KEYS; i++) {
+            if (i > 0) result.append(", ");
+            result.append(keys[i]);
+        }
+        return result.append(keys.length > LOG_KEYS ? ", ...]" : "]").toString();
+    }
+
+    private static long sum(List<Long> values) {
+        long result = 0;
+        for (Long value : values) {
+            result += value;
+        }
+        return result;
+    }
+
+    /**
+     * Выполняет команду на соединении из заданного пула, соединение возвращается в пул сразу после выполнения.
+     * Команда проходит через выключатель узла {@link EsiaJedisPool#getBreaker()} и ждёт ответ не дольше {@link #commandTimeout()}
+     * @param pool - пул узла
+     * @param command - команда
+     * @param <TResult> - тип результата
+     * @return результат команды
+     */
+    protected <TResult> TResult execute(EsiaJedisPool pool, FuncOneParam<EsiaJedis, TResult> command) {
+        CircuitBreaker breaker = pool.getBreaker();
+        EsiaJedis jedis = borrow(pool);
+        int timeout = commandTimeout();
+        boolean broken = false;
+        try {
+            if (timeout > 0) jedis.setCommandTimeout(timeout);
+            return command.call(jedis);
+        } catch (JedisConnectionException ex) {
+            broken = true;
+            throw ex;
+        } finally {
+            if (!broken && timeout > 0) {
+                broken = !resetCommandTimeout(jedis);
+            }
+            if (broken) {
+                breaker.onFailure();
+                // без QUIT при закрытии пулом: не ждать ещё один таймаут от зависшего узла
+                try {
+                    jedis.disconnect();
+                } catch (JedisConnectionException ignored) {
+                }
+                pool.returnBrokenResource(jedis);
+            } else {
+                breaker.onSuccess();
+                pool.returnResource(jedis);
+            }
+        }
+    }
+
+    /**
+     * Берёт соединение из пула с разрешения выключателя узла. Ошибкой узла считается только отказ в соединении:
+     * исчерпанный пул говорит о нехватке соединений у клиента, а не о неисправности узла
+     * @throws clients.CircuitOpenException если выключатель узла открыт
+     */
+    static EsiaJedis borrow(EsiaJedisPool pool) {
+        CircuitBreaker breaker = pool.getBreaker();
+        breaker.acquire();
+        try {
+            return pool.getResource();
+        } catch (JedisConnectionException ex) {
+            breaker.onFailure();
+            throw ex;
+        } catch (JedisException ex) {
+            breaker.onCancel();
+            throw ex;
+        }
+    }
+
+    /**
+     * Возвращает соединению таймаут по умолчанию перед возвратом в пул
+     * @return false, если соединение закрыто
+     */
+    static boolean resetCommandTimeout(EsiaJedis jedis) {
+        try {
+            jedis.resetCommandTimeout();
+            return true;
+        } catch (JedisConnectionException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Таймаут ответа на команды потока: {@link #withTimeout(int, Func)} или {@link RedisConfig#getCommandTimeoutMillis()}
+     * @return таймаут в миллисекундах, 0 - soTimeout соединения
+     */
+    protected int commandTimeout() {
+        int timeout = timeoutScope.get()[0];
+        return timeout > 0 ? timeout : config.getCommandTimeoutMillis();
+    }
+
+    /**
+     * Выполнить операции сервиса с заданным таймаутом ответа на каждую команду, например короткий бюджет для чтения кэша в запросе пользователя.
+     * Не ответивший вовремя узел считается недоступным (ошибка соединения для выключателя), соединение закрывается
+     * @param millis - таймаут в миллисекундах, 0 - из конфигурации
+     * @param body - операции
+     * @return результат body
+     */
+    public <TResult> TResult withTimeout(int millis, Func<TResult> body) {
+        int[] timeout = timeoutScope.get();
+        int previous = timeout[0];
+        timeout[0] = millis;
+        try {
+            return body.call();
+        } finally {
+            timeout[0] = previous;
+        }
+    }
+
+    /**
+     * Выключатели всех узлов сервиса, см. {@link CircuitBreaker}
+     */
+    public List<CircuitBreaker> getBreakers() {
+        List<CircuitBreaker> result = new ArrayList<>();
+        for (EsiaJedisPool node : nodes()) {
+            result.add(node.getBreaker());
+        }
+        return result;
+    }
+
+    /**
+     * Ошибка операции: пишется в лог, при {@link RedisConfig#isThrowOnFailure()} бросается как {@link RedisOperationException}.
+     * {@link CrossNodeKeysException} - ошибка вызывающего кода, бросается всегда
+     * @param operation - имя операции
+     * @param msg - делегат формирующий сигнатуру для логирования
+     * @param ex - ошибка
+     */
+    protected void fail(String operation, Func<String> msg, Exception ex) {
+        log.fail(operation, msg, ex);
+        if (ex instanceof CrossNodeKeysException) throw (CrossNodeKeysException) ex;
+        if (!config.isThrowOnFailure()) return;
+        if (ex instanceof RedisOperationException) throw (RedisOperationException) ex;
+        if (ex instanceof JedisConnectionException || (ex instanceof JedisException && ex.getCause() instanceof NoSuchElementException)) {
+            if (ex.getCause() instanceof SocketTimeoutException) {
+                throw new RedisTimeoutException(operation, msg.call(), ex);
+            }
+            throw new RedisUnavailableException(operation, msg.call(), ex);
+        }
+        throw new RedisOperationException(operation, msg.call(), ex);
+    }
+
+    /**
+     * Закрывает подписки, диспетчер pub/sub, пул соединений, компрессор и асинхронную запись лога
+     */
+    public void close() {
+        unsubscribe();
+        synchronized (_lock) {
+            if (dispatcher != null) {
+                dispatcher.close();
+            }
+        }
+        pool.close();
+        compressor.close();
+        log.close();
+    }
+
+    /**
+     * Дсериализует значение из Redis в объект заданного типа через {@link #codec}
      *
      * @param type  - тип объекта результата
-     * @param value - json строка
+     * @param value - значение
      * @param toLog - делегат формирующий сигнатуру для логирования
      * @param <T>   - тип объекта результата
      * @return
      */
-    protected <T> T deserialize(Class<T> type, String value, Func<String> toLog) {
+    protected <T> T deserialize(Class<T> type, byte[] value, Func<String> toLog) {
         T result = null;
         try {
-            result = gson.fromJson(value, type);
+            result = codec.decode(type, compressor.decompress(value));
         } catch (Exception sex) {
-            logger.log(Level.ALL, "Failed deserialize " + toLog.call() + " to type: " + type.getName() + " value: " + value + " ex: " + sex.getMessage());
+            log.fail("deserialize", () -> "deserialize " + toLog.call() + " to type: " + type.getName() + " value: " + log.payload(value), sex);
         }
         return result;
     }
 
     /**
-     * Сериализует объект в json
+     * Сериализует объект через {@link #codec}
      *
      * @param object - объект
      * @param toLog  - делегат формирующий сигнатуру для логирования
      * @param <T>    - тип объекта результата
      * @return
      */
-    protected <T> String serialize(T object, Func<String> toLog) {
-        String result = null;
+    protected <T> byte[] serialize(T object, Func<String> toLog) {
+        byte[] result = null;
         try {
-            result = gson.toJson(object);
+            result = compressor.compress(codec.encode(object));
         } catch (Exception sex) {
-            logger.log(Level.ALL, "Failed serialize " + toLog.call() + " to json, ex: " + sex.getMessage());
+            log.fail("serialize", () -> "serialize " + toLog.call() + " with codec: " + codec.getName(), sex);
         }
         return result;
     }
 
-    private void fail(String msg){
-        logger.log(Level.ALL, "Failed Redis operation: " + msg);
+    /**
+     * Ключ Redis в бинарном виде, см. {@link #keyCodec}. Имена очередей - тоже ключи
+     * @param key - идентификатор
+     * @return ключ с пространством имён
+     */
+    protected <TKey> byte[] rawKey(TKey key) {
+        return keyCodec.encode(key);
     }
 
-    private void info(String msg){
-        logger.log(Level.INFO, "Redis operation: " + msg);
+    /**
+     * Имя канала в бинарном виде
+     * @param name - имя
+     * @return имя в UTF-8
+     */
+    protected byte[] rawName(String name) {
+        return SafeEncoder.encode(name);
+    }
+
+    /**
+     * Конфигурация сервиса
+     */
+    protected RedisConfig getConfig() {
+        return config;
+    }
+
+    /**
+     * Метрики сжатия значений
+     */
+    public CompressionStats getCompressionStats() {
+        return compressor.getStats();
+    }
+
+    /**
+     * Объединение одновременных чтений и его метрики
+     */
+    public SingleFlight getSingleFlight() {
+        return singleFlight;
+    }
+
+    /**
+     * Неблокирующий диспетчер pub/sub на выделенном соединении, см. {@link PubSubDispatcher}.
+     * Через него работают все подписки сервиса: одно соединение на все каналы и паттерны.
+     * Создаётся при первом обращении и закрывается вместе с сервисом
+     */
+    public PubSubDispatcher getDispatcher() {
+        if (dispatcher == null) {
+            synchronized (_lock) {
+                if (dispatcher == null) {
+                    dispatcher = new PubSubDispatcher(config, this::message,
+                            (type, message) -> deserialize(type, message, () -> "pub/sub message"));
+                }
+            }
+        }
+        return dispatcher;
     }
 
     //region Базовые операции
 
     /**
-     * Сохранить объект в Redis, как сериализованную в json строку
+     * Сохранить объект в Redis, сериализованный кодеком сервиса (по умолчанию в json)
      * https://redis.io/commands/set
      *
      * @param key    - идентификатор
      * @param object - объект
      */
     public <T, TKey> void put(TKey key, T object) {
-        String msg = "Save object key: " + key.toString() + " type: " + object.getClass().getName();
+        Func<String> msg = () -> "Save object key: " + key.toString() + " type: " + object.getClass().getName();
         try {
-            String json = serialize(object, () -> msg);
-            String result = client.set(key.toString(), json);
-            info("code: " + result + " " + msg);
+            byte[] value = serialize(object, msg);
+            byte[] rawKey = rawKey(key);
+            String result = executeWrite(rawKey, jedis -> jedis.set(rawKey, value));
+            log.success("put", msg, result);
         } catch (Exception sex) {
-            fail(msg + " ex: " + sex.getMessage());
+            fail("put", msg, sex);
         }
     }
 
     /**
      * Сохранить объект в Redis, как поток байт
      * https://redis.io/commands/set
-     * @deprecated для СЭ будет нагляднее видеть json в redis-cli консоли, и нормальная сериализация сильно экономит память
+     * @deprecated значения и так сохраняются потоком байт кодека сервиса (см. codecs.ICodec), метод равносилен {@link #put(Object, Object)}
      * @param key    - идентификатор
      * @param object - объект
      */
     public <T, TKey> void bput(TKey key, T object) {
-        String msg = "Save object key: " + key.toString() + " type: " + object.getClass().getName();
-        try {
-            String json = serialize(object, () -> msg);
-            String result = client.set(key.toString().getBytes(), json.getBytes());
-            info("code: " + result + " " + msg);
-        } catch (Exception sex) {
-            fail(msg + " ex: " + sex.getMessage());
-        }
+        put(key, object);
     }
 
     /**
-     * Сохранить объект в Redis на заданное время TTL(time to life), как сериализованную в json строку
+     * Сохранить объект в Redis на заданное время TTL(time to life), сериализованный кодеком сервиса (по умолчанию в json)
      *
      * @param key    - идентификатор
      * @param object - объект
      * @param expire - TTL время в секундах через которое объект будет уничтожен
      */
     public <T, TKey> void put(TKey key, T object, long expire) {
-        String msg = "Save object key: " + key.toString() + " type: " + object.getClass();
+        Func<String> msg = () -> "Save object key: " + key.toString() + " type: " + object.getClass();
+        try {
+            byte[] value = serialize(object, msg);
+            byte[] rawKey = rawKey(key);
+            String result = executeWrite(rawKey, jedis -> jedis.setex(rawKey, seconds(expire), value));
+            log.success("put", msg, result);
+        } catch (Exception sex) {
+            fail("put", msg, sex);
+        }
+    }
+
+    /**
+     * TTL для SETEX, который принимает секунды числом int
+     * @param expire - TTL в секундах
+     * @throws IllegalArgumentException если TTL не помещается в int
+     */
+    static int seconds(long expire) {
+        if (expire > Integer.MAX_VALUE || expire < Integer.MIN_VALUE) {
+            throw new IllegalArgumentException("Expire " + expire + " sec is out of SETEX range");
+        }
+        return (int) expire;
+    }
+
+    /**
+     * Сохранить набор объектов в Redis за один запрос, сериализованные кодеком сервиса (по умолчанию в json)
+     * https://redis.io/commands/mset
+     *
+     * @param objects - объекты по идентификаторам
+     */
+    public <T, TKey> void putAll(Map<TKey, T> objects) {
+        if (objects == null || objects.isEmpty()) return;
+        Func<String> msg = () -> "Save objects count: " + objects.size();
+        try {
+            byte[][] keys = new byte[objects.size()][];
+            byte[][] values = new byte[objects.size()][];
+            int i = 0;
+            for (Map.Entry<TKey, T> entry : objects.entrySet()) {
+                keys[i] = rawKey(entry.getKey());
+                values[i++] = serialize(entry.getValue(), msg);
+            }
+            List<String> result = executeWritePerNode(keys, (jedis, indices) -> {
+                byte[][] keysValues = new byte[indices.length * 2][];
+                for (int j = 0; j < indices.length; j++) {
+                    keysValues[j * 2] = keys[indices[j]];
+                    keysValues[j * 2 + 1] = values[indices[j]];
+                }
+                return jedis.mset(keysValues);
+            });
+            log.success("putAll", msg, result.toString());
+        } catch (Exception sex) {
+            fail("putAll", msg, sex);
+        }
+    }
+
+    /**
+     * Сохранить набор объектов в Redis на заданное время TTL(time to life) одним пакетом команд (pipeline)
+     * https://redis.io/commands/setex
+     *
+     * @param objects - объекты по идентификаторам
+     * @param expire  - TTL время в секундах через которое объекты будут уничтожены
+     */
+    public <T, TKey> void putAll(Map<TKey, T> objects, long expire) {
+        if (objects == null || objects.isEmpty()) return;
+        Func<String> msg = () -> "Save objects count: " + objects.size() + " expire: " + expire + " sec";
         try {
-            String json = serialize(object, () -> msg);
-            String result = client.set(key.toString(), json, "", "", expire);
-            info("code: " + result + " " + msg);
+            int seconds = seconds(expire);
+            byte[][] keys = new byte[objects.size()][];
+            byte[][] values = new byte[objects.size()][];
+            int i = 0;
+            for (Map.Entry<TKey, T> entry : objects.entrySet()) {
+                keys[i] = rawKey(entry.getKey());
+                values[i++] = serialize(entry.getValue(), msg);
+            }
+            executeWritePerNode(keys, (jedis, indices) -> {
+                Pipeline pipeline = jedis.pipelined();
+                for (int j : indices) {
+                    pipeline.setex(keys[j], seconds, values[j]);
+                }
+                pipeline.sync();
+                return null;
+            });
+            log.success("putAll", msg);
         } catch (Exception sex) {
-            fail(msg + " ex: " + sex.getMessage());
+            fail("putAll", msg, sex);
         }
     }
 
@@ -138,13 +716,14 @@ public class RedisService implements IRedisService {
      */
     public <TKey> boolean expire(TKey key, int expire) {
         boolean result = false;
-        String msg = "change expire for key: " + key.toString() + " to: " + expire + " sec";
+        Func<String> msg = () -> "change expire for key: " + key.toString() + " to: " + expire + " sec";
         try {
-            long code = client.expire(key.toString(), expire);
+            byte[] rawKey = rawKey(key);
+            long code = executeWrite(rawKey, jedis -> jedis.expire(rawKey, expire));
             result = code > 0;
-            info("result: " + result + " code: " + code + " " + msg);
+            log.success("expire", msg, code);
         } catch (Exception sex) {
-            fail(msg + " ex: " + sex.getMessage());
+            fail("expire", msg, sex);
         }
         return result;
     }
@@ -159,13 +738,14 @@ public class RedisService implements IRedisService {
      */
     public <TKey> boolean expireAt(TKey key, long unixTime) {
         boolean result = false;
-        String msg = "change expire for key: " + key.toString() + " to unix time: " + unixTime;
+        Func<String> msg = () -> "change expire for key: " + key.toString() + " to unix time: " + unixTime;
         try {
-            long code = client.expireAt(key.toString(), unixTime);
+            byte[] rawKey = rawKey(key);
+            long code = executeWrite(rawKey, jedis -> jedis.expireAt(rawKey, unixTime));
             result = code > 0;
-            info("result: " + result + " code: " + code + " " + msg);
+            log.success("expireAt", msg, code);
         } catch (Exception sex) {
-            fail(msg + " ex: " + sex.getMessage());
+            fail("expireAt", msg, sex);
         }
         return result;
     }
@@ -178,13 +758,14 @@ public class RedisService implements IRedisService {
      */
     public <TKey> long ttl(TKey key) {
         long result = 0;
-        String msg = "get ttl for key: " + key.toString();
+        Func<String> msg = () -> "get ttl for key: " + key.toString();
         try {
-            result = client.ttl(key.toString());
-            info("result: " + result + " " + msg);
+            byte[] rawKey = rawKey(key);
+            result = executeRead(rawKey, jedis -> jedis.ttl(rawKey));
+            log.success("ttl", msg, result);
             if(result < 0) result = -1;
         } catch (Exception sex) {
-            fail(msg + " ex: " + sex.getMessage());
+            fail("ttl", msg, sex);
         }
         return result;
     }
@@ -198,12 +779,13 @@ public class RedisService implements IRedisService {
      */
     public <TKey> boolean exist(TKey key) {
         boolean result = false;
-        String msg = "check exist for key: " + key.toString();
+        Func<String> msg = () -> "check exist for key: " + key.toString();
         try {
-            result = client.exists(key.toString());
-            info("result: " + result + " " + msg);
+            byte[] rawKey = rawKey(key);
+            result = singleFlight.call(flight("exist"), null, rawKey, () -> executeRead(rawKey, jedis -> jedis.exists(rawKey)));
+            log.success("exist", msg, result);
         } catch (Exception sex) {
-            fail(msg + " ex: " + sex.getMessage());
+            fail("exist", msg, sex);
         }
         return result;
     }
@@ -217,38 +799,80 @@ public class RedisService implements IRedisService {
     @Override
     public <TKey> long exists(TKey... keys) {
         long result = 0;
-        StringBuilder sb = new StringBuilder();
-        String[] sKeys = new String[keys.length];
+        byte[][] sKeys = new byte[keys.length][];
         for (int i = 0; i < keys.length; i++) {
-            sb.append(keys[i]);
-            sKeys[i] = keys[i].toString();
-            if(i < keys.length - 1) sb.append(", ");
+            sKeys[i] = rawKey(keys[i]);
         }
-        String msg = "check exists for keys: " + sb.toString();
+        Func<String> msg = () -> "check exists for keys: " + keysToLog(keys);
         try {
-            result = client.exists(sKeys);
-            info("result: " + result + " " + msg);
+            result = sum(executeReadPerNode(sKeys, (jedis, indices) -> jedis.exists(select(sKeys, indices))));
+            log.success("exists", msg, result);
         } catch (Exception sex) {
-            fail(msg + " ex: " + sex.getMessage());
+            fail("exists", msg, sex);
         }
         return result;
     }
 
     /**
      * Получить объект из Redis по идентификатору, сериализовав его в указанный тип
+     * При {@link RedisConfig#isSingleFlight()} одновременные вызовы одного ключа получают один и тот же объект, изменять его нельзя
      * @param objectType - тип объекта в который десериализуем, пример: Foo.class
      * @param key - идентификатор
      * @return объект с типом T
      */
     public <T, TKey> T get(Class<T> objectType, TKey key) {
         T result = null;
-        String msg = "get object by key: " + key.toString() + " type: " + objectType.getName();
+        Func<String> msg = () -> "get object by key: " + key.toString() + " type: " + objectType.getName();
+        try {
+            byte[] rawKey = rawKey(key);
+            result = singleFlight.call(flight("get"), objectType, rawKey, () -> {
+                byte[] value = executeRead(rawKey, jedis -> jedis.get(rawKey));
+                T object = deserialize(objectType, value, msg);
+                log.successWithPayload("get", msg, value);
+                return object;
+            });
+        } catch (Exception sex) {
+            fail("get", msg, sex);
+        }
+        return result;
+    }
+
+    /**
+     * Получить набор объектов из Redis по идентификаторам за один запрос
+     * https://redis.io/commands/mget
+     * @param objectType - тип объекта в который десериализуем, пример: Foo.class
+     * @param keys - коллекция идентификаторов
+     * @return объекты по идентификаторам в порядке запроса, отсутствующих в Redis ключей в результате нет
+     */
+    public <T, TKey> Map<TKey, T> getAll(Class<T> objectType, Collection<TKey> keys) {
+        Map<TKey, T> result = new LinkedHashMap<>();
+        if (keys == null || keys.isEmpty()) return result;
+        List<TKey> keyList = new ArrayList<>(keys);
+        byte[][] sKeys = new byte[keyList.size()][];
+        for (int i = 0; i < sKeys.length; i++) {
+            sKeys[i] = rawKey(keyList.get(i));
+        }
+        Func<String> msg = () -> "get objects by keys count: " + sKeys.length + " type: " + objectType.getName();
         try {
-            String json = client.get(key.toString());
-            result = deserialize(objectType, json, () -> msg);
-            info("success: " + msg + " json: " + json);
+            byte[][] values = new byte[sKeys.length][];
+            executeReadPerNode(sKeys, (jedis, indices) -> {
+                List<byte[]> nodeValues = jedis.mget(select(sKeys, indices));
+                for (int j = 0; j < indices.length; j++) {
+                    values[indices[j]] = nodeValues.get(j);
+                }
+                return null;
+            });
+            for (int i = 0; i < sKeys.length; i++) {
+                byte[] value = values[i];
+                if (value == null) continue;
+                T object = deserialize(objectType, value, msg);
+                if (object != null) {
+                    result.put(keyList.get(i), object);
+                }
+            }
+            log.success("getAll", msg, result.size());
         } catch (Exception sex) {
-            fail(msg + " ex: " + sex.getMessage());
+            fail("getAll", msg, sex);
         }
         return result;
     }
@@ -261,12 +885,13 @@ public class RedisService implements IRedisService {
      */
     public <TKey> long delete(TKey key) {
         long result = 0;
-        String msg = "delete all with key: " + key.toString();
+        Func<String> msg = () -> "delete all with key: " + key.toString();
         try {
-            result = client.del(key.toString());
-            info("result: " + result + " " + msg);
+            byte[] rawKey = rawKey(key);
+            result = executeWrite(rawKey, jedis -> jedis.del(rawKey));
+            log.success("delete", msg, result);
         } catch (Exception sex) {
-            fail(msg + " ex: " + sex.getMessage());
+            fail("delete", msg, sex);
         }
         return result;
     }
@@ -280,25 +905,153 @@ public class RedisService implements IRedisService {
      */
     public <TKey> long delete(TKey... keys) {
         long result = 0;
-        StringBuilder sb = new StringBuilder();
-        String[] sKeys = new String[keys.length];
+        byte[][] sKeys = new byte[keys.length][];
         for (int i = 0; i < keys.length; i++) {
-            sb.append(keys[i]);
-            sKeys[i] = keys[i].toString();
-            if(i < keys.length - 1) sb.append(", ");
+            sKeys[i] = rawKey(keys[i]);
         }
-        String msg = "delete keys: " + sb.toString();
+        Func<String> msg = () -> "delete keys: " + keysToLog(keys);
         try {
-            result = client.del(sKeys);
-            info("result: " + result + " " + msg);
+            result = sum(executeWritePerNode(sKeys, (jedis, indices) -> jedis.del(select(sKeys, indices))));
+            log.success("delete", msg, result);
         } catch (Exception sex) {
-            fail(msg + " ex: " + sex.getMessage());
+            fail("delete", msg, sex);
         }
         return result;
     }
 
     //endregion
 
+    //region Обход ключей
+
+    /**
+     * Ключи по паттерну через курсор SCAN, без блокировки Redis как у KEYS.
+     * Поток ленивый: страницы запрашиваются по мере чтения, в памяти не больше одной страницы.
+     * SCAN может вернуть ключ повторно, ключи, добавленные во время обхода, могут не попасть в результат.
+     * При ошибке Redis поток заканчивается, ошибка пишется в лог
+     * https://redis.io/commands/scan
+     * @param pattern - паттерн ключей (MATCH), null - все ключи
+     * @param countHint - сколько ключей просматривать за запрос (COUNT), не больше 0 - по умолчанию Redis
+     * @return поток ключей без пространства имён, параллельный поток делится по узлам и страницам
+     */
+    public Stream<String> scanKeys(String pattern, int countHint) {
+        String match = keyCodec.pattern(pattern);
+        return StreamSupport.stream(new ScanSpliterator<>(this, nodes(), match, scanParams(match, countHint), false,
+                (key, value) -> keyCodec.decode(key)), false);
+    }
+
+    /**
+     * Объекты ключей по паттерну, см. {@link #scanKeys(String, int)}, страница из {@link #SCAN_COUNT} ключей
+     */
+    public <T> Stream<T> scanValues(Class<T> objectType, String pattern) {
+        return scanValues(objectType, pattern, SCAN_COUNT);
+    }
+
+    /**
+     * Объекты ключей по паттерну, см. {@link #scanKeys(String, int)}.
+     * Значения страницы читаются через MGET в одном обмене с сервером со SCAN следующей страницы.
+     * Ключи, удалённые до чтения значения, и значения, которые не удалось десериализовать, пропускаются
+     * @param objectType - тип объекта в который десериализуем, пример: Foo.class
+     * @param pattern - паттерн ключей (MATCH), null - все ключи
+     * @param countHint - сколько ключей просматривать за запрос (COUNT)
+     * @return поток объектов
+     */
+    public <T> Stream<T> scanValues(Class<T> objectType, String pattern, int countHint) {
+        String match = keyCodec.pattern(pattern);
+        return StreamSupport.stream(new ScanSpliterator<>(this, nodes(), match, scanParams(match, countHint), true,
+                (key, value) -> deserialize(objectType, value, () -> "scan value by key: " + SafeEncoder.encode(key))), false);
+    }
+
+    private static ScanParams scanParams(String pattern, int countHint) {
+        ScanParams params = new ScanParams();
+        if (pattern != null) params.match(pattern);
+        if (countHint > 0) params.count(countHint);
+        return params;
+    }
+
+    //endregion
+
+    //region Хранение по полям (hash)
+
+    /**
+     * Сохранить объект по полям в hash Redis, см. {@link HashMapping}: каждое поле объекта - отдельное поле hash,
+     * поля со значением null удаляются. Запись атомарна (MULTI/EXEC)
+     * https://redis.io/commands/hset
+     *
+     * @param key    - идентификатор
+     * @param object - объект
+     * @param fields - имена сохраняемых полей, пусто - все поля
+     */
+    public <T, TKey> void putFields(TKey key, T object, String... fields) {
+        Func<String> msg = () -> "save fields: " + Arrays.toString(fields) + " of object key: " + key.toString() + " type: " + object.getClass().getName();
+        try {
+            @SuppressWarnings("unchecked")
+            HashMapping<T> mapping = HashMapping.of((Class<T>) object.getClass());
+            List<byte[]> nulls = new ArrayList<>();
+            Map<byte[], byte[]> values = mapping.encode(object, fields, nulls);
+            byte[] rawKey = rawKey(key);
+            executeWrite(rawKey, jedis -> {
+                Transaction transaction = jedis.multi();
+                if (!values.isEmpty()) transaction.hmset(rawKey, values);
+                if (!nulls.isEmpty()) transaction.hdel(rawKey, nulls.toArray(new byte[0][]));
+                return transaction.exec();
+            });
+            log.success("putFields", msg, values.size());
+        } catch (Exception sex) {
+            fail("putFields", msg, sex);
+        }
+    }
+
+    /**
+     * Получить объект из полей hash Redis, сохранённого через {@link #putFields(Object, Object, String...)}.
+     * Читаются только запрошенные поля (HMGET), остальные поля объекта остаются со значениями по умолчанию
+     * https://redis.io/commands/hmget
+     *
+     * @param objectType - тип объекта в который десериализуем, пример: Foo.class
+     * @param key        - идентификатор
+     * @param fields     - имена читаемых полей, пусто - все поля
+     * @return объект, null если ключа нет или все запрошенные поля пусты
+     */
+    public <T, TKey> T getFields(Class<T> objectType, TKey key, String... fields) {
+        T result = null;
+        Func<String> msg = () -> "get fields: " + Arrays.toString(fields) + " of object key: " + key.toString() + " type: " + objectType.getName();
+        try {
+            HashMapping<T> mapping = HashMapping.of(objectType);
+            byte[][] names = mapping.rawNames(fields);
+            byte[] rawKey = rawKey(key);
+            List<byte[]> values = executeRead(rawKey, jedis -> jedis.hmget(rawKey, names));
+            result = mapping.decode(fields, values);
+            log.success("getFields", msg, result != null);
+        } catch (Exception sex) {
+            fail("getFields", msg, sex);
+        }
+        return result;
+    }
+
+    /**
+     * Изменить одно поле объекта, сохранённого через {@link #putFields(Object, Object, String...)}, без чтения объекта
+     * https://redis.io/commands/hset
+     *
+     * @param objectType - тип объекта, по нему определяется тип поля
+     * @param key        - идентификатор
+     * @param field      - имя поля
+     * @param value      - новое значение поля, null - поле удаляется
+     */
+    public <T, TKey> void updateField(Class<T> objectType, TKey key, String field, Object value) {
+        Func<String> msg = () -> "update field: " + field + " of object key: " + key.toString() + " type: " + objectType.getName();
+        try {
+            HashMapping<T> mapping = HashMapping.of(objectType);
+            byte[] name = mapping.rawNames(field)[0];
+            byte[] encoded = mapping.encodeField(field, value);
+            byte[] rawKey = rawKey(key);
+            long code = executeWrite(rawKey, jedis -> encoded == null ? jedis.hdel(rawKey, name) : jedis.hset(rawKey, name, encoded));
+            log.success("updateField", msg, code);
+        } catch (Exception sex) {
+            fail("updateField", msg, sex);
+        }
+    }
+
+    //endregion
+
     //region Очереди
 
     /**
@@ -309,12 +1062,13 @@ public class RedisService implements IRedisService {
      */
     public long queueSize(String queue) {
         long result = 0;
-        String msg = "get queue length: " + queue;
+        Func<String> msg = () -> "get queue length: " + queue;
         try {
-            result = client.llen(queue);
-            info("result: " + result + " " + msg);
+            byte[] name = rawKey(queue);
+            result = execute(name, jedis -> jedis.llen(name));
+            log.success("queueSize", msg, result);
         } catch (Exception sex) {
-            fail(msg + " ex: " + sex.getMessage());
+            fail("queueSize", msg, sex);
         }
         return result;
     }
@@ -328,13 +1082,14 @@ public class RedisService implements IRedisService {
      */
     public <T> long queueLeftPush(String queue, T object) {
         long result = 0;
-        String msg = "left push to queue: " + queue + " object type: " + object.getClass().getName();
+        Func<String> msg = () -> "left push to queue: " + queue + " object type: " + object.getClass().getName();
         try {
-            String json = serialize(object, () -> msg);
-            result = client.lpush(queue, json);
-            info("result: " + result + " " + msg);
+            byte[] value = serialize(object, msg);
+            byte[] name = rawKey(queue);
+            result = executeWrite(name, jedis -> jedis.lpush(name, value));
+            log.success("queueLeftPush", msg, result);
         } catch (Exception sex) {
-            fail(msg + " ex: " + sex.getMessage());
+            fail("queueLeftPush", msg, sex);
         }
         return result;
     }
@@ -349,13 +1104,71 @@ public class RedisService implements IRedisService {
      */
     public <T> long queueRightPush(String queue, T object) {
         long result = 0;
-        String msg = "right push to queue: " + queue + " object type: " + object.getClass().getName();
+        Func<String> msg = () -> "right push to queue: " + queue + " object type: " + object.getClass().getName();
+        try {
+            byte[] value = serialize(object, msg);
+            byte[] name = rawKey(queue);
+            result = executeWrite(name, jedis -> jedis.rpush(name, value));
+            log.success("queueRightPush", msg, result);
+        } catch (Exception sex) {
+            fail("queueRightPush", msg, sex);
+        }
+        return result;
+    }
+
+    /**
+     * Добавить объекты в начало очереди, результат как у последовательных {@link #queueLeftPush(String, Object)} в порядке коллекции.
+     * Объекты сериализуются за один проход и отправляются пакетом (pipeline) команд LPUSH по redis.queue.pushChunkSize объектов
+     * https://redis.io/commands/lpush
+     *
+     * @param queue   - имя очереди
+     * @param objects - объекты
+     * @return Длина списка после добавления
+     */
+    public <T> long queueLeftPushAll(String queue, Collection<T> objects) {
+        return pushAll("queueLeftPushAll", queue, objects, true);
+    }
+
+    /**
+     * Добавить объекты в конец очереди, результат как у последовательных {@link #queueRightPush(String, Object)} в порядке коллекции.
+     * Объекты сериализуются за один проход и отправляются пакетом (pipeline) команд RPUSH по redis.queue.pushChunkSize объектов
+     * https://redis.io/commands/rpush
+     *
+     * @param queue   - имя очереди
+     * @param objects - объекты
+     * @return Длина списка после добавления
+     */
+    public <T> long queueRightPushAll(String queue, Collection<T> objects) {
+        return pushAll("queueRightPushAll", queue, objects, false);
+    }
+
+    private <T> long pushAll(String operation, String queue, Collection<T> objects, boolean left) {
+        long result = 0;
+        if (objects == null || objects.isEmpty()) return result;
+        Func<String> msg = () -> operation + " to queue: " + queue + " objects count: " + objects.size();
         try {
-            String json = serialize(object, () -> msg);
-            result = client.rpush(queue, json);
-            info("result: " + result + " " + msg);
+            List<byte[]> values = new ArrayList<>(objects.size());
+            for (T object : objects) {
+                byte[] value = serialize(object, msg);
+                if (value != null) {
+                    values.add(value);
+                }
+            }
+            int chunk = Math.max(1, config.getQueuePushChunkSize());
+            byte[] name = rawKey(queue);
+            result = executeWrite(name, jedis -> {
+                Pipeline pipeline = jedis.pipelined();
+                Response<Long> length = null;
+                for (int from = 0; from < values.size(); from += chunk) {
+                    byte[][] args = values.subList(from, Math.min(from + chunk, values.size())).toArray(new byte[0][]);
+                    length = left ? pipeline.lpush(name, args) : pipeline.rpush(name, args);
+                }
+                pipeline.sync();
+                return length == null ? 0L : length.get();
+            });
+            log.success(operation, msg, result);
         } catch (Exception sex) {
-            fail(msg + " ex: " + sex.getMessage());
+            fail(operation, msg, sex);
         }
         return result;
     }
@@ -369,13 +1182,116 @@ public class RedisService implements IRedisService {
      */
     public <T> T dequeueAndPush(Class<T> objectType, String queue, String to) {
         T result = null;
-        String msg = "get and remove from queue: " + queue + " and push to temp queue: " + to + " object type: " + objectType.getName();
+        Func<String> msg = () -> "get and remove from queue: " + queue + " and push to temp queue: " + to + " object type: " + objectType.getName();
         try {
-            String json = client.rpoplpush(queue, to);
-            result = deserialize(objectType, json, () -> msg);
-            info("success: " + msg + " json: " + json);
+            byte[] source = rawKey(queue);
+            byte[] target = rawKey(to);
+            byte[] value = executeWrite(new byte[][]{source, target}, jedis -> jedis.rpoplpush(source, target));
+            result = deserialize(objectType, value, msg);
+            log.successWithPayload("dequeueAndPush", msg, value);
         } catch (Exception sex) {
-            fail(msg + " ex: " + sex.getMessage());
+            fail("dequeueAndPush", msg, sex);
+        }
+        return result;
+    }
+
+    /**
+     * Атомарно получить один объект из конца списка и добавить его в локальный список, ожидая появления объекта до таймаута.
+     * https://redis.io/commands/brpoplpush
+     * Соединение из пула занято на время ожидания
+     *
+     * @param queue   - имя очереди из которой удаляется и возвращается объект
+     * @param to      - имя локальной очередь в которую добавляется копия объекта
+     * @param timeout - время ожидания в секундах, 0 - без ограничения
+     * @return объект из очереди, null если за время ожидания очередь осталась пустой
+     */
+    public <T> T dequeueAndPush(Class<T> objectType, String queue, String to, int timeout) {
+        T result = null;
+        Func<String> msg = () -> "wait, get and remove from queue: " + queue + " and push to temp queue: " + to + " object type: " + objectType.getName();
+        try {
+            byte[] source = rawKey(queue);
+            byte[] target = rawKey(to);
+            byte[] value = executeWrite(new byte[][]{source, target}, jedis -> jedis.brpoplpush(source, target, timeout));
+            result = deserialize(objectType, value, msg);
+            log.successWithPayload("dequeueAndPush", msg, value);
+        } catch (Exception sex) {
+            fail("dequeueAndPush", msg, sex);
+        }
+        return result;
+    }
+
+    /**
+     * Атомарно получить до max объектов из конца очереди (из очереди удаляются), одной транзакцией MULTI/EXEC из LRANGE и LTRIM
+     * https://redis.io/commands/ltrim
+     *
+     * @param objectType - тип объекта
+     * @param queue      - имя очереди
+     * @param max        - максимальное число объектов
+     * @return объекты в порядке извлечения (как при последовательных извлечениях из конца очереди), пустой список если очередь пуста
+     */
+    public <T> List<T> dequeueBatch(Class<T> objectType, String queue, int max) {
+        List<T> result = new ArrayList<>();
+        if (max <= 0) return result;
+        Func<String> msg = () -> "get and remove up to: " + max + " from queue: " + queue + " object type: " + objectType.getName();
+        try {
+            byte[] name = rawKey(queue);
+            List<byte[]> values = executeWrite(name, jedis -> {
+                Transaction transaction = jedis.multi();
+                Response<List<byte[]>> range = transaction.lrange(name, -max, -1);
+                transaction.ltrim(name, 0, -max - 1);
+                transaction.exec();
+                return range.get();
+            });
+            for (int i = values.size() - 1; i >= 0; i--) {
+                T object = deserialize(objectType, values.get(i), msg);
+                if (object != null) {
+                    result.add(object);
+                }
+            }
+            log.success("dequeueBatch", msg, result.size());
+        } catch (Exception sex) {
+            fail("dequeueBatch", msg, sex);
+        }
+        return result;
+    }
+
+    /**
+     * Атомарно получить до max объектов из конца очереди и добавить их в локальную очередь, как при последовательных
+     * {@link #dequeueAndPush(Class, String, String)}, но одной транзакцией MULTI/EXEC из RPOPLPUSH за один запрос. Отказоустойчиво.
+     *
+     * @param objectType - тип объекта
+     * @param queue      - имя очереди из которой удаляются и возвращаются объекты
+     * @param to         - имя локальной очереди в которую добавляются копии объектов
+     * @param max        - максимальное число объектов
+     * @return объекты в порядке извлечения, пустой список если очередь пуста
+     */
+    public <T> List<T> dequeueBatchAndPush(Class<T> objectType, String queue, String to, int max) {
+        List<T> result = new ArrayList<>();
+        if (max <= 0) return result;
+        Func<String> msg = () -> "get and remove up to: " + max + " from queue: " + queue + " and push to temp queue: " + to + " object type: " + objectType.getName();
+        try {
+            byte[] source = rawKey(queue);
+            byte[] target = rawKey(to);
+            List<Response<byte[]>> values = executeWrite(new byte[][]{source, target}, jedis -> {
+                Transaction transaction = jedis.multi();
+                List<Response<byte[]>> responses = new ArrayList<>(max);
+                for (int i = 0; i < max; i++) {
+                    responses.add(transaction.rpoplpush(source, target));
+                }
+                transaction.exec();
+                return responses;
+            });
+            for (Response<byte[]> value : values) {
+                byte[] raw = value.get();
+                if (raw == null) break;
+                T object = deserialize(objectType, raw, msg);
+                if (object != null) {
+                    result.add(object);
+                }
+            }
+            log.success("dequeueBatchAndPush", msg, result.size());
+        } catch (Exception sex) {
+            fail("dequeueBatchAndPush", msg, sex);
         }
         return result;
     }
@@ -389,18 +1305,19 @@ public class RedisService implements IRedisService {
      *               count > 0: Remove elements equal to value moving from head to tail.
      *               count > 0: Remove elements equal to value moving from tail to head.
      *               count = 0: Remove all elements equal to value.
-     * @param object - объект равный которому необходимо удалять, сериализуется в json строку для сравнения
+     * @param object - объект равный которому необходимо удалять, сериализуется кодеком сервиса для сравнения
      * @return число удалённых из очереди
      */
     public <T> long removeFromQueue(String queue, int count, T object) {
         long result = 0;
-        String msg = "remove from queue: " + queue + " count: " + count + " removed object type: " + object.getClass().getName();
+        Func<String> msg = () -> "remove from queue: " + queue + " count: " + count + " removed object type: " + object.getClass().getName();
         try {
-            String json = serialize(object, () -> msg);
-            result = client.lrem(queue, count, json);
-            info("result: " + result + " " + msg);
+            byte[] value = serialize(object, msg);
+            byte[] name = rawKey(queue);
+            result = executeWrite(name, jedis -> jedis.lrem(name, count, value));
+            log.success("removeFromQueue", msg, result);
         } catch (Exception sex) {
-            fail(msg + " ex: " + sex.getMessage());
+            fail("removeFromQueue", msg, sex);
         }
         return result;
     }
@@ -417,15 +1334,281 @@ public class RedisService implements IRedisService {
      * @param stop
      */
     public void trimQueue(String queue, long start, long stop) {
-        String msg = "trim queue: " + queue + " to size from: " + start + " end: " + stop;
+        Func<String> msg = () -> "trim queue: " + queue + " to size from: " + start + " end: " + stop;
+        try {
+            byte[] name = rawKey(queue);
+            String result = executeWrite(name, jedis -> jedis.ltrim(name, start, stop));
+            log.success("trimQueue", msg, result);
+        } catch (Exception sex) {
+            fail("trimQueue", msg, sex);
+        }
+    }
+
+    /**
+     * Запустить надёжного потребителя очереди, см. {@link ReliableQueueConsumer}.
+     * Настройки - redis.queue.* конфигурации сервиса
+     *
+     * @param objectType - тип объекта
+     * @param queue      - имя очереди
+     * @param handler    - обработчик объекта, исключение означает неуспешную обработку
+     * @return запущенный потребитель, останавливается через close()
+     */
+    public <T> ReliableQueueConsumer<T> consume(Class<T> objectType, String queue, ActionOneParam<T> handler) {
+        return new ReliableQueueConsumer<>(this, objectType, queue, handler);
+    }
+
+
+    //endregion
+
+    //region Транзакции
+
+    /**
+     * Выполнить команды атомарно одной транзакцией MULTI/EXEC за один запрос
+     * https://redis.io/topics/transactions
+     *
+     * @param body - тело, добавляет команды в транзакцию, исключение в нём отменяет транзакцию
+     * @return true если транзакция выполнена
+     */
+    public boolean transaction(ActionOneParam<RedisTransaction> body) {
+        Func<String> msg = () -> "transaction";
+        RedisTransaction transaction = new RedisTransaction(this);
+        try {
+            run(transaction, body);
+            committed(transaction.getModified());
+            log.success("transaction", msg, transaction.size());
+            return true;
+        } catch (Exception sex) {
+            fail("transaction", msg, sex);
+        } finally {
+            written(transaction.getModified());
+            transaction.close();
+        }
+        return false;
+    }
+
+    /**
+     * Оптимистичная транзакция: WATCH ключей, чтения через {@link RedisTransaction#read(Class, Object)}, затем команды одной транзакцией MULTI/EXEC.
+     * Если ключи изменились между WATCH и EXEC, транзакция не выполняется и тело вызывается заново
+     * https://redis.io/topics/transactions#optimistic-locking-using-check-and-set
+     *
+     * @param keys    - идентификаторы, изменение которых отменяет транзакцию
+     * @param retries - число повторов после конфликта
+     * @param body    - тело, читает значения и добавляет команды в транзакцию, исключение в нём отменяет транзакцию без повтора
+     * @return true если транзакция выполнена, false при ошибке или конфликте на всех попытках
+     */
+    public <TKey> boolean watch(Collection<TKey> keys, int retries, ActionOneParam<RedisTransaction> body) {
+        byte[][] sKeys = new byte[keys.size()][];
+        int i = 0;
+        for (TKey key : keys) {
+            sKeys[i++] = rawKey(key);
+        }
+        Func<String> msg = () -> "watch keys: " + keys + " retries: " + retries;
+        try {
+            for (int attempt = 0; attempt <= retries; attempt++) {
+                RedisTransaction transaction = new RedisTransaction(this);
+                try {
+                    transaction.watch(sKeys);
+                    if (run(transaction, body)) {
+                        committed(transaction.getModified());
+                        log.success("watch", msg, attempt + 1);
+                        return true;
+                    }
+                } finally {
+                    written(transaction.getModified());
+                    transaction.close();
+                }
+            }
+            throw new WatchConflictException("watch", msg.call(), retries + 1);
+        } catch (Exception sex) {
+            fail("watch", msg, sex);
+        }
+        return false;
+    }
+
+    /**
+     * Выполняет тело и EXEC, при ошибке в теле отменяет транзакцию
+     * @return false, если транзакция прервана изменением ключей под WATCH
+     */
+    private boolean run(RedisTransaction transaction, ActionOneParam<RedisTransaction> body) {
         try {
-            String result = client.ltrim(queue, start, stop);
-            info("code: " + result + " " + msg);
+            body.call(transaction);
+        } catch (RuntimeException ex) {
+            try {
+                transaction.discard();
+            } catch (RuntimeException ignored) {
+                // соединение вернётся в пул сломанным или будет сброшено при возврате
+            }
+            throw ex;
+        }
+        return transaction.exec();
+    }
+
+    /**
+     * Ключи транзакции изменены (или могли быть изменены), см. {@link SingleFlight#written(byte[]...)}
+     */
+    private void written(Collection<String> keys) {
+        if (keys.isEmpty()) return;
+        byte[][] raw = new byte[keys.size()][];
+        int i = 0;
+        for (String key : keys) {
+            raw[i++] = SafeEncoder.encode(key);
+        }
+        singleFlight.written(raw);
+    }
+
+    /**
+     * Вызывается после выполнения транзакции
+     * @param keys - изменённые транзакцией ключи и очереди
+     */
+    protected void committed(Collection<String> keys) {
+    }
+
+    //endregion
+
+    //region Скрипты
+
+    /**
+     * Реестр Lua скриптов сервиса
+     */
+    public ScriptRegistry getScripts() {
+        return scripts;
+    }
+
+    /**
+     * Выполнить Lua скрипт через EVALSHA (при NOSCRIPT - через EVAL), скрипт регистрируется в реестре сервиса
+     * https://redis.io/commands/evalsha
+     *
+     * @param script - скрипт
+     * @param keys   - ключи (KEYS) в бинарном виде
+     * @param args   - аргументы (ARGV) в бинарном виде
+     * @return ответ скрипта: Long, byte[], List или null, null при ошибке
+     */
+    public Object eval(RedisScript script, List<byte[]> keys, List<byte[]> args) {
+        Object result = null;
+        Func<String> msg = () -> "eval " + script + " keys: " + keys.size();
+        try {
+            scripts.register(script);
+            result = executeWrite(keys.toArray(new byte[0][]), jedis -> scripts.eval(jedis, script, keys, args));
+            log.success("eval", msg);
         } catch (Exception sex) {
-            fail(msg + " ex: " + sex.getMessage());
+            fail("eval", msg, sex);
         }
+        return result;
     }
 
+    /**
+     * Получить объект и продлить время жизни ключа за один шаг на сервере, см. {@link BuiltinScripts#GET_AND_TOUCH}
+     *
+     * @param objectType - тип объекта
+     * @param key        - идентификатор
+     * @param expire     - новое время жизни в секундах
+     * @return объект или null, если ключа нет
+     */
+    public <T, TKey> T getAndTouch(Class<T> objectType, TKey key, int expire) {
+        T result = null;
+        Func<String> msg = () -> "get and touch object by key: " + key.toString() + " expire: " + expire + " type: " + objectType.getName();
+        try {
+            byte[] rawKey = rawKey(key);
+            byte[] value = (byte[]) execute(rawKey, jedis -> scripts.eval(jedis, BuiltinScripts.GET_AND_TOUCH,
+                    Collections.singletonList(rawKey), Collections.singletonList(SafeEncoder.encode(String.valueOf(expire)))));
+            result = deserialize(objectType, value, msg);
+            log.successWithPayload("getAndTouch", msg, value);
+        } catch (Exception sex) {
+            fail("getAndTouch", msg, sex);
+        }
+        return result;
+    }
+
+    /**
+     * Записать объект, если текущее значение ключа равно ожидаемому, за один шаг на сервере, см. {@link BuiltinScripts#COMPARE_AND_SET}.
+     * Значения сравниваются в сериализованном виде
+     *
+     * @param key      - идентификатор
+     * @param expected - ожидаемый объект, null - ключа не должно быть
+     * @param object   - новый объект
+     * @return true если объект записан
+     */
+    public <T, TKey> boolean compareAndSet(TKey key, T expected, T object) {
+        return compareAndSet(key, expected, object, 0);
+    }
+
+    /**
+     * Записать объект на заданное время, если текущее значение ключа равно ожидаемому, см. {@link #compareAndSet(Object, Object, Object)}
+     *
+     * @param key      - идентификатор
+     * @param expected - ожидаемый объект, null - ключа не должно быть
+     * @param object   - новый объект
+     * @param expire   - TTL время в секундах, 0 - без ограничения
+     * @return true если объект записан
+     */
+    public <T, TKey> boolean compareAndSet(TKey key, T expected, T object, long expire) {
+        boolean result = false;
+        Func<String> msg = () -> "compare and set object key: " + key.toString() + " type: " + object.getClass().getName();
+        try {
+            byte[] current = expected == null ? new byte[0] : serialize(expected, msg);
+            byte[] value = serialize(object, msg);
+            List<byte[]> args = Arrays.asList(SafeEncoder.encode(expected == null ? "0" : "1"), current, value,
+                    SafeEncoder.encode(String.valueOf(expire)));
+            byte[] rawKey = rawKey(key);
+            Object reply = executeWrite(rawKey, jedis -> scripts.eval(jedis, BuiltinScripts.COMPARE_AND_SET, Collections.singletonList(rawKey), args));
+            result = Long.valueOf(1).equals(reply);
+            log.success("compareAndSet", msg, result);
+        } catch (Exception sex) {
+            fail("compareAndSet", msg, sex);
+        }
+        return result;
+    }
+
+    /**
+     * Удалить объект, если его значение равно ожидаемому, за один шаг на сервере, см. {@link BuiltinScripts#DELETE_IF_EQUALS}.
+     * Значения сравниваются в сериализованном виде
+     *
+     * @param key      - идентификатор
+     * @param expected - ожидаемый объект
+     * @return true если объект удалён
+     */
+    public <T, TKey> boolean deleteIfEquals(TKey key, T expected) {
+        boolean result = false;
+        Func<String> msg = () -> "delete if equals key: " + key.toString() + " type: " + expected.getClass().getName();
+        try {
+            byte[] value = serialize(expected, msg);
+            byte[] rawKey = rawKey(key);
+            Object reply = executeWrite(rawKey, jedis -> scripts.eval(jedis, BuiltinScripts.DELETE_IF_EQUALS,
+                    Collections.singletonList(rawKey), Collections.singletonList(value)));
+            result = Long.valueOf(1).equals(reply);
+            log.success("deleteIfEquals", msg, result);
+        } catch (Exception sex) {
+            fail("deleteIfEquals", msg, sex);
+        }
+        return result;
+    }
+
+    /**
+     * Подтвердить обработанный объект и взять следующий за один шаг на сервере, см. {@link BuiltinScripts#ACK_AND_POP}.
+     * Объект удаляется из локальной очереди по сериализованному значению
+     *
+     * @param objectType - тип объекта
+     * @param queue      - имя очереди из которой удаляется и возвращается следующий объект
+     * @param to         - имя локальной очереди обработки
+     * @param acked      - обработанный объект
+     * @return следующий объект из очереди, null если очередь пуста
+     */
+    public <T> T ackAndDequeue(Class<T> objectType, String queue, String to, T acked) {
+        T result = null;
+        Func<String> msg = () -> "ack in temp queue: " + to + " and get next from queue: " + queue + " object type: " + objectType.getName();
+        try {
+            byte[] ack = serialize(acked, msg);
+            byte[] source = rawKey(queue);
+            byte[] target = rawKey(to);
+            byte[] value = (byte[]) executeWrite(new byte[][]{source, target}, jedis -> scripts.eval(jedis, BuiltinScripts.ACK_AND_POP,
+                    Arrays.asList(target, source), Collections.singletonList(ack)));
+            result = deserialize(objectType, value, msg);
+            log.successWithPayload("ackAndDequeue", msg, value);
+        } catch (Exception sex) {
+            fail("ackAndDequeue", msg, sex);
+        }
+        return result;
+    }
 
     //endregion
 
@@ -452,27 +1635,7 @@ public class RedisService implements IRedisService {
      * @param channels      - коллекция имён каналов, на котрые подписываемся
      */
     public void subscribe(ActionTwoParams<String, String> onMessage, ActionTwoParams<String, Integer> onSubscribe, ActionTwoParams<String, Integer> onUnsubscribe, String... channels) {
-        client.subscribe(
-                new JedisPubSub() {
-                    @Override
-                    public void onMessage(String channel, String message) {
-                        super.onMessage(channel, message);
-                        onMessage.call(channel, message);
-                    }
-
-                    @Override
-                    public void onSubscribe(String channel, int subscribedChannels) {
-                        super.onSubscribe(channel, subscribedChannels);
-                        onSubscribe.call(channel, subscribedChannels);
-                    }
-
-                    @Override
-                    public void onUnsubscribe(String channel, int subscribedChannels) {
-                        super.onUnsubscribe(channel, subscribedChannels);
-                        onUnsubscribe.call(channel, subscribedChannels);
-                    }
-                }
-                , channels);
+        subscribe(new ActionSubscriber(onMessage, onSubscribe, onUnsubscribe), channels);
     }
 
     /**
@@ -482,45 +1645,7 @@ public class RedisService implements IRedisService {
      * @param channels - коллекция имён каналов, на котрые подписываемся
      */
     public void subscribe(ISubscriber listener, String... channels) {
-        client.subscribe(
-                new JedisPubSub() {
-                    @Override
-                    public void onMessage(String channel, String message) {
-                        super.onMessage(channel, message);
-                        listener.onMessage(channel, message);
-                    }
-
-                    @Override
-                    public void onPMessage(String pattern, String channel, String message) {
-                        super.onPMessage(pattern, channel, message);
-                        listener.onPMessage(pattern, channel, message);
-                    }
-
-                    @Override
-                    public void onSubscribe(String channel, int subscribedChannels) {
-                        super.onSubscribe(channel, subscribedChannels);
-                        listener.onSubscribe(channel, subscribedChannels);
-                    }
-
-                    @Override
-                    public void onUnsubscribe(String channel, int subscribedChannels) {
-                        super.onUnsubscribe(channel, subscribedChannels);
-                        listener.onUnsubscribe(channel, subscribedChannels);
-                    }
-
-                    @Override
-                    public void onPUnsubscribe(String pattern, int subscribedChannels) {
-                        super.onPUnsubscribe(pattern, subscribedChannels);
-                        listener.onPUnsubscribe(pattern, subscribedChannels);
-                    }
-
-                    @Override
-                    public void onPSubscribe(String pattern, int subscribedChannels) {
-                        super.onPSubscribe(pattern, subscribedChannels);
-                        listener.onPSubscribe(pattern, subscribedChannels);
-                    }
-                }
-                , channels);
+        getDispatcher().subscribe(listener, channels);
     }
 
     /**
@@ -532,27 +1657,7 @@ public class RedisService implements IRedisService {
      * @param patterns      - коллекция паттернов имён каналов, на котрые подписываемся
      */
     public void psubscribe(ActionTwoParams<String, String> onMessage, ActionTwoParams<String, Integer> onSubscribe, ActionTwoParams<String, Integer> onUnsubscribe, String... patterns) {
-        client.subscribe(
-                new JedisPubSub() {
-                    @Override
-                    public void onMessage(String channel, String message) {
-                        super.onMessage(channel, message);
-                        onMessage.call(channel, message);
-                    }
-
-                    @Override
-                    public void onSubscribe(String channel, int subscribedChannels) {
-                        super.onSubscribe(channel, subscribedChannels);
-                        onSubscribe.call(channel, subscribedChannels);
-                    }
-
-                    @Override
-                    public void onUnsubscribe(String channel, int subscribedChannels) {
-                        super.onUnsubscribe(channel, subscribedChannels);
-                        onUnsubscribe.call(channel, subscribedChannels);
-                    }
-                }
-                , patterns);
+        psubscribe(new ActionSubscriber(onMessage, onSubscribe, onUnsubscribe), patterns);
     }
 
     /**
@@ -562,45 +1667,29 @@ public class RedisService implements IRedisService {
      * @param patterns - коллекция паттернов имён каналов, на котрые подписываемся
      */
     public void psubscribe(ISubscriber listener, String... patterns) {
-        client.subscribe(
-                new JedisPubSub() {
-                    @Override
-                    public void onMessage(String channel, String message) {
-                        super.onMessage(channel, message);
-                        listener.onMessage(channel, message);
-                    }
-
-                    @Override
-                    public void onPMessage(String pattern, String channel, String message) {
-                        super.onPMessage(pattern, channel, message);
-                        listener.onPMessage(pattern, channel, message);
-                    }
-
-                    @Override
-                    public void onSubscribe(String channel, int subscribedChannels) {
-                        super.onSubscribe(channel, subscribedChannels);
-                        listener.onSubscribe(channel, subscribedChannels);
-                    }
-
-                    @Override
-                    public void onUnsubscribe(String channel, int subscribedChannels) {
-                        super.onUnsubscribe(channel, subscribedChannels);
-                        listener.onUnsubscribe(channel, subscribedChannels);
-                    }
+        getDispatcher().psubscribe(listener, patterns);
+    }
 
-                    @Override
-                    public void onPUnsubscribe(String pattern, int subscribedChannels) {
-                        super.onPUnsubscribe(pattern, subscribedChannels);
-                        listener.onPUnsubscribe(pattern, subscribedChannels);
-                    }
+    /**
+     * Типизированная подписка на канал: сообщение декодируется кодеком сервиса один раз на доставку,
+     * один и тот же объект получают все типизированные подписчики канала, изменять его нельзя.
+     * Парная отправка - {@link #publish(String, Object)}
+     * @param type      - тип объекта сообщения
+     * @param channel   - имя канала
+     * @param onMessage - обработчик полученного объекта
+     */
+    public <T> void subscribe(Class<T> type, String channel, ActionOneParam<T> onMessage) {
+        subscribe(new TypedSubscriber<>(type, (name, message) -> onMessage.call(message)), channel);
+    }
 
-                    @Override
-                    public void onPSubscribe(String pattern, int subscribedChannels) {
-                        super.onPSubscribe(pattern, subscribedChannels);
-                        listener.onPSubscribe(pattern, subscribedChannels);
-                    }
-                }
-                , patterns);
+    /**
+     * Типизированная подписка на каналы по паттерну, см. {@link #subscribe(Class, String, ActionOneParam)}
+     * @param type      - тип объекта сообщения
+     * @param pattern   - паттерн имён каналов
+     * @param onMessage - обработчик, получает имя канала и объект
+     */
+    public <T> void psubscribe(Class<T> type, String pattern, ActionTwoParams<String, T> onMessage) {
+        psubscribe(new TypedSubscriber<>(type, onMessage), pattern);
     }
 
     /**
@@ -611,12 +1700,12 @@ public class RedisService implements IRedisService {
      */
     public long publish(String channel, String message) {
         long result = 0;
-        String msg = "publish message to channel: " + channel + " message type: " + message.getClass().getName();
+        Func<String> msg = () -> "publish message to channel: " + channel + " message type: " + message.getClass().getName();
         try {
-            result = client.publish(channel, message);
-            info("result: received to " + result + " subscriber " + msg);
+            result = execute(rawName(channel), jedis -> jedis.publish(channel, message));
+            log.success("publish", msg, result);
         } catch (Exception sex) {
-            fail(msg + " ex: " + sex.getMessage());
+            fail("publish", msg, sex);
         }
         return result;
     }
@@ -624,29 +1713,41 @@ public class RedisService implements IRedisService {
     /**
      * Отправить объект(уведомление-контекст) в указанный канал
      * @param channel - канал
-     * @param message - объект отправляемый в канал, будет сериализован в json строку
+     * @param message - объект отправляемый в канал, будет сериализован кодеком сервиса (подписчики со строковыми обработчиками получат его как UTF-8 строку, что осмысленно для json)
      * @return возвращает количество получивших клиентов, 0 если никто не получил
      */
     public <T> long publish(String channel, T message) {
         long result = 0;
-        String msg = "publish message to channel: " + channel + " message type: " + message.getClass().getName();
+        Func<String> msg = () -> "publish message to channel: " + channel + " message type: " + message.getClass().getName();
         try {
-            String json = serialize(message, () -> msg);
-            result = client.publish(channel, json);
-            info("result: received to " + result + " subscriber " + msg);
+            byte[] value = serialize(message, msg);
+            result = execute(rawName(channel), jedis -> jedis.publish(rawName(channel), value));
+            log.success("publish", msg, result);
         } catch (Exception sex) {
-            fail(msg + " ex: " + sex.getMessage());
+            fail("publish", msg, sex);
         }
         return result;
     }
 
     /**
-     * Отписка от указанных каналов
+     * Отписка всех обработчиков от указанных каналов и паттернов с такими именами
      *
-     * @param channels
+     * @param channels - имена каналов или паттернов, без имён - отписка от всего
      */
     public void unsubscribe(String... channels) {
-        client.unsubscribe(channels);
+        PubSubDispatcher current = dispatcher;
+        if (current == null) return;
+        current.unsubscribeAll(channels);
+        current.punsubscribeAll(channels);
+    }
+
+    /**
+     * Текст сообщения pub/sub: распакованное, если оно было сжато, значение в UTF-8
+     * @param message - сообщение из Redis
+     * @return текст сообщения
+     */
+    protected String message(byte[] message) {
+        return SafeEncoder.encode(compressor.decompress(message));
     }
 
     //endregion
@@ -0,0 +1,347 @@
+package services;
+
+import clients.EsiaJedis;
+import clients.EsiaJedisPool;
+import interfaces.Func;
+import redis.clients.jedis.Transaction;
+import redis.clients.util.SafeEncoder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Транзакция MULTI/EXEC на одном соединении пула, см. {@link IRedisService#transaction(interfaces.ActionOneParam)}.
+ * Команды копятся в буфере клиента и уходят в Redis вместе с EXEC за один запрос, результаты доступны через {@link TransactionResult} после выполнения.
+ * Соединение берётся у узла первого ключа транзакции через его выключатель (clients.CircuitBreaker), все остальные ключи должны принадлежать тому же узлу (при шардировании - общий hash tag).
+ * Чтения {@link #read(Class, Object)} выполняются сразу и разрешены только до первой команды транзакции,
+ * вместе с {@link IRedisService#watch(java.util.Collection, int, interfaces.ActionOneParam)} это проверка и запись без гонок.
+ * Объект действителен только внутри тела транзакции и не потокобезопасен
+ */
+public class RedisTransaction {
+
+    private final RedisService service;
+
+    /**
+     * Ключ, по которому выбран узел транзакции
+     */
+    private byte[] anchor;
+
+    private EsiaJedisPool pool;
+
+    private EsiaJedis jedis;
+
+    /**
+     * Таймаут команд соединения, 0 - soTimeout
+     */
+    private int timeout;
+
+    /**
+     * Открывается первой командой, до неё соединение принимает обычные команды (чтения под WATCH)
+     */
+    private Transaction transaction;
+
+    private final List<TransactionResult<?>> results = new ArrayList<>();
+
+    /**
+     * Ключи и очереди, изменяемые транзакцией
+     */
+    private final Set<String> modified = new LinkedHashSet<>();
+
+    RedisTransaction(RedisService service) {
+        this.service = service;
+    }
+
+    /**
+     * Соединение транзакции, при первом обращении берётся из пула узла ключа
+     */
+    private EsiaJedis connection(byte[] key) {
+        if (jedis == null) {
+            anchor = key;
+            pool = service.pool(key);
+            jedis = RedisService.borrow(pool);
+            timeout = service.commandTimeout();
+            if (timeout > 0) jedis.setCommandTimeout(timeout);
+        } else {
+            service.route(anchor, key);
+        }
+        return jedis;
+    }
+
+    private Transaction multi(byte[] key) {
+        EsiaJedis connection = connection(key);
+        if (transaction == null) {
+            transaction = connection.multi();
+        }
+        return transaction;
+    }
+
+    private <T> TransactionResult<T> add(TransactionResult<T> result) {
+        results.add(result);
+        return result;
+    }
+
+    private byte[] rawKey(Object key) {
+        byte[] raw = service.rawKey(key);
+        modified.add(SafeEncoder.encode(raw));
+        return raw;
+    }
+
+    private <T> byte[] value(T object, Func<String> toLog) {
+        byte[] value = service.serialize(object, toLog);
+        if (value == null) {
+            throw new IllegalArgumentException("can't serialize " + toLog.call());
+        }
+        return value;
+    }
+
+    //region Чтение до транзакции
+
+    /**
+     * Прочитать объект сразу, на соединении транзакции. Под WATCH - значение, изменение которого после чтения отменит транзакцию
+     * @param objectType - тип объекта
+     * @param key - идентификатор
+     * @return объект или null
+     * @throws IllegalStateException - в транзакции уже есть команды
+     */
+    public <T, TKey> T read(Class<T> objectType, TKey key) {
+        if (transaction != null) {
+            throw new IllegalStateException("read after first transaction command, use get");
+        }
+        byte[] raw = service.rawKey(key);
+        return service.deserialize(objectType, connection(raw).get(raw), () -> "read in transaction key: " + key);
+    }
+
+    //endregion
+
+    //region Базовые операции
+
+    /**
+     * Сохранить объект, см. {@link IRedisService#put(Object, Object)}
+     * @return true если сохранён
+     */
+    public <T, TKey> TransactionResult<Boolean> put(TKey key, T object) {
+        byte[] value = value(object, () -> "Save object key: " + key);
+        byte[] raw = rawKey(key);
+        return add(new TransactionResult<>(multi(raw).set(raw, value), "OK"::equals));
+    }
+
+    /**
+     * Сохранить объект с временем жизни, см. {@link IRedisService#put(Object, Object, long)}
+     * @return true если сохранён
+     * @throws IllegalArgumentException если expire не помещается в int секунд SETEX
+     */
+    public <T, TKey> TransactionResult<Boolean> put(TKey key, T object, long expire) {
+        int seconds = RedisService.seconds(expire);
+        byte[] value = value(object, () -> "Save object key: " + key);
+        byte[] raw = rawKey(key);
+        return add(new TransactionResult<>(multi(raw).setex(raw, seconds, value), "OK"::equals));
+    }
+
+    /**
+     * Получить объект, результат доступен после выполнения транзакции
+     */
+    public <T, TKey> TransactionResult<T> get(Class<T> objectType, TKey key) {
+        byte[] raw = service.rawKey(key);
+        return add(new TransactionResult<>(multi(raw).get(raw),
+                value -> service.deserialize(objectType, value, () -> "get in transaction key: " + key)));
+    }
+
+    /**
+     * Задать время жизни в секундах, см. {@link IRedisService#expire(Object, int)}
+     * @return true при успехе, false если ключа нет
+     */
+    public <TKey> TransactionResult<Boolean> expire(TKey key, int expire) {
+        byte[] raw = rawKey(key);
+        return add(new TransactionResult<>(multi(raw).expire(raw, expire), value -> value == 1));
+    }
+
+    /**
+     * Задать время окончания жизни, см. {@link IRedisService#expireAt(Object, long)}
+     * @return true при успехе, false если ключа нет
+     */
+    public <TKey> TransactionResult<Boolean> expireAt(TKey key, long unixTime) {
+        byte[] raw = rawKey(key);
+        return add(new TransactionResult<>(multi(raw).expireAt(raw, unixTime), value -> value == 1));
+    }
+
+    /**
+     * Оставшееся время жизни в секундах, см. {@link IRedisService#ttl(Object)}
+     */
+    public <TKey> TransactionResult<Long> ttl(TKey key) {
+        byte[] raw = service.rawKey(key);
+        return add(new TransactionResult<>(multi(raw).ttl(raw), value -> value));
+    }
+
+    /**
+     * Существует ли объект
+     */
+    public <TKey> TransactionResult<Boolean> exist(TKey key) {
+        byte[] raw = service.rawKey(key);
+        return add(new TransactionResult<>(multi(raw).exists(raw), value -> value));
+    }
+
+    /**
+     * Удалить объекты
+     * @return число удалённых объектов
+     */
+    @SafeVarargs
+    public final <TKey> TransactionResult<Long> delete(TKey... keys) {
+        byte[][] sKeys = new byte[keys.length][];
+        for (int i = 0; i < keys.length; i++) {
+            sKeys[i] = rawKey(keys[i]);
+        }
+        return add(new TransactionResult<>(multi(service.route(sKeys)).del(sKeys), value -> value));
+    }
+
+    //endregion
+
+    //region Очереди
+
+    /**
+     * Длина очереди
+     */
+    public TransactionResult<Long> queueSize(String queue) {
+        byte[] raw = service.rawKey(queue);
+        return add(new TransactionResult<>(multi(raw).llen(raw), value -> value));
+    }
+
+    /**
+     * Добавить объект в начало очереди
+     * @return длина очереди после добавления
+     */
+    public <T> TransactionResult<Long> queueLeftPush(String queue, T object) {
+        byte[] value = value(object, () -> "left push to queue: " + queue);
+        byte[] raw = rawKey(queue);
+        return add(new TransactionResult<>(multi(raw).lpush(raw, value), result -> result));
+    }
+
+    /**
+     * Добавить объект в конец очереди
+     * @return длина очереди после добавления
+     */
+    public <T> TransactionResult<Long> queueRightPush(String queue, T object) {
+        byte[] value = value(object, () -> "right push to queue: " + queue);
+        byte[] raw = rawKey(queue);
+        return add(new TransactionResult<>(multi(raw).rpush(raw, value), result -> result));
+    }
+
+    /**
+     * Получить объект из конца очереди и добавить его в начало очереди to, см. {@link IRedisService#dequeueAndPush(Class, String, String)}
+     */
+    public <T> TransactionResult<T> dequeueAndPush(Class<T> objectType, String queue, String to) {
+        byte[] source = rawKey(queue);
+        byte[] target = rawKey(to);
+        return add(new TransactionResult<>(multi(service.route(source, target)).rpoplpush(source, target),
+                value -> service.deserialize(objectType, value, () -> "dequeue in transaction from queue: " + queue)));
+    }
+
+    /**
+     * Удалить из очереди объекты равные заданному, см. {@link IRedisService#removeFromQueue(String, int, Object)}
+     * @return число удалённых
+     */
+    public <T> TransactionResult<Long> removeFromQueue(String queue, int count, T object) {
+        byte[] value = value(object, () -> "remove from queue: " + queue);
+        byte[] raw = rawKey(queue);
+        return add(new TransactionResult<>(multi(raw).lrem(raw, count, value), result -> result));
+    }
+
+    /**
+     * Обрезать очередь, см. {@link IRedisService#trimQueue(String, long, long)}
+     */
+    public TransactionResult<Boolean> trimQueue(String queue, long start, long stop) {
+        byte[] raw = rawKey(queue);
+        return add(new TransactionResult<>(multi(raw).ltrim(raw, start, stop), "OK"::equals));
+    }
+
+    //endregion
+
+    /**
+     * Опубликовать сообщение в канал при выполнении транзакции
+     * @return число получивших сообщение подписчиков
+     */
+    public TransactionResult<Long> publish(String channel, String message) {
+        byte[] raw = service.rawName(channel);
+        return add(new TransactionResult<>(multi(raw).publish(raw, SafeEncoder.encode(message)), value -> value));
+    }
+
+    /**
+     * Число команд в транзакции
+     */
+    public int size() {
+        return results.size();
+    }
+
+    //region Выполнение
+
+    /**
+     * WATCH ключей до начала транзакции
+     */
+    void watch(byte[][] keys) {
+        if (keys.length > 0) {
+            connection(service.route(keys)).watch(keys);
+        }
+    }
+
+    /**
+     * Отправляет EXEC. Без команд транзакция не открывается, только снимается WATCH
+     * @return true если выполнена, false если прервана изменением ключей под WATCH
+     */
+    boolean exec() {
+        if (transaction == null) {
+            if (jedis != null) {
+                jedis.unwatch();
+            }
+            return true;
+        }
+        List<Object> replies = transaction.exec();
+        transaction = null;
+        // Jedis возвращает пустой список вместо null-ответа EXEC, а непустая транзакция всегда отвечает хотя бы одним результатом
+        if (replies == null || replies.isEmpty()) {
+            return false;
+        }
+        for (TransactionResult<?> result : results) {
+            result.executed();
+        }
+        return true;
+    }
+
+    /**
+     * Отменяет транзакцию после ошибки в её теле
+     */
+    void discard() {
+        if (transaction != null) {
+            transaction.discard();
+            transaction = null;
+        } else if (jedis != null) {
+            jedis.unwatch();
+        }
+    }
+
+    /**
+     * Возвращает соединение в пул
+     */
+    void close() {
+        if (jedis == null) return;
+        if (jedis.getClient().isBroken() || (timeout > 0 && !RedisService.resetCommandTimeout(jedis))) {
+            pool.getBreaker().onFailure();
+            pool.returnBrokenResource(jedis);
+        } else {
+            pool.getBreaker().onSuccess();
+            pool.returnResource(jedis);
+        }
+        jedis = null;
+        transaction = null;
+    }
+
+    /**
+     * Ключи и очереди, изменённые выполненной транзакцией
+     */
+    Set<String> getModified() {
+        return Collections.unmodifiableSet(modified);
+    }
+
+    //endregion
+}
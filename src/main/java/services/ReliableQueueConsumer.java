@@ -0,0 +1,435 @@
+package services;
+
+import clients.EsiaJedisShards;
+import configs.RedisConfig;
+import interfaces.ActionOneParam;
+import interfaces.Func;
+import redis.clients.jedis.Pipeline;
+import redis.clients.util.SafeEncoder;
+
+import java.io.Closeable;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Надёжный потребитель очереди поверх BRPOPLPUSH (см. {@link IRedisService#dequeueAndPush(Class, String, String, int)}).
+ * Рабочие потоки ждут объект в очереди и атомарно переносят его в список обработки потребителя,
+ * после успешной обработки объект удаляется из списка обработки (LREM, подтверждение),
+ * при ошибке обработчика - возвращается в начало очереди и будет обработан повторно после остальных.
+ * Неуспешные обработки объекта считаются в hash {queue}:attempts по SHA-1 значения, после maxAttempts попыток объект
+ * переносится в список {queue}:dead (см. {@link #getDeadLetterQueue()}), как и объект, который не удалось десериализовать.
+ * Потребитель продлевает ключ-пульс с TTL visibilityTimeout, фоновая задача (reaper) возвращает в очередь
+ * объекты потребителей, пульс которых истёк, то есть упавших процессов.
+ * Ключи: {queue}:consumers - множество потребителей, {queue}:processing:id - список обработки, {queue}:consumer:id - пульс,
+ * {queue}:attempts - число неуспешных обработок, {queue}:dead - объекты, которые не удалось обработать.
+ * Имя очереди в них - hash tag (если в имени очереди уже есть тег, используется он), поэтому при шардировании
+ * все ключи потребителя лежат на узле очереди, см. {@link EsiaJedisShards#tagged(String)}. Все ключи, как и ключи сервиса,
+ * строятся в пространстве имён сервиса. С пространством имён и шардированием имя очереди должно само быть тегом, например {orders}:
+ * иначе очередь и список обработки попадают на разные узлы, и конструктор бросает exceptions.CrossNodeKeysException.
+ * Каждый рабочий поток занимает соединение пула на время ожидания, размер пула должен это учитывать.
+ * Создаётся сервисом ({@link RedisService#consume(Class, String, ActionOneParam)}) и, как {@link RedisTransaction},
+ * работает через его соединения, кодек и лог
+ * @param <T> - тип объекта очереди
+ */
+public class ReliableQueueConsumer<T> implements Closeable {
+
+    private static final byte[] ALIVE = SafeEncoder.encode("1");
+
+    private final RedisService service;
+
+    private final Class<T> type;
+
+    private final String queue;
+
+    private final ActionOneParam<T> handler;
+
+    private final String id = UUID.randomUUID().toString();
+
+    private final String processing;
+
+    /**
+     * Очередь в бинарном виде, по ней выбирается узел всех команд потребителя
+     */
+    private final byte[] node;
+
+    private final byte[] processingKey;
+
+    private final byte[] consumers;
+
+    private final byte[] heartbeatKey;
+
+    private final byte[] member;
+
+    private final int pollTimeout;
+
+    private final int visibilityTimeout;
+
+    private final int maxAttempts;
+
+    private final byte[] attempts;
+
+    private final byte[] dead;
+
+    private final List<Thread> workers = new ArrayList<>();
+
+    private final ScheduledExecutorService scheduler;
+
+    private volatile boolean closed;
+
+    private final LongAdder processed = new LongAdder();
+
+    private final LongAdder failed = new LongAdder();
+
+    private final LongAdder recovered = new LongAdder();
+
+    private final LongAdder deadLettered = new LongAdder();
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private volatile double throughput;
+
+    private long lastProcessed;
+
+    private long lastTick = System.nanoTime();
+
+    /**
+     * Создаёт и запускает потребителя, см. {@link RedisService#consume(Class, String, ActionOneParam)}
+     * @param service - сервис, через соединения которого работает потребитель, настройки - его redis.queue.*
+     * @param type - тип объекта очереди
+     * @param queue - имя очереди
+     * @param handler - обработчик объекта, исключение означает неуспешную обработку
+     */
+    ReliableQueueConsumer(RedisService service, Class<T> type, String queue, ActionOneParam<T> handler) {
+        RedisConfig config = service.getConfig();
+        this.service = service;
+        this.type = type;
+        this.queue = queue;
+        this.handler = handler;
+        this.processing = processingName(queue, id);
+        this.processingKey = service.rawKey(processing);
+        this.consumers = service.rawKey(consumersName(queue));
+        this.heartbeatKey = service.rawKey(heartbeatName(queue, id));
+        this.member = SafeEncoder.encode(id);
+        this.pollTimeout = Math.max(1, config.getQueuePollTimeout());
+        this.visibilityTimeout = Math.max(1, config.getQueueVisibilityTimeout());
+        this.maxAttempts = config.getQueueMaxAttempts();
+        this.attempts = service.rawKey(attemptsName(queue));
+        this.dead = service.rawKey(deadName(queue));
+        this.node = service.route(service.rawKey(queue), processingKey, consumers, heartbeatKey, attempts, dead);
+        heartbeat();
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "redis-queue-reaper-" + queue);
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(1, visibilityTimeout * 1000L / 3);
+        scheduler.scheduleWithFixedDelay(this::tick, period, period, TimeUnit.MILLISECONDS);
+        for (int i = 0; i < Math.max(1, config.getQueueWorkers()); i++) {
+            Thread worker = new Thread(this::work, "redis-queue-" + queue + "-" + i);
+            worker.setDaemon(true);
+            workers.add(worker);
+            worker.start();
+        }
+    }
+
+    private static String consumersName(String queue) {
+        return EsiaJedisShards.tagged(queue) + ":consumers";
+    }
+
+    private static String processingName(String queue, String id) {
+        return EsiaJedisShards.tagged(queue) + ":processing:" + id;
+    }
+
+    private static String heartbeatName(String queue, String id) {
+        return EsiaJedisShards.tagged(queue) + ":consumer:" + id;
+    }
+
+    private static String attemptsName(String queue) {
+        return EsiaJedisShards.tagged(queue) + ":attempts";
+    }
+
+    private static String deadName(String queue) {
+        return EsiaJedisShards.tagged(queue) + ":dead";
+    }
+
+    //region Обработка
+
+    private void work() {
+        byte[] source = service.rawKey(queue);
+        byte[] target = processingKey;
+        while (!closed) {
+            byte[] value;
+            try {
+                value = service.execute(node, jedis -> jedis.brpoplpush(source, target, pollTimeout));
+            } catch (Exception sex) {
+                if (closed) break;
+                service.log.fail("consume", () -> "wait queue: " + queue, sex);
+                sleep(pollTimeout * 1000L);
+                continue;
+            }
+            if (value != null) {
+                handle(value, target);
+            }
+        }
+    }
+
+    private void handle(byte[] value, byte[] target) {
+        inFlight.incrementAndGet();
+        Func<String> msg = () -> "consume from queue: " + queue + " object type: " + type.getName();
+        try {
+            T object = service.deserialize(type, value, msg);
+            if (object == null) {
+                failed.increment();
+                bury(value, target, () -> "can't deserialize object of queue: " + queue + " to type: " + type.getName());
+                return;
+            }
+            handler.call(object);
+            byte[] field = digest(value);
+            service.execute(node, jedis -> {
+                Pipeline pipeline = jedis.pipelined();
+                pipeline.lrem(target, 1, value);
+                pipeline.hdel(attempts, field);
+                pipeline.sync();
+                return null;
+            });
+            processed.increment();
+            service.log.success("consume", msg);
+        } catch (Exception sex) {
+            failed.increment();
+            service.log.fail("consume", msg, sex);
+            retry(value, target);
+        } finally {
+            inFlight.decrementAndGet();
+        }
+    }
+
+    /**
+     * Считает неуспешную обработку: до maxAttempts объект возвращается в очередь, затем переносится в {queue}:dead
+     */
+    private void retry(byte[] value, byte[] target) {
+        long attempt;
+        try {
+            byte[] field = digest(value);
+            attempt = service.execute(node, jedis -> jedis.hincrBy(attempts, field, 1));
+        } catch (Exception sex) {
+            service.log.fail("consume", () -> "count attempts of queue: " + queue, sex);
+            attempt = 0;
+        }
+        if (maxAttempts > 0 && attempt >= maxAttempts) {
+            long total = attempt;
+            bury(value, target, () -> "object of queue: " + queue + " failed " + total + " times");
+        } else {
+            requeue(value, target);
+        }
+    }
+
+    /**
+     * Переносит объект из списка обработки в {queue}:dead одним пакетом команд: сначала LPUSH, потом LREM
+     */
+    private void bury(byte[] value, byte[] target, Func<String> reason) {
+        try {
+            byte[] field = digest(value);
+            service.execute(node, jedis -> {
+                Pipeline pipeline = jedis.pipelined();
+                pipeline.lpush(dead, value);
+                pipeline.lrem(target, 1, value);
+                pipeline.hdel(attempts, field);
+                pipeline.sync();
+                return null;
+            });
+            deadLettered.increment();
+            service.log.fail("consume", () -> reason.call() + ", moved to: " + deadName(queue));
+        } catch (Exception sex) {
+            service.log.fail("consume", () -> "move to dead letters of queue: " + queue + ", object stays in: " + processing, sex);
+        }
+    }
+
+    /**
+     * Поле счётчика попыток объекта - SHA-1 значения
+     */
+    private static byte[] digest(byte[] value) {
+        try {
+            return MessageDigest.getInstance("SHA-1").digest(value);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * Возвращает объект из списка обработки в начало очереди одним пакетом команд: сначала LPUSH, потом LREM,
+     * так что при обрыве между ними объект будет обработан повторно, но не потерян
+     */
+    private void requeue(byte[] value, byte[] target) {
+        try {
+            service.execute(node, jedis -> {
+                Pipeline pipeline = jedis.pipelined();
+                pipeline.lpush(service.rawKey(queue), value);
+                pipeline.lrem(target, 1, value);
+                pipeline.sync();
+                return null;
+            });
+        } catch (Exception sex) {
+            service.log.fail("consume", () -> "requeue to queue: " + queue + ", object stays in: " + processing, sex);
+        }
+    }
+
+    //endregion
+
+    //region Пульс и возврат объектов упавших потребителей
+
+    private void tick() {
+        try {
+            heartbeat();
+            reap();
+        } catch (Exception sex) {
+            service.log.fail("reaper", () -> "heartbeat or reap queue: " + queue, sex);
+        }
+        long now = System.nanoTime();
+        long total = processed.sum();
+        throughput = (total - lastProcessed) * 1e9 / Math.max(1, now - lastTick);
+        lastProcessed = total;
+        lastTick = now;
+    }
+
+    /**
+     * Продлевает пульс и заново регистрирует потребителя: после паузы дольше visibilityTimeout (GC, сеть) другой reaper
+     * мог исключить его из {queue}:consumers, и без повторной регистрации его список обработки больше никто бы не проверял
+     */
+    private void heartbeat() {
+        service.execute(node, jedis -> {
+            Pipeline pipeline = jedis.pipelined();
+            pipeline.setex(heartbeatKey, visibilityTimeout, ALIVE);
+            pipeline.sadd(consumers, member);
+            pipeline.sync();
+            return null;
+        });
+    }
+
+    /**
+     * Возвращает в очередь объекты потребителей без пульса. RPOPLPUSH атомарен, поэтому одновременная работа нескольких reaper'ов безопасна
+     */
+    private void reap() {
+        Set<byte[]> members = service.execute(node, jedis -> jedis.smembers(consumers));
+        for (byte[] raw : members) {
+            String consumer = SafeEncoder.encode(raw);
+            if (consumer.equals(id)) continue;
+            byte[] heartbeat = service.rawKey(heartbeatName(queue, consumer));
+            boolean alive = service.execute(node, jedis -> jedis.exists(heartbeat));
+            if (alive) continue;
+            byte[] source = service.rawKey(processingName(queue, consumer));
+            byte[] target = service.rawKey(queue);
+            long count = 0;
+            while (service.execute(node, jedis -> jedis.rpoplpush(source, target)) != null) {
+                count++;
+            }
+            service.execute(node, jedis -> jedis.srem(consumers, raw));
+            recovered.add(count);
+            long total = count;
+            service.log.success("reaper", () -> "requeue from dead consumer: " + consumer + " queue: " + queue, total);
+        }
+    }
+
+    //endregion
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Останавливает рабочие потоки после текущих запросов (не дольше pollTimeout) и возвращает необработанные объекты в очередь
+     */
+    public void close() {
+        closed = true;
+        scheduler.shutdownNow();
+        for (Thread worker : workers) {
+            try {
+                worker.join((pollTimeout + 1) * 1000L);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        try {
+            byte[] source = processingKey;
+            byte[] target = service.rawKey(queue);
+            while (service.execute(node, jedis -> jedis.rpoplpush(source, target)) != null) {
+                recovered.increment();
+            }
+            service.execute(node, jedis -> jedis.srem(consumers, member));
+            service.execute(node, jedis -> jedis.del(heartbeatKey));
+        } catch (Exception sex) {
+            service.log.fail("consume", () -> "close consumer of queue: " + queue, sex);
+        }
+    }
+
+    //region Метрики
+
+    /**
+     * Число успешно обработанных объектов
+     */
+    public long getProcessed() {
+        return processed.sum();
+    }
+
+    /**
+     * Число неуспешных обработок, объекты возвращены в очередь или перенесены в {queue}:dead
+     */
+    public long getFailed() {
+        return failed.sum();
+    }
+
+    /**
+     * Число объектов, возвращённых в очередь из списков обработки упавших или остановленных потребителей
+     */
+    public long getRecovered() {
+        return recovered.sum();
+    }
+
+    /**
+     * Число объектов, перенесённых в {queue}:dead
+     */
+    public long getDeadLettered() {
+        return deadLettered.sum();
+    }
+
+    /**
+     * Имя списка объектов, которые не удалось обработать: его можно читать и возвращать в очередь операциями очередей сервиса
+     */
+    public String getDeadLetterQueue() {
+        return deadName(queue);
+    }
+
+    /**
+     * Число объектов в обработке сейчас
+     */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * Пропускная способность, объектов в секунду за последний интервал пульса
+     */
+    public double getThroughput() {
+        return throughput;
+    }
+
+    //endregion
+
+    @Override
+    public String toString() {
+        return "queue consumer: " + queue + " processed: " + getProcessed() + " failed: " + getFailed() + " in flight: " + getInFlight();
+    }
+}
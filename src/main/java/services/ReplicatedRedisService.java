@@ -0,0 +1,228 @@
+package services;
+
+import clients.CircuitBreaker;
+import clients.EsiaJedis;
+import clients.EsiaJedisPool;
+import clients.EsiaJedisReplicas;
+import configs.RedisConfig;
+import interfaces.Func;
+import interfaces.FuncOneParam;
+import interfaces.FuncTwoParams;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link RedisService} с основным узлом для записи и репликами для чтения, см. {@link EsiaJedisReplicas}.
+ * На реплики идут только get, getAll, exist, exists и ttl, остальные операции (очереди, транзакции, скрипты) - на основной узел.
+ * Реплики отстают от основного узла, поэтому чтение сразу после записи может вернуть старое значение. Читать свои записи можно:
+ * для потока - {@link RedisConfig#getReadYourWritesMillis()} после его записи чтения идут на основной узел,
+ * для вызова - {@link #onPrimary(Func)}.
+ * Если реплика недоступна, чтение повторяется на основном узле
+ */
+public class ReplicatedRedisService extends RedisService {
+
+    private final EsiaJedisReplicas replicas;
+
+    private final long readYourWritesNanos;
+
+    /**
+     * Время последней записи потока, System.nanoTime()
+     */
+    private final ThreadLocal<long[]> lastWrite = ThreadLocal.withInitial(() -> new long[1]);
+
+    /**
+     * Глубина вложенных {@link #onPrimary(Func)} потока
+     */
+    private final ThreadLocal<int[]> primaryScope = ThreadLocal.withInitial(() -> new int[1]);
+
+    private final LongAdder replicaReads = new LongAdder();
+
+    private final LongAdder primaryReads = new LongAdder();
+
+    private final LongAdder fallbacks = new LongAdder();
+
+    /**
+     * Создаёт сервис с конфигурацией из redis.properties и системных свойств, см. {@link RedisConfig#load()}
+     */
+    public ReplicatedRedisService() {
+        this(RedisConfig.load());
+    }
+
+    /**
+     * @param config - конфигурация, основной узел - redis.host:redis.port, реплики из redis.replicas
+     */
+    public ReplicatedRedisService(RedisConfig config) {
+        super(config);
+        this.replicas = new EsiaJedisReplicas(config);
+        this.readYourWritesNanos = config.getReadYourWritesMillis() * 1000000L;
+        if (config.isPreWarm()) {
+            try {
+                replicas.preWarm(config.getMinIdle());
+            } catch (Exception sex) {
+                log.fail("preWarm", () -> "pre-warm " + replicas, sex);
+            }
+        }
+    }
+
+    public ReplicatedRedisService(EsiaJedisPool pool, EsiaJedisReplicas replicas, RedisConfig config) {
+        super(pool, config);
+        this.replicas = replicas;
+        this.readYourWritesNanos = config.getReadYourWritesMillis() * 1000000L;
+    }
+
+    /**
+     * Выполнить операции с чтением только с основного узла, например чтобы прочитать только что записанное
+     * @param body - операции сервиса
+     * @param <TResult> - тип результата
+     * @return результат body
+     */
+    public <TResult> TResult onPrimary(Func<TResult> body) {
+        int[] depth = primaryScope.get();
+        depth[0]++;
+        try {
+            return body.call();
+        } finally {
+            depth[0]--;
+        }
+    }
+
+    /**
+     * Выключатели основного узла и реплик
+     */
+    @Override
+    public List<CircuitBreaker> getBreakers() {
+        List<CircuitBreaker> result = super.getBreakers();
+        for (EsiaJedisPool replica : replicas.getPools()) {
+            result.add(replica.getBreaker());
+        }
+        return result;
+    }
+
+    /**
+     * Реплики сервиса
+     */
+    public EsiaJedisReplicas getReplicas() {
+        return replicas;
+    }
+
+    //region Выбор узла
+
+    private boolean readFromReplica() {
+        if (replicas.isEmpty() || primaryScope.get()[0] > 0) return false;
+        if (readYourWritesNanos <= 0) return true;
+        long last = lastWrite.get()[0];
+        return last == 0 || System.nanoTime() - last > readYourWritesNanos;
+    }
+
+    private void written() {
+        if (readYourWritesNanos > 0) {
+            long now = System.nanoTime();
+            lastWrite.get()[0] = now == 0 ? 1 : now;
+        }
+    }
+
+    @Override
+    protected <TResult> TResult executeRead(byte[] key, FuncOneParam<EsiaJedis, TResult> command) {
+        if (!readFromReplica()) {
+            primaryReads.increment();
+            return execute(pool(key), command);
+        }
+        try {
+            TResult result = replicas.execute(pool -> execute(pool, command));
+            replicaReads.increment();
+            return result;
+        } catch (JedisConnectionException ex) {
+            fallbacks.increment();
+            return execute(pool(key), command);
+        }
+    }
+
+    @Override
+    protected <TResult> List<TResult> executeReadPerNode(byte[][] keys, FuncTwoParams<EsiaJedis, int[], TResult> command) {
+        if (!readFromReplica()) {
+            primaryReads.increment();
+            return super.executePerNode(keys, command);
+        }
+        int[] indices = new int[keys.length];
+        for (int i = 0; i < indices.length; i++) {
+            indices[i] = i;
+        }
+        try {
+            TResult result = replicas.execute(pool -> execute(pool, jedis -> command.call(jedis, indices)));
+            replicaReads.increment();
+            return Collections.singletonList(result);
+        } catch (JedisConnectionException ex) {
+            fallbacks.increment();
+            return super.executePerNode(keys, command);
+        }
+    }
+
+    /**
+     * Чтения с основного узла (после своей записи, в {@link #onPrimary(Func)}) не присоединяются к чтениям с реплик
+     */
+    @Override
+    protected String flight(String operation) {
+        return readFromReplica() ? operation : operation + ":primary";
+    }
+
+    /**
+     * Все команды кроме чтений идут на основной узел и считаются записью для чтения своих записей
+     */
+    @Override
+    protected <TResult> TResult execute(byte[] key, FuncOneParam<EsiaJedis, TResult> command) {
+        written();
+        return super.execute(key, command);
+    }
+
+    @Override
+    protected <TResult> List<TResult> executePerNode(byte[][] keys, FuncTwoParams<EsiaJedis, int[], TResult> command) {
+        written();
+        return super.executePerNode(keys, command);
+    }
+
+    @Override
+    protected void committed(Collection<String> keys) {
+        written();
+        super.committed(keys);
+    }
+
+    //endregion
+
+    //region Метрики
+
+    /**
+     * Число чтений с реплик
+     */
+    public long getReplicaReads() {
+        return replicaReads.sum();
+    }
+
+    /**
+     * Число чтений с основного узла: без реплик, в {@link #onPrimary(Func)} или после своей записи
+     */
+    public long getPrimaryReads() {
+        return primaryReads.sum();
+    }
+
+    /**
+     * Число чтений, повторённых на основном узле из-за недоступной реплики
+     */
+    public long getFallbacks() {
+        return fallbacks.sum();
+    }
+
+    //endregion
+
+    /**
+     * Закрывает сервис и пулы реплик
+     */
+    @Override
+    public void close() {
+        super.close();
+        replicas.close();
+    }
+}
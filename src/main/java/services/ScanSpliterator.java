@@ -0,0 +1,164 @@
+package services;
+
+import clients.EsiaJedisPool;
+import interfaces.Func;
+import interfaces.FuncTwoParams;
+import redis.clients.jedis.ScanParams;
+import redis.clients.jedis.ScanResult;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+
+/**
+ * Ленивый обход ключей узлов по курсору SCAN, см. {@link RedisService#scanKeys(String, int)}.
+ * В памяти только одна страница: следующая страница запрашивается, когда закончилась текущая.
+ * При чтении значений MGET ключей страницы отправляется вместе со SCAN следующей страницы, один обмен с сервером на страницу.
+ * Разделение для параллельной обработки - сначала по узлам, на одном узле - по страницам.
+ * При ошибке Redis обход завершается, ошибка пишется в лог (при configs.RedisConfig#isThrowOnFailure() - бросается)
+ * @param <T> - тип элемента
+ */
+final class ScanSpliterator<T> implements Spliterator<T> {
+
+    private static final byte[][] NO_KEYS = new byte[0][];
+
+    private final RedisService service;
+
+    private final String pattern;
+
+    private final ScanParams params;
+
+    /**
+     * Читать ли значения ключей через MGET
+     */
+    private final boolean values;
+
+    /**
+     * Элемент по ключу и значению (null, если значения не читаются), null - элемент пропускается
+     */
+    private final FuncTwoParams<byte[], byte[], T> mapper;
+
+    /**
+     * Узлы, обход которых ещё не начат
+     */
+    private final Deque<EsiaJedisPool> nodes;
+
+    /**
+     * Текущий узел, null - не выбран
+     */
+    private EsiaJedisPool node;
+
+    /**
+     * Курсор текущего узла, null - обход узла по SCAN закончен
+     */
+    private byte[] cursor;
+
+    /**
+     * Ключи последней страницы, значения которых ещё не прочитаны
+     */
+    private byte[][] pending = NO_KEYS;
+
+    private final Deque<T> buffer = new ArrayDeque<>();
+
+    ScanSpliterator(RedisService service, List<EsiaJedisPool> nodes, String pattern, ScanParams params, boolean values, FuncTwoParams<byte[], byte[], T> mapper) {
+        this.service = service;
+        this.nodes = new ArrayDeque<>(nodes);
+        this.pattern = pattern;
+        this.params = params;
+        this.values = values;
+        this.mapper = mapper;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super T> action) {
+        if (buffer.isEmpty() && !fetch()) return false;
+        action.accept(buffer.poll());
+        return true;
+    }
+
+    @Override
+    public Spliterator<T> trySplit() {
+        int give = node == null ? nodes.size() / 2 : (nodes.size() + 1) / 2;
+        if (give > 0) {
+            List<EsiaJedisPool> split = new ArrayList<>(give);
+            for (int i = 0; i < give; i++) {
+                split.add(nodes.pollLast());
+            }
+            return new ScanSpliterator<>(service, split, pattern, params, values, mapper);
+        }
+        if (buffer.isEmpty() && !fetch()) return null;
+        Object[] page = buffer.toArray();
+        buffer.clear();
+        return Spliterators.spliterator(page, NONNULL);
+    }
+
+    @Override
+    public long estimateSize() {
+        return Long.MAX_VALUE;
+    }
+
+    @Override
+    public int characteristics() {
+        return NONNULL;
+    }
+
+    /**
+     * Читает страницы, пока в буфере не появятся элементы
+     * @return false, если обход закончен
+     */
+    private boolean fetch() {
+        Func<String> msg = () -> "scan keys by pattern: " + pattern + " values: " + values;
+        try {
+            while (buffer.isEmpty()) {
+                if (node == null) {
+                    node = nodes.poll();
+                    if (node == null) return false;
+                    cursor = ScanParams.SCAN_POINTER_START_BINARY;
+                }
+                byte[][] keys = pending;
+                byte[] next = cursor;
+                if (next == null && keys.length == 0) {
+                    node = null;
+                    continue;
+                }
+                List<byte[]> found = new ArrayList<>(keys.length);
+                ScanResult<byte[]> page = service.execute(node, jedis -> jedis.scanAndGet(next, params, keys, found));
+                for (int i = 0; i < keys.length; i++) {
+                    add(keys[i], found.get(i));
+                }
+                pending = NO_KEYS;
+                if (page == null) {
+                    node = null;
+                    continue;
+                }
+                if (values) {
+                    pending = page.getResult().toArray(NO_KEYS);
+                } else {
+                    for (byte[] key : page.getResult()) {
+                        add(key, null);
+                    }
+                }
+                byte[] nextCursor = page.getCursorAsBytes();
+                cursor = Arrays.equals(nextCursor, ScanParams.SCAN_POINTER_START_BINARY) ? null : nextCursor;
+            }
+            return true;
+        } catch (Exception sex) {
+            nodes.clear();
+            node = null;
+            pending = NO_KEYS;
+            service.fail("scan", msg, sex);
+            return !buffer.isEmpty();
+        }
+    }
+
+    private void add(byte[] key, byte[] value) {
+        if (values && value == null) return;
+        T element = mapper.call(key, value);
+        if (element != null) buffer.add(element);
+    }
+}
@@ -0,0 +1,250 @@
+package services;
+
+import clients.EsiaJedis;
+import clients.EsiaJedisPool;
+import clients.EsiaJedisShards;
+import configs.RedisConfig;
+import exceptions.CrossNodeKeysException;
+import interfaces.FuncOneParam;
+import interfaces.FuncTwoParams;
+import listeners.ISubscriber;
+import listeners.PubSubDispatcher;
+import redis.clients.util.SafeEncoder;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link RedisService} поверх нескольких узлов Redis с шардированием на клиенте, см. {@link EsiaJedisShards}.
+ * Узел команды выбирается по её ключу (очереди, каналу) консистентным хэшированием.
+ * Команды над несколькими ключами (getAll, putAll, exists, delete) разбиваются по узлам и выполняются на них параллельно.
+ * Команды, которым нужны несколько ключей на одном узле (dequeueAndPush, dequeueBatchAndPush, транзакции, скрипты), требуют общего hash tag ключей,
+ * например {orders} и {orders}:processing (см. {@link EsiaJedisShards#tagged(String)}). Имена очередей не тегируются автоматически,
+ * чтобы не менять ключи уже записанных данных: без общего тега такие команды бросают {@link CrossNodeKeysException}.
+ * Каналы pub/sub тоже распределяются по узлам по имени: публикация и подписка идут на узел канала.
+ * Подписка по паттерну ставится на всех узлах, поэтому onPSubscribe/onPUnsubscribe слушатель получает от каждого узла
+ */
+public class ShardedRedisService extends RedisService {
+
+    private final EsiaJedisShards shards;
+
+    private final ExecutorService executor;
+
+    private final Object _lock = new Object();
+
+    /**
+     * Диспетчеры pub/sub по узлам, создаются при первой подписке на канал узла
+     */
+    private final Map<EsiaJedisPool, PubSubDispatcher> dispatchers = new LinkedHashMap<>();
+
+    /**
+     * Создаёт сервис с конфигурацией из redis.properties и системных свойств, см. {@link RedisConfig#load()}
+     */
+    public ShardedRedisService() {
+        this(RedisConfig.load());
+    }
+
+    /**
+     * @param config - конфигурация, узлы из redis.shards
+     */
+    public ShardedRedisService(RedisConfig config) {
+        this(new EsiaJedisShards(config), config);
+        if (config.isPreWarm()) {
+            try {
+                shards.preWarm(config.getMinIdle());
+            } catch (Exception sex) {
+                log.fail("preWarm", () -> "pre-warm pools " + shards, sex);
+            }
+        }
+    }
+
+    public ShardedRedisService(EsiaJedisShards shards, RedisConfig config) {
+        super(shards.getPools().get(0), config);
+        this.shards = shards;
+        AtomicInteger threads = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(Math.max(1, shards.getPools().size() - 1), runnable -> {
+            Thread thread = new Thread(runnable, "redis-shards-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        loadScripts();
+    }
+
+    /**
+     * Узлы сервиса
+     */
+    public EsiaJedisShards getShards() {
+        return shards;
+    }
+
+    //region Выбор узла
+
+    @Override
+    protected List<EsiaJedisPool> nodes() {
+        return shards.getPools();
+    }
+
+    @Override
+    protected EsiaJedisPool pool(byte[] key) {
+        return shards.get(key);
+    }
+
+    @Override
+    protected byte[] route(byte[]... keys) {
+        if (keys.length == 0) return null;
+        EsiaJedisPool pool = shards.get(keys[0]);
+        for (int i = 1; i < keys.length; i++) {
+            if (shards.get(keys[i]) != pool) {
+                throw new CrossNodeKeysException("Keys " + SafeEncoder.encode(keys[0]) + " and " + SafeEncoder.encode(keys[i])
+                        + " belong to different shards, use common hash tag like {name} and {name}:suffix");
+            }
+        }
+        return keys[0];
+    }
+
+    /**
+     * Группы ключей разных узлов выполняются параллельно, последняя группа - в вызывающем потоке. Таймаут команд вызывающего потока действует на все группы
+     */
+    @Override
+    protected <TResult> List<TResult> executePerNode(byte[][] keys, FuncTwoParams<EsiaJedis, int[], TResult> command) {
+        List<Map.Entry<EsiaJedisPool, int[]>> groups = new ArrayList<>(shards.group(keys).entrySet());
+        List<CompletableFuture<TResult>> futures = new ArrayList<>(groups.size());
+        int timeout = commandTimeout();
+        for (int i = 0; i < groups.size() - 1; i++) {
+            Map.Entry<EsiaJedisPool, int[]> group = groups.get(i);
+            futures.add(CompletableFuture.supplyAsync(() -> withTimeout(timeout,
+                    () -> execute(group.getKey(), jedis -> command.call(jedis, group.getValue()))), executor));
+        }
+        List<TResult> result = new ArrayList<>(groups.size());
+        TResult last = null;
+        if (!groups.isEmpty()) {
+            Map.Entry<EsiaJedisPool, int[]> group = groups.get(groups.size() - 1);
+            last = execute(group.getKey(), jedis -> command.call(jedis, group.getValue()));
+        }
+        for (CompletableFuture<TResult> future : futures) {
+            result.add(join(future));
+        }
+        if (!groups.isEmpty()) {
+            result.add(last);
+        }
+        return result;
+    }
+
+    @Override
+    protected <TResult> List<TResult> executeOnAllNodes(FuncOneParam<EsiaJedis, TResult> command) {
+        // вызов из конструктора RedisService, узлы ещё не заданы: скрипты будут загружены конструктором этого класса
+        if (shards == null) return new ArrayList<>();
+        List<CompletableFuture<TResult>> futures = new ArrayList<>();
+        for (EsiaJedisPool pool : shards.getPools()) {
+            futures.add(CompletableFuture.supplyAsync(() -> execute(pool, command), executor));
+        }
+        List<TResult> result = new ArrayList<>(futures.size());
+        for (CompletableFuture<TResult> future : futures) {
+            result.add(join(future));
+        }
+        return result;
+    }
+
+    private static <TResult> TResult join(CompletableFuture<TResult> future) {
+        try {
+            return future.join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw ex;
+        }
+    }
+
+    //endregion
+
+    //region PUB/SUB
+
+    /**
+     * Диспетчер pub/sub узла, которому принадлежит канал
+     * @param channel - имя канала
+     * @return диспетчер узла
+     */
+    public PubSubDispatcher getDispatcher(String channel) {
+        return dispatcher(shards.get(rawName(channel)));
+    }
+
+    /**
+     * Диспетчер первого узла
+     */
+    @Override
+    public PubSubDispatcher getDispatcher() {
+        return dispatcher(shards.getPools().get(0));
+    }
+
+    private PubSubDispatcher dispatcher(EsiaJedisPool pool) {
+        synchronized (_lock) {
+            PubSubDispatcher dispatcher = dispatchers.get(pool);
+            if (dispatcher == null) {
+                dispatcher = new PubSubDispatcher(pool.getHost(), pool.getPort(), getConfig(), this::message,
+                        (type, message) -> deserialize(type, message, () -> "pub/sub message"));
+                dispatchers.put(pool, dispatcher);
+            }
+            return dispatcher;
+        }
+    }
+
+    @Override
+    public void subscribe(ISubscriber listener, String... channels) {
+        byte[][] names = new byte[channels.length][];
+        for (int i = 0; i < channels.length; i++) {
+            names[i] = rawName(channels[i]);
+        }
+        for (Map.Entry<EsiaJedisPool, int[]> group : shards.group(names).entrySet()) {
+            String[] nodeChannels = new String[group.getValue().length];
+            for (int i = 0; i < nodeChannels.length; i++) {
+                nodeChannels[i] = channels[group.getValue()[i]];
+            }
+            dispatcher(group.getKey()).subscribe(listener, nodeChannels);
+        }
+    }
+
+    @Override
+    public void psubscribe(ISubscriber listener, String... patterns) {
+        for (EsiaJedisPool pool : shards.getPools()) {
+            dispatcher(pool).psubscribe(listener, patterns);
+        }
+    }
+
+    @Override
+    public void unsubscribe(String... channels) {
+        List<PubSubDispatcher> current;
+        synchronized (_lock) {
+            current = new ArrayList<>(dispatchers.values());
+        }
+        for (PubSubDispatcher dispatcher : current) {
+            dispatcher.unsubscribeAll(channels);
+            dispatcher.punsubscribeAll(channels);
+        }
+    }
+
+    //endregion
+
+    /**
+     * Закрывает подписки, диспетчеры pub/sub и пулы всех узлов
+     */
+    @Override
+    public void close() {
+        super.close();
+        synchronized (_lock) {
+            for (PubSubDispatcher dispatcher : dispatchers.values()) {
+                dispatcher.close();
+            }
+            dispatchers.clear();
+        }
+        executor.shutdown();
+        shards.close();
+    }
+}
@@ -0,0 +1,57 @@
+package services;
+
+import interfaces.Func;
+import interfaces.FuncOneParam;
+import redis.clients.jedis.Response;
+
+/**
+ * Типизированный результат команды транзакции {@link RedisTransaction}, доступен после успешного EXEC
+ * @param <T> - тип результата
+ */
+public class TransactionResult<T> {
+
+    private final Func<T> value;
+
+    private boolean executed;
+
+    private boolean decoded;
+
+    private T result;
+
+    <TRaw> TransactionResult(Response<TRaw> response, FuncOneParam<TRaw, T> decoder) {
+        this.value = () -> decoder.call(response.get());
+    }
+
+    void executed() {
+        executed = true;
+    }
+
+    /**
+     * Выполнена ли транзакция, в которую входит команда
+     */
+    public boolean isExecuted() {
+        return executed;
+    }
+
+    /**
+     * Результат команды
+     * @return результат, для get - десериализованный объект или null
+     * @throws IllegalStateException - транзакция ещё не выполнена, отменена или прервана изменением ключей под WATCH
+     * @throws redis.clients.jedis.exceptions.JedisDataException - команда завершилась ошибкой внутри EXEC
+     */
+    public T get() {
+        if (!executed) {
+            throw new IllegalStateException("transaction is not executed");
+        }
+        if (!decoded) {
+            result = value.call();
+            decoded = true;
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return executed ? String.valueOf(get()) : "not executed";
+    }
+}
@@ -0,0 +1,9 @@
+package adapters;
+
+/**
+ * Базовый класс тестовой модели без аннотации: его поля тоже пишет сгенерированный адаптер наследника
+ */
+public class Document {
+
+    public String author;
+}
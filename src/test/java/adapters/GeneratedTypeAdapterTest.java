@@ -0,0 +1,126 @@
+package adapters;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParser;
+import common.JsonHelper;
+import models.enums.Color;
+import models.enums.ColorSerializer;
+import models.enums.IntEnumTypeAdapterFactory;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Адаптеры, сгенерированные {@link TypeAdapterProcessor} для тестовой модели {@link Order}
+ */
+public class GeneratedTypeAdapterTest {
+
+    private final Gson gson = JsonHelper.GetGson();
+
+    /**
+     * Прежняя сериализация: рефлексия и сериализатор перечисления
+     */
+    @SuppressWarnings("deprecation")
+    private final Gson reflective = new GsonBuilder().registerTypeAdapter(Color.class, new ColorSerializer()).create();
+
+    @Test
+    public void generatedAdaptersAreUsed() {
+        assertEquals("adapters.Order_TypeAdapter", gson.getAdapter(Order.class).getClass().getName());
+        assertEquals("adapters.Order_Line_TypeAdapter", gson.getAdapter(Order.Line.class).getClass().getName());
+    }
+
+    @Test
+    public void jsonMatchesReflection() {
+        Order order = order();
+        String json = gson.toJson(order);
+
+        assertEquals(new JsonParser().parse(reflective.toJson(order)), new JsonParser().parse(json));
+        assertEquals(new JsonParser().parse(json), new JsonParser().parse(reflective.toJson(reflective.fromJson(json, Order.class))));
+    }
+
+    @Test
+    public void roundTripKeepsEveryProperty() {
+        Order order = gson.fromJson(gson.toJson(order()), Order.class);
+
+        assertEquals("admin", order.author);
+        assertEquals(7, order.id);
+        assertEquals(1700000000000L, order.created);
+        assertEquals(true, order.paid);
+        assertEquals(99.5, order.total, 0);
+        assertEquals(0.25f, order.discount, 0);
+        assertEquals('A', order.grade);
+        assertEquals("N-7", order.number);
+        assertEquals(Integer.valueOf(3), order.priority);
+        assertEquals("Иванов", order.customer);
+        assertEquals(Color.Yellow, order.color);
+        assertEquals(2, order.lines.size());
+        assertEquals("pen", order.lines.get(0).product);
+        assertEquals(Color.Black, order.lines.get(1).color);
+        assertEquals("urgent \"today\"", order.getComment());
+        assertNull(order.cache);
+    }
+
+    @Test
+    public void readsAlternateNamesAndSkipsUnknownProperties() {
+        Order order = gson.fromJson("{\"client\":\"Петров\",\"unknown\":{\"a\":[1,2]},\"id\":5,\"color\":16}", Order.class);
+
+        assertEquals("Петров", order.customer);
+        assertEquals(5, order.id);
+        assertEquals(Color.Black, order.color);
+        assertEquals("Сидоров", gson.toJsonTree(gson.fromJson("{\"customer\":\"Сидоров\"}", Order.class))
+                .getAsJsonObject().get("customer_name").getAsString());
+    }
+
+    @Test
+    public void nullsFollowGsonSettings() {
+        Order order = new Order();
+        String plain = gson.toJson(order);
+        Gson serializeNulls = new GsonBuilder()
+                .registerTypeAdapterFactory(new IntEnumTypeAdapterFactory())
+                .registerTypeAdapterFactory(new GeneratedTypeAdapterFactory())
+                .serializeNulls().create();
+
+        assertEquals(new JsonParser().parse(reflective.toJson(order)), new JsonParser().parse(plain));
+        assertEquals(new JsonParser().parse(new GsonBuilder().serializeNulls().create().toJson(order)),
+                new JsonParser().parse(serializeNulls.toJson(order)));
+        assertNull(gson.fromJson("null", Order.class));
+        Order nulls = gson.fromJson("{\"number\":null,\"priority\":null,\"color\":null,\"lines\":null,\"id\":null}", Order.class);
+        assertNull(nulls.number);
+        assertNull(nulls.priority);
+        assertNull(nulls.color);
+        assertNull(nulls.lines);
+        assertEquals(0, nulls.id);
+    }
+
+    private static Order order() {
+        Order.Line pen = new Order.Line();
+        pen.product = "pen";
+        pen.quantity = 2;
+        pen.color = Color.Blue;
+        Order.Line ink = new Order.Line();
+        ink.product = "ink";
+        ink.quantity = 1;
+        ink.color = Color.Black;
+
+        Order order = new Order();
+        order.author = "admin";
+        order.id = 7;
+        order.created = 1700000000000L;
+        order.paid = true;
+        order.total = 99.5;
+        order.discount = 0.25f;
+        order.grade = 'A';
+        order.number = "N-7";
+        order.priority = 3;
+        order.customer = "Иванов";
+        order.color = Color.Yellow;
+        order.lines = Arrays.asList(pen, ink);
+        order.cache = "not serialized";
+        order.setComment("urgent \"today\"");
+        return order;
+    }
+}
@@ -0,0 +1,61 @@
+package adapters;
+
+import com.google.gson.annotations.SerializedName;
+import models.enums.Color;
+
+import java.util.List;
+
+/**
+ * Тестовая модель со сгенерированным адаптером: примитивы, строки, перечисление, коллекция, вложенная модель,
+ * переименованное поле и закрытое поле со свойством
+ */
+@GenerateTypeAdapter
+public class Order extends Document {
+
+    public static final String IGNORED = "static";
+
+    public int id;
+
+    public long created;
+
+    public boolean paid;
+
+    public double total;
+
+    public float discount;
+
+    public char grade;
+
+    public String number;
+
+    public Integer priority;
+
+    @SerializedName(value = "customer_name", alternate = {"customer", "client"})
+    public String customer;
+
+    public Color color;
+
+    public List<Line> lines;
+
+    public transient String cache;
+
+    private String comment;
+
+    public String getComment() {
+        return comment;
+    }
+
+    public void setComment(String comment) {
+        this.comment = comment;
+    }
+
+    @GenerateTypeAdapter
+    public static class Line {
+
+        public String product;
+
+        public int quantity;
+
+        public Color color;
+    }
+}
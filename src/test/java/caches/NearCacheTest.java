@@ -0,0 +1,63 @@
+package caches;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class NearCacheTest {
+
+    @Test
+    public void invalidationDuringLoadSkipsOnlyThatKey() {
+        NearCache cache = new NearCache(100, 60000);
+        long stampA = cache.stamp("a");
+        long stampB = cache.stamp("b");
+        cache.invalidate("a");
+
+        cache.put("a", "stale", -1, stampA);
+        cache.put("b", "fresh", -1, stampB);
+
+        assertNull(cache.get(String.class, "a"));
+        assertEquals("fresh", cache.get(String.class, "b"));
+    }
+
+    @Test
+    public void clearSkipsLoadsInProgress() {
+        NearCache cache = new NearCache(100, 60000);
+        long stamp = cache.stamp("a");
+        cache.clear();
+        cache.put("a", "stale", -1, stamp);
+        assertNull(cache.get(String.class, "a"));
+    }
+
+    @Test
+    public void sizeIsBounded() {
+        NearCache cache = new NearCache(100, 60000);
+        for (int i = 0; i < 1000; i++) {
+            String key = "key" + i;
+            cache.put(key, i, -1, cache.stamp(key));
+        }
+        assertEquals(100, cache.size());
+        assertEquals(900, cache.getEvictions());
+    }
+
+    @Test
+    public void recentlyUsedEntriesStay() {
+        NearCache cache = new NearCache(1, 60000);
+        cache.put("a", 1, -1, cache.stamp("a"));
+        assertEquals(Integer.valueOf(1), cache.get(Integer.class, "a"));
+        cache.put("b", 2, -1, cache.stamp("b"));
+        assertNull(cache.get(Integer.class, "a"));
+        assertEquals(Integer.valueOf(2), cache.get(Integer.class, "b"));
+    }
+
+    @Test
+    public void expiredEntriesAreMisses() throws InterruptedException {
+        NearCache cache = new NearCache(100, 60000);
+        cache.put("a", 1, 20, cache.stamp("a"));
+        assertTrue(cache.contains("a"));
+        Thread.sleep(50);
+        assertNull(cache.get(Integer.class, "a"));
+    }
+}
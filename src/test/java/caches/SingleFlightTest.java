@@ -0,0 +1,194 @@
+package caches;
+
+import configs.RedisConfig;
+import org.junit.After;
+import org.junit.Test;
+import servers.EmbeddedRedisServer;
+import services.RedisService;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SingleFlightTest {
+
+    private static final byte[] KEY = "key".getBytes(StandardCharsets.UTF_8);
+
+    private static final int CALLERS = 8;
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(CALLERS);
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void concurrentCallsShareOneLoad() throws Exception {
+        SingleFlight flight = new SingleFlight(true);
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+
+        List<Future<String>> results = new ArrayList<>();
+        for (int i = 0; i < CALLERS; i++) {
+            results.add(executor.submit(() -> flight.call("get", String.class, KEY, () -> {
+                loads.incrementAndGet();
+                await(release);
+                return "value";
+            })));
+        }
+        waitFor(() -> flight.getCoalesced() == CALLERS - 1);
+        release.countDown();
+
+        for (Future<String> result : results) {
+            assertEquals("value", result.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, loads.get());
+        assertEquals(CALLERS, flight.getCalls());
+        assertEquals(CALLERS - 1, flight.getCoalesced());
+        assertEquals(0, flight.getInFlight());
+    }
+
+    @Test
+    public void writeStopsJoiningStaleRead() throws Exception {
+        SingleFlight flight = new SingleFlight(true);
+        CountDownLatch release = new CountDownLatch(1);
+        Future<String> stale = executor.submit(() -> flight.call("get", String.class, KEY, () -> {
+            await(release);
+            return "stale";
+        }));
+        waitFor(() -> flight.getInFlight() == 1);
+
+        flight.written(KEY);
+        String fresh = flight.call("get", String.class, KEY, () -> "fresh");
+        release.countDown();
+
+        assertEquals("fresh", fresh);
+        assertEquals("stale", stale.get(5, TimeUnit.SECONDS));
+        assertEquals(0, flight.getCoalesced());
+    }
+
+    @Test
+    public void differentOperationsAndTypesDoNotJoin() throws Exception {
+        SingleFlight flight = new SingleFlight(true);
+        CountDownLatch release = new CountDownLatch(1);
+        Future<String> pending = executor.submit(() -> flight.call("get", String.class, KEY, () -> {
+            await(release);
+            return "value";
+        }));
+        waitFor(() -> flight.getInFlight() == 1);
+
+        assertEquals(Boolean.TRUE, flight.call("exist", null, KEY, () -> true));
+        assertEquals(Integer.valueOf(1), flight.call("get", Integer.class, KEY, () -> 1));
+        release.countDown();
+
+        assertEquals("value", pending.get(5, TimeUnit.SECONDS));
+        assertEquals(0, flight.getCoalesced());
+    }
+
+    @Test
+    public void failureReachesEveryWaiter() throws Exception {
+        SingleFlight flight = new SingleFlight(true);
+        CountDownLatch release = new CountDownLatch(1);
+        IllegalStateException failure = new IllegalStateException("redis failed");
+
+        List<Future<Object>> results = new ArrayList<>();
+        for (int i = 0; i < CALLERS; i++) {
+            results.add(executor.submit(() -> {
+                try {
+                    return flight.call("get", String.class, KEY, () -> {
+                        await(release);
+                        throw failure;
+                    });
+                } catch (IllegalStateException ex) {
+                    return ex;
+                }
+            }));
+        }
+        waitFor(() -> flight.getCoalesced() == CALLERS - 1);
+        release.countDown();
+
+        for (Future<Object> result : results) {
+            assertSame(failure, result.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(0, flight.getInFlight());
+        assertEquals("next", flight.call("get", String.class, KEY, () -> "next"));
+    }
+
+    @Test
+    public void disabledCallsAlwaysLoad() {
+        SingleFlight flight = new SingleFlight(false);
+        AtomicInteger loads = new AtomicInteger();
+        for (int i = 0; i < 3; i++) {
+            flight.call("get", String.class, KEY, loads::incrementAndGet);
+        }
+        assertEquals(3, loads.get());
+        assertEquals(0, flight.getCalls());
+    }
+
+    @Test
+    public void concurrentServiceGetsShareOneRequest() throws Exception {
+        try (EmbeddedRedisServer server = new EmbeddedRedisServer()) {
+            Properties properties = new Properties();
+            properties.setProperty("redis.host", server.getHost());
+            properties.setProperty("redis.port", String.valueOf(server.getPort()));
+            properties.setProperty("redis.singleFlight", "true");
+            properties.setProperty("redis.log.async", "false");
+            try (RedisService redis = new RedisService(RedisConfig.fromProperties(properties))) {
+                redis.put("key", "value");
+                server.setDelayMillis(300);
+                CountDownLatch start = new CountDownLatch(1);
+                List<Future<String>> results = new ArrayList<>();
+                for (int i = 0; i < CALLERS; i++) {
+                    results.add(executor.submit(() -> {
+                        await(start);
+                        return redis.get(String.class, "key");
+                    }));
+                }
+                start.countDown();
+                for (Future<String> result : results) {
+                    assertEquals("value", result.get(10, TimeUnit.SECONDS));
+                }
+                SingleFlight flight = redis.getSingleFlight();
+                assertEquals(CALLERS, flight.getCalls());
+                assertTrue(flight.getCoalesced() > 0);
+            }
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * Ждёт условия не дольше 5 секунд
+     */
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("condition not reached in time");
+            }
+            Thread.sleep(5);
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package clients;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class CircuitBreakerTest {
+
+    @Test
+    public void opensAfterConsecutiveFailures() {
+        CircuitBreaker breaker = new CircuitBreaker("test", 3, 60000, 1);
+        breaker.onFailure();
+        breaker.onFailure();
+        breaker.onSuccess();
+        breaker.onFailure();
+        breaker.onFailure();
+        assertEquals(CircuitState.CLOSED, breaker.getState());
+
+        breaker.onFailure();
+        assertEquals(CircuitState.OPEN, breaker.getState());
+        assertRejected(breaker);
+        assertEquals(1, breaker.getRejected());
+        assertEquals(1, breaker.getOpened());
+    }
+
+    @Test
+    public void closesAfterSuccessfulTrial() throws InterruptedException {
+        CircuitBreaker breaker = new CircuitBreaker("test", 1, 50, 1);
+        breaker.onFailure();
+        assertRejected(breaker);
+
+        Thread.sleep(100);
+        breaker.acquire();
+        assertEquals(CircuitState.HALF_OPEN, breaker.getState());
+        assertRejected(breaker);
+
+        breaker.onSuccess();
+        assertEquals(CircuitState.CLOSED, breaker.getState());
+        breaker.acquire();
+    }
+
+    @Test
+    public void reopensAfterFailedTrial() throws InterruptedException {
+        CircuitBreaker breaker = new CircuitBreaker("test", 1, 50, 1);
+        breaker.onFailure();
+        Thread.sleep(100);
+        breaker.acquire();
+        breaker.onFailure();
+        assertEquals(CircuitState.OPEN, breaker.getState());
+        assertRejected(breaker);
+        assertEquals(2, breaker.getOpened());
+    }
+
+    @Test
+    public void cancelledTrialIsReturned() throws InterruptedException {
+        CircuitBreaker breaker = new CircuitBreaker("test", 1, 50, 1);
+        breaker.onFailure();
+        Thread.sleep(100);
+        breaker.acquire();
+        breaker.onCancel();
+
+        breaker.acquire();
+        breaker.onSuccess();
+        assertEquals(CircuitState.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void zeroThresholdNeverOpens() {
+        CircuitBreaker breaker = new CircuitBreaker("test", 0, 60000, 1);
+        for (int i = 0; i < 100; i++) {
+            breaker.onFailure();
+            breaker.acquire();
+        }
+        assertEquals(CircuitState.CLOSED, breaker.getState());
+        assertEquals(100, breaker.getFailures());
+    }
+
+    private static void assertRejected(CircuitBreaker breaker) {
+        try {
+            breaker.acquire();
+            fail("breaker must reject");
+        } catch (CircuitOpenException expected) {
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package codecs;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BinaryCodecTest {
+
+    public static class Holder {
+        Object value;
+        List<String> names = new ArrayList<>();
+        int[] numbers;
+    }
+
+    public static class Payload {
+        String text;
+    }
+
+    public static class NoDefaultConstructor {
+        final String text;
+
+        public NoDefaultConstructor(String text) {
+            this.text = text;
+        }
+    }
+
+    @Test
+    public void roundTrip() {
+        BinaryCodec codec = new BinaryCodec();
+        Holder holder = new Holder();
+        holder.value = new String[]{"a", "b"};
+        holder.names.addAll(Arrays.asList("x", "y"));
+        holder.numbers = new int[]{1, -2, 3};
+
+        Holder read = codec.decode(Holder.class, codec.encode(holder));
+
+        assertArrayEquals(new String[]{"a", "b"}, (String[]) read.value);
+        assertEquals(holder.names, read.names);
+        assertArrayEquals(holder.numbers, read.numbers);
+    }
+
+    @Test
+    public void foreignClassNamesAreRejected() {
+        byte[] data = new BinaryCodec().encode(holderWithPayload());
+        try {
+            new BinaryCodec().decode(Holder.class, data);
+            fail("class from data must not be loaded");
+        } catch (IllegalArgumentException expected) {
+            assertTrue(expected.getMessage().contains("not allowed"));
+        }
+    }
+
+    @Test
+    public void allowedPackagesAreRead() {
+        byte[] data = new BinaryCodec().encode(holderWithPayload());
+        Holder read = new BinaryCodec("codecs.").decode(Holder.class, data);
+        assertEquals("text", ((Payload) read.value).text);
+    }
+
+    @Test
+    public void incompatibleClassIsRejected() {
+        BinaryCodec codec = new BinaryCodec("codecs.");
+        byte[] data = codec.encode(new Payload());
+        try {
+            codec.decode(Holder.class, data);
+            fail("value of another class must not be read");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void classWithoutDefaultConstructorFails() {
+        BinaryCodec codec = new BinaryCodec();
+        codec.decode(NoDefaultConstructor.class, codec.encode(new NoDefaultConstructor("text")));
+    }
+
+    private static Holder holderWithPayload() {
+        Payload payload = new Payload();
+        payload.text = "text";
+        Holder holder = new Holder();
+        holder.value = payload;
+        return holder;
+    }
+}
@@ -0,0 +1,149 @@
+package codecs;
+
+import com.google.gson.annotations.SerializedName;
+import models.enums.Color;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class HashMappingTest {
+
+    public static class Base {
+        String owner;
+        long version;
+    }
+
+    public static class Profile extends Base {
+        static final String IGNORED = "static";
+        String name;
+        int age;
+        @SerializedName("eye_color")
+        Color color;
+        List<String> tags;
+        transient String cache;
+    }
+
+    @Test
+    public void fieldsIncludeInheritedAndRenamed() {
+        HashMapping<Profile> mapping = HashMapping.of(Profile.class);
+
+        assertArrayEquals(new String[]{"name", "age", "eye_color", "tags", "owner", "version"}, mapping.getNames());
+        assertSame(mapping, HashMapping.of(Profile.class));
+        assertSame(Profile.class, mapping.getType());
+    }
+
+    @Test
+    public void encodeWritesJsonAndCollectsNulls() {
+        Profile profile = profile();
+        profile.tags = null;
+        List<byte[]> nulls = new ArrayList<>();
+
+        Map<byte[], byte[]> values = HashMapping.of(Profile.class).encode(profile, new String[0], nulls);
+
+        Map<String, String> text = values.entrySet().stream().collect(Collectors.toMap(
+                entry -> text(entry.getKey()), entry -> text(entry.getValue())));
+        assertEquals("\"Иван\"", text.get("name"));
+        assertEquals("42", text.get("age"));
+        assertEquals("4", text.get("eye_color"));
+        assertEquals("\"admin\"", text.get("owner"));
+        assertEquals("3", text.get("version"));
+        assertEquals(5, text.size());
+        assertEquals(Arrays.asList("tags"), nulls.stream().map(HashMappingTest::text).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void encodeSelectedFieldsOnly() {
+        List<byte[]> nulls = new ArrayList<>();
+
+        Map<byte[], byte[]> values = HashMapping.of(Profile.class).encode(profile(), new String[]{"age", "tags"}, nulls);
+
+        assertEquals(Arrays.asList("age", "tags"), values.keySet().stream().map(HashMappingTest::text).collect(Collectors.toList()));
+        assertEquals("[\"a\",\"b\"]", text(values.values().toArray(new byte[0][])[1]));
+        assertTrue(nulls.isEmpty());
+        assertNull(HashMapping.of(Profile.class).encodeField("name", null));
+    }
+
+    @Test
+    public void decodeSetsReadFieldsOnly() {
+        HashMapping<Profile> mapping = HashMapping.of(Profile.class);
+        String[] names = {"name", "eye_color", "version", "tags"};
+        List<byte[]> values = Arrays.asList(bytes("\"Пётр\""), bytes("16"), null, bytes("[\"x\"]"));
+
+        Profile profile = mapping.decode(names, values);
+
+        assertEquals("Пётр", profile.name);
+        assertEquals(Color.Black, profile.color);
+        assertEquals(Arrays.asList("x"), profile.tags);
+        assertEquals(0, profile.version);
+        assertEquals(0, profile.age);
+        assertNull(profile.owner);
+        assertNull(mapping.decode(names, Arrays.asList(null, null, null, null)));
+    }
+
+    @Test
+    public void roundTripOfAllFields() {
+        HashMapping<Profile> mapping = HashMapping.of(Profile.class);
+        Profile profile = profile();
+        List<byte[]> nulls = new ArrayList<>();
+        Map<byte[], byte[]> values = mapping.encode(profile, new String[0], nulls);
+
+        Profile read = mapping.decode(new String[0], new ArrayList<>(values.values()));
+
+        assertEquals(profile.name, read.name);
+        assertEquals(profile.age, read.age);
+        assertEquals(profile.color, read.color);
+        assertEquals(profile.tags, read.tags);
+        assertEquals(profile.owner, read.owner);
+        assertEquals(profile.version, read.version);
+        assertNull(read.cache);
+    }
+
+    @Test
+    public void unknownFieldIsRejected() {
+        HashMapping<Profile> mapping = HashMapping.of(Profile.class);
+        try {
+            mapping.rawNames("name", "color");
+            fail("unknown field must be rejected");
+        } catch (IllegalArgumentException expected) {
+            assertTrue(expected.getMessage().contains("color"));
+        }
+        try {
+            mapping.encodeField("cache", "value");
+            fail("transient field must not be mapped");
+        } catch (IllegalArgumentException expected) {
+            assertTrue(expected.getMessage().contains("cache"));
+        }
+    }
+
+    private static Profile profile() {
+        Profile profile = new Profile();
+        profile.name = "Иван";
+        profile.age = 42;
+        profile.color = Color.Yellow;
+        profile.tags = Arrays.asList("a", "b");
+        profile.owner = "admin";
+        profile.version = 3;
+        profile.cache = "not stored";
+        return profile;
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String text(byte[] value) {
+        return new String(value, StandardCharsets.UTF_8);
+    }
+}
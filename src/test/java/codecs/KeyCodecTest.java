@@ -0,0 +1,116 @@
+package codecs;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class KeyCodecTest {
+
+    private static final List<Object> KEYS = Arrays.asList(
+            "", "key", "ключ", "mixed ключ 😀", 0L, 7L, -7L, 1234567890123456789L, Long.MAX_VALUE, Long.MIN_VALUE,
+            0, -1, Integer.MAX_VALUE, Integer.MIN_VALUE, UUID.randomUUID(), new UUID(0, 0), new UUID(-1, -1),
+            new UUID(0x0123456789abcdefL, 0xfedcba9876543210L), 3.5, new StringBuilder("builder"));
+
+    @Test
+    public void encodesLikeToString() {
+        KeyCodec codec = new KeyCodec();
+        for (Object key : KEYS) {
+            assertArrayEquals(key.toString(), bytes(key.toString()), codec.encode(key));
+        }
+    }
+
+    @Test
+    public void namespaceIsPrefixed() {
+        KeyCodec codec = new KeyCodec("tenant:", 0);
+        for (Object key : KEYS) {
+            assertArrayEquals(key.toString(), bytes("tenant:" + key), codec.encode(key));
+        }
+        assertArrayEquals(bytes("tenant:raw"), codec.encode(bytes("raw")));
+        byte[] raw = bytes("raw");
+        assertSame(raw, new KeyCodec().encode(raw));
+    }
+
+    @Test
+    public void decodeStripsOwnNamespaceOnly() {
+        KeyCodec codec = new KeyCodec("tenant:", 0);
+
+        assertEquals("ключ", codec.decode(codec.encode("ключ")));
+        assertEquals("42", codec.decode(codec.encode(42L)));
+        assertEquals("other:key", codec.decode(bytes("other:key")));
+        assertEquals("ten", codec.decode(bytes("ten")));
+        assertEquals("tenant:key", new KeyCodec().decode(bytes("tenant:key")));
+    }
+
+    @Test
+    public void patternEscapesNamespace() {
+        assertEquals("user:*", new KeyCodec().pattern("user:*"));
+        assertNull(new KeyCodec().pattern(null));
+        assertEquals("tenant:user:*", new KeyCodec("tenant:", 0).pattern("user:*"));
+        assertEquals("tenant:*", new KeyCodec("tenant:", 0).pattern(null));
+        assertEquals("t\\[1\\]\\*\\?\\\\:user:?", new KeyCodec("t[1]*?\\:", 0).pattern("user:?"));
+    }
+
+    @Test
+    public void cacheKeepsEncodedKeys() {
+        KeyCodec codec = new KeyCodec("tenant:", 10);
+        UUID uuid = UUID.randomUUID();
+
+        byte[] string = codec.encode("key");
+        assertSame(string, codec.encode("key"));
+        assertSame(codec.encode(5L), codec.encode(5L));
+        assertSame(codec.encode(uuid), codec.encode(uuid));
+        assertSame(codec.encode(5), codec.encode(5));
+        assertNotSame(codec.encode(5), codec.encode(5L));
+        assertArrayEquals(codec.encode(5L), codec.encode(5));
+    }
+
+    @Test
+    public void fullCacheIsCleared() {
+        KeyCodec codec = new KeyCodec("", 2);
+        byte[] first = codec.encode("a");
+        codec.encode("b");
+
+        byte[] third = codec.encode("c");
+
+        assertSame(third, codec.encode("c"));
+        assertNotSame(first, codec.encode("a"));
+        assertArrayEquals(first, codec.encode("a"));
+    }
+
+    @Test
+    public void mutableKeysAreNotCached() {
+        KeyCodec codec = new KeyCodec("", 10);
+        StringBuilder key = new StringBuilder("before");
+        byte[] raw = bytes("raw");
+
+        assertArrayEquals(bytes("before"), codec.encode(key));
+        key.setLength(0);
+        key.append("after");
+        assertArrayEquals(bytes("after"), codec.encode(key));
+        assertSame(raw, codec.encode(raw));
+        assertNotSame(codec.encode(3.5), codec.encode(3.5));
+    }
+
+    @Test
+    public void withNamespaceKeepsCacheSize() {
+        KeyCodec codec = new KeyCodec("a:", 5).withNamespace("b:");
+
+        assertEquals("b:", codec.getNamespace());
+        assertEquals("key codec namespace: 'b:' cache: 5", codec.toString());
+        assertSame(codec.encode("key"), codec.encode("key"));
+        assertEquals("", new KeyCodec(null, 0).getNamespace());
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,53 @@
+package codecs;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ValueCompressorTest {
+
+    private static final byte[] LARGE = repeat("{\"name\":\"value\"}", 100);
+
+    @Test
+    public void roundTrip() {
+        try (ValueCompressor compressor = new ValueCompressor(64, 1)) {
+            byte[] compressed = compressor.compress(LARGE);
+            assertTrue(ValueCompressor.isCompressed(compressed));
+            assertTrue(compressed.length < LARGE.length);
+            assertArrayEquals(LARGE, compressor.decompress(compressed));
+        }
+    }
+
+    @Test
+    public void smallAndUncompressedValuesPassThrough() {
+        try (ValueCompressor compressor = new ValueCompressor(64, 1)) {
+            byte[] small = "{}".getBytes(StandardCharsets.UTF_8);
+            assertSame(small, compressor.compress(small));
+            assertSame(LARGE, compressor.decompress(LARGE));
+            assertFalse(ValueCompressor.isCompressed(LARGE));
+        }
+    }
+
+    @Test
+    public void worksAfterClose() {
+        ValueCompressor compressor = new ValueCompressor(64, 1);
+        byte[] compressed = compressor.compress(LARGE);
+        compressor.close();
+        assertArrayEquals(LARGE, compressor.decompress(compressor.compress(LARGE)));
+        assertArrayEquals(LARGE, compressor.decompress(compressed));
+    }
+
+    private static byte[] repeat(String text, int count) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        byte[] result = new byte[bytes.length * count];
+        for (int i = 0; i < count; i++) {
+            System.arraycopy(bytes, 0, result, i * bytes.length, bytes.length);
+        }
+        return result;
+    }
+}
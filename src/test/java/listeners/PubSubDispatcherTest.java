@@ -0,0 +1,314 @@
+package listeners;
+
+import codecs.JsonCodec;
+import configs.RedisConfig;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import redis.clients.jedis.Jedis;
+import redis.clients.util.SafeEncoder;
+import servers.EmbeddedRedisServer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Диспетчер pub/sub на встроенном сервере
+ */
+public class PubSubDispatcherTest {
+
+    private EmbeddedRedisServer server;
+
+    private Jedis publisher;
+
+    private PubSubDispatcher dispatcher;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    @Before
+    public void setUp() throws IOException {
+        server = new EmbeddedRedisServer();
+        publisher = new Jedis(server.getHost(), server.getPort());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        executor.shutdownNow();
+        if (dispatcher != null) {
+            dispatcher.close();
+        }
+        publisher.close();
+        server.close();
+    }
+
+    @Test
+    public void channelsAndPatternsAreRoutedSeparately() throws InterruptedException {
+        dispatcher = dispatcher(OverflowPolicy.BLOCK, 100);
+        Recorder direct = new Recorder();
+        Recorder pattern = new Recorder();
+        dispatcher.subscribe(direct, "news");
+        dispatcher.psubscribe(pattern, "news.*");
+        direct.expect("subscribe:news");
+        pattern.expect("psubscribe:news.*");
+
+        publisher.publish("news", "m1");
+        publisher.publish("news.sport", "m2");
+
+        direct.expect("message:news:m1");
+        pattern.expect("pmessage:news.*:news.sport:m2");
+        direct.expectNothing();
+        pattern.expectNothing();
+        assertEquals(1, dispatcher.getChannelCount());
+        assertEquals(1, dispatcher.getPatternCount());
+    }
+
+    @Test
+    public void removingLastListenerUnsubscribesInRedis() throws InterruptedException {
+        dispatcher = dispatcher(OverflowPolicy.BLOCK, 100);
+        Recorder first = new Recorder();
+        Recorder second = new Recorder();
+        dispatcher.subscribe(first, "ch");
+        first.expect("subscribe:ch");
+        dispatcher.subscribe(second, "ch");
+        second.expect("subscribe:ch");
+
+        dispatcher.unsubscribe(first, "ch");
+        first.expect("unsubscribe:ch");
+        assertEquals(1, (long) publisher.publish("ch", "m1"));
+        second.expect("message:ch:m1");
+        first.expectNothing();
+
+        dispatcher.unsubscribe(second, "ch");
+        second.expect("unsubscribe:ch");
+        await(() -> publisher.publish("ch", "m2") == 0);
+        assertEquals(0, dispatcher.getChannelCount());
+        assertTrue(dispatcher.isConnected());
+    }
+
+    @Test
+    public void reconnectResubscribes() throws InterruptedException {
+        dispatcher = dispatcher(OverflowPolicy.BLOCK, 100);
+        Recorder recorder = new Recorder();
+        dispatcher.subscribe(recorder, "ch");
+        dispatcher.psubscribe(recorder, "p.*");
+        recorder.expectAll("subscribe:ch", "psubscribe:p.*");
+
+        server.disconnectClients();
+
+        recorder.expectAll("unsubscribe:ch", "punsubscribe:p.*");
+        recorder.expectAll("subscribe:ch", "psubscribe:p.*");
+        assertTrue(dispatcher.isConnected());
+        publisher.publish("ch", "m1");
+        publisher.publish("p.1", "m2");
+        recorder.expectAll("message:ch:m1", "pmessage:p.*:p.1:m2");
+    }
+
+    @Test
+    public void blockKeepsEveryMessage() throws Exception {
+        dispatcher = dispatcher(OverflowPolicy.BLOCK, 2);
+        SlowRecorder recorder = fill(new SlowRecorder(), 10);
+
+        Thread.sleep(200);
+        assertTrue(dispatcher.getReceived() < 10);
+        recorder.release.countDown();
+
+        recorder.expectMessages(0, 1, 2, 3, 4, 5, 6, 7, 8, 9);
+        assertEquals(0, dispatcher.getDropped());
+    }
+
+    @Test
+    public void dropNewestKeepsQueuedMessages() throws Exception {
+        dispatcher = dispatcher(OverflowPolicy.DROP_NEWEST, 2);
+        SlowRecorder recorder = fill(new SlowRecorder(), 10);
+
+        await(() -> dispatcher.getReceived() == 10);
+        recorder.release.countDown();
+
+        recorder.expectMessages(0, 1, 2);
+        assertEquals(7, dispatcher.getDropped());
+    }
+
+    @Test
+    public void dropOldestKeepsLatestMessages() throws Exception {
+        dispatcher = dispatcher(OverflowPolicy.DROP_OLDEST, 2);
+        SlowRecorder recorder = fill(new SlowRecorder(), 10);
+
+        await(() -> dispatcher.getReceived() == 10);
+        recorder.release.countDown();
+
+        recorder.expectMessages(0, 8, 9);
+        assertEquals(7, dispatcher.getDropped());
+    }
+
+    @Test
+    public void losslessListenerMessagesAreNeverDropped() throws Exception {
+        dispatcher = dispatcher(OverflowPolicy.DROP_OLDEST, 2);
+        SlowRecorder recorder = fill(new LosslessRecorder(), 10);
+
+        Thread.sleep(200);
+        recorder.release.countDown();
+
+        recorder.expectMessages(0, 1, 2, 3, 4, 5, 6, 7, 8, 9);
+        assertEquals(0, dispatcher.getDropped());
+    }
+
+    @Test
+    public void subscriptionEventsAreNeverDropped() throws Exception {
+        dispatcher = dispatcher(OverflowPolicy.DROP_NEWEST, 2);
+        SlowRecorder recorder = fill(new SlowRecorder(), 10);
+        await(() -> dispatcher.getReceived() == 10);
+
+        Future<?> unsubscribe = executor.submit(() -> dispatcher.unsubscribe(recorder, "ch"));
+        Thread.sleep(200);
+        assertFalse(unsubscribe.isDone());
+        recorder.release.countDown();
+
+        recorder.expect("message:ch:0");
+        recorder.expect("message:ch:1");
+        recorder.expect("message:ch:2");
+        recorder.expect("unsubscribe:ch");
+        unsubscribe.get(5, TimeUnit.SECONDS);
+        assertEquals(7, dispatcher.getDropped());
+    }
+
+    /**
+     * Подписывает медленного обработчика на ch и публикует count сообщений: первое занимает рабочий поток до release
+     */
+    private SlowRecorder fill(SlowRecorder recorder, int count) throws InterruptedException {
+        dispatcher.subscribe(recorder, "ch");
+        recorder.expect("subscribe:ch");
+        publisher.publish("ch", "0");
+        assertTrue(recorder.entered.await(5, TimeUnit.SECONDS));
+        for (int i = 1; i < count; i++) {
+            publisher.publish("ch", String.valueOf(i));
+        }
+        return recorder;
+    }
+
+    private PubSubDispatcher dispatcher(OverflowPolicy overflow, int queueSize) {
+        Properties properties = new Properties();
+        properties.setProperty("redis.host", server.getHost());
+        properties.setProperty("redis.port", String.valueOf(server.getPort()));
+        properties.setProperty("redis.pubsub.workers", "1");
+        properties.setProperty("redis.pubsub.queueSize", String.valueOf(queueSize));
+        properties.setProperty("redis.pubsub.overflow", overflow.name());
+        properties.setProperty("redis.log.async", "false");
+        JsonCodec codec = new JsonCodec();
+        return new PubSubDispatcher(RedisConfig.fromProperties(properties), SafeEncoder::encode, codec::decode);
+    }
+
+    /**
+     * Ждёт условия не дольше 5 секунд
+     */
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("condition not reached in time");
+            }
+            Thread.sleep(20);
+        }
+    }
+
+    /**
+     * Записывает события в порядке получения
+     */
+    private static class Recorder implements ISubscriber {
+
+        final BlockingQueue<String> events = new LinkedBlockingQueue<>();
+
+        public void onMessage(String channel, String message) {
+            events.add("message:" + channel + ":" + message);
+        }
+
+        public void onPMessage(String pattern, String channel, String message) {
+            events.add("pmessage:" + pattern + ":" + channel + ":" + message);
+        }
+
+        public void onSubscribe(String channel, int subscribedChannels) {
+            events.add("subscribe:" + channel);
+        }
+
+        public void onUnsubscribe(String channel, int subscribedChannels) {
+            events.add("unsubscribe:" + channel);
+        }
+
+        public void onPUnsubscribe(String pattern, int subscribedChannels) {
+            events.add("punsubscribe:" + pattern);
+        }
+
+        public void onPSubscribe(String pattern, int subscribedChannels) {
+            events.add("psubscribe:" + pattern);
+        }
+
+        void expect(String event) throws InterruptedException {
+            assertEquals(event, events.poll(5, TimeUnit.SECONDS));
+        }
+
+        /**
+         * События разных каналов идут через разные очереди, их взаимный порядок не определён
+         */
+        void expectAll(String... expected) throws InterruptedException {
+            List<String> received = new ArrayList<>();
+            for (int i = 0; i < expected.length; i++) {
+                received.add(events.poll(5, TimeUnit.SECONDS));
+            }
+            List<String> sorted = new ArrayList<>(Arrays.asList(expected));
+            sorted.sort(null);
+            received.sort(null);
+            assertEquals(sorted, received);
+        }
+
+        void expectNothing() throws InterruptedException {
+            assertNull(events.poll(200, TimeUnit.MILLISECONDS));
+        }
+    }
+
+    /**
+     * Обработчик, который задерживает первое сообщение до release
+     */
+    private static class SlowRecorder extends Recorder {
+
+        final CountDownLatch entered = new CountDownLatch(1);
+
+        final CountDownLatch release = new CountDownLatch(1);
+
+        @Override
+        public void onMessage(String channel, String message) {
+            entered.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            super.onMessage(channel, message);
+        }
+
+        void expectMessages(int... numbers) throws InterruptedException {
+            for (int number : numbers) {
+                expect("message:ch:" + number);
+            }
+            expectNothing();
+        }
+    }
+
+    private static class LosslessRecorder extends SlowRecorder implements ILosslessSubscriber {
+    }
+}
@@ -0,0 +1,98 @@
+package listeners;
+
+import configs.RedisConfig;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import servers.EmbeddedRedisServer;
+import services.RedisService;
+
+import java.io.IOException;
+import java.util.Properties;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Типизированные подписки сервиса на встроенном сервере
+ */
+public class TypedSubscriberTest {
+
+    private EmbeddedRedisServer server;
+
+    private RedisService redis;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new EmbeddedRedisServer();
+        Properties properties = new Properties();
+        properties.setProperty("redis.host", server.getHost());
+        properties.setProperty("redis.port", String.valueOf(server.getPort()));
+        properties.setProperty("redis.log.async", "false");
+        redis = new RedisService(RedisConfig.fromProperties(properties));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        redis.close();
+        server.close();
+    }
+
+    @Test
+    public void undecodableMessageIsSkipped() throws InterruptedException {
+        BlockingQueue<Integer> numbers = new LinkedBlockingQueue<>();
+        BlockingQueue<String> texts = new LinkedBlockingQueue<>();
+        CountDownLatch subscribed = new CountDownLatch(1);
+        redis.subscribe(Integer.class, "numbers", numbers::add);
+        redis.subscribe((channel, message) -> texts.add(message), (channel, count) -> subscribed.countDown(), null, "numbers");
+        assertTrue(subscribed.await(5, TimeUnit.SECONDS));
+
+        redis.publish("numbers", "not a number");
+        redis.publish("numbers", (Object) 42);
+
+        assertEquals("not a number", texts.poll(5, TimeUnit.SECONDS));
+        assertEquals("42", texts.poll(5, TimeUnit.SECONDS));
+        assertEquals(Integer.valueOf(42), numbers.poll(5, TimeUnit.SECONDS));
+        assertNull(numbers.poll(200, TimeUnit.MILLISECONDS));
+        assertEquals(0, redis.getDispatcher().getFailed());
+    }
+
+    @Test
+    public void sameTypeSubscribersShareDecodedObject() throws InterruptedException {
+        BlockingQueue<Payload> first = new LinkedBlockingQueue<>();
+        BlockingQueue<Payload> second = new LinkedBlockingQueue<>();
+        BlockingQueue<String> patterns = new LinkedBlockingQueue<>();
+        redis.subscribe(Payload.class, "events.1", first::add);
+        redis.subscribe(Payload.class, "events.1", second::add);
+        redis.psubscribe(Payload.class, "events.*", (channel, payload) -> patterns.add(channel + ":" + payload.name));
+        CountDownLatch subscribed = new CountDownLatch(2);
+        redis.subscribe(null, (channel, count) -> subscribed.countDown(), null, "events.1");
+        redis.psubscribe(null, (channel, count) -> subscribed.countDown(), null, "events.*");
+        assertTrue(subscribed.await(5, TimeUnit.SECONDS));
+
+        redis.publish("events.1", new Payload("created"));
+
+        Payload received = first.poll(5, TimeUnit.SECONDS);
+        assertEquals("created", received.name);
+        assertSame(received, second.poll(5, TimeUnit.SECONDS));
+        assertEquals("events.1:created", patterns.poll(5, TimeUnit.SECONDS));
+    }
+
+    public static class Payload {
+
+        public String name;
+
+        public Payload() {
+        }
+
+        Payload(String name) {
+            this.name = name;
+        }
+    }
+}
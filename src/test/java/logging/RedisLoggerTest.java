@@ -0,0 +1,58 @@
+package logging;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.logging.Handler;
+import java.util.logging.Logger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RedisLoggerTest {
+
+    @Test
+    public void asyncHandlerIsSharedAndRemovedByLastClose() {
+        Logger logger = Logger.getLogger(RedisLoggerTest.class.getName());
+        RedisLogger first = new RedisLogger(RedisLoggerTest.class, 16);
+        RedisLogger second = new RedisLogger(RedisLoggerTest.class, 16);
+
+        first.installAsync(16);
+        first.installAsync(16);
+        second.installAsync(16);
+        assertEquals(1, asyncHandlers(logger));
+        assertFalse(logger.getUseParentHandlers());
+
+        first.close();
+        first.close();
+        assertEquals(1, asyncHandlers(logger));
+
+        second.close();
+        assertEquals(0, asyncHandlers(logger));
+        assertTrue(logger.getUseParentHandlers());
+    }
+
+    @Test
+    public void textPayloadIsShortened() {
+        RedisLogger log = new RedisLogger(RedisLoggerTest.class, 4);
+        assertEquals("{\"a\"", log.payload("{\"a\":1}".getBytes(StandardCharsets.UTF_8)).substring(0, 4));
+        assertTrue(log.payload("{\"a\":1}".getBytes(StandardCharsets.UTF_8)).contains("7 bytes"));
+        assertEquals("ab", log.payload("ab".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void binaryPayloadIsNotDecoded() {
+        RedisLogger log = new RedisLogger(RedisLoggerTest.class, 256);
+        String payload = log.payload(new byte[]{0, 1, 2, 'a', (byte) 0xFF});
+        assertTrue(payload.startsWith("(binary 5 bytes, hash: "));
+    }
+
+    private static int asyncHandlers(Logger logger) {
+        int count = 0;
+        for (Handler handler : logger.getHandlers()) {
+            if (handler instanceof AsyncRingBufferHandler) count++;
+        }
+        return count;
+    }
+}
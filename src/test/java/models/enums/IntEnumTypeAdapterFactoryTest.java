@@ -0,0 +1,164 @@
+package models.enums;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import common.JsonHelper;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+/**
+ * Потоковая сериализация перечислений {@link IIntValued} и поиск по значению
+ */
+public class IntEnumTypeAdapterFactoryTest {
+
+    private final Gson gson = JsonHelper.GetGson();
+
+    @Test
+    @SuppressWarnings("deprecation")
+    public void jsonMatchesColorSerializer() {
+        Gson serializer = new GsonBuilder().registerTypeAdapter(Color.class, new ColorSerializer()).create();
+        for (Color color : Color.values()) {
+            String json = serializer.toJson(color);
+            assertEquals(json, gson.toJson(color));
+            assertSame(color, gson.fromJson(json, Color.class));
+            assertSame(serializer.fromJson(json, Color.class), gson.fromJson(json, Color.class));
+        }
+        Color[] colors = {Color.Red, null, Color.Black};
+        assertEquals(serializer.toJson(colors), gson.toJson(colors));
+        assertArrayEquals(colors, gson.fromJson("[0,null,16]", Color[].class));
+    }
+
+    @Test
+    public void unknownValueReadsNull() {
+        assertNull(gson.fromJson("3", Color.class));
+        assertNull(gson.fromJson("-1", Color.class));
+        assertNull(gson.fromJson("1024", Color.class));
+        assertNull(gson.fromJson("null", Color.class));
+        assertNull(Color.findByAbbr(32));
+    }
+
+    @Test
+    public void denseValuesWithOffset() {
+        IntEnumLookup<Dense> lookup = new IntEnumLookup<>(Dense.values());
+
+        for (Dense constant : Dense.values()) {
+            assertSame(constant, lookup.find(constant.getValue()));
+        }
+        assertNull(lookup.find(-101));
+        assertNull(lookup.find(0));
+        assertNull(lookup.find(923));
+        assertNull(lookup.find(Integer.MIN_VALUE));
+        assertNull(lookup.find(Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void sparseValuesUseMap() {
+        IntEnumLookup<Sparse> lookup = new IntEnumLookup<>(Sparse.values());
+
+        for (Sparse constant : Sparse.values()) {
+            assertSame(constant, lookup.find(constant.getValue()));
+        }
+        assertNull(lookup.find(0));
+        assertNull(lookup.find(1));
+        assertNull(lookup.find(1023));
+
+        List<Sparse> values = Arrays.asList(Sparse.values());
+        String json = gson.toJson(values);
+        assertEquals("[-2147483648,-5000,1000000,2147483647]", json);
+        assertEquals(values, Arrays.asList(gson.fromJson(json, Sparse[].class)));
+        assertNull(gson.fromJson("0", Sparse.class));
+    }
+
+    @Test
+    public void constantsWithBodyAreSerialized() {
+        assertEquals("2", gson.toJson(WithBody.Second));
+        assertSame(WithBody.Second, gson.fromJson("2", WithBody.class));
+        assertEquals("[1,2]", gson.toJson(WithBody.values()));
+    }
+
+    @Test
+    public void duplicateValuesAreRejected() {
+        try {
+            new IntEnumLookup<>(Duplicate.values());
+            fail("duplicate values must be rejected");
+        } catch (IllegalArgumentException expected) {
+            assertEquals("Duplicate value 1 of First and Second", expected.getMessage());
+        }
+    }
+
+    @Test
+    public void emptyEnumFindsNothing() {
+        assertNull(new IntEnumLookup<>(Empty.values()).find(0));
+    }
+
+    /**
+     * Разброс значений меньше размера массива, минимальное значение отрицательное
+     */
+    private enum Dense implements IIntValued {
+        Min(-100), One(1), Max(922);
+
+        private final int value;
+
+        Dense(int value) {
+            this.value = value;
+        }
+
+        public int getValue() {
+            return value;
+        }
+    }
+
+    /**
+     * Разброс значений больше размера массива
+     */
+    private enum Sparse implements IIntValued {
+        Lowest(Integer.MIN_VALUE), Negative(-5000), Million(1000000), Highest(Integer.MAX_VALUE);
+
+        private final int value;
+
+        Sparse(int value) {
+            this.value = value;
+        }
+
+        public int getValue() {
+            return value;
+        }
+    }
+
+    private enum WithBody implements IIntValued {
+        First {
+            public int getValue() {
+                return 1;
+            }
+        },
+        Second {
+            public int getValue() {
+                return 2;
+            }
+        }
+    }
+
+    private enum Duplicate implements IIntValued {
+        First, Second;
+
+        public int getValue() {
+            return 1;
+        }
+    }
+
+    private enum Empty implements IIntValued {
+        ;
+
+        public int getValue() {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package scripts;
+
+import configs.RedisConfig;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import redis.clients.jedis.Jedis;
+import redis.clients.util.SafeEncoder;
+import servers.EmbeddedRedisServer;
+import services.RedisService;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Реестр Lua скриптов и встроенные скрипты на встроенном сервере, скрипты которого эмулируются на Java
+ */
+public class ScriptRegistryTest {
+
+    private static final byte[] KEY = SafeEncoder.encode("key");
+
+    private EmbeddedRedisServer server;
+
+    private Jedis jedis;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new EmbeddedRedisServer();
+        jedis = new Jedis(server.getHost(), server.getPort());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        jedis.close();
+        server.close();
+    }
+
+    @Test
+    public void builtinScriptsAreRegistered() {
+        ScriptRegistry registry = new ScriptRegistry();
+
+        assertEquals(BuiltinScripts.all().length, registry.getAll().size());
+        for (RedisScript script : BuiltinScripts.all()) {
+            assertSame(script, registry.get(script.getName()));
+            assertEquals(jedis.scriptLoad(script.getSource()), script.getSha());
+        }
+        assertNull(registry.get("unknown"));
+    }
+
+    @Test
+    public void nameBelongsToOneScript() {
+        ScriptRegistry registry = new ScriptRegistry();
+        registry.register(new RedisScript("getAndTouch", BuiltinScripts.GET_AND_TOUCH.getSource()));
+
+        try {
+            registry.register(new RedisScript("getAndTouch", "return 1"));
+            fail("another script with the same name must be rejected");
+        } catch (IllegalArgumentException expected) {
+            assertSame(BuiltinScripts.GET_AND_TOUCH, registry.get("getAndTouch"));
+        }
+    }
+
+    @Test
+    public void loadedScriptsRunByShaOnly() {
+        ScriptRegistry registry = new ScriptRegistry();
+        jedis.set(KEY, SafeEncoder.encode("value"));
+
+        assertEquals(BuiltinScripts.all().length, registry.load(jedis));
+        Object value = registry.eval(jedis, BuiltinScripts.GET_AND_TOUCH, Collections.singletonList(KEY),
+                Collections.singletonList(SafeEncoder.encode("60")));
+
+        assertArrayEquals(SafeEncoder.encode("value"), (byte[]) value);
+        assertEquals(1, registry.getEvaluations());
+        assertEquals(0, registry.getFallbacks());
+        assertEquals(0, server.getCommandCount("EVAL"));
+        assertTrue(jedis.ttl(KEY) > 0);
+    }
+
+    @Test
+    public void noscriptFallsBackToEvalOnce() {
+        ScriptRegistry registry = new ScriptRegistry();
+        registry.load(jedis);
+        jedis.scriptFlush();
+        List<byte[]> keys = Collections.singletonList(KEY);
+        List<byte[]> args = Collections.singletonList(SafeEncoder.encode("value"));
+
+        assertEquals(0L, registry.eval(jedis, BuiltinScripts.DELETE_IF_EQUALS, keys, args));
+        jedis.set(KEY, SafeEncoder.encode("value"));
+        assertEquals(1L, registry.eval(jedis, BuiltinScripts.DELETE_IF_EQUALS, keys, args));
+
+        assertEquals(2, registry.getEvaluations());
+        assertEquals(1, registry.getFallbacks());
+        assertEquals(1, server.getCommandCount("EVAL"));
+        assertEquals(2, server.getCommandCount("EVALSHA"));
+        assertFalse(jedis.exists(KEY));
+    }
+
+    @Test
+    public void builtinScriptsThroughService() throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("redis.host", server.getHost());
+        properties.setProperty("redis.port", String.valueOf(server.getPort()));
+        properties.setProperty("redis.log.async", "false");
+        try (RedisService redis = new RedisService(RedisConfig.fromProperties(properties))) {
+            assertNull(redis.getAndTouch(String.class, "key", 60));
+            assertTrue(redis.compareAndSet("key", null, "v1"));
+            assertFalse(redis.compareAndSet("key", null, "v2"));
+            assertFalse(redis.compareAndSet("key", "v0", "v2"));
+            assertTrue(redis.compareAndSet("key", "v1", "v2", 60));
+            assertTrue(redis.ttl("key") > 0);
+            redis.expire("key", 1000);
+            assertEquals("v2", redis.getAndTouch(String.class, "key", 30));
+            assertTrue(redis.ttl("key") <= 30);
+            assertFalse(redis.deleteIfEquals("key", "v1"));
+            assertTrue(redis.deleteIfEquals("key", "v2"));
+            assertFalse(redis.exist("key"));
+
+            redis.queueLeftPushAll("queue", Arrays.asList("o1", "o2"));
+            assertEquals("o1", redis.dequeueAndPush(String.class, "queue", "processing"));
+            assertEquals("o2", redis.ackAndDequeue(String.class, "queue", "processing", "o1"));
+            assertNull(redis.ackAndDequeue(String.class, "queue", "processing", "o2"));
+            assertEquals(0, redis.queueSize("processing"));
+
+            server.flushScripts();
+            assertTrue(redis.compareAndSet("key", null, "v3"));
+            assertEquals(1, redis.getScripts().getFallbacks());
+        }
+    }
+}
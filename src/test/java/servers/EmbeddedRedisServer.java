@@ -0,0 +1,1325 @@
+package servers;
+
+import scripts.BuiltinScripts;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * Минимальная реализация сервера Redis (протокол RESP) в памяти процесса, для тестов и бенчмарков на машине без redis-server.
+ * Публикуется в test-jar артефакта, бенчмарки подключают его как зависимость.
+ * Поддерживает подмножество команд, которое использует RedisService: строки, списки, множества, TTL, транзакции MULTI/EXEC с WATCH и pub/sub.
+ * Интерпретатора Lua нет: скрипты эмулируются кодом на Java ({@link #script(String, ScriptEmulation)}), встроенные скрипты
+ * {@link BuiltinScripts} эмулируются сразу. EVAL скрипта без эмуляции отвечает ошибкой, EVALSHA незагруженного скрипта - NOSCRIPT.
+ * Все команды выполняются под одной блокировкой, как в однопоточном Redis.
+ * Для проверки таймаутов и выключателя сервер можно приостановить ({@link #pause()}) или замедлить ({@link #setDelayMillis(long)})
+ */
+public class EmbeddedRedisServer implements Closeable {
+
+    private static final byte[] CRLF = {'\r', '\n'};
+
+    private final Object lock = new Object();
+
+    private final Map<String, Object> data = new HashMap<>();
+
+    private final Map<String, Long> expires = new HashMap<>();
+
+    private final Map<String, Set<Connection>> channels = new ConcurrentHashMap<>();
+
+    private final Map<String, Set<Connection>> patterns = new ConcurrentHashMap<>();
+
+    /**
+     * Соединения, наблюдающие за ключом (WATCH), под блокировкой {@link #lock}
+     */
+    private final Map<String, Set<Connection>> watchers = new HashMap<>();
+
+    /**
+     * Команды, не изменяющие данные и не сбрасывающие WATCH
+     */
+    private static final Set<String> READ_COMMANDS = new HashSet<>(Arrays.asList(
+            "GET", "MGET", "EXISTS", "TTL", "PTTL", "LLEN", "LRANGE", "SMEMBERS", "DBSIZE", "SCAN",
+            "HGET", "HMGET", "HGETALL"));
+
+    private final ServerSocket serverSocket;
+
+    private final Thread acceptor;
+
+    /**
+     * Открытые соединения клиентов, закрываются вместе с сервером
+     */
+    private final Set<Socket> sockets = ConcurrentHashMap.newKeySet();
+
+    private volatile boolean closed = false;
+
+    /**
+     * Пауза: команды не выполняются до {@link #resume()}, под блокировкой {@link #pauseLock}
+     */
+    private boolean paused = false;
+
+    private final Object pauseLock = new Object();
+
+    private volatile long delayMillis = 0;
+
+    /**
+     * Число полученных команд по имени, команды транзакции считаются при постановке в очередь
+     */
+    private final Map<String, LongAdder> commands = new ConcurrentHashMap<>();
+
+    /**
+     * Эмуляции Lua скриптов по SHA1 тела
+     */
+    private final Map<String, ScriptEmulation> emulations = new ConcurrentHashMap<>();
+
+    /**
+     * SHA1 скриптов, загруженных SCRIPT LOAD или выполненных EVAL, до SCRIPT FLUSH
+     */
+    private final Set<String> loadedScripts = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Запустить сервер на свободном порту локального интерфейса
+     */
+    public EmbeddedRedisServer() throws IOException {
+        this(0);
+    }
+
+    /**
+     * Запустить сервер на заданном порту локального интерфейса
+     * @param port - порт, 0 - любой свободный
+     */
+    public EmbeddedRedisServer(int port) throws IOException {
+        serverSocket = new ServerSocket(port, 128, InetAddress.getLoopbackAddress());
+        emulateBuiltinScripts();
+        acceptor = new Thread(this::accept, "embedded-redis-" + getPort());
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    public String getHost() {
+        return serverSocket.getInetAddress().getHostAddress();
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Остановить сервер и закрыть соединения клиентов, как при падении узла
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        serverSocket.close();
+        disconnectClients();
+        synchronized (pauseLock) {
+            pauseLock.notifyAll();
+        }
+    }
+
+    /**
+     * Разорвать соединения клиентов, сервер продолжает принимать новые, как при сетевом сбое
+     */
+    public void disconnectClients() {
+        for (Socket socket : sockets) {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     * Перестать отвечать на команды, соединения принимаются, как у зависшего сервера
+     */
+    public void pause() {
+        synchronized (pauseLock) {
+            paused = true;
+        }
+    }
+
+    /**
+     * Продолжить выполнение команд после {@link #pause()}
+     */
+    public void resume() {
+        synchronized (pauseLock) {
+            paused = false;
+            pauseLock.notifyAll();
+        }
+    }
+
+    /**
+     * Задержка перед выполнением каждой команды, как у перегруженного сервера
+     * @param delayMillis - задержка в миллисекундах, 0 - без задержки
+     */
+    public void setDelayMillis(long delayMillis) {
+        this.delayMillis = delayMillis;
+    }
+
+    /**
+     * Число полученных сервером команд с этим именем, например LPUSH
+     */
+    public long getCommandCount(String name) {
+        LongAdder count = commands.get(name.toUpperCase(Locale.ROOT));
+        return count == null ? 0 : count.sum();
+    }
+
+    /**
+     * Ждёт конца паузы и задержки перед командой
+     */
+    private void slowDown() throws IOException {
+        try {
+            synchronized (pauseLock) {
+                while (paused && !closed) {
+                    pauseLock.wait(100);
+                }
+            }
+            long delay = delayMillis;
+            if (delay > 0) {
+                Thread.sleep(delay);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException(ex);
+        }
+    }
+
+    private void accept() {
+        while (!closed) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                sockets.add(socket);
+                if (closed) {
+                    socket.close();
+                    break;
+                }
+                Thread thread = new Thread(new Connection(socket), "embedded-redis-connection");
+                thread.setDaemon(true);
+                thread.start();
+            } catch (IOException ex) {
+                if (!closed) {
+                    ex.printStackTrace();
+                }
+            }
+        }
+    }
+
+    //region Соединение
+
+    private class Connection implements Runnable {
+
+        private final Socket socket;
+
+        private final InputStream in;
+
+        private final OutputStream out;
+
+        private final Set<String> subscribedChannels = ConcurrentHashMap.newKeySet();
+
+        private final Set<String> subscribedPatterns = ConcurrentHashMap.newKeySet();
+
+        /**
+         * Команды открытой транзакции MULTI, null вне транзакции
+         */
+        private List<List<byte[]>> transaction;
+
+        /**
+         * Ключи под WATCH и признак их изменения после WATCH, под блокировкой {@link #lock}
+         */
+        private final Set<String> watched = new HashSet<>();
+
+        private boolean dirty;
+
+        Connection(Socket socket) throws IOException {
+            this(socket, new BufferedInputStream(socket.getInputStream(), 64 * 1024),
+                    new BufferedOutputStream(socket.getOutputStream(), 64 * 1024));
+        }
+
+        /**
+         * Соединение без сокета: ответы команд скрипта пишутся в out
+         */
+        Connection(Socket socket, InputStream in, OutputStream out) {
+            this.socket = socket;
+            this.in = in;
+            this.out = out;
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (!closed) {
+                    List<byte[]> command = readCommand();
+                    if (command == null) break;
+                    slowDown();
+                    boolean quit;
+                    synchronized (out) {
+                        quit = execute(command, this);
+                        if (in.available() == 0) {
+                            out.flush();
+                        }
+                    }
+                    if (quit) break;
+                }
+            } catch (IOException ignored) {
+            } finally {
+                unsubscribeAll(this);
+                synchronized (lock) {
+                    unwatch(this);
+                }
+                sockets.remove(socket);
+                try {
+                    socket.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+
+        private List<byte[]> readCommand() throws IOException {
+            int b = in.read();
+            if (b == -1) return null;
+            if (b != '*') throw new IOException("Unsupported request type: " + (char) b);
+            int count = (int) readLong();
+            List<byte[]> args = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                if (in.read() != '$') throw new IOException("Bulk string expected");
+                int length = (int) readLong();
+                byte[] arg = new byte[length];
+                int read = 0;
+                while (read < length) {
+                    int n = in.read(arg, read, length - read);
+                    if (n < 0) throw new EOFException();
+                    read += n;
+                }
+                in.read();
+                in.read();
+                args.add(arg);
+            }
+            return args;
+        }
+
+        private long readLong() throws IOException {
+            long value = 0;
+            boolean negative = false;
+            int b;
+            while ((b = in.read()) != '\r') {
+                if (b == -1) throw new EOFException();
+                if (b == '-') negative = true;
+                else value = value * 10 + (b - '0');
+            }
+            in.read();
+            return negative ? -value : value;
+        }
+
+        void simple(String value) throws IOException {
+            out.write('+');
+            out.write(value.getBytes(StandardCharsets.UTF_8));
+            out.write(CRLF);
+        }
+
+        void error(String value) throws IOException {
+            out.write('-');
+            out.write(value.getBytes(StandardCharsets.UTF_8));
+            out.write(CRLF);
+        }
+
+        void integer(long value) throws IOException {
+            out.write(':');
+            out.write(Long.toString(value).getBytes(StandardCharsets.US_ASCII));
+            out.write(CRLF);
+        }
+
+        void bulk(byte[] value) throws IOException {
+            if (value == null) {
+                out.write("$-1\r\n".getBytes(StandardCharsets.US_ASCII));
+                return;
+            }
+            out.write('$');
+            out.write(Integer.toString(value.length).getBytes(StandardCharsets.US_ASCII));
+            out.write(CRLF);
+            out.write(value);
+            out.write(CRLF);
+        }
+
+        void arrayHeader(int size) throws IOException {
+            out.write('*');
+            out.write(Integer.toString(size).getBytes(StandardCharsets.US_ASCII));
+            out.write(CRLF);
+        }
+
+        void nullArray() throws IOException {
+            out.write("*-1\r\n".getBytes(StandardCharsets.US_ASCII));
+        }
+
+        /**
+         * Ответ скрипта с преобразованием типов как у Lua: число - integer, строка - bulk, false - nil, true - 1, список - массив
+         */
+        void reply(Object value) throws IOException {
+            if (value == null || Boolean.FALSE.equals(value)) bulk(null);
+            else if (Boolean.TRUE.equals(value)) integer(1);
+            else if (value instanceof Long) integer((Long) value);
+            else if (value instanceof byte[]) bulk((byte[]) value);
+            else if (value instanceof List) {
+                List<?> items = (List<?>) value;
+                arrayHeader(items.size());
+                for (Object item : items) {
+                    reply(item);
+                }
+            } else bulk(value.toString().getBytes(StandardCharsets.UTF_8));
+        }
+
+        void push(Object... items) {
+            synchronized (out) {
+                try {
+                    arrayHeader(items.length);
+                    for (Object item : items) {
+                        if (item == null) bulk(null);
+                        else if (item instanceof Long) integer((Long) item);
+                        else if (item instanceof byte[]) bulk((byte[]) item);
+                        else bulk(item.toString().getBytes(StandardCharsets.UTF_8));
+                    }
+                    out.flush();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    //endregion
+
+    //region Команды
+
+    private static String str(byte[] value) {
+        return new String(value, StandardCharsets.UTF_8);
+    }
+
+    private static String sha1(byte[] value) {
+        try {
+            StringBuilder result = new StringBuilder();
+            for (byte b : MessageDigest.getInstance("SHA-1").digest(value)) {
+                result.append(String.format("%02x", b));
+            }
+            return result.toString();
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static long num(byte[] value) {
+        return Long.parseLong(str(value));
+    }
+
+    private boolean execute(List<byte[]> args, Connection c) throws IOException {
+        String name = str(args.get(0)).toUpperCase(Locale.ROOT);
+        commands.computeIfAbsent(name, k -> new LongAdder()).increment();
+        try {
+            if (c.transaction != null && !name.equals("EXEC") && !name.equals("DISCARD")) {
+                if (name.equals("MULTI")) {
+                    c.error("ERR MULTI calls can not be nested");
+                } else if (name.equals("WATCH")) {
+                    c.error("ERR WATCH inside MULTI is not allowed");
+                } else {
+                    c.transaction.add(args);
+                    c.simple("QUEUED");
+                }
+                return false;
+            }
+            switch (name) {
+                case "MULTI":
+                    c.transaction = new ArrayList<>();
+                    c.simple("OK");
+                    return false;
+                case "EXEC": {
+                    if (c.transaction == null) {
+                        c.error("ERR EXEC without MULTI");
+                        return false;
+                    }
+                    List<List<byte[]>> commands = c.transaction;
+                    c.transaction = null;
+                    synchronized (lock) {
+                        boolean aborted = c.dirty;
+                        unwatch(c);
+                        if (aborted) {
+                            c.nullArray();
+                            return false;
+                        }
+                        c.arrayHeader(commands.size());
+                        for (List<byte[]> command : commands) {
+                            String commandName = str(command.get(0)).toUpperCase(Locale.ROOT);
+                            try {
+                                executeData(commandName, command, c);
+                                modified(commandName, command);
+                            } catch (RuntimeException ex) {
+                                c.error("ERR " + ex);
+                            }
+                        }
+                        lock.notifyAll();
+                    }
+                    return false;
+                }
+                case "DISCARD":
+                    if (c.transaction == null) {
+                        c.error("ERR DISCARD without MULTI");
+                    } else {
+                        c.transaction = null;
+                        synchronized (lock) {
+                            unwatch(c);
+                        }
+                        c.simple("OK");
+                    }
+                    return false;
+                case "WATCH":
+                    synchronized (lock) {
+                        for (int i = 1; i < args.size(); i++) {
+                            String key = str(args.get(i));
+                            if (c.watched.add(key)) {
+                                watchers.computeIfAbsent(key, k -> new HashSet<>()).add(c);
+                            }
+                        }
+                    }
+                    c.simple("OK");
+                    return false;
+                case "UNWATCH":
+                    synchronized (lock) {
+                        unwatch(c);
+                    }
+                    c.simple("OK");
+                    return false;
+                case "PING":
+                    c.simple("PONG");
+                    return false;
+                case "QUIT":
+                    c.simple("OK");
+                    return true;
+                case "SELECT":
+                case "AUTH":
+                case "CLIENT":
+                    c.simple("OK");
+                    return false;
+                case "PUBLISH":
+                    c.integer(publish(str(args.get(1)), args.get(2)));
+                    return false;
+                case "SUBSCRIBE":
+                    for (int i = 1; i < args.size(); i++) {
+                        String channel = str(args.get(i));
+                        channels.computeIfAbsent(channel, k -> ConcurrentHashMap.newKeySet()).add(c);
+                        c.subscribedChannels.add(channel);
+                        c.push("subscribe", channel, (long) (c.subscribedChannels.size() + c.subscribedPatterns.size()));
+                    }
+                    return false;
+                case "PSUBSCRIBE":
+                    for (int i = 1; i < args.size(); i++) {
+                        String pattern = str(args.get(i));
+                        patterns.computeIfAbsent(pattern, k -> ConcurrentHashMap.newKeySet()).add(c);
+                        c.subscribedPatterns.add(pattern);
+                        c.push("psubscribe", pattern, (long) (c.subscribedChannels.size() + c.subscribedPatterns.size()));
+                    }
+                    return false;
+                case "UNSUBSCRIBE":
+                    unsubscribe(c, args, c.subscribedChannels, channels, "unsubscribe");
+                    return false;
+                case "PUNSUBSCRIBE":
+                    unsubscribe(c, args, c.subscribedPatterns, patterns, "punsubscribe");
+                    return false;
+                case "SCRIPT":
+                    script(args, c);
+                    return false;
+                case "EVALSHA": {
+                    String sha = str(args.get(1)).toLowerCase(Locale.ROOT);
+                    if (!loadedScripts.contains(sha)) {
+                        c.error("NOSCRIPT No matching script. Please use EVAL.");
+                    } else {
+                        eval(sha, args, c);
+                    }
+                    return false;
+                }
+                case "EVAL": {
+                    String sha = sha1(args.get(1));
+                    if (!emulations.containsKey(sha)) {
+                        c.error("ERR Error compiling script: embedded server has no emulation of script " + sha);
+                    } else {
+                        loadedScripts.add(sha);
+                        eval(sha, args, c);
+                    }
+                    return false;
+                }
+                case "BRPOPLPUSH":
+                    synchronized (lock) {
+                        blockingPopPush(args, c);
+                        modified(name, args);
+                    }
+                    return false;
+                default:
+                    synchronized (lock) {
+                        executeData(name, args, c);
+                        modified(name, args);
+                        lock.notifyAll();
+                    }
+                    return false;
+            }
+        } catch (NumberFormatException ex) {
+            c.error("ERR value is not an integer or out of range");
+        } catch (ClassCastException ex) {
+            c.error("WRONGTYPE Operation against a key holding the wrong kind of value");
+        } catch (IndexOutOfBoundsException ex) {
+            c.error("ERR wrong number of arguments for '" + name.toLowerCase(Locale.ROOT) + "' command");
+        }
+        return false;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void executeData(String name, List<byte[]> args, Connection c) throws IOException {
+        switch (name) {
+            case "FLUSHDB":
+            case "FLUSHALL":
+                data.clear();
+                expires.clear();
+                c.simple("OK");
+                break;
+            case "DBSIZE":
+                c.integer(data.size());
+                break;
+            case "SET": {
+                String key = str(args.get(1));
+                long ttl = 0;
+                boolean nx = false, xx = false;
+                for (int i = 3; i < args.size(); i++) {
+                    String option = str(args.get(i)).toUpperCase(Locale.ROOT);
+                    if (option.equals("EX")) ttl = num(args.get(++i)) * 1000;
+                    else if (option.equals("PX")) ttl = num(args.get(++i));
+                    else if (option.equals("NX")) nx = true;
+                    else if (option.equals("XX")) xx = true;
+                    else {
+                        c.error("ERR syntax error");
+                        return;
+                    }
+                }
+                boolean exists = lookup(key) != null;
+                if ((nx && exists) || (xx && !exists)) {
+                    c.bulk(null);
+                    return;
+                }
+                store(key, args.get(2), ttl);
+                c.simple("OK");
+                break;
+            }
+            case "SETEX":
+                store(str(args.get(1)), args.get(3), num(args.get(2)) * 1000);
+                c.simple("OK");
+                break;
+            case "PSETEX":
+                store(str(args.get(1)), args.get(3), num(args.get(2)));
+                c.simple("OK");
+                break;
+            case "GET":
+                c.bulk((byte[]) lookup(str(args.get(1))));
+                break;
+            case "MSET":
+                for (int i = 1; i < args.size(); i += 2) {
+                    store(str(args.get(i)), args.get(i + 1), 0);
+                }
+                c.simple("OK");
+                break;
+            case "MGET":
+                c.arrayHeader(args.size() - 1);
+                for (int i = 1; i < args.size(); i++) {
+                    Object value = lookup(str(args.get(i)));
+                    c.bulk(value instanceof byte[] ? (byte[]) value : null);
+                }
+                break;
+            case "EXISTS": {
+                long count = 0;
+                for (int i = 1; i < args.size(); i++) {
+                    if (lookup(str(args.get(i))) != null) count++;
+                }
+                c.integer(count);
+                break;
+            }
+            case "DEL": {
+                long count = 0;
+                for (int i = 1; i < args.size(); i++) {
+                    String key = str(args.get(i));
+                    if (lookup(key) != null) {
+                        data.remove(key);
+                        expires.remove(key);
+                        count++;
+                    }
+                }
+                c.integer(count);
+                break;
+            }
+            case "EXPIRE":
+            case "PEXPIRE":
+            case "EXPIREAT": {
+                String key = str(args.get(1));
+                if (lookup(key) == null) {
+                    c.integer(0);
+                    return;
+                }
+                long value = num(args.get(2));
+                long at = name.equals("EXPIRE") ? System.currentTimeMillis() + value * 1000
+                        : name.equals("PEXPIRE") ? System.currentTimeMillis() + value
+                        : value * 1000;
+                expires.put(key, at);
+                c.integer(1);
+                break;
+            }
+            case "PERSIST":
+                c.integer(expires.remove(str(args.get(1))) != null ? 1 : 0);
+                break;
+            case "TTL":
+            case "PTTL": {
+                String key = str(args.get(1));
+                if (lookup(key) == null) {
+                    c.integer(-2);
+                    return;
+                }
+                Long at = expires.get(key);
+                if (at == null) {
+                    c.integer(-1);
+                    return;
+                }
+                long left = at - System.currentTimeMillis();
+                c.integer(name.equals("TTL") ? (left + 999) / 1000 : left);
+                break;
+            }
+            case "LLEN": {
+                LinkedList<byte[]> list = (LinkedList<byte[]>) lookup(str(args.get(1)));
+                c.integer(list == null ? 0 : list.size());
+                break;
+            }
+            case "LPUSH":
+            case "RPUSH": {
+                LinkedList<byte[]> list = list(str(args.get(1)));
+                for (int i = 2; i < args.size(); i++) {
+                    if (name.equals("LPUSH")) list.addFirst(args.get(i));
+                    else list.addLast(args.get(i));
+                }
+                c.integer(list.size());
+                break;
+            }
+            case "LPOP":
+            case "RPOP": {
+                String key = str(args.get(1));
+                LinkedList<byte[]> list = (LinkedList<byte[]>) lookup(key);
+                byte[] value = list == null || list.isEmpty() ? null : name.equals("LPOP") ? list.removeFirst() : list.removeLast();
+                removeIfEmpty(key, list);
+                c.bulk(value);
+                break;
+            }
+            case "RPOPLPUSH": {
+                String source = str(args.get(1));
+                LinkedList<byte[]> list = (LinkedList<byte[]>) lookup(source);
+                if (list == null || list.isEmpty()) {
+                    c.bulk(null);
+                    return;
+                }
+                byte[] value = list.removeLast();
+                removeIfEmpty(source, list);
+                list(str(args.get(2))).addFirst(value);
+                c.bulk(value);
+                break;
+            }
+            case "LRANGE": {
+                LinkedList<byte[]> list = (LinkedList<byte[]>) lookup(str(args.get(1)));
+                List<byte[]> range = range(list, num(args.get(2)), num(args.get(3)));
+                c.arrayHeader(range.size());
+                for (byte[] item : range) {
+                    c.bulk(item);
+                }
+                break;
+            }
+            case "LTRIM": {
+                String key = str(args.get(1));
+                LinkedList<byte[]> list = (LinkedList<byte[]>) lookup(key);
+                if (list != null) {
+                    List<byte[]> range = range(list, num(args.get(2)), num(args.get(3)));
+                    list.clear();
+                    list.addAll(range);
+                    removeIfEmpty(key, list);
+                }
+                c.simple("OK");
+                break;
+            }
+            case "LREM": {
+                String key = str(args.get(1));
+                LinkedList<byte[]> list = (LinkedList<byte[]>) lookup(key);
+                long count = num(args.get(2));
+                byte[] value = args.get(3);
+                long removed = 0;
+                if (list != null) {
+                    Iterator<byte[]> iterator = count < 0 ? list.descendingIterator() : list.iterator();
+                    long limit = count == 0 ? Long.MAX_VALUE : Math.abs(count);
+                    while (iterator.hasNext() && removed < limit) {
+                        if (java.util.Arrays.equals(iterator.next(), value)) {
+                            iterator.remove();
+                            removed++;
+                        }
+                    }
+                    removeIfEmpty(key, list);
+                }
+                c.integer(removed);
+                break;
+            }
+            case "SADD": {
+                Set<String> set = set(str(args.get(1)));
+                long added = 0;
+                for (int i = 2; i < args.size(); i++) {
+                    if (set.add(str(args.get(i)))) added++;
+                }
+                c.integer(added);
+                break;
+            }
+            case "SREM": {
+                String key = str(args.get(1));
+                Set<String> set = (Set<String>) lookup(key);
+                long removed = 0;
+                if (set != null) {
+                    for (int i = 2; i < args.size(); i++) {
+                        if (set.remove(str(args.get(i)))) removed++;
+                    }
+                    if (set.isEmpty()) {
+                        data.remove(key);
+                        expires.remove(key);
+                    }
+                }
+                c.integer(removed);
+                break;
+            }
+            case "SMEMBERS": {
+                Set<String> set = (Set<String>) lookup(str(args.get(1)));
+                c.arrayHeader(set == null ? 0 : set.size());
+                if (set != null) {
+                    for (String member : set) {
+                        c.bulk(member.getBytes(StandardCharsets.UTF_8));
+                    }
+                }
+                break;
+            }
+            case "HSET":
+            case "HMSET": {
+                Map<String, byte[]> hash = hash(str(args.get(1)));
+                long added = 0;
+                for (int i = 2; i + 1 < args.size(); i += 2) {
+                    if (hash.put(str(args.get(i)), args.get(i + 1)) == null) added++;
+                }
+                if (name.equals("HSET")) c.integer(added);
+                else c.simple("OK");
+                break;
+            }
+            case "HGET": {
+                Map<String, byte[]> hash = (Map<String, byte[]>) lookup(str(args.get(1)));
+                c.bulk(hash == null ? null : hash.get(str(args.get(2))));
+                break;
+            }
+            case "HMGET": {
+                Map<String, byte[]> hash = (Map<String, byte[]>) lookup(str(args.get(1)));
+                c.arrayHeader(args.size() - 2);
+                for (int i = 2; i < args.size(); i++) {
+                    c.bulk(hash == null ? null : hash.get(str(args.get(i))));
+                }
+                break;
+            }
+            case "HGETALL": {
+                Map<String, byte[]> hash = (Map<String, byte[]>) lookup(str(args.get(1)));
+                c.arrayHeader(hash == null ? 0 : hash.size() * 2);
+                if (hash != null) {
+                    for (Map.Entry<String, byte[]> entry : hash.entrySet()) {
+                        c.bulk(entry.getKey().getBytes(StandardCharsets.UTF_8));
+                        c.bulk(entry.getValue());
+                    }
+                }
+                break;
+            }
+            case "HINCRBY": {
+                Map<String, byte[]> hash = hash(str(args.get(1)));
+                String field = str(args.get(2));
+                byte[] current = hash.get(field);
+                long value = (current == null ? 0 : num(current)) + num(args.get(3));
+                hash.put(field, String.valueOf(value).getBytes(StandardCharsets.UTF_8));
+                c.integer(value);
+                break;
+            }
+            case "HDEL": {
+                String key = str(args.get(1));
+                Map<String, byte[]> hash = (Map<String, byte[]>) lookup(key);
+                long removed = 0;
+                if (hash != null) {
+                    for (int i = 2; i < args.size(); i++) {
+                        if (hash.remove(str(args.get(i))) != null) removed++;
+                    }
+                    if (hash.isEmpty()) {
+                        data.remove(key);
+                        expires.remove(key);
+                    }
+                }
+                c.integer(removed);
+                break;
+            }
+            case "SCAN": {
+                // курсор - позиция в отсортированном списке ключей
+                String match = null;
+                long count = 10;
+                for (int i = 2; i + 1 < args.size(); i += 2) {
+                    String option = str(args.get(i)).toUpperCase(Locale.ROOT);
+                    if (option.equals("MATCH")) match = str(args.get(i + 1));
+                    else if (option.equals("COUNT")) count = num(args.get(i + 1));
+                }
+                List<String> keys = new ArrayList<>(data.keySet());
+                Collections.sort(keys);
+                int from = (int) Math.min(num(args.get(1)), keys.size());
+                int to = (int) Math.min(from + Math.max(1, count), keys.size());
+                List<byte[]> page = new ArrayList<>();
+                for (String key : keys.subList(from, to)) {
+                    if (lookup(key) != null && (match == null || glob(match).matcher(key).matches())) {
+                        page.add(key.getBytes(StandardCharsets.UTF_8));
+                    }
+                }
+                c.arrayHeader(2);
+                c.bulk(String.valueOf(to == keys.size() ? 0 : to).getBytes(StandardCharsets.US_ASCII));
+                c.arrayHeader(page.size());
+                for (byte[] key : page) {
+                    c.bulk(key);
+                }
+                break;
+            }
+            default:
+                c.error("ERR unknown command '" + name.toLowerCase(Locale.ROOT) + "'");
+        }
+    }
+
+    /**
+     * Помечает изменёнными для WATCH ключи команды записи
+     */
+    private void modified(String name, List<byte[]> args) {
+        if (watchers.isEmpty() || READ_COMMANDS.contains(name)) return;
+        if (name.startsWith("FLUSH")) {
+            for (Set<Connection> connections : watchers.values()) {
+                for (Connection connection : connections) connection.dirty = true;
+            }
+            return;
+        }
+        if (args.size() < 2) return;
+        int step = name.equals("MSET") ? 2 : 1;
+        int last = name.equals("MSET") || name.equals("DEL") ? args.size() - 1
+                : name.endsWith("RPOPLPUSH") ? 2 : 1;
+        for (int i = 1; i <= last; i += step) {
+            Set<Connection> connections = watchers.get(str(args.get(i)));
+            if (connections != null) {
+                for (Connection connection : connections) connection.dirty = true;
+            }
+        }
+    }
+
+    private void unwatch(Connection c) {
+        for (String key : c.watched) {
+            Set<Connection> connections = watchers.get(key);
+            if (connections != null) {
+                connections.remove(c);
+                if (connections.isEmpty()) watchers.remove(key);
+            }
+        }
+        c.watched.clear();
+        c.dirty = false;
+    }
+
+    /**
+     * BRPOPLPUSH: ждёт элемент в источнике до таймаута, отпуская блокировку на время ожидания
+     */
+    @SuppressWarnings("unchecked")
+    private void blockingPopPush(List<byte[]> args, Connection c) throws IOException {
+        String source = str(args.get(1));
+        long timeout = num(args.get(3));
+        long deadline = timeout == 0 ? Long.MAX_VALUE : System.currentTimeMillis() + timeout * 1000;
+        while (true) {
+            LinkedList<byte[]> list = (LinkedList<byte[]>) lookup(source);
+            if (list != null && !list.isEmpty()) {
+                byte[] value = list.removeLast();
+                removeIfEmpty(source, list);
+                list(str(args.get(2))).addFirst(value);
+                c.bulk(value);
+                return;
+            }
+            long left = deadline - System.currentTimeMillis();
+            if (left <= 0) {
+                c.bulk(null);
+                return;
+            }
+            try {
+                lock.wait(Math.min(left, 100));
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                c.bulk(null);
+                return;
+            }
+        }
+    }
+
+    private Object lookup(String key) {
+        Long at = expires.get(key);
+        if (at != null && at <= System.currentTimeMillis()) {
+            data.remove(key);
+            expires.remove(key);
+            return null;
+        }
+        return data.get(key);
+    }
+
+    private void store(String key, byte[] value, long ttlMillis) {
+        data.put(key, value);
+        if (ttlMillis > 0) {
+            expires.put(key, System.currentTimeMillis() + ttlMillis);
+        } else {
+            expires.remove(key);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private LinkedList<byte[]> list(String key) {
+        Object value = lookup(key);
+        if (value == null) {
+            value = new LinkedList<byte[]>();
+            data.put(key, value);
+        }
+        return (LinkedList<byte[]>) value;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Set<String> set(String key) {
+        Object value = lookup(key);
+        if (value == null) {
+            value = new LinkedHashSet<String>();
+            data.put(key, value);
+        }
+        return (Set<String>) value;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, byte[]> hash(String key) {
+        Object value = lookup(key);
+        if (value == null) {
+            value = new LinkedHashMap<String, byte[]>();
+            data.put(key, value);
+        }
+        return (Map<String, byte[]>) value;
+    }
+
+    private void removeIfEmpty(String key, LinkedList<byte[]> list) {
+        if (list != null && list.isEmpty()) {
+            data.remove(key);
+            expires.remove(key);
+        }
+    }
+
+    private static List<byte[]> range(List<byte[]> list, long start, long stop) {
+        List<byte[]> result = new ArrayList<>();
+        if (list == null) return result;
+        int size = list.size();
+        if (start < 0) start = Math.max(0, size + start);
+        if (stop < 0) stop = size + stop;
+        if (stop >= size) stop = size - 1;
+        if (start > stop) return result;
+        return new ArrayList<>(list.subList((int) start, (int) stop + 1));
+    }
+
+    //endregion
+
+    //region Скрипты
+
+    /**
+     * Тело Lua скрипта, переписанное на Java
+     */
+    @FunctionalInterface
+    public interface ScriptEmulation {
+
+        /**
+         * @param redis - вызов команд сервера, как redis.call в Lua
+         * @param keys - KEYS
+         * @param argv - ARGV
+         * @return ответ скрипта: Long, byte[], String, Boolean, List или null
+         */
+        Object run(ScriptCall redis, List<byte[]> keys, List<byte[]> argv);
+    }
+
+    /**
+     * Вызов команды сервера из скрипта
+     */
+    @FunctionalInterface
+    public interface ScriptCall {
+
+        /**
+         * @param command - имя команды и аргументы: byte[] или строки
+         * @return ответ команды: Long, byte[], String (статус), List или null; ошибка команды - IllegalStateException
+         */
+        Object call(Object... command);
+    }
+
+    /**
+     * Эмулировать Lua скрипт: EVAL с этим телом и EVALSHA после загрузки выполнят emulation под блокировкой сервера, атомарно
+     * @param source - тело скрипта, по нему считается SHA1
+     * @param emulation - код скрипта на Java
+     */
+    public void script(String source, ScriptEmulation emulation) {
+        emulations.put(sha1(source.getBytes(StandardCharsets.UTF_8)), emulation);
+    }
+
+    /**
+     * Забыть загруженные скрипты, как SCRIPT FLUSH или перезапуск сервера: следующий EVALSHA получит NOSCRIPT
+     */
+    public void flushScripts() {
+        loadedScripts.clear();
+    }
+
+    private void emulateBuiltinScripts() {
+        script(BuiltinScripts.GET_AND_TOUCH.getSource(), (redis, keys, argv) -> {
+            Object value = redis.call("GET", keys.get(0));
+            if (value != null) {
+                redis.call("EXPIRE", keys.get(0), argv.get(0));
+            }
+            return value;
+        });
+        script(BuiltinScripts.COMPARE_AND_SET.getSource(), (redis, keys, argv) -> {
+            byte[] current = (byte[]) redis.call("GET", keys.get(0));
+            if (str(argv.get(0)).equals("1")) {
+                if (!Arrays.equals(current, argv.get(1))) return 0L;
+            } else if (current != null) {
+                return 0L;
+            }
+            if (num(argv.get(3)) > 0) {
+                redis.call("SETEX", keys.get(0), argv.get(3), argv.get(2));
+            } else {
+                redis.call("SET", keys.get(0), argv.get(2));
+            }
+            return 1L;
+        });
+        script(BuiltinScripts.DELETE_IF_EQUALS.getSource(), (redis, keys, argv) -> {
+            if (Arrays.equals((byte[]) redis.call("GET", keys.get(0)), argv.get(0))) {
+                return redis.call("DEL", keys.get(0));
+            }
+            return 0L;
+        });
+        script(BuiltinScripts.ACK_AND_POP.getSource(), (redis, keys, argv) -> {
+            redis.call("LREM", keys.get(0), "1", argv.get(0));
+            return redis.call("RPOPLPUSH", keys.get(1), keys.get(0));
+        });
+    }
+
+    private void script(List<byte[]> args, Connection c) throws IOException {
+        String subcommand = str(args.get(1)).toUpperCase(Locale.ROOT);
+        switch (subcommand) {
+            case "LOAD": {
+                String sha = sha1(args.get(2));
+                loadedScripts.add(sha);
+                c.bulk(sha.getBytes(StandardCharsets.US_ASCII));
+                break;
+            }
+            case "EXISTS":
+                c.arrayHeader(args.size() - 2);
+                for (int i = 2; i < args.size(); i++) {
+                    c.integer(loadedScripts.contains(str(args.get(i)).toLowerCase(Locale.ROOT)) ? 1 : 0);
+                }
+                break;
+            case "FLUSH":
+                flushScripts();
+                c.simple("OK");
+                break;
+            default:
+                c.simple("OK");
+        }
+    }
+
+    private void eval(String sha, List<byte[]> args, Connection c) throws IOException {
+        ScriptEmulation emulation = emulations.get(sha);
+        if (emulation == null) {
+            c.error("ERR Error running script: embedded server has no emulation of script " + sha);
+            return;
+        }
+        int count = (int) num(args.get(2));
+        List<byte[]> keys = new ArrayList<>(args.subList(3, 3 + count));
+        List<byte[]> argv = new ArrayList<>(args.subList(3 + count, args.size()));
+        Object result;
+        synchronized (lock) {
+            try {
+                result = emulation.run(this::call, keys, argv);
+            } catch (RuntimeException ex) {
+                c.error("ERR Error running script (call to " + sha + "): " + ex.getMessage());
+                return;
+            } finally {
+                lock.notifyAll();
+            }
+        }
+        c.reply(result);
+    }
+
+    /**
+     * Команда из скрипта: выполняется как команда клиента, ответ разбирается обратно из RESP. Вызывается под блокировкой {@link #lock}
+     */
+    private Object call(Object... command) {
+        List<byte[]> args = new ArrayList<>(command.length);
+        for (Object arg : command) {
+            args.add(arg instanceof byte[] ? (byte[]) arg : arg.toString().getBytes(StandardCharsets.UTF_8));
+        }
+        String name = str(args.get(0)).toUpperCase(Locale.ROOT);
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try {
+            executeData(name, args, new Connection(null, null, buffer));
+            modified(name, args);
+            return readReply(new ByteArrayInputStream(buffer.toByteArray()));
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private static Object readReply(InputStream in) throws IOException {
+        int type = in.read();
+        StringBuilder line = new StringBuilder();
+        int b;
+        while ((b = in.read()) != '\r') {
+            if (b == -1) throw new EOFException();
+            line.append((char) b);
+        }
+        in.read();
+        switch (type) {
+            case '+':
+                return line.toString();
+            case '-':
+                throw new IllegalStateException(line.toString());
+            case ':':
+                return Long.parseLong(line.toString());
+            case '$': {
+                int length = Integer.parseInt(line.toString());
+                if (length < 0) return null;
+                byte[] value = new byte[length];
+                if (in.read(value, 0, length) != length) throw new EOFException();
+                in.read();
+                in.read();
+                return value;
+            }
+            case '*': {
+                int size = Integer.parseInt(line.toString());
+                if (size < 0) return null;
+                List<Object> items = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    items.add(readReply(in));
+                }
+                return items;
+            }
+            default:
+                throw new IOException("Unsupported reply type: " + (char) type);
+        }
+    }
+
+    //endregion
+
+    //region Pub/Sub
+
+    private long publish(String channel, byte[] message) {
+        long received = 0;
+        Set<Connection> direct = channels.get(channel);
+        if (direct != null) {
+            for (Connection connection : direct) {
+                connection.push("message", channel, message);
+                received++;
+            }
+        }
+        for (Map.Entry<String, Set<Connection>> entry : patterns.entrySet()) {
+            if (glob(entry.getKey()).matcher(channel).matches()) {
+                for (Connection connection : entry.getValue()) {
+                    connection.push("pmessage", entry.getKey(), channel, message);
+                    received++;
+                }
+            }
+        }
+        return received;
+    }
+
+    private void unsubscribe(Connection c, List<byte[]> args, Set<String> subscribed, Map<String, Set<Connection>> registry, String kind) {
+        List<String> names = new ArrayList<>();
+        if (args.size() == 1) {
+            names.addAll(subscribed);
+        } else {
+            for (int i = 1; i < args.size(); i++) {
+                names.add(str(args.get(i)));
+            }
+        }
+        if (names.isEmpty()) {
+            c.push(kind, null, 0L);
+        }
+        for (String name : names) {
+            subscribed.remove(name);
+            Set<Connection> connections = registry.get(name);
+            if (connections != null) {
+                connections.remove(c);
+            }
+            c.push(kind, name, (long) (c.subscribedChannels.size() + c.subscribedPatterns.size()));
+        }
+    }
+
+    private void unsubscribeAll(Connection c) {
+        for (String channel : c.subscribedChannels) {
+            Set<Connection> connections = channels.get(channel);
+            if (connections != null) connections.remove(c);
+        }
+        for (String pattern : c.subscribedPatterns) {
+            Set<Connection> connections = patterns.get(pattern);
+            if (connections != null) connections.remove(c);
+        }
+    }
+
+    private final Map<String, Pattern> globs = new ConcurrentHashMap<>();
+
+    private Pattern glob(String pattern) {
+        return globs.computeIfAbsent(pattern, p -> {
+            StringBuilder regex = new StringBuilder();
+            for (char ch : p.toCharArray()) {
+                switch (ch) {
+                    case '*': regex.append(".*"); break;
+                    case '?': regex.append('.'); break;
+                    case '[': regex.append('['); break;
+                    case ']': regex.append(']'); break;
+                    default: regex.append(Pattern.quote(String.valueOf(ch)));
+                }
+            }
+            return Pattern.compile(regex.toString());
+        });
+    }
+
+    //endregion
+
+    /**
+     * Запуск сервера как отдельного процесса: java -cp benchmarks.jar benchmarks.server.EmbeddedRedisServer [port]
+     */
+    public static void main(String[] args) throws Exception {
+        EmbeddedRedisServer server = new EmbeddedRedisServer(args.length > 0 ? Integer.parseInt(args[0]) : 6379);
+        System.out.println("Embedded redis listening on " + server.getHost() + ":" + server.getPort());
+        server.acceptor.join();
+    }
+}
@@ -0,0 +1,96 @@
+package services;
+
+import configs.RedisConfig;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import redis.clients.util.SafeEncoder;
+import servers.EmbeddedRedisServer;
+
+import java.io.IOException;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Два узла с локальным кэшем на одном встроенном сервере
+ */
+public class NearCachedRedisServiceTest {
+
+    private EmbeddedRedisServer server;
+
+    private NearCachedRedisService first;
+
+    private NearCachedRedisService second;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new EmbeddedRedisServer();
+        Properties properties = new Properties();
+        properties.setProperty("redis.host", server.getHost());
+        properties.setProperty("redis.port", String.valueOf(server.getPort()));
+        properties.setProperty("redis.log.async", "false");
+        properties.setProperty("redis.nearCache.size", "100");
+        first = new NearCachedRedisService(RedisConfig.fromProperties(properties));
+        second = new NearCachedRedisService(RedisConfig.fromProperties(properties));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        first.close();
+        second.close();
+        server.close();
+    }
+
+    @Test
+    public void keysWithSeparatorsAreInvalidated() throws InterruptedException {
+        String key = "line\nbreak:42";
+        second.put(key, "old");
+        awaitCached(first, key);
+        assertEquals("old", first.get(String.class, key));
+
+        second.put(key, "new");
+
+        assertEquals("new", await(first, key, "new"));
+    }
+
+    @Test
+    public void invalidationOfOneKeyKeepsOthers() throws InterruptedException {
+        second.put("a", "1");
+        second.put("a\nb", "2");
+        awaitCached(first, "a");
+        awaitCached(first, "a\nb");
+
+        second.put("a\nb", "3");
+
+        assertEquals("3", await(first, "a\nb", "3"));
+        assertTrue(first.getNearCache().contains(cacheKey(first, "a")));
+    }
+
+    private static String cacheKey(NearCachedRedisService service, String key) {
+        return SafeEncoder.encode(service.rawKey(key));
+    }
+
+    /**
+     * Читает ключ, пока подписка на инвалидацию не станет активной и значение не попадёт в кэш
+     */
+    private static void awaitCached(NearCachedRedisService service, String key) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!service.getNearCache().contains(cacheKey(service, key))) {
+            assertTrue("value is not cached", System.currentTimeMillis() < deadline);
+            service.get(String.class, key);
+            Thread.sleep(10);
+        }
+    }
+
+    private static String await(NearCachedRedisService service, String key, String expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        String value = service.get(String.class, key);
+        while (!expected.equals(value) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+            value = service.get(String.class, key);
+        }
+        return value;
+    }
+}
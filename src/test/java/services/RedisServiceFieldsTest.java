@@ -0,0 +1,122 @@
+package services;
+
+import configs.RedisConfig;
+import exceptions.RedisOperationException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import servers.EmbeddedRedisServer;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+/**
+ * Хранение объектов по полям hash на встроенном сервере
+ */
+public class RedisServiceFieldsTest {
+
+    private EmbeddedRedisServer server;
+
+    private RedisService redis;
+
+    public static class Account {
+        String login;
+        int balance;
+        String note;
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        server = new EmbeddedRedisServer();
+        Properties properties = new Properties();
+        properties.setProperty("redis.host", server.getHost());
+        properties.setProperty("redis.port", String.valueOf(server.getPort()));
+        properties.setProperty("redis.keys.namespace", "app:");
+        properties.setProperty("redis.throwOnFailure", "true");
+        properties.setProperty("redis.log.async", "false");
+        redis = new RedisService(RedisConfig.fromProperties(properties));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        redis.close();
+        server.close();
+    }
+
+    @Test
+    public void fieldsAreStoredAsReadableJson() {
+        redis.putFields("account", account("ivan", 100, "vip"));
+
+        Map<String, String> hash = redis.execute(jedis -> jedis.hgetAll("app:account"));
+        assertEquals("\"ivan\"", hash.get("login"));
+        assertEquals("100", hash.get("balance"));
+        assertEquals("\"vip\"", hash.get("note"));
+
+        Account read = redis.getFields(Account.class, "account");
+        assertEquals("ivan", read.login);
+        assertEquals(100, read.balance);
+        assertEquals("vip", read.note);
+    }
+
+    @Test
+    public void selectedFieldsAreWrittenAndRead() {
+        redis.putFields("account", account("ivan", 100, "vip"));
+
+        redis.putFields("account", account("petr", 5, null), "balance", "note");
+
+        Map<String, String> hash = redis.execute(jedis -> jedis.hgetAll("app:account"));
+        assertEquals("\"ivan\"", hash.get("login"));
+        assertEquals("5", hash.get("balance"));
+        assertFalse(hash.containsKey("note"));
+        Account read = redis.getFields(Account.class, "account", "balance");
+        assertNull(read.login);
+        assertEquals(5, read.balance);
+    }
+
+    @Test
+    public void updateFieldChangesOneField() {
+        redis.putFields("account", account("ivan", 100, "vip"));
+
+        redis.updateField(Account.class, "account", "balance", 250);
+        redis.updateField(Account.class, "account", "note", null);
+
+        Account read = redis.getFields(Account.class, "account");
+        assertEquals("ivan", read.login);
+        assertEquals(250, read.balance);
+        assertNull(read.note);
+        assertEquals(2, redis.execute(jedis -> jedis.hgetAll("app:account")).size());
+    }
+
+    @Test
+    public void missingObjectReadsNull() {
+        assertNull(redis.getFields(Account.class, "account"));
+
+        redis.updateField(Account.class, "account", "note", "created by update");
+        assertNull(redis.getFields(Account.class, "account", "login", "balance"));
+        assertEquals("created by update", redis.getFields(Account.class, "account").note);
+    }
+
+    @Test
+    public void unknownFieldFails() {
+        try {
+            redis.updateField(Account.class, "account", "email", "a@b.c");
+            fail("unknown field must fail");
+        } catch (RedisOperationException expected) {
+            assertFalse(redis.exist("account"));
+        }
+    }
+
+    private static Account account(String login, int balance, String note) {
+        Account account = new Account();
+        account.login = login;
+        account.balance = balance;
+        account.note = note;
+        return account;
+    }
+}
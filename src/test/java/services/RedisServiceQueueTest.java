@@ -0,0 +1,139 @@
+package services;
+
+import configs.RedisConfig;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import redis.clients.util.SafeEncoder;
+import servers.EmbeddedRedisServer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Пакетные операции очередей на встроенном сервере
+ */
+public class RedisServiceQueueTest {
+
+    private static final int CHUNK = 4;
+
+    private EmbeddedRedisServer server;
+
+    private RedisService redis;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new EmbeddedRedisServer();
+        Properties properties = new Properties();
+        properties.setProperty("redis.host", server.getHost());
+        properties.setProperty("redis.port", String.valueOf(server.getPort()));
+        properties.setProperty("redis.queue.pushChunkSize", String.valueOf(CHUNK));
+        properties.setProperty("redis.log.async", "false");
+        redis = new RedisService(RedisConfig.fromProperties(properties));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        redis.close();
+        server.close();
+    }
+
+    @Test
+    public void leftPushAllSendsChunksInCollectionOrder() {
+        List<Integer> objects = numbers(10);
+        for (Integer object : objects) {
+            redis.queueLeftPush("one-by-one", object);
+        }
+        long pushes = server.getCommandCount("LPUSH");
+
+        assertEquals(10, redis.queueLeftPushAll("batch", objects));
+
+        assertEquals(3, server.getCommandCount("LPUSH") - pushes);
+        assertEquals(range("one-by-one"), range("batch"));
+        assertEquals("9", range("batch").get(0));
+    }
+
+    @Test
+    public void rightPushAllSendsChunksInCollectionOrder() {
+        redis.queueRightPush("batch", -1);
+        List<Integer> objects = numbers(8);
+
+        assertEquals(9, redis.queueRightPushAll("batch", objects));
+
+        assertEquals(2, server.getCommandCount("RPUSH") - 1);
+        List<String> expected = new ArrayList<>(Collections.singletonList("-1"));
+        expected.addAll(objects.stream().map(String::valueOf).collect(Collectors.toList()));
+        assertEquals(expected, range("batch"));
+    }
+
+    @Test
+    public void pushAllOfNothingSendsNothing() {
+        assertEquals(0, redis.queueLeftPushAll("batch", Collections.emptyList()));
+        assertEquals(0, redis.queueRightPushAll("batch", null));
+
+        assertEquals(0, server.getCommandCount("LPUSH") + server.getCommandCount("RPUSH"));
+        assertEquals(0, redis.queueSize("batch"));
+    }
+
+    @Test
+    public void dequeueBatchTakesFromTailInOneTransaction() {
+        redis.queueLeftPushAll("batch", numbers(10));
+
+        assertEquals(Arrays.asList(0, 1, 2), redis.dequeueBatch(Integer.class, "batch", 3));
+
+        assertEquals(1, server.getCommandCount("MULTI"));
+        assertEquals(1, server.getCommandCount("EXEC"));
+        assertEquals(7, redis.queueSize("batch"));
+        assertEquals(Arrays.asList(3, 4, 5, 6, 7, 8, 9), redis.dequeueBatch(Integer.class, "batch", 100));
+        assertEquals(0, redis.queueSize("batch"));
+        assertFalse(redis.exist("batch"));
+    }
+
+    @Test
+    public void dequeueBatchOfEmptyQueue() {
+        assertTrue(redis.dequeueBatch(Integer.class, "batch", 5).isEmpty());
+
+        redis.queueLeftPush("batch", 1);
+        assertTrue(redis.dequeueBatch(Integer.class, "batch", 0).isEmpty());
+        assertEquals(1, redis.queueSize("batch"));
+        assertEquals(1, server.getCommandCount("MULTI"));
+    }
+
+    @Test
+    public void dequeueBatchAndPushMovesLikeSequentialCalls() {
+        redis.queueLeftPushAll("batch", numbers(5));
+        redis.queueLeftPushAll("one-by-one", numbers(5));
+
+        List<Integer> batch = redis.dequeueBatchAndPush(Integer.class, "batch", "batch:processing", 3);
+        List<Integer> sequential = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            sequential.add(redis.dequeueAndPush(Integer.class, "one-by-one", "one-by-one:processing"));
+        }
+
+        assertEquals(Arrays.asList(0, 1, 2), batch);
+        assertEquals(sequential, batch);
+        assertEquals(range("one-by-one:processing"), range("batch:processing"));
+        assertEquals(range("one-by-one"), range("batch"));
+        assertEquals(Arrays.asList(3, 4), redis.dequeueBatchAndPush(Integer.class, "batch", "batch:processing", 10));
+        assertEquals(5, redis.queueSize("batch:processing"));
+    }
+
+    private List<String> range(String queue) {
+        List<byte[]> values = redis.execute(jedis -> jedis.lrange(SafeEncoder.encode(queue), 0, -1));
+        return values.stream().map(SafeEncoder::encode).collect(Collectors.toList());
+    }
+
+    private static List<Integer> numbers(int count) {
+        return IntStream.range(0, count).boxed().collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,159 @@
+package services;
+
+import clients.CircuitBreaker;
+import clients.CircuitState;
+import clients.EsiaJedis;
+import clients.EsiaJedisPool;
+import configs.RedisConfig;
+import exceptions.RedisTimeoutException;
+import exceptions.RedisUnavailableException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import servers.EmbeddedRedisServer;
+
+import java.io.IOException;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Таймауты команд, выключатель и исключения на приостановленном встроенном сервере
+ */
+public class RedisServiceTimeoutTest {
+
+    private EmbeddedRedisServer server;
+
+    private RedisService redis;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new EmbeddedRedisServer();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.resume();
+        if (redis != null) {
+            redis.close();
+        }
+        server.close();
+    }
+
+    @Test
+    public void commandTimeoutLimitsWait() {
+        redis = service(false, 0);
+        redis.put("key", "value");
+        server.pause();
+
+        long started = System.nanoTime();
+        assertNull(redis.get(String.class, "key"));
+        assertTrue(elapsedMillis(started) < 1000);
+
+        server.resume();
+        assertEquals("value", redis.get(String.class, "key"));
+    }
+
+    @Test
+    public void withTimeoutOverridesDefault() {
+        redis = service(false, 0);
+        redis.put("key", "value");
+        server.setDelayMillis(100);
+
+        assertEquals("value", redis.get(String.class, "key"));
+        assertNull(redis.withTimeout(30, () -> redis.get(String.class, "key")));
+
+        server.setDelayMillis(0);
+        assertEquals("value", redis.get(String.class, "key"));
+    }
+
+    @Test
+    public void breakerRejectsAndRecovers() throws InterruptedException {
+        redis = service(false, 2);
+        redis.put("key", "value");
+        CircuitBreaker breaker = redis.getBreakers().get(0);
+        server.pause();
+
+        assertNull(redis.get(String.class, "key"));
+        assertNull(redis.get(String.class, "key"));
+        assertEquals(CircuitState.OPEN, breaker.getState());
+
+        long started = System.nanoTime();
+        assertNull(redis.get(String.class, "key"));
+        assertTrue(elapsedMillis(started) < 100);
+        assertEquals(1, breaker.getRejected());
+
+        server.resume();
+        Thread.sleep(400);
+        assertEquals("value", redis.get(String.class, "key"));
+        assertEquals(CircuitState.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void throwOnFailureMapsErrors() {
+        redis = service(true, 1);
+        redis.put("key", "value");
+        server.pause();
+
+        try {
+            redis.get(String.class, "key");
+            fail("timeout must throw");
+        } catch (RedisTimeoutException expected) {
+            assertEquals("get", expected.getOperation());
+        }
+        try {
+            redis.get(String.class, "key");
+            fail("open breaker must throw");
+        } catch (RedisTimeoutException unexpected) {
+            fail("open breaker is not a timeout");
+        } catch (RedisUnavailableException expected) {
+            assertEquals("get", expected.getOperation());
+        }
+    }
+
+    @Test
+    public void exhaustedPoolIsNotNodeFailure() {
+        redis = service(true, 1, "1");
+        redis.put("key", "value");
+        CircuitBreaker breaker = redis.getBreakers().get(0);
+
+        EsiaJedisPool pool = redis.pool(redis.rawKey("key"));
+        EsiaJedis held = pool.getResource();
+        try {
+            redis.get(String.class, "key");
+            fail("exhausted pool must throw");
+        } catch (RedisUnavailableException expected) {
+            assertEquals(0, breaker.getFailures());
+            assertEquals(CircuitState.CLOSED, breaker.getState());
+        } finally {
+            pool.returnResource(held);
+        }
+        assertEquals("value", redis.get(String.class, "key"));
+    }
+
+    private RedisService service(boolean throwOnFailure, int failureThreshold) {
+        return service(throwOnFailure, failureThreshold, "8");
+    }
+
+    private RedisService service(boolean throwOnFailure, int failureThreshold, String maxTotal) {
+        Properties properties = new Properties();
+        properties.setProperty("redis.host", server.getHost());
+        properties.setProperty("redis.port", String.valueOf(server.getPort()));
+        properties.setProperty("redis.commandTimeoutMillis", "200");
+        properties.setProperty("redis.breaker.failureThreshold", String.valueOf(failureThreshold));
+        properties.setProperty("redis.breaker.openMillis", "300");
+        properties.setProperty("redis.throwOnFailure", String.valueOf(throwOnFailure));
+        properties.setProperty("redis.pool.maxTotal", maxTotal);
+        properties.setProperty("redis.pool.maxWaitMillis", "50");
+        properties.setProperty("redis.log.async", "false");
+        return new RedisService(RedisConfig.fromProperties(properties));
+    }
+
+    private static long elapsedMillis(long started) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+    }
+}
@@ -0,0 +1,110 @@
+package services;
+
+import configs.RedisConfig;
+import exceptions.RedisOperationException;
+import exceptions.WatchConflictException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import servers.EmbeddedRedisServer;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Транзакции и оптимистичные транзакции WATCH на встроенном сервере
+ */
+public class RedisTransactionTest {
+
+    private EmbeddedRedisServer server;
+
+    private RedisService redis;
+
+    private RedisService strict;
+
+    private RedisService other;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new EmbeddedRedisServer();
+        redis = new RedisService(RedisConfig.fromProperties(properties(false)));
+        strict = new RedisService(RedisConfig.fromProperties(properties(true)));
+        other = new RedisService(RedisConfig.fromProperties(properties(false)));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        redis.close();
+        strict.close();
+        other.close();
+        server.close();
+    }
+
+    @Test
+    public void watchRetriesAfterConflict() {
+        redis.put("counter", 1);
+        AtomicInteger attempts = new AtomicInteger();
+        assertTrue(redis.watch(Collections.singletonList("counter"), 3, transaction -> {
+            Integer value = transaction.read(Integer.class, "counter");
+            if (attempts.incrementAndGet() == 1) {
+                other.put("counter", 10);
+            }
+            transaction.put("counter", value + 1);
+        }));
+        assertEquals(2, attempts.get());
+        assertEquals(Integer.valueOf(11), redis.get(Integer.class, "counter"));
+    }
+
+    @Test
+    public void watchConflictOnEveryAttempt() {
+        redis.put("counter", 1);
+        AtomicInteger changes = new AtomicInteger();
+        assertFalse(redis.watch(Collections.singletonList("counter"), 2, transaction -> {
+            other.put("counter", changes.incrementAndGet());
+            transaction.put("counter", -1);
+        }));
+        assertEquals(3, changes.get());
+
+        try {
+            strict.watch(Collections.singletonList("counter"), 1, transaction -> {
+                other.put("counter", changes.incrementAndGet());
+                transaction.put("counter", -1);
+            });
+            fail("conflict must throw with throwOnFailure");
+        } catch (WatchConflictException expected) {
+            assertEquals(2, expected.getAttempts());
+            assertEquals("watch", expected.getOperation());
+        }
+        assertEquals(Integer.valueOf(5), redis.get(Integer.class, "counter"));
+    }
+
+    @Test
+    public void expireOutOfRangeIsRejected() {
+        long expire = Integer.MAX_VALUE + 1L;
+        assertFalse(redis.transaction(transaction -> transaction.put("key", "value", expire)));
+        try {
+            strict.transaction(transaction -> transaction.put("key", "value", expire));
+            fail("expire out of range must throw with throwOnFailure");
+        } catch (RedisOperationException expected) {
+            assertTrue(expected.getCause() instanceof IllegalArgumentException);
+        }
+        redis.put("key", "value", expire);
+        assertNull(redis.get(String.class, "key"));
+    }
+
+    private Properties properties(boolean throwOnFailure) {
+        Properties properties = new Properties();
+        properties.setProperty("redis.host", server.getHost());
+        properties.setProperty("redis.port", String.valueOf(server.getPort()));
+        properties.setProperty("redis.throwOnFailure", String.valueOf(throwOnFailure));
+        return properties;
+    }
+}
@@ -0,0 +1,213 @@
+package services;
+
+import clients.EsiaJedisPool;
+import configs.RedisConfig;
+import exceptions.CrossNodeKeysException;
+import interfaces.ActionOneParam;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import servers.EmbeddedRedisServer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Надёжный потребитель очереди на встроенных серверах
+ */
+public class ReliableQueueConsumerTest {
+
+    private final List<EmbeddedRedisServer> servers = new ArrayList<>();
+
+    private final List<RedisService> services = new ArrayList<>();
+
+    private final List<ReliableQueueConsumer<?>> consumers = new ArrayList<>();
+
+    @Before
+    public void setUp() throws IOException {
+        for (int i = 0; i < 3; i++) {
+            servers.add(new EmbeddedRedisServer());
+        }
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        for (ReliableQueueConsumer<?> consumer : consumers) {
+            consumer.close();
+        }
+        for (RedisService service : services) {
+            service.close();
+        }
+        for (EmbeddedRedisServer server : servers) {
+            server.close();
+        }
+    }
+
+    @Test
+    public void processedObjectsAreAcknowledged() {
+        RedisService redis = single("");
+        List<String> handled = new CopyOnWriteArrayList<>();
+        ReliableQueueConsumer<String> consumer = consume(redis, "{orders}", handled::add);
+
+        redis.queueLeftPushAll("{orders}", Arrays.asList("o1", "o2", "o3"));
+
+        await(() -> consumer.getProcessed() == 3);
+        assertEquals(Arrays.asList("o1", "o2", "o3"), handled);
+        assertEquals(0, redis.queueSize("{orders}"));
+        assertTrue(redis.scanKeys("{orders}:processing:*", 10).collect(Collectors.toSet()).isEmpty());
+        assertFalse(redis.exist("{orders}:attempts"));
+        assertEquals(0, consumer.getInFlight());
+    }
+
+    @Test
+    public void reaperReturnsObjectsOfDeadConsumer() {
+        RedisService redis = single("");
+        redis.execute(jedis -> jedis.sadd("{orders}:consumers", "ghost"));
+        redis.queueLeftPushAll("{orders}:processing:ghost", Arrays.asList("o1", "o2"));
+        List<String> handled = new CopyOnWriteArrayList<>();
+
+        ReliableQueueConsumer<String> consumer = consume(redis, "{orders}", handled::add);
+
+        // счётчик возвращённых растёт после переноса всего списка, обработка может успеть раньше
+        await(() -> consumer.getProcessed() == 2 && consumer.getRecovered() == 2);
+        assertTrue(handled.containsAll(Arrays.asList("o1", "o2")));
+        assertEquals(0, redis.queueSize("{orders}:processing:ghost"));
+        Set<String> members = redis.execute(jedis -> jedis.smembers("{orders}:consumers"));
+        assertFalse(members.contains("ghost"));
+    }
+
+    @Test
+    public void failingObjectMovesToDeadLetters() {
+        RedisService redis = single("");
+        ReliableQueueConsumer<String> consumer = consume(redis, "{orders}", value -> {
+            throw new IllegalStateException("handler failed: " + value);
+        });
+
+        redis.queueLeftPush("{orders}", "bad");
+
+        await(() -> consumer.getDeadLettered() == 1);
+        assertEquals(2, consumer.getFailed());
+        assertEquals("{orders}:dead", consumer.getDeadLetterQueue());
+        assertEquals(1, redis.queueSize(consumer.getDeadLetterQueue()));
+        assertEquals(Arrays.asList("bad"), redis.dequeueBatch(String.class, consumer.getDeadLetterQueue(), 10));
+        assertEquals(0, redis.queueSize("{orders}"));
+        assertFalse(redis.exist("{orders}:attempts"));
+    }
+
+    @Test
+    public void consumerKeysStayInNamespace() {
+        RedisService tenant = single("tenant:");
+        RedisService other = single("other:");
+        RedisService plain = single("");
+        List<String> handled = new CopyOnWriteArrayList<>();
+        ReliableQueueConsumer<String> consumer = consume(tenant, "{orders}", handled::add);
+        consume(other, "{orders}", value -> { });
+
+        tenant.queueLeftPush("{orders}", "o1");
+
+        await(() -> consumer.getProcessed() == 1);
+        Set<String> keys = plain.scanKeys("*", 10).collect(Collectors.toSet());
+        assertTrue(keys.contains("tenant:{orders}:consumers"));
+        assertTrue(keys.contains("other:{orders}:consumers"));
+        for (String key : keys) {
+            assertTrue(key, key.startsWith("tenant:") || key.startsWith("other:"));
+        }
+        Set<String> members = tenant.execute(jedis -> jedis.smembers("tenant:{orders}:consumers"));
+        assertEquals(1, members.size());
+    }
+
+    @Test
+    public void namespacedQueueOnShardsNeedsHashTag() {
+        ShardedRedisService redis = sharded("tenant:");
+        String queue = null;
+        for (int i = 0; queue == null; i++) {
+            EsiaJedisPool source = redis.pool(redis.rawKey("orders" + i));
+            if (source != redis.pool(redis.rawKey("{orders" + i + "}:processing"))) {
+                queue = "orders" + i;
+            }
+        }
+        try {
+            consume(redis, queue, value -> { });
+            fail("queue and processing list on different nodes must fail");
+        } catch (CrossNodeKeysException expected) {
+            assertTrue(consumers.isEmpty());
+        }
+
+        String tagged = "{" + queue + "}";
+        List<String> handled = new CopyOnWriteArrayList<>();
+        ReliableQueueConsumer<String> consumer = consume(redis, tagged, handled::add);
+        redis.queueLeftPush(tagged, "o1");
+
+        await(() -> consumer.getProcessed() == 1);
+        assertEquals("o1", handled.get(0));
+        assertEquals(0, redis.queueSize(tagged));
+    }
+
+    private ReliableQueueConsumer<String> consume(RedisService redis, String queue, ActionOneParam<String> handler) {
+        ReliableQueueConsumer<String> consumer = redis.consume(String.class, queue, handler);
+        consumers.add(consumer);
+        return consumer;
+    }
+
+    private RedisService single(String namespace) {
+        RedisService redis = new RedisService(RedisConfig.fromProperties(properties(namespace, servers.get(0))));
+        services.add(redis);
+        return redis;
+    }
+
+    private ShardedRedisService sharded(String namespace) {
+        StringBuilder shards = new StringBuilder();
+        for (EmbeddedRedisServer server : servers) {
+            if (shards.length() > 0) shards.append(',');
+            shards.append(server.getHost()).append(':').append(server.getPort());
+        }
+        Properties properties = properties(namespace, servers.get(0));
+        properties.setProperty("redis.shards", shards.toString());
+        ShardedRedisService redis = new ShardedRedisService(RedisConfig.fromProperties(properties));
+        services.add(redis);
+        return redis;
+    }
+
+    private static Properties properties(String namespace, EmbeddedRedisServer server) {
+        Properties properties = new Properties();
+        properties.setProperty("redis.host", server.getHost());
+        properties.setProperty("redis.port", String.valueOf(server.getPort()));
+        properties.setProperty("redis.keys.namespace", namespace);
+        properties.setProperty("redis.queue.workers", "1");
+        properties.setProperty("redis.queue.pollTimeout", "1");
+        properties.setProperty("redis.queue.visibilityTimeout", "1");
+        properties.setProperty("redis.queue.maxAttempts", "2");
+        properties.setProperty("redis.log.async", "false");
+        return properties;
+    }
+
+    /**
+     * Ждёт условия не дольше 5 секунд
+     */
+    private static void await(BooleanSupplier condition) {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("condition not reached in time");
+            }
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                fail("interrupted");
+            }
+        }
+    }
+}
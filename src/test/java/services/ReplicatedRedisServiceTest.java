@@ -0,0 +1,140 @@
+package services;
+
+import configs.RedisConfig;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import servers.EmbeddedRedisServer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Чтение с реплик на встроенных серверах. Встроенный сервер не реплицирует данные,
+ * поэтому значения на репликах записываются отдельным сервисом и отличаются от основного узла
+ */
+public class ReplicatedRedisServiceTest {
+
+    private EmbeddedRedisServer primary;
+
+    private final List<EmbeddedRedisServer> replicas = new ArrayList<>();
+
+    private final List<RedisService> services = new ArrayList<>();
+
+    @Before
+    public void setUp() throws IOException {
+        primary = new EmbeddedRedisServer();
+        for (int i = 0; i < 2; i++) {
+            replicas.add(new EmbeddedRedisServer());
+        }
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        for (RedisService service : services) {
+            service.close();
+        }
+        primary.close();
+        for (EmbeddedRedisServer replica : replicas) {
+            replica.close();
+        }
+    }
+
+    @Test
+    public void readsGoToReplicas() {
+        ReplicatedRedisService redis = replicated(replicas.size(), 0);
+        redis.put("key", "primary");
+        fill("key", "replica");
+
+        assertEquals("replica", redis.get(String.class, "key"));
+        assertEquals("primary", redis.onPrimary(() -> redis.get(String.class, "key")));
+        assertEquals(1, redis.getReplicaReads());
+        assertEquals(1, redis.getPrimaryReads());
+    }
+
+    @Test
+    public void readsOwnWritesFromPrimary() {
+        ReplicatedRedisService redis = replicated(replicas.size(), 60000);
+        fill("key", "replica");
+        redis.put("key", "primary");
+
+        assertEquals("primary", redis.get(String.class, "key"));
+        assertEquals(0, redis.getReplicaReads());
+    }
+
+    @Test
+    public void failsOverWhenReplicaGoesAway() throws IOException {
+        ReplicatedRedisService redis = replicated(1, 0);
+        redis.put("key", "primary");
+        fill("key", "replica");
+        assertEquals("replica", redis.get(String.class, "key"));
+
+        replicas.get(0).close();
+
+        for (int i = 0; i < 5; i++) {
+            assertEquals("primary", redis.get(String.class, "key"));
+        }
+        assertTrue(redis.getFallbacks() > 0);
+    }
+
+    @Test
+    public void keepsReadingFromRemainingReplica() throws IOException {
+        ReplicatedRedisService redis = replicated(replicas.size(), 0);
+        redis.put("key", "primary");
+        fill("key", "replica");
+        for (int i = 0; i < 10; i++) {
+            assertEquals("replica", redis.get(String.class, "key"));
+        }
+
+        replicas.get(1).close();
+
+        int fromReplica = 0;
+        for (int i = 0; i < 20; i++) {
+            String value = redis.get(String.class, "key");
+            assertTrue("primary".equals(value) || "replica".equals(value));
+            if ("replica".equals(value)) fromReplica++;
+        }
+        assertTrue(fromReplica > 0);
+    }
+
+    /**
+     * Сервис с основным узлом и первыми count репликами
+     */
+    private ReplicatedRedisService replicated(int count, long readYourWritesMillis) {
+        StringBuilder nodes = new StringBuilder();
+        for (EmbeddedRedisServer replica : replicas.subList(0, count)) {
+            if (nodes.length() > 0) nodes.append(',');
+            nodes.append(replica.getHost()).append(':').append(replica.getPort());
+        }
+        Properties properties = properties(primary);
+        properties.setProperty("redis.replicas", nodes.toString());
+        properties.setProperty("redis.replicas.readYourWritesMillis", String.valueOf(readYourWritesMillis));
+        ReplicatedRedisService redis = new ReplicatedRedisService(RedisConfig.fromProperties(properties));
+        services.add(redis);
+        return redis;
+    }
+
+    /**
+     * Записать значение на все реплики в обход основного узла
+     */
+    private void fill(String key, String value) {
+        for (EmbeddedRedisServer replica : replicas) {
+            try (RedisService direct = new RedisService(RedisConfig.fromProperties(properties(replica)))) {
+                direct.put(key, value);
+            }
+        }
+    }
+
+    private static Properties properties(EmbeddedRedisServer server) {
+        Properties properties = new Properties();
+        properties.setProperty("redis.host", server.getHost());
+        properties.setProperty("redis.port", String.valueOf(server.getPort()));
+        properties.setProperty("redis.log.async", "false");
+        return properties;
+    }
+}
@@ -0,0 +1,179 @@
+package services;
+
+import configs.RedisConfig;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import redis.clients.jedis.ScanParams;
+import redis.clients.util.SafeEncoder;
+import servers.EmbeddedRedisServer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Ленивый обход ключей и значений по SCAN на встроенных серверах
+ */
+public class ScanSpliteratorTest {
+
+    private final List<EmbeddedRedisServer> servers = new ArrayList<>();
+
+    private final List<RedisService> services = new ArrayList<>();
+
+    @Before
+    public void setUp() throws IOException {
+        for (int i = 0; i < 3; i++) {
+            servers.add(new EmbeddedRedisServer());
+        }
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        for (RedisService service : services) {
+            service.close();
+        }
+        for (EmbeddedRedisServer server : servers) {
+            server.close();
+        }
+    }
+
+    @Test
+    public void keysArePagedLazily() {
+        RedisService redis = single();
+        put(redis, 25);
+        redis.put("other", 0);
+        EmbeddedRedisServer server = servers.get(0);
+
+        Iterator<String> keys = redis.scanKeys("k*", 5).iterator();
+        String first = keys.next();
+        assertEquals(1, server.getCommandCount("SCAN"));
+
+        List<String> all = new ArrayList<>();
+        all.add(first);
+        keys.forEachRemaining(all::add);
+        assertEquals(names(25), all);
+        assertEquals(6, server.getCommandCount("SCAN"));
+    }
+
+    @Test
+    public void valuesAreReadWithNextPageScan() {
+        RedisService redis = single();
+        put(redis, 10);
+        EmbeddedRedisServer server = servers.get(0);
+
+        List<Integer> values = redis.scanValues(Integer.class, "k*", 5).collect(Collectors.toList());
+
+        assertEquals(IntStream.range(0, 10).boxed().collect(Collectors.toList()), values);
+        assertEquals(2, server.getCommandCount("SCAN"));
+        assertEquals(2, server.getCommandCount("MGET"));
+    }
+
+    @Test
+    public void vanishedAndUndecodableValuesAreSkipped() {
+        RedisService redis = single();
+        put(redis, 10);
+        redis.execute(jedis -> jedis.set("k03", "not a number"));
+
+        Iterator<Integer> values = redis.scanValues(Integer.class, "k*", 5).iterator();
+        List<Integer> read = new ArrayList<>();
+        read.add(values.next());
+        // первая страница уже прочитана, ключи второй ждут MGET вместе со следующим SCAN
+        for (String key : names(10).subList(5, 10)) {
+            redis.delete(key);
+        }
+        values.forEachRemaining(read::add);
+
+        assertEquals(IntStream.of(0, 1, 2, 4).boxed().collect(Collectors.toList()), read);
+    }
+
+    @Test
+    public void splitDividesNodesThenPages() {
+        ShardedRedisService redis = sharded();
+        put(redis, 30);
+        for (EmbeddedRedisServer server : servers) {
+            assertTrue(server.getCommandCount("SET") > 0);
+        }
+        ScanSpliterator<String> scan = new ScanSpliterator<>(redis, redis.nodes(), "k*", new ScanParams().match("k*").count(4),
+                false, (key, value) -> SafeEncoder.encode(key));
+
+        List<Spliterator<String>> parts = new ArrayList<>();
+        parts.add(scan);
+        parts.add(scan.trySplit());
+        parts.add(scan.trySplit());
+        Spliterator<String> page = scan.trySplit();
+        assertNotNull(page);
+        assertEquals(Spliterator.SIZED, page.characteristics() & Spliterator.SIZED);
+        parts.add(page);
+
+        List<String> all = new ArrayList<>();
+        for (Spliterator<String> part : parts) {
+            assertNotNull(part);
+            part.forEachRemaining(all::add);
+        }
+        all.sort(null);
+        assertEquals(names(30), all);
+        assertNull(scan.trySplit());
+    }
+
+    @Test
+    public void parallelStreamReadsEveryNodeOnce() {
+        ShardedRedisService redis = sharded();
+        put(redis, 30);
+
+        List<String> keys = redis.scanKeys("k*", 4).parallel().sorted().collect(Collectors.toList());
+        Set<Integer> values = redis.scanValues(Integer.class, "k*", 4).parallel().collect(Collectors.toSet());
+
+        assertEquals(names(30), keys);
+        assertEquals(IntStream.range(0, 30).boxed().collect(Collectors.toSet()), values);
+    }
+
+    private static void put(RedisService redis, int count) {
+        List<String> names = names(count);
+        for (int i = 0; i < count; i++) {
+            redis.put(names.get(i), i);
+        }
+    }
+
+    private static List<String> names(int count) {
+        return IntStream.range(0, count).mapToObj(i -> String.format("k%02d", i)).collect(Collectors.toList());
+    }
+
+    private RedisService single() {
+        RedisService redis = new RedisService(RedisConfig.fromProperties(properties()));
+        services.add(redis);
+        return redis;
+    }
+
+    private ShardedRedisService sharded() {
+        StringBuilder shards = new StringBuilder();
+        for (EmbeddedRedisServer server : servers) {
+            if (shards.length() > 0) shards.append(',');
+            shards.append(server.getHost()).append(':').append(server.getPort());
+        }
+        Properties properties = properties();
+        properties.setProperty("redis.shards", shards.toString());
+        ShardedRedisService redis = new ShardedRedisService(RedisConfig.fromProperties(properties));
+        services.add(redis);
+        return redis;
+    }
+
+    private Properties properties() {
+        Properties properties = new Properties();
+        properties.setProperty("redis.host", servers.get(0).getHost());
+        properties.setProperty("redis.port", String.valueOf(servers.get(0).getPort()));
+        properties.setProperty("redis.log.async", "false");
+        return properties;
+    }
+}
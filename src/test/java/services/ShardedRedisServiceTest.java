@@ -0,0 +1,151 @@
+package services;
+
+import clients.EsiaJedisPool;
+import configs.RedisConfig;
+import exceptions.CrossNodeKeysException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import servers.EmbeddedRedisServer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Шардированный сервис на трёх встроенных серверах
+ */
+public class ShardedRedisServiceTest {
+
+    private final List<EmbeddedRedisServer> servers = new ArrayList<>();
+
+    private ShardedRedisService redis;
+
+    @Before
+    public void setUp() throws IOException {
+        StringBuilder shards = new StringBuilder();
+        for (int i = 0; i < 3; i++) {
+            EmbeddedRedisServer server = new EmbeddedRedisServer();
+            servers.add(server);
+            if (shards.length() > 0) shards.append(',');
+            shards.append(server.getHost()).append(':').append(server.getPort());
+        }
+        Properties properties = new Properties();
+        properties.setProperty("redis.shards", shards.toString());
+        properties.setProperty("redis.log.async", "false");
+        redis = new ShardedRedisService(RedisConfig.fromProperties(properties));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        redis.close();
+        for (EmbeddedRedisServer server : servers) {
+            server.close();
+        }
+    }
+
+    @Test
+    public void keysAreSpreadOverAllNodes() {
+        Map<String, Integer> values = new HashMap<>();
+        for (int i = 0; i < 300; i++) {
+            values.put("key" + i, i);
+        }
+        redis.putAll(values);
+
+        Set<EsiaJedisPool> used = values.keySet().stream()
+                .map(key -> redis.getShards().get(redis.rawKey(key)))
+                .collect(Collectors.toSet());
+        assertEquals(3, used.size());
+
+        Map<String, Integer> read = redis.getAll(Integer.class, values.keySet());
+        assertEquals(values, read);
+        assertEquals(Integer.valueOf(42), redis.get(Integer.class, "key42"));
+
+        String[] keys = values.keySet().toArray(new String[0]);
+        assertEquals(300, redis.exists(keys));
+        assertEquals(300, redis.delete(keys));
+        assertEquals(0, redis.exists(keys));
+        assertNull(redis.get(Integer.class, "key42"));
+    }
+
+    @Test
+    public void scanVisitsAllNodes() {
+        Set<String> expected = new HashSet<>();
+        for (int i = 0; i < 100; i++) {
+            redis.put("scan:" + i, i);
+            expected.add("scan:" + i);
+        }
+        redis.put("other", 0);
+
+        Set<String> found = redis.scanKeys("scan:*", 10).collect(Collectors.toSet());
+        assertEquals(expected, found);
+    }
+
+    @Test
+    public void hashTagKeepsKeysOnOneNode() {
+        EsiaJedisPool queue = redis.getShards().get(redis.rawKey("{orders}"));
+        assertSame(queue, redis.getShards().get(redis.rawKey("{orders}:processing")));
+        assertSame(queue, redis.getShards().get(redis.rawKey("{orders}:dead")));
+
+        redis.queueLeftPush("{orders}", "o1");
+        assertEquals("o1", redis.dequeueAndPush(String.class, "{orders}", "{orders}:processing"));
+        assertEquals(0, redis.queueSize("{orders}"));
+        assertEquals(1, redis.queueSize("{orders}:processing"));
+    }
+
+    @Test
+    public void untaggedKeysOnDifferentNodesFail() {
+        String queue = null;
+        String to = null;
+        for (int i = 0; queue == null; i++) {
+            EsiaJedisPool from = redis.getShards().get(redis.rawKey("orders" + i));
+            if (from != redis.getShards().get(redis.rawKey("orders" + i + ":processing"))) {
+                queue = "orders" + i;
+                to = queue + ":processing";
+            }
+        }
+        assertNotSame(redis.getShards().get(redis.rawKey(queue)), redis.getShards().get(redis.rawKey(to)));
+
+        redis.queueLeftPush(queue, "o1");
+        try {
+            redis.dequeueAndPush(String.class, queue, to);
+            fail("moving between nodes must fail");
+        } catch (CrossNodeKeysException expected) {
+            assertEquals(1, redis.queueSize(queue));
+        }
+    }
+
+    @Test
+    public void transactionOnDifferentNodesFails() {
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            keys.add("tx" + i);
+        }
+        try {
+            redis.transaction(transaction -> keys.forEach(key -> transaction.put(key, 1)));
+            fail("transaction over several nodes must fail");
+        } catch (CrossNodeKeysException expected) {
+            assertFalse(redis.exist("tx0"));
+        }
+
+        assertTrue(redis.transaction(transaction -> {
+            transaction.put("{tx}:a", 1);
+            transaction.put("{tx}:b", 2);
+        }));
+        assertEquals(Integer.valueOf(2), redis.get(Integer.class, "{tx}:b"));
+    }
+}